@@ -0,0 +1,288 @@
+package io.github.dbstarll.dubai.model.cache;
+
+import org.bson.BsonArray;
+import org.bson.BsonBinaryWriter;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.codecs.BsonDocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.conversions.Bson;
+import org.bson.io.BasicOutputBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+
+/**
+ * 根据查询条件生成缓存key.
+ * 查询条件先通过CodecRegistry渲染为BsonDocument，再规范化为统一的形式，最后计算摘要作为key，
+ * 因此语义相同但写法不同的查询条件（字段顺序、显式或隐式的$and、$in中元素的顺序等）会得到相同的key.
+ */
+public final class CacheKeyBuilder {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CacheKeyBuilder.class);
+
+    private static final String AND = "$and";
+    private static final String OR = "$or";
+    private static final String NOR = "$nor";
+    private static final String EQ = "$eq";
+    private static final String ELEM_MATCH = "$elemMatch";
+    private static final String FALLBACK_PREFIX = "toString:";
+
+    /**
+     * 相互独立的操作符，同一字段上的多个这类操作符可以拆分为$and的多个条件.
+     */
+    private static final Set<String> SPLITTABLE_OPERATORS = new HashSet<>(Arrays.asList("$eq", "$ne", "$gt", "$gte",
+            "$lt", "$lte", "$in", "$nin", "$all", "$exists", "$type", "$size"));
+
+    /**
+     * 元素顺序不影响语义的数组操作符.
+     */
+    private static final Set<String> UNORDERED_OPERATORS = new HashSet<>(Arrays.asList("$in", "$nin", "$all"));
+
+    private static final BsonDocumentCodec DOCUMENT_CODEC = new BsonDocumentCodec();
+    private static final EncoderContext ENCODER_CONTEXT = EncoderContext.builder().build();
+
+    private static final Comparator<Encoded> BYTES_ORDER = new Comparator<Encoded>() {
+        @Override
+        public int compare(Encoded o1, Encoded o2) {
+            return compareBytes(o1.bytes, o2.bytes);
+        }
+    };
+
+    private final CodecRegistry codecRegistry;
+
+    /**
+     * 构造CacheKeyBuilder.
+     *
+     * @param codecRegistry 渲染查询条件使用的CodecRegistry，为null时使用查询条件的toString作为key
+     */
+    public CacheKeyBuilder(CodecRegistry codecRegistry) {
+        this.codecRegistry = codecRegistry;
+    }
+
+    /**
+     * 生成查询条件的缓存key.
+     *
+     * @param documentClass 文档类
+     * @param filter        查询条件
+     * @return 缓存key
+     */
+    public String build(Class<?> documentClass, Bson filter) {
+        if (codecRegistry != null) {
+            try {
+                return digest(toBytes(canonicalize(filter.toBsonDocument(documentClass, codecRegistry))));
+            } catch (RuntimeException ex) {
+                LOGGER.debug("render filter failed: {}", ex.getMessage());
+            }
+        }
+        return FALLBACK_PREFIX + filter.toString();
+    }
+
+    /**
+     * 生成查询结果的缓存key.
+     * 查询条件规范化后与操作名称和查询选项一起计算摘要，查询选项（排序、分页等）保持原有的顺序.
+     *
+     * @param operation     操作名称，例如find、count、distinct
+     * @param documentClass 文档类
+     * @param filter        查询条件
+     * @param options       查询选项，为null的选项按空文档处理
+     * @return 缓存key
+     */
+    public String build(String operation, Class<?> documentClass, Bson filter, Bson... options) {
+        if (codecRegistry != null) {
+            try {
+                final BsonArray rendered = new BsonArray();
+                for (Bson option : options) {
+                    rendered.add(option == null ? new BsonDocument() : option.toBsonDocument(documentClass,
+                            codecRegistry));
+                }
+                final BsonDocument query = new BsonDocument("op", new BsonString(operation))
+                        .append("filter", canonicalize(filter.toBsonDocument(documentClass, codecRegistry)))
+                        .append("options", rendered);
+                return operation + ':' + digest(toBytes(query));
+            } catch (RuntimeException ex) {
+                LOGGER.debug("render query failed: {}", ex.getMessage());
+            }
+        }
+        return FALLBACK_PREFIX + operation + ':' + filter + ':' + Arrays.toString(options);
+    }
+
+    /**
+     * 将查询条件规范化：所有条件拆分为单字段条件并按编码排序后合并到$and中，
+     * 操作符按名称排序，$or/$nor的分支以及$in/$nin/$all的元素按编码排序.
+     *
+     * @param query 查询条件
+     * @return 规范化后的查询条件
+     */
+    public static BsonDocument canonicalize(BsonDocument query) {
+        final List<BsonDocument> terms = new ArrayList<>();
+        collectTerms(query, terms);
+        final List<BsonDocument> distinct = sortDistinct(terms);
+        if (distinct.isEmpty()) {
+            return new BsonDocument();
+        } else if (distinct.size() == 1) {
+            return distinct.get(0);
+        } else {
+            return new BsonDocument(AND, new BsonArray(distinct));
+        }
+    }
+
+    private static void collectTerms(BsonDocument query, List<BsonDocument> terms) {
+        for (Entry<String, BsonValue> entry : query.entrySet()) {
+            final String key = entry.getKey();
+            final BsonValue value = entry.getValue();
+            if (AND.equals(key) && value.isArray()) {
+                for (BsonValue item : value.asArray()) {
+                    if (item.isDocument()) {
+                        collectTerms(item.asDocument(), terms);
+                    } else {
+                        terms.add(new BsonDocument(key, value));
+                        break;
+                    }
+                }
+            } else if ((OR.equals(key) || NOR.equals(key)) && value.isArray()) {
+                terms.add(new BsonDocument(key, canonicalizeBranches(value.asArray())));
+            } else if (isOperatorDocument(value) && SPLITTABLE_OPERATORS.containsAll(value.asDocument().keySet())) {
+                for (Entry<String, BsonValue> operator : value.asDocument().entrySet()) {
+                    final BsonValue operand = canonicalizeOperand(operator.getKey(), operator.getValue());
+                    if (EQ.equals(operator.getKey()) && !operand.isRegularExpression() && !operand.isDocument()) {
+                        terms.add(new BsonDocument(key, operand));
+                    } else {
+                        terms.add(new BsonDocument(key, new BsonDocument(operator.getKey(), operand)));
+                    }
+                }
+            } else if (isOperatorDocument(value)) {
+                terms.add(new BsonDocument(key, canonicalizeOperators(value.asDocument())));
+            } else {
+                terms.add(new BsonDocument(key, value));
+            }
+        }
+    }
+
+    private static BsonArray canonicalizeBranches(BsonArray branches) {
+        final List<BsonDocument> canonical = new ArrayList<>(branches.size());
+        for (BsonValue branch : branches) {
+            if (!branch.isDocument()) {
+                return branches;
+            }
+            canonical.add(canonicalize(branch.asDocument()));
+        }
+        return new BsonArray(sortDistinct(canonical));
+    }
+
+    private static BsonDocument canonicalizeOperators(BsonDocument operators) {
+        final List<String> names = new ArrayList<>(operators.keySet());
+        Collections.sort(names);
+        final BsonDocument canonical = new BsonDocument();
+        for (String name : names) {
+            canonical.put(name, canonicalizeOperand(name, operators.get(name)));
+        }
+        return canonical;
+    }
+
+    private static BsonValue canonicalizeOperand(String operator, BsonValue operand) {
+        if (UNORDERED_OPERATORS.contains(operator) && operand.isArray()) {
+            final List<BsonDocument> wrapped = new ArrayList<>(operand.asArray().size());
+            for (BsonValue item : operand.asArray()) {
+                wrapped.add(new BsonDocument("v", item));
+            }
+            final BsonArray sorted = new BsonArray();
+            for (BsonDocument item : sortDistinct(wrapped)) {
+                sorted.add(item.get("v"));
+            }
+            return sorted;
+        } else if (ELEM_MATCH.equals(operator) && operand.isDocument()) {
+            return canonicalize(operand.asDocument());
+        } else if (isOperatorDocument(operand)) {
+            return canonicalizeOperators(operand.asDocument());
+        } else {
+            return operand;
+        }
+    }
+
+    private static boolean isOperatorDocument(BsonValue value) {
+        if (!value.isDocument() || value.asDocument().isEmpty()) {
+            return false;
+        }
+        for (String key : value.asDocument().keySet()) {
+            if (!key.startsWith("$")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 按BSON编码的字节序排序并去重，每个文档只编码一次.
+     */
+    private static List<BsonDocument> sortDistinct(List<BsonDocument> documents) {
+        if (documents.size() < 2) {
+            return documents;
+        }
+        final List<Encoded> encoded = new ArrayList<>(documents.size());
+        for (BsonDocument document : documents) {
+            encoded.add(new Encoded(document));
+        }
+        Collections.sort(encoded, BYTES_ORDER);
+        final List<BsonDocument> distinct = new ArrayList<>(encoded.size());
+        byte[] last = null;
+        for (Encoded item : encoded) {
+            if (last == null || !Arrays.equals(last, item.bytes)) {
+                distinct.add(item.document);
+                last = item.bytes;
+            }
+        }
+        return distinct;
+    }
+
+    private static byte[] toBytes(BsonDocument document) {
+        final BasicOutputBuffer buffer = new BasicOutputBuffer();
+        try (BsonBinaryWriter writer = new BsonBinaryWriter(buffer)) {
+            DOCUMENT_CODEC.encode(writer, document, ENCODER_CONTEXT);
+        }
+        return buffer.toByteArray();
+    }
+
+    private static int compareBytes(byte[] b1, byte[] b2) {
+        final int length = Math.min(b1.length, b2.length);
+        for (int i = 0; i < length; i++) {
+            final int diff = (b1[i] & 0xff) - (b2[i] & 0xff);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return b1.length - b2.length;
+    }
+
+    private static final class Encoded {
+        private final BsonDocument document;
+        private final byte[] bytes;
+
+        private Encoded(BsonDocument document) {
+            this.document = document;
+            this.bytes = toBytes(document);
+        }
+    }
+
+    private static String digest(byte[] bytes) {
+        try {
+            final MessageDigest md5 = MessageDigest.getInstance("MD5");
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(md5.digest(bytes));
+        } catch (NoSuchAlgorithmException ex) {
+            return new String(Base64.getUrlEncoder().encode(bytes), StandardCharsets.US_ASCII);
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package io.github.dbstarll.dubai.model.cache;
+
+import io.github.dbstarll.dubai.model.entity.Entity;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * LocalEntityCacheManager的快照，用于在启动时预热缓存.
+ * <ul>
+ * <li>定期将缓存中的key与实体的BSON写入本地文件，先写临时文件再原子地替换</li>
+ * <li>启动时以内存映射方式读取快照，在后台按lastModified批量校验实体，只有仍然有效的实体才会放入缓存</li>
+ * <li>预热完成（包括没有快照或快照损坏）后isReady返回true</li>
+ * </ul>
+ */
+public final class CacheSnapshot implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CacheSnapshot.class);
+
+    private static final int MAGIC = 0x44434253;
+    private static final int VERSION = 1;
+    private static final int DEFAULT_BATCH_SIZE = 500;
+
+    private final LocalEntityCacheManager cacheManager;
+    private final EntityBsonCodec codec;
+    private final File file;
+    private final CountDownLatch ready = new CountDownLatch(1);
+    private final AtomicLong restoredCount = new AtomicLong();
+    private final AtomicLong staleCount = new AtomicLong();
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private volatile ScheduledFuture<?> scheduled;
+
+    /**
+     * 构造CacheSnapshot.
+     *
+     * @param cacheManager  需要快照的缓存
+     * @param codecRegistry 编解码实体使用的CodecRegistry，通常与MongoClient使用的相同
+     * @param file          快照文件
+     */
+    public CacheSnapshot(LocalEntityCacheManager cacheManager, CodecRegistry codecRegistry, File file) {
+        this.cacheManager = notNull(cacheManager, "cacheManager is null");
+        this.codec = new EntityBsonCodec(notNull(codecRegistry, "codecRegistry is null"));
+        this.file = notNull(file, "file is null");
+    }
+
+    /**
+     * 设置恢复快照时每次从数据库校验的条目数.
+     *
+     * @param batchSize 每批校验的条目数，必须大于0
+     */
+    public void setBatchSize(int batchSize) {
+        isTrue(batchSize > 0, "batchSize must be positive: %d", batchSize);
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * 写入快照.
+     *
+     * @return 写入的条目数
+     * @throws IOException 写入失败时抛出
+     */
+    public int write() throws IOException {
+        final File temp = new File(file.getPath() + ".tmp");
+        final int[] count = new int[1];
+        try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            final IOException[] error = new IOException[1];
+            cacheManager.forEachEntry(new LocalEntityCacheManager.EntryVisitor() {
+                @Override
+                public void visit(Class<?> entityClass, String key, Entity entity) {
+                    if (error[0] == null) {
+                        try {
+                            writeEntry(out, entityClass, key, entity);
+                            count[0]++;
+                        } catch (IOException ex) {
+                            error[0] = ex;
+                        } catch (RuntimeException ex) {
+                            LOGGER.debug("skip entry {}: {}", key, ex.getMessage());
+                        }
+                    }
+                }
+            });
+            if (error[0] != null) {
+                throw error[0];
+            }
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        LOGGER.debug("write snapshot: {} entries to {}", count[0], file);
+        return count[0];
+    }
+
+    private void writeEntry(DataOutputStream out, Class<?> entityClass, String key, Entity entity)
+            throws IOException {
+        final byte[] bson = codec.encode(entity);
+        final byte[] className = entityClass.getName().getBytes(StandardCharsets.UTF_8);
+        final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(className.length);
+        out.write(className);
+        out.writeInt(keyBytes.length);
+        out.write(keyBytes);
+        out.writeInt(bson.length);
+        out.write(bson);
+    }
+
+    /**
+     * 定期写入快照.
+     *
+     * @param scheduler 执行写入的ScheduledExecutorService
+     * @param period    写入间隔
+     * @param unit      写入间隔的单位
+     */
+    public void schedule(ScheduledExecutorService scheduler, long period, TimeUnit unit) {
+        scheduled = scheduler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    write();
+                } catch (Throwable ex) {
+                    LOGGER.warn("write snapshot failed: " + file, ex);
+                }
+            }
+        }, period, period, unit);
+    }
+
+    @Override
+    public void close() throws IOException {
+        final ScheduledFuture<?> future = scheduled;
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
+    /**
+     * 在后台读取快照并校验实体，将仍然有效的实体放入缓存.
+     *
+     * @param revalidator 校验实体的SnapshotRevalidator
+     * @param executor    执行预热的Executor
+     */
+    public void restore(final SnapshotRevalidator revalidator, Executor executor) {
+        notNull(revalidator, "revalidator is null");
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    restore(revalidator);
+                } catch (Throwable ex) {
+                    LOGGER.warn("restore snapshot failed: " + file, ex);
+                } finally {
+                    ready.countDown();
+                }
+            }
+        });
+    }
+
+    private void restore(SnapshotRevalidator revalidator) throws IOException {
+        if (!file.isFile()) {
+            LOGGER.info("snapshot not found: {}", file);
+            return;
+        }
+        final Map<Class<? extends Entity>, List<SnapshotEntry>> entries = read();
+        for (Entry<Class<? extends Entity>, List<SnapshotEntry>> entry : entries.entrySet()) {
+            final List<SnapshotEntry> list = entry.getValue();
+            for (int from = 0; from < list.size(); from += batchSize) {
+                revalidate(entry.getKey(), list.subList(from, Math.min(list.size(), from + batchSize)), revalidator);
+            }
+        }
+        LOGGER.info("restore snapshot: {} restored, {} stale", restoredCount.get(), staleCount.get());
+    }
+
+    private Map<Class<? extends Entity>, List<SnapshotEntry>> read() throws IOException {
+        final Map<Class<? extends Entity>, List<SnapshotEntry>> entries = new LinkedHashMap<>();
+        final Map<String, Class<? extends Entity>> classes = new HashMap<>();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 8 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                LOGGER.warn("invalid snapshot: {}", file);
+                return entries;
+            }
+            while (buffer.hasRemaining()) {
+                final String className = readString(buffer);
+                final String key = readString(buffer);
+                final int length = buffer.getInt();
+                final ByteBuffer bson = buffer.slice();
+                bson.limit(length);
+                buffer.position(buffer.position() + length);
+
+                final Class<? extends Entity> entityClass = resolve(classes, className);
+                final Entity entity = entityClass == null ? null : decode(entityClass, bson);
+                if (entity != null && entity.getId() != null) {
+                    List<SnapshotEntry> list = entries.get(entityClass);
+                    if (list == null) {
+                        list = new ArrayList<>();
+                        entries.put(entityClass, list);
+                    }
+                    list.add(new SnapshotEntry(key, entity));
+                }
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException ex) {
+            LOGGER.warn("truncated snapshot: {}", file);
+        }
+        return entries;
+    }
+
+    private Entity decode(Class<? extends Entity> entityClass, ByteBuffer bson) {
+        try {
+            return codec.decode(entityClass, bson);
+        } catch (RuntimeException ex) {
+            LOGGER.debug("decode entity failed: {}", ex.getMessage());
+            return null;
+        }
+    }
+
+    private <E extends Entity> void revalidate(Class<E> entityClass, List<SnapshotEntry> entries,
+                                               SnapshotRevalidator revalidator) {
+        final List<ObjectId> ids = new ArrayList<>(entries.size());
+        for (SnapshotEntry entry : entries) {
+            ids.add(entry.entity.getId());
+        }
+        final long generation = cacheManager.generation(entityClass);
+        final Map<ObjectId, Date> lastModified = revalidator.lastModified(entityClass, ids);
+        for (SnapshotEntry entry : entries) {
+            final ObjectId id = entry.entity.getId();
+            if (lastModified.containsKey(id) && Objects.equals(lastModified.get(id), entry.entity.getLastModified())) {
+                cacheManager.set(entry.key, entry.entity, generation);
+                restoredCount.incrementAndGet();
+            } else {
+                staleCount.incrementAndGet();
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Class<? extends Entity> resolve(Map<String, Class<? extends Entity>> classes, String className) {
+        if (!classes.containsKey(className)) {
+            Class<? extends Entity> entityClass = null;
+            try {
+                final Class<?> c = Class.forName(className, false, CacheSnapshot.class.getClassLoader());
+                if (Entity.class.isAssignableFrom(c)) {
+                    entityClass = (Class<? extends Entity>) c;
+                }
+            } catch (ClassNotFoundException ex) {
+                LOGGER.warn("ClassNotFoundException: {}", className);
+            }
+            classes.put(className, entityClass);
+        }
+        return classes.get(className);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 预热是否已完成.
+     *
+     * @return 预热是否已完成
+     */
+    public boolean isReady() {
+        return ready.getCount() == 0;
+    }
+
+    /**
+     * 等待预热完成.
+     *
+     * @param timeout 最长等待时间
+     * @param unit    时间单位
+     * @return 预热是否已完成
+     * @throws InterruptedException 等待时被中断
+     */
+    public boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException {
+        return ready.await(timeout, unit);
+    }
+
+    public long getRestoredCount() {
+        return restoredCount.get();
+    }
+
+    public long getStaleCount() {
+        return staleCount.get();
+    }
+
+    private static final class SnapshotEntry {
+        private final String key;
+        private final Entity entity;
+
+        private SnapshotEntry(String key, Entity entity) {
+            this.key = key;
+            this.entity = entity;
+        }
+    }
+}
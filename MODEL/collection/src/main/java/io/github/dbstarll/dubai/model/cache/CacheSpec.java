@@ -0,0 +1,131 @@
+package io.github.dbstarll.dubai.model.cache;
+
+import io.github.dbstarll.dubai.model.entity.Entity;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * 实体类缓存的配置.
+ */
+public final class CacheSpec {
+    private static final Weigher SINGLETON_WEIGHER = new Weigher() {
+        @Override
+        public int weigh(String key, Entity entity) {
+            return 1;
+        }
+    };
+
+    private final long maximumSize;
+    private final long maximumWeight;
+    private final Weigher weigher;
+    private final long expireAfterWriteMillis;
+    private final long negativeExpireAfterWriteMillis;
+    private final long refreshAheadMillis;
+
+    private CacheSpec(long maximumSize, long maximumWeight, Weigher weigher, long expireAfterWriteMillis,
+                      long negativeExpireAfterWriteMillis, long refreshAheadMillis) {
+        this.maximumSize = maximumSize;
+        this.maximumWeight = maximumWeight;
+        this.weigher = weigher;
+        this.expireAfterWriteMillis = expireAfterWriteMillis;
+        this.negativeExpireAfterWriteMillis = negativeExpireAfterWriteMillis;
+        this.refreshAheadMillis = refreshAheadMillis;
+    }
+
+    /**
+     * 创建指定最大条目数的缓存配置.
+     *
+     * @param maximumSize 最大条目数
+     * @return 缓存配置
+     */
+    public static CacheSpec maximumSize(long maximumSize) {
+        isTrue(maximumSize >= 0, "maximumSize must not be negative: %d", maximumSize);
+        return new CacheSpec(maximumSize, Long.MAX_VALUE, SINGLETON_WEIGHER, 0, 0, 0);
+    }
+
+    /**
+     * 设置最大权重.
+     *
+     * @param maximumWeight 最大权重
+     * @param weigher       计算条目权重的Weigher
+     * @return 新的缓存配置
+     */
+    public CacheSpec withMaximumWeight(long maximumWeight, Weigher weigher) {
+        isTrue(maximumWeight >= 0, "maximumWeight must not be negative: %d", maximumWeight);
+        return new CacheSpec(maximumSize, maximumWeight, notNull(weigher, "weigher is null"), expireAfterWriteMillis,
+                negativeExpireAfterWriteMillis, refreshAheadMillis);
+    }
+
+    /**
+     * 设置写入后的过期时间，0表示不过期.
+     *
+     * @param duration 时长
+     * @param unit     时长单位
+     * @return 新的缓存配置
+     */
+    public CacheSpec withExpireAfterWrite(long duration, TimeUnit unit) {
+        isTrue(duration >= 0, "duration must not be negative: %d", duration);
+        return new CacheSpec(maximumSize, maximumWeight, weigher, unit.toMillis(duration),
+                negativeExpireAfterWriteMillis, refreshAheadMillis);
+    }
+
+    /**
+     * 设置查询结果为空时的缓存时间，0表示不缓存空结果.
+     * 空结果会在同一实体类有新增或修改时全部失效.
+     *
+     * @param duration 时长
+     * @param unit     时长单位
+     * @return 新的缓存配置
+     */
+    public CacheSpec withNegativeExpireAfterWrite(long duration, TimeUnit unit) {
+        isTrue(duration >= 0, "duration must not be negative: %d", duration);
+        return new CacheSpec(maximumSize, maximumWeight, weigher, expireAfterWriteMillis, unit.toMillis(duration),
+                refreshAheadMillis);
+    }
+
+    /**
+     * 设置提前刷新的时间窗口，0表示不提前刷新.
+     * 条目在过期前的时间窗口内被访问时，在后台重新加载，调用者仍然得到当前的值.
+     * 需要同时设置写入后的过期时间，并且为缓存管理器配置执行刷新的Executor.
+     *
+     * @param duration 时长
+     * @param unit     时长单位
+     * @return 新的缓存配置
+     */
+    public CacheSpec withRefreshAhead(long duration, TimeUnit unit) {
+        isTrue(duration >= 0, "duration must not be negative: %d", duration);
+        return new CacheSpec(maximumSize, maximumWeight, weigher, expireAfterWriteMillis,
+                negativeExpireAfterWriteMillis, unit.toMillis(duration));
+    }
+
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    public long getMaximumWeight() {
+        return maximumWeight;
+    }
+
+    public Weigher getWeigher() {
+        return weigher;
+    }
+
+    public long getExpireAfterWriteMillis() {
+        return expireAfterWriteMillis;
+    }
+
+    public long getNegativeExpireAfterWriteMillis() {
+        return negativeExpireAfterWriteMillis;
+    }
+
+    public long getRefreshAheadMillis() {
+        return refreshAheadMillis;
+    }
+
+    public interface Weigher {
+        int weigh(String key, Entity entity);
+    }
+}
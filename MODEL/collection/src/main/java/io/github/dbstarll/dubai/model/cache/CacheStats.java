@@ -0,0 +1,85 @@
+package io.github.dbstarll.dubai.model.cache;
+
+/**
+ * 缓存的统计信息.
+ */
+public final class CacheStats {
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final long invalidationCount;
+    private final long size;
+    private final long weight;
+
+    /**
+     * 构造统计信息.
+     *
+     * @param hitCount          命中次数
+     * @param missCount         未命中次数
+     * @param evictionCount     因容量或过期被淘汰的条目数
+     * @param invalidationCount 因实体变更被失效的条目数
+     * @param size              当前条目数
+     * @param weight            当前总权重
+     */
+    public CacheStats(long hitCount, long missCount, long evictionCount, long invalidationCount, long size,
+                      long weight) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.invalidationCount = invalidationCount;
+        this.size = size;
+        this.weight = weight;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public long getInvalidationCount() {
+        return invalidationCount;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getWeight() {
+        return weight;
+    }
+
+    /**
+     * 计算命中率.
+     *
+     * @return 命中率，没有请求时返回1
+     */
+    public double hitRate() {
+        final long requestCount = hitCount + missCount;
+        return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+    }
+
+    /**
+     * 合并两个统计信息.
+     *
+     * @param other 另一个统计信息
+     * @return 合并后的统计信息
+     */
+    public CacheStats plus(CacheStats other) {
+        return new CacheStats(hitCount + other.hitCount, missCount + other.missCount,
+                evictionCount + other.evictionCount, invalidationCount + other.invalidationCount,
+                size + other.size, weight + other.weight);
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats[hitCount=" + hitCount + ", missCount=" + missCount + ", evictionCount=" + evictionCount
+                + ", invalidationCount=" + invalidationCount + ", size=" + size + ", weight=" + weight + "]";
+    }
+}
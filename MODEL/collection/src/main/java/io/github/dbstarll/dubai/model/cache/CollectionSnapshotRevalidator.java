@@ -0,0 +1,46 @@
+package io.github.dbstarll.dubai.model.cache;
+
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import io.github.dbstarll.dubai.model.collection.Collection;
+import io.github.dbstarll.dubai.model.entity.Entity;
+import org.bson.types.ObjectId;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 通过Collection查询实体最后修改时间的SnapshotRevalidator.
+ * 查询经过Collection的包装，因此已标记为失效（defunct）的实体不会通过校验.
+ */
+public final class CollectionSnapshotRevalidator implements SnapshotRevalidator {
+    private final ConcurrentMap<Class<?>, Collection<?>> collections = new ConcurrentHashMap<>();
+
+    /**
+     * 注册实体类对应的Collection.
+     *
+     * @param collection Collection
+     */
+    public void register(Collection<? extends Entity> collection) {
+        collections.put(collection.getEntityClass(), collection);
+    }
+
+    @Override
+    public <E extends Entity> Map<ObjectId, Date> lastModified(Class<E> entityClass,
+                                                               java.util.Collection<ObjectId> ids) {
+        @SuppressWarnings("unchecked") final Collection<E> collection = (Collection<E>) collections.get(entityClass);
+        if (collection == null) {
+            return Collections.emptyMap();
+        }
+        final Map<ObjectId, Date> lastModified = new HashMap<>();
+        for (E entity : collection.find(Filters.in(Entity.FIELD_NAME_ID, ids))
+                .projection(Projections.include(Entity.FIELD_NAME_LAST_MODIFIED))) {
+            lastModified.put(entity.getId(), entity.getLastModified());
+        }
+        return lastModified;
+    }
+}
@@ -0,0 +1,206 @@
+package io.github.dbstarll.dubai.model.cache;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.UpdateOptions;
+import io.github.dbstarll.dubai.model.entity.Entity;
+import io.github.dbstarll.dubai.model.entity.EntityFactory;
+import io.github.dbstarll.dubai.model.entity.func.Defunctable;
+import io.github.dbstarll.dubai.model.entity.func.Notifiable;
+import io.github.dbstarll.dubai.model.entity.join.CompanyBase;
+import io.github.dbstarll.dubai.model.notify.NotifyProvider;
+import io.github.dbstarll.dubai.model.notify.NotifyType;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Updates.combine;
+import static com.mongodb.client.model.Updates.inc;
+import static com.mongodb.client.model.Updates.set;
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * 在独立的集合中保存每个实体类在每个公司下的实体数量，代替每次都在实体集合上执行countDocuments.
+ * <ul>
+ * <li>只统计通过{@link #enable(Class)}启用的实体类，实体类必须是CompanyBase并且是Notifiable，
+ * CollectionFactory在创建Collection时启用</li>
+ * <li>通过{@link #decorate(NotifyProvider)}包装Collection的NotifyProvider，在新增和删除（包括置为失效）实体时增量更新计数</li>
+ * <li>修改实体的companyId或者失效状态时，由CompanyCountingCollection调用{@link #move}在两个公司之间转移计数</li>
+ * <li>计数不存在或者距上次校准超过校准间隔时，以实际的count结果校准</li>
+ * </ul>
+ * upsert插入的实体等无法判断的变化，以及未配置计数存储的节点上发生的变更，都由下一次校准修正，计数的误差不超过一个校准间隔.
+ */
+public class CompanyCounterStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CompanyCounterStore.class);
+
+    /**
+     * 缺省的计数集合名.
+     */
+    public static final String DEFAULT_COLLECTION_NAME = "companyCounters";
+
+    private static final String FIELD_NAME_ID = "_id";
+    private static final String FIELD_NAME_COUNT = "count";
+    private static final String FIELD_NAME_RECONCILED = "reconciled";
+    private static final long DEFAULT_RECONCILE_INTERVAL = TimeUnit.MINUTES.toMillis(10);
+
+    private final MongoCollection<Document> counters;
+    private final Set<Class<?>> enabled = ConcurrentHashMap.newKeySet();
+    private volatile long reconcileInterval = DEFAULT_RECONCILE_INTERVAL;
+
+    public CompanyCounterStore(MongoDatabase mongoDatabase) {
+        this(mongoDatabase, DEFAULT_COLLECTION_NAME);
+    }
+
+    /**
+     * 构造CompanyCounterStore.
+     *
+     * @param mongoDatabase  MongoDatabase
+     * @param collectionName 保存计数的集合名
+     */
+    public CompanyCounterStore(MongoDatabase mongoDatabase, String collectionName) {
+        this.counters = notNull(mongoDatabase, "mongoDatabase is null").getCollection(
+                notNull(collectionName, "collectionName is null"));
+    }
+
+    /**
+     * 设置校准间隔，缺省为10分钟.
+     *
+     * @param interval 校准间隔
+     * @param unit     时间单位
+     */
+    public void setReconcileInterval(long interval, TimeUnit unit) {
+        isTrue(interval > 0, "interval must be positive: %d", interval);
+        this.reconcileInterval = notNull(unit, "unit is null").toMillis(interval);
+    }
+
+    /**
+     * 启用指定实体类的计数.
+     *
+     * @param entityClass 实现了CompanyBase和Notifiable的实体类
+     */
+    public void enable(Class<? extends Entity> entityClass) {
+        notNull(entityClass, "entityClass is null");
+        isTrue(CompanyBase.class.isAssignableFrom(entityClass), "not CompanyBase: %s", entityClass.getName());
+        isTrue(Notifiable.class.isAssignableFrom(entityClass), "not Notifiable: %s", entityClass.getName());
+        if (enabled.add(entityClass)) {
+            LOGGER.info("enable: {}", entityClass.getName());
+        }
+    }
+
+    public boolean isEnabled(Class<?> entityClass) {
+        return enabled.contains(entityClass);
+    }
+
+    /**
+     * 获得实体类在公司下的实体数量，计数不存在或者需要校准时调用counter获得实际数量并保存.
+     *
+     * @param entityClass 实体类
+     * @param companyId   公司ID
+     * @param counter     获得实际数量
+     * @return 实体数量
+     */
+    public long count(Class<?> entityClass, ObjectId companyId, LongSupplier counter) {
+        final String key = key(entityClass, companyId);
+        final Document document = counters.find(eq(FIELD_NAME_ID, key)).first();
+        if (document != null) {
+            final Date reconciled = document.getDate(FIELD_NAME_RECONCILED);
+            final Object count = document.get(FIELD_NAME_COUNT);
+            if (reconciled != null && count instanceof Number
+                    && System.currentTimeMillis() - reconciled.getTime() < reconcileInterval) {
+                return Math.max(0, ((Number) count).longValue());
+            }
+        }
+        return reconcile(key, counter.getAsLong());
+    }
+
+    private long reconcile(String key, long count) {
+        counters.updateOne(eq(FIELD_NAME_ID, key),
+                combine(set(FIELD_NAME_COUNT, count), set(FIELD_NAME_RECONCILED, new Date())),
+                new UpdateOptions().upsert(true));
+        return count;
+    }
+
+    /**
+     * 使实体类在公司下的计数失效，下一次读取时重新校准.
+     *
+     * @param entityClass 实体类
+     * @param companyId   公司ID
+     */
+    public void invalidate(Class<?> entityClass, ObjectId companyId) {
+        counters.deleteOne(eq(FIELD_NAME_ID, key(entityClass, companyId)));
+    }
+
+    /**
+     * 包装NotifyProvider，在发送通知之后增量更新计数.
+     *
+     * @param notifyProvider 被包装的NotifyProvider，为null时只更新计数
+     * @return 包装后的NotifyProvider
+     */
+    public NotifyProvider decorate(final NotifyProvider notifyProvider) {
+        return new NotifyProvider() {
+            @Override
+            public <E extends Entity> void doNotify(E e, NotifyType notifyType) {
+                if (notifyProvider != null) {
+                    notifyProvider.doNotify(e, notifyType);
+                }
+                update(e, notifyType);
+            }
+        };
+    }
+
+    /**
+     * 根据变更通知增量更新计数. 失效的实体不计数，置为失效的通知类型为delete，携带的是置为失效之前的实体.
+     * 计数不存在时不创建，由读取时校准.
+     */
+    private void update(Entity e, NotifyType notifyType) {
+        if (e == null || NotifyType.update == notifyType || !(e instanceof CompanyBase)) {
+            return;
+        }
+        final ObjectId companyId = ((CompanyBase) e).getCompanyId();
+        final Class<?> entityClass = EntityFactory.getEntityClass(e);
+        if (companyId == null || !isEnabled(entityClass) || e instanceof Defunctable && ((Defunctable) e).isDefunct()) {
+            return;
+        }
+        increment(entityClass, companyId, NotifyType.insert == notifyType ? 1L : -1L);
+    }
+
+    /**
+     * 将一个实体的计数从一个公司转移到另一个公司.
+     *
+     * @param entityClass 实体类
+     * @param from        原来计入的公司ID，为null时表示原来不计数（例如已失效）
+     * @param to          现在计入的公司ID，为null时表示现在不计数
+     */
+    public void move(Class<?> entityClass, ObjectId from, ObjectId to) {
+        if (isEnabled(entityClass) && (from == null ? to != null : !from.equals(to))) {
+            if (from != null) {
+                increment(entityClass, from, -1L);
+            }
+            if (to != null) {
+                increment(entityClass, to, 1L);
+            }
+        }
+    }
+
+    private void increment(Class<?> entityClass, ObjectId companyId, long delta) {
+        try {
+            counters.updateOne(eq(FIELD_NAME_ID, key(entityClass, companyId)), inc(FIELD_NAME_COUNT, delta));
+        } catch (MongoException ex) {
+            LOGGER.warn("update counter failed: " + entityClass.getName() + "@" + companyId, ex);
+        }
+    }
+
+    private static String key(Class<?> entityClass, ObjectId companyId) {
+        return entityClass.getName() + '/' + companyId.toHexString();
+    }
+}
@@ -0,0 +1,42 @@
+package io.github.dbstarll.dubai.model.cache;
+
+import io.github.dbstarll.dubai.model.entity.Entity;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.Encoder;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.io.BasicOutputBuffer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 使用CodecRegistry在实体与BSON字节之间转换.
+ */
+final class EntityBsonCodec {
+    private static final EncoderContext ENCODER_CONTEXT = EncoderContext.builder()
+            .isEncodingCollectibleDocument(true).build();
+    private static final DecoderContext DECODER_CONTEXT = DecoderContext.builder().build();
+
+    private final CodecRegistry codecRegistry;
+
+    EntityBsonCodec(CodecRegistry codecRegistry) {
+        this.codecRegistry = codecRegistry;
+    }
+
+    <E extends Entity> byte[] encode(E entity) {
+        @SuppressWarnings("unchecked") final Encoder<E> encoder = (Encoder<E>) codecRegistry.get(entity.getClass());
+        final BasicOutputBuffer buffer = new BasicOutputBuffer();
+        try (BsonBinaryWriter writer = new BsonBinaryWriter(buffer)) {
+            encoder.encode(writer, entity, ENCODER_CONTEXT);
+        }
+        return buffer.toByteArray();
+    }
+
+    <E extends Entity> E decode(Class<E> entityClass, ByteBuffer buffer) {
+        try (BsonBinaryReader reader = new BsonBinaryReader(buffer)) {
+            return codecRegistry.get(entityClass).decode(reader, DECODER_CONTEXT);
+        }
+    }
+}
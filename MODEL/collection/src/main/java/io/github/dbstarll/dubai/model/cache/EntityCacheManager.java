@@ -7,11 +7,53 @@ import org.bson.types.ObjectId;
 public interface EntityCacheManager {
     <E extends Entity> E find(Class<E> entityClass, String key, UpdateCacheHandler<E> updateCacheHandler);
 
+    /**
+     * 只从缓存中读取实体，未命中时不加载，用于批量查询前先取出已缓存的实体. 缺省实现总是返回null.
+     *
+     * @param entityClass 实体类
+     * @param key         缓存key
+     * @param <E>         实体类
+     * @return 缓存的实体，未缓存、已过期或者缓存的是空结果时返回null
+     */
+    default <E extends Entity> E get(Class<E> entityClass, String key) {
+        return null;
+    }
+
     <E extends Entity> void update(Class<E> entityClass, ObjectId entityId, NotifyType notifyType);
 
     <E extends Entity> void set(String key, E entity);
 
+    /**
+     * 获得实体类缓存当前的失效代数，加载实体之前获取，配合{@link #set(String, Entity, long)}使用.
+     *
+     * @param entityClass 实体类
+     * @param <E>         实体类
+     * @return 失效代数，不支持时返回-1
+     */
+    default <E extends Entity> long generation(Class<E> entityClass) {
+        return -1;
+    }
+
+    /**
+     * 加入缓存条目，如果自获得失效代数以来实体类的缓存发生过失效则放弃写入，避免加载期间的变更被旧的实体覆盖.
+     *
+     * @param key        缓存key
+     * @param entity     实体
+     * @param generation 加载之前通过{@link #generation(Class)}获得的失效代数，-1表示不检查
+     * @param <E>        实体类
+     */
+    default <E extends Entity> void set(String key, E entity, long generation) {
+        set(key, entity);
+    }
+
     interface UpdateCacheHandler<E extends Entity> {
+        /**
+         * 加载缓存key对应的实体.
+         * 支持提前刷新的实现可能在后台线程中调用本方法，因此实现不能依赖调用线程的上下文.
+         *
+         * @param key 缓存key
+         * @return 实体，不存在时返回null
+         */
         E updateCache(String key);
     }
 }
\ No newline at end of file
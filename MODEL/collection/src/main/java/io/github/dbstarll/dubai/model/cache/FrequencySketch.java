@@ -0,0 +1,66 @@
+package io.github.dbstarll.dubai.model.cache;
+
+/**
+ * 记录访问频率的Count-Min Sketch，计数上限为15，累计次数达到采样大小后所有计数减半，使频率随时间衰减.
+ * 非线程安全.
+ */
+final class FrequencySketch {
+    private static final int DEPTH = 4;
+    private static final int MAX_COUNT = 15;
+    private static final int MIN_WIDTH = 256;
+    private static final int MAX_WIDTH = 1 << 20;
+    private static final int[] SEEDS = {0x97cb3127, 0xbc9b3a21, 0x4a8c3b15, 0x6d2ab6a5};
+
+    private final byte[][] table;
+    private final int mask;
+    private final long sampleSize;
+    private long additions;
+
+    FrequencySketch(long maximumSize) {
+        final int width = ceilingPowerOfTwo((int) Math.max(MIN_WIDTH, Math.min(maximumSize * 16, MAX_WIDTH)));
+        this.table = new byte[DEPTH][width];
+        this.mask = width - 1;
+        this.sampleSize = 10L * width;
+    }
+
+    void increment(int hash) {
+        boolean added = false;
+        for (int i = 0; i < DEPTH; i++) {
+            final int index = index(hash, i);
+            if (table[i][index] < MAX_COUNT) {
+                table[i][index]++;
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    int frequency(int hash) {
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < DEPTH; i++) {
+            frequency = Math.min(frequency, table[i][index(hash, i)]);
+        }
+        return frequency;
+    }
+
+    private void reset() {
+        for (byte[] row : table) {
+            for (int i = 0; i < row.length; i++) {
+                row[i] = (byte) (row[i] >>> 1);
+            }
+        }
+        additions >>>= 1;
+    }
+
+    private int index(int hash, int i) {
+        int h = (hash ^ SEEDS[i]) * 0x9e3779b9;
+        h ^= h >>> 16;
+        return h & mask;
+    }
+
+    private static int ceilingPowerOfTwo(int x) {
+        return x <= 1 ? 1 : Integer.highestOneBit(x - 1) << 1;
+    }
+}
@@ -0,0 +1,211 @@
+package io.github.dbstarll.dubai.model.cache;
+
+import io.github.dbstarll.dubai.model.entity.Entity;
+import io.github.dbstarll.dubai.model.entity.EntityFactory;
+import io.github.dbstarll.dubai.model.notify.NotifyType;
+import io.github.dbstarll.dubai.model.notify.TimedEntityNotifyListener;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * 两级缓存：进程内的一级缓存在前，多个节点共享的二级缓存在后.
+ * <ul>
+ * <li>一级缓存未命中时先读二级缓存，二级缓存也未命中时才加载实体并写入二级缓存</li>
+ * <li>直接调用{@link #update}时只失效本地的两级缓存，通知其他节点由NotifiableCollection负责</li>
+ * <li>注册为EntityNotifyListener后，接收到的变更通知只失效本地的两级缓存，并统计从发送到失效的延迟</li>
+ * </ul>
+ */
+public class LayeredEntityCacheManager implements EntityCacheManager, TimedEntityNotifyListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LayeredEntityCacheManager.class);
+
+    private final EntityBsonCodec codec;
+    private final SharedCacheStore sharedCacheStore;
+    private EntityCacheManager localCacheManager = new LocalEntityCacheManager();
+
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong sharedHitCount = new AtomicLong();
+    private final AtomicLong sharedMissCount = new AtomicLong();
+    private final AtomicLong invalidationCount = new AtomicLong();
+    private final AtomicLong timedInvalidationCount = new AtomicLong();
+    private final AtomicLong invalidationLatencyTotal = new AtomicLong();
+    private final AtomicLong invalidationLatencyMax = new AtomicLong();
+
+    /**
+     * 构造LayeredEntityCacheManager.
+     *
+     * @param codecRegistry    编解码实体使用的CodecRegistry，通常与MongoClient使用的相同
+     * @param sharedCacheStore 二级缓存
+     */
+    public LayeredEntityCacheManager(CodecRegistry codecRegistry, SharedCacheStore sharedCacheStore) {
+        this.codec = new EntityBsonCodec(notNull(codecRegistry, "codecRegistry is null"));
+        this.sharedCacheStore = notNull(sharedCacheStore, "sharedCacheStore is null");
+    }
+
+    public void setLocalCacheManager(EntityCacheManager localCacheManager) {
+        this.localCacheManager = notNull(localCacheManager, "localCacheManager is null");
+    }
+
+    @Override
+    public <E extends Entity> E find(final Class<E> entityClass, String key,
+                                     final UpdateCacheHandler<E> updateCacheHandler) {
+        return localCacheManager.find(entityClass, key, new UpdateCacheHandler<E>() {
+            @Override
+            public E updateCache(String key) {
+                final String sharedKey = sharedKey(entityClass, key);
+                final E shared = getShared(entityClass, sharedKey);
+                if (shared != null) {
+                    sharedHitCount.incrementAndGet();
+                    return shared;
+                }
+
+                sharedMissCount.incrementAndGet();
+                final long loadGeneration = generation.get();
+                final E loaded = updateCacheHandler.updateCache(key);
+                if (loaded != null && loadGeneration == generation.get()) {
+                    putShared(sharedKey, loaded);
+                }
+                return loaded;
+            }
+        });
+    }
+
+    /**
+     * 依次读取一级缓存和二级缓存，二级缓存命中时同时放入一级缓存.
+     */
+    @Override
+    public <E extends Entity> E get(Class<E> entityClass, String key) {
+        final E local = localCacheManager.get(entityClass, key);
+        if (local != null) {
+            return local;
+        }
+        final E shared = getShared(entityClass, sharedKey(entityClass, key));
+        if (shared != null) {
+            sharedHitCount.incrementAndGet();
+            localCacheManager.set(key, shared);
+        } else {
+            sharedMissCount.incrementAndGet();
+        }
+        return shared;
+    }
+
+    @Override
+    public <E extends Entity> void update(Class<E> entityClass, ObjectId entityId, NotifyType notifyType) {
+        invalidate(entityClass, entityId, notifyType);
+    }
+
+    @Override
+    public <E extends Entity> void set(String key, E entity) {
+        localCacheManager.set(key, entity);
+        if (entity != null) {
+            putShared(sharedKey(EntityFactory.getEntityClass(entity), key), entity);
+        }
+    }
+
+    @Override
+    public <E extends Entity> long generation(Class<E> entityClass) {
+        return generation.get();
+    }
+
+    /**
+     * 先获取一级缓存的失效代数再检查本缓存的失效代数，失效时本缓存的代数先于一级缓存递增，
+     * 因此两次检查之间发生的失效会使一级缓存放弃写入.
+     */
+    @Override
+    public <E extends Entity> void set(String key, E entity, long generation) {
+        if (entity == null) {
+            return;
+        }
+        final long localGeneration = generation < 0 ? -1
+                : localCacheManager.generation(EntityFactory.getEntityClass(entity));
+        if (generation >= 0 && generation != this.generation.get()) {
+            return;
+        }
+        localCacheManager.set(key, entity, localGeneration);
+        putShared(sharedKey(EntityFactory.getEntityClass(entity), key), entity);
+    }
+
+    @Override
+    public <E extends Entity> void onNotify(Class<E> entityClass, ObjectId id, NotifyType notifyType,
+                                            ObjectId companyId, String clientId) {
+        invalidate(entityClass, id, notifyType);
+    }
+
+    @Override
+    public <E extends Entity> void onNotify(Class<E> entityClass, ObjectId id, NotifyType notifyType,
+                                            ObjectId companyId, String clientId, long timestamp) {
+        invalidate(entityClass, id, notifyType);
+        final long latency = Math.max(0, System.currentTimeMillis() - timestamp);
+        timedInvalidationCount.incrementAndGet();
+        invalidationLatencyTotal.addAndGet(latency);
+        long max = invalidationLatencyMax.get();
+        while (latency > max && !invalidationLatencyMax.compareAndSet(max, latency)) {
+            max = invalidationLatencyMax.get();
+        }
+    }
+
+    private <E extends Entity> void invalidate(Class<E> entityClass, ObjectId entityId, NotifyType notifyType) {
+        if (entityId != null) {
+            generation.incrementAndGet();
+            localCacheManager.update(entityClass, entityId, notifyType);
+            sharedCacheStore.invalidate(entityId);
+            invalidationCount.incrementAndGet();
+        }
+    }
+
+    private <E extends Entity> E getShared(Class<E> entityClass, String sharedKey) {
+        try {
+            final byte[] bytes = sharedCacheStore.get(sharedKey);
+            return bytes == null ? null : codec.decode(entityClass, ByteBuffer.wrap(bytes));
+        } catch (RuntimeException ex) {
+            LOGGER.warn("read shared cache failed: {}", ex.getMessage());
+            return null;
+        }
+    }
+
+    private <E extends Entity> void putShared(String sharedKey, E entity) {
+        if (entity.getId() != null) {
+            try {
+                sharedCacheStore.put(sharedKey, entity.getId(), codec.encode(entity));
+            } catch (RuntimeException ex) {
+                LOGGER.warn("write shared cache failed: {}", ex.getMessage());
+            }
+        }
+    }
+
+    private static String sharedKey(Class<?> entityClass, String key) {
+        return entityClass.getName() + ':' + key;
+    }
+
+    public long getSharedHitCount() {
+        return sharedHitCount.get();
+    }
+
+    public long getSharedMissCount() {
+        return sharedMissCount.get();
+    }
+
+    public long getInvalidationCount() {
+        return invalidationCount.get();
+    }
+
+    /**
+     * 获得从其他节点发送变更通知到本节点完成失效的平均延迟.
+     *
+     * @return 平均延迟的毫秒数，没有带时间戳的通知时返回0
+     */
+    public double getInvalidationLatencyAvg() {
+        final long count = timedInvalidationCount.get();
+        return count == 0 ? 0 : (double) invalidationLatencyTotal.get() / count;
+    }
+
+    public long getInvalidationLatencyMax() {
+        return invalidationLatencyMax.get();
+    }
+}
@@ -0,0 +1,620 @@
+package io.github.dbstarll.dubai.model.cache;
+
+import io.github.dbstarll.dubai.model.entity.Entity;
+import io.github.dbstarll.dubai.model.entity.EntityFactory;
+import io.github.dbstarll.dubai.model.notify.EntityNotifyListener;
+import io.github.dbstarll.dubai.model.notify.NotifyType;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * 进程内的EntityCacheManager实现.
+ * <ul>
+ * <li>每个实体类一个独立的缓存区，可分别配置最大条目数、最大权重和过期时间</li>
+ * <li>采用W-TinyLFU淘汰策略：新条目先进入容量为1%的窗口区，离开窗口时与主区中最久未访问的条目比较访问频率，频率高者留下</li>
+ * <li>维护实体ID到缓存key的反向索引，实体变更时只失效与该实体相关的条目</li>
+ * <li>可选缓存空结果，同一实体类有新增或修改时失效所有空结果</li>
+ * <li>条目过期后只有一个调用者重新加载，加载期间其他调用者得到过期前的值</li>
+ * <li>命中时不加锁，访问频率和LRU顺序在写入或访问积累到一定数量时批量更新</li>
+ * <li>可选提前刷新，条目在过期前的时间窗口内被访问时在后台重新加载，调用者不会因加载而阻塞</li>
+ * </ul>
+ * 可以注册为{@link io.github.dbstarll.dubai.model.notify.EntityNotifyConsumer}的监听器，以接收其他节点的实体变更通知.
+ */
+public class LocalEntityCacheManager implements EntityCacheManager, EntityNotifyListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LocalEntityCacheManager.class);
+
+    private static final long DEFAULT_MAXIMUM_SIZE = 10000;
+
+    private final ConcurrentMap<Class<?>, CacheSpec> specs = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Class<?>, Region> regions = new ConcurrentHashMap<>();
+    private CacheSpec defaultSpec = CacheSpec.maximumSize(DEFAULT_MAXIMUM_SIZE);
+    private volatile Executor refreshExecutor;
+
+    /**
+     * 设置缺省的缓存配置，只对尚未创建缓存区的实体类生效.
+     *
+     * @param defaultSpec 缺省的缓存配置
+     */
+    public void setDefaultSpec(CacheSpec defaultSpec) {
+        this.defaultSpec = notNull(defaultSpec, "defaultSpec is null");
+    }
+
+    /**
+     * 设置指定实体类的缓存配置，只对尚未创建缓存区的实体类生效.
+     *
+     * @param entityClass 实体类
+     * @param spec        缓存配置
+     */
+    public void setSpec(Class<? extends Entity> entityClass, CacheSpec spec) {
+        specs.put(notNull(entityClass, "entityClass is null"), notNull(spec, "spec is null"));
+    }
+
+    /**
+     * 设置执行提前刷新的Executor，未设置时不提前刷新.
+     *
+     * @param refreshExecutor 执行提前刷新的Executor
+     */
+    public void setRefreshExecutor(Executor refreshExecutor) {
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    @Override
+    public <E extends Entity> E find(Class<E> entityClass, String key, UpdateCacheHandler<E> updateCacheHandler) {
+        final Region region = region(entityClass);
+        final long now = System.currentTimeMillis();
+        final Node cached = region.get(key, now);
+        if (cached != null) {
+            final Executor executor = refreshExecutor;
+            if (executor != null && region.claimRefresh(cached, now)) {
+                refresh(executor, region, key, cached, updateCacheHandler);
+            }
+            return entityClass.cast(cached.entity);
+        }
+
+        final long generation = region.generation();
+        final E loaded;
+        try {
+            loaded = updateCacheHandler.updateCache(key);
+        } catch (RuntimeException | Error ex) {
+            region.loadFailed(key);
+            throw ex;
+        }
+        region.put(key, loaded, System.currentTimeMillis(), generation);
+        return loaded;
+    }
+
+    @Override
+    public <E extends Entity> E get(Class<E> entityClass, String key) {
+        final Node cached = region(entityClass).peek(key, System.currentTimeMillis());
+        return cached == null ? null : entityClass.cast(cached.entity);
+    }
+
+    private <E extends Entity> void refresh(Executor executor, final Region region, final String key,
+                                            final Node node, final UpdateCacheHandler<E> updateCacheHandler) {
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    final long generation = region.generation();
+                    try {
+                        region.put(key, updateCacheHandler.updateCache(key), System.currentTimeMillis(), generation);
+                    } catch (Throwable ex) {
+                        region.refreshFailed(node);
+                        LOGGER.warn("refresh cache failed: " + key, ex);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            region.refreshFailed(node);
+            LOGGER.warn("refresh cache rejected: {}", key);
+        }
+    }
+
+    @Override
+    public <E extends Entity> void update(Class<E> entityClass, ObjectId entityId, NotifyType notifyType) {
+        final Region region = regions.get(entityClass);
+        if (region != null) {
+            region.invalidate(entityId, notifyType);
+        }
+    }
+
+    @Override
+    public <E extends Entity> void set(String key, E entity) {
+        if (entity != null) {
+            region(EntityFactory.getEntityClass(entity)).put(key, entity, System.currentTimeMillis(), -1);
+        }
+    }
+
+    @Override
+    public <E extends Entity> void onNotify(Class<E> entityClass, ObjectId id, NotifyType notifyType,
+                                            ObjectId companyId, String clientId) {
+        update(entityClass, id, notifyType);
+    }
+
+    @Override
+    public <E extends Entity> long generation(Class<E> entityClass) {
+        return region(entityClass).generation();
+    }
+
+    @Override
+    public <E extends Entity> void set(String key, E entity, long generation) {
+        if (entity != null) {
+            region(EntityFactory.getEntityClass(entity)).put(key, entity, System.currentTimeMillis(), generation);
+        }
+    }
+
+    /**
+     * 遍历所有未过期的缓存条目.
+     *
+     * @param visitor 条目的访问者
+     */
+    void forEachEntry(EntryVisitor visitor) {
+        final long now = System.currentTimeMillis();
+        for (Entry<Class<?>, Region> entry : regions.entrySet()) {
+            for (Node node : entry.getValue().nodes(now)) {
+                visitor.visit(entry.getKey(), node.key, node.entity);
+            }
+        }
+    }
+
+    /**
+     * 清空指定实体类的缓存.
+     *
+     * @param entityClass 实体类
+     */
+    public void invalidateAll(Class<? extends Entity> entityClass) {
+        final Region region = regions.get(entityClass);
+        if (region != null) {
+            region.clear();
+        }
+    }
+
+    /**
+     * 获得指定实体类的缓存统计.
+     *
+     * @param entityClass 实体类
+     * @return 缓存统计
+     */
+    public CacheStats stats(Class<? extends Entity> entityClass) {
+        final Region region = regions.get(entityClass);
+        return region == null ? new CacheStats(0, 0, 0, 0, 0, 0) : region.stats();
+    }
+
+    /**
+     * 获得所有实体类的缓存统计.
+     *
+     * @return 缓存统计
+     */
+    public CacheStats stats() {
+        CacheStats stats = new CacheStats(0, 0, 0, 0, 0, 0);
+        for (Region region : regions.values()) {
+            stats = stats.plus(region.stats());
+        }
+        return stats;
+    }
+
+    private Region region(Class<?> entityClass) {
+        Region region = regions.get(entityClass);
+        if (region == null) {
+            final CacheSpec spec = specs.get(entityClass);
+            final Region created = new Region(spec != null ? spec : defaultSpec);
+            region = regions.putIfAbsent(entityClass, created);
+            if (region == null) {
+                region = created;
+                LOGGER.debug("create cache region for {}: maximumSize={}", entityClass.getName(),
+                        created.spec.getMaximumSize());
+            }
+        }
+        return region;
+    }
+
+    interface EntryVisitor {
+        void visit(Class<?> entityClass, String key, Entity entity);
+    }
+
+    private static final class Node {
+        private final String key;
+        private final Entity entity;
+        private final ObjectId id;
+        private final int weight;
+        private final long expireAt;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        private Node(String key, Entity entity, int weight, long expireAt) {
+            this.key = key;
+            this.entity = entity;
+            this.id = entity == null ? null : entity.getId();
+            this.weight = weight;
+            this.expireAt = expireAt;
+        }
+
+        private boolean isExpired(long now) {
+            return expireAt > 0 && now >= expireAt;
+        }
+    }
+
+    /**
+     * 单个实体类的缓存区.
+     * 查找只读取ConcurrentHashMap，不加锁；访问记录先写入缓冲区，在缓冲区积累到一定数量或者写入缓存时，
+     * 在锁内批量更新访问频率和LRU顺序. 缓冲区已满时丢弃访问记录，只影响淘汰的精确度.
+     */
+    private static final class Region {
+        private static final int READ_BUFFER_SIZE = 256;
+        private static final int READ_DRAIN_THRESHOLD = 64;
+
+        private final CacheSpec spec;
+        private final FrequencySketch sketch;
+        private final long windowSize;
+        private final long mainSize;
+        private final ConcurrentMap<String, Node> data = new ConcurrentHashMap<>();
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Queue<String> reads = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pendingReads = new AtomicInteger();
+        private final LinkedHashMap<String, Node> window = new LinkedHashMap<>(16, 0.75f, true);
+        private final LinkedHashMap<String, Node> main = new LinkedHashMap<>(16, 0.75f, true);
+        private final Map<ObjectId, Set<String>> keysById = new HashMap<>();
+        private final Set<String> negativeKeys = new HashSet<>();
+
+        private long weight;
+        private volatile long generation;
+
+        private final LongAdder hitCount = new LongAdder();
+        private final LongAdder missCount = new LongAdder();
+        private long evictionCount;
+        private long invalidationCount;
+
+        private Region(CacheSpec spec) {
+            this.spec = spec;
+            this.sketch = new FrequencySketch(spec.getMaximumSize());
+            this.windowSize = Math.min(spec.getMaximumSize(), Math.max(1, spec.getMaximumSize() / 100));
+            this.mainSize = spec.getMaximumSize() - windowSize;
+        }
+
+        private long generation() {
+            return generation;
+        }
+
+        /**
+         * 查找缓存条目.
+         * 条目已过期时，第一个调用者得到null并负责重新加载，加载完成前其他调用者得到过期的条目.
+         *
+         * @param key 缓存key
+         * @param now 当前时间
+         * @return 缓存条目，条目的entity为null表示缓存的空结果；返回null表示需要加载
+         */
+        private Node get(String key, long now) {
+            final Node node = data.get(key);
+            recordRead(key);
+            if (node == null || node.isExpired(now) && node.refreshing.compareAndSet(false, true)) {
+                missCount.increment();
+                return null;
+            }
+            hitCount.increment();
+            return node;
+        }
+
+        /**
+         * 读取未过期的缓存条目，不标记重新加载.
+         *
+         * @param key 缓存key
+         * @param now 当前时间
+         * @return 缓存条目，不存在或已过期时返回null
+         */
+        private Node peek(String key, long now) {
+            final Node node = data.get(key);
+            recordRead(key);
+            if (node == null || node.isExpired(now)) {
+                missCount.increment();
+                return null;
+            }
+            hitCount.increment();
+            return node;
+        }
+
+        /**
+         * 判断命中的条目是否需要提前刷新，需要时标记为刷新中，保证同一条目只有一个刷新任务.
+         *
+         * @param node 命中的条目
+         * @param now  当前时间
+         * @return 调用者是否需要发起刷新
+         */
+        private boolean claimRefresh(Node node, long now) {
+            final long refreshAhead = spec.getRefreshAheadMillis();
+            if (refreshAhead <= 0 || node.entity == null || node.expireAt <= 0 || now < node.expireAt - refreshAhead
+                    || data.get(node.key) != node) {
+                return false;
+            }
+            return node.refreshing.compareAndSet(false, true);
+        }
+
+        /**
+         * 提前刷新失败时清除刷新标记，条目在过期前被访问时可以再次刷新.
+         *
+         * @param node 刷新的条目
+         */
+        private void refreshFailed(Node node) {
+            node.refreshing.set(false);
+        }
+
+        private void loadFailed(String key) {
+            lock.lock();
+            try {
+                final Node node = lookup(key);
+                if (node != null && node.refreshing.get()) {
+                    remove(node);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * 记录一次访问，缓冲区积累到一定数量时尝试批量处理，锁被占用时留给持有锁的线程处理.
+         */
+        private void recordRead(String key) {
+            if (pendingReads.get() < READ_BUFFER_SIZE) {
+                reads.offer(key);
+                if (pendingReads.incrementAndGet() < READ_DRAIN_THRESHOLD) {
+                    return;
+                }
+            }
+            if (lock.tryLock()) {
+                try {
+                    drainReads();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        /**
+         * 在锁内处理缓冲区中的访问记录，更新访问频率和LRU顺序.
+         */
+        private void drainReads() {
+            String key;
+            while ((key = reads.poll()) != null) {
+                pendingReads.decrementAndGet();
+                sketch.increment(key.hashCode());
+                lookup(key);
+            }
+        }
+
+        /**
+         * 加入缓存条目，同时移除key对应的旧条目.
+         *
+         * @param key        缓存key
+         * @param entity     实体，为null时按配置缓存空结果
+         * @param now        当前时间
+         * @param generation 开始加载时的失效代数，加载期间发生过失效则放弃写入，-1表示不检查
+         */
+        private void put(String key, Entity entity, long now, long generation) {
+            lock.lock();
+            try {
+                drainReads();
+                doPut(key, entity, now, generation);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void doPut(String key, Entity entity, long now, long generation) {
+            final Node exist = lookup(key);
+            if (generation >= 0 && generation != this.generation) {
+                // 加载期间发生过失效，保留现有条目，只清除重新加载的标记以便下一个调用者重新加载
+                if (exist != null) {
+                    exist.refreshing.set(false);
+                }
+                return;
+            } else if (exist != null) {
+                remove(exist);
+            }
+
+            final long ttl;
+            final int entryWeight;
+            if (entity == null) {
+                ttl = spec.getNegativeExpireAfterWriteMillis();
+                entryWeight = 1;
+                if (ttl <= 0) {
+                    return;
+                }
+            } else if (entity.getId() == null) {
+                return;
+            } else {
+                ttl = spec.getExpireAfterWriteMillis();
+                entryWeight = spec.getWeigher().weigh(key, entity);
+            }
+            if (windowSize == 0 || entryWeight > spec.getMaximumWeight()) {
+                return;
+            }
+
+            final Node node = new Node(key, entity, entryWeight, ttl > 0 ? now + ttl : 0);
+            window.put(key, node);
+            data.put(key, node);
+            if (node.id == null) {
+                negativeKeys.add(key);
+            } else {
+                Set<String> keys = keysById.get(node.id);
+                if (keys == null) {
+                    keys = new HashSet<>();
+                    keysById.put(node.id, keys);
+                }
+                keys.add(key);
+            }
+            weight += entryWeight;
+            evict();
+        }
+
+        private Node lookup(String key) {
+            final Node node = window.get(key);
+            return node != null ? node : main.get(key);
+        }
+
+        private void evict() {
+            while (window.size() > windowSize) {
+                final Node candidate = eldest(window);
+                window.remove(candidate.key);
+                if (main.size() < mainSize) {
+                    main.put(candidate.key, candidate);
+                } else if (mainSize == 0) {
+                    evict(candidate);
+                } else {
+                    final Node victim = eldest(main);
+                    if (sketch.frequency(candidate.key.hashCode()) > sketch.frequency(victim.key.hashCode())) {
+                        main.remove(victim.key);
+                        evict(victim);
+                        main.put(candidate.key, candidate);
+                    } else {
+                        evict(candidate);
+                    }
+                }
+            }
+            while (weight > spec.getMaximumWeight()) {
+                final Node victim = main.isEmpty() ? eldest(window) : eldest(main);
+                remove(victim);
+                evictionCount++;
+            }
+        }
+
+        private void evict(Node node) {
+            unindex(node);
+            weight -= node.weight;
+            evictionCount++;
+        }
+
+        /**
+         * 失效与实体相关的条目，新增或修改时同时失效所有空结果.
+         *
+         * @param id         实体ID
+         * @param notifyType 通知类型
+         */
+        private void invalidate(ObjectId id, NotifyType notifyType) {
+            lock.lock();
+            try {
+                generation++;
+                if (id != null) {
+                    final Set<String> keys = keysById.remove(id);
+                    if (keys != null) {
+                        drop(keys);
+                    }
+                }
+                if (notifyType != NotifyType.delete && !negativeKeys.isEmpty()) {
+                    drop(negativeKeys);
+                    negativeKeys.clear();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void drop(Set<String> keys) {
+            for (String key : keys) {
+                Node node = window.remove(key);
+                if (node == null) {
+                    node = main.remove(key);
+                }
+                if (node != null) {
+                    data.remove(key, node);
+                    weight -= node.weight;
+                    invalidationCount++;
+                }
+            }
+        }
+
+        private void clear() {
+            lock.lock();
+            try {
+                generation++;
+                invalidationCount += window.size() + main.size();
+                window.clear();
+                main.clear();
+                data.clear();
+                keysById.clear();
+                negativeKeys.clear();
+                weight = 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private List<Node> nodes(long now) {
+            lock.lock();
+            try {
+                final List<Node> nodes = new ArrayList<>(window.size() + main.size());
+                for (Node node : main.values()) {
+                    if (node.entity != null && !node.isExpired(now)) {
+                        nodes.add(node);
+                    }
+                }
+                for (Node node : window.values()) {
+                    if (node.entity != null && !node.isExpired(now)) {
+                        nodes.add(node);
+                    }
+                }
+                return nodes;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private CacheStats stats() {
+            lock.lock();
+            try {
+                return new CacheStats(hitCount.sum(), missCount.sum(), evictionCount, invalidationCount,
+                        window.size() + main.size(), weight);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void remove(Node node) {
+            if (window.remove(node.key) == null) {
+                main.remove(node.key);
+            }
+            unindex(node);
+            weight -= node.weight;
+        }
+
+        /**
+         * 条目离开缓存区，从查找表和反向索引中移除.
+         */
+        private void unindex(Node node) {
+            data.remove(node.key, node);
+            if (node.id == null) {
+                negativeKeys.remove(node.key);
+                return;
+            }
+            final Set<String> keys = keysById.get(node.id);
+            if (keys != null && keys.remove(node.key) && keys.isEmpty()) {
+                keysById.remove(node.id);
+            }
+        }
+
+        private static Node eldest(LinkedHashMap<String, Node> map) {
+            final Iterator<Node> iterator = map.values().iterator();
+            return iterator.next();
+        }
+    }
+}
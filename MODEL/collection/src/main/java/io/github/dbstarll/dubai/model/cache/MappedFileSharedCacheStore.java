@@ -0,0 +1,71 @@
+package io.github.dbstarll.dubai.model.cache;
+
+import org.bson.types.ObjectId;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * 以内存映射文件保存数据的SharedCacheStore.
+ * 索引保存在进程内，只能在同一进程的多个{@link LayeredEntityCacheManager}间共享，用于测试或单机部署时替代分布式缓存.
+ */
+public final class MappedFileSharedCacheStore implements SharedCacheStore, Closeable {
+    private final RandomAccessFile file;
+    private final SegmentStore store;
+
+    /**
+     * 构造MappedFileSharedCacheStore.
+     *
+     * @param path        数据文件
+     * @param segmentSize 每个内存段的字节数
+     * @param maxSegments 最大内存段数
+     * @throws IOException 打开文件失败时抛出
+     */
+    public MappedFileSharedCacheStore(File path, int segmentSize, int maxSegments) throws IOException {
+        this.file = new RandomAccessFile(path, "rw");
+        final FileChannel channel = file.getChannel();
+        this.store = new SegmentStore(segmentSize, maxSegments, new SegmentStore.SegmentAllocator() {
+            @Override
+            public ByteBuffer allocate(int index, int capacity) {
+                try {
+                    return channel.map(MapMode.READ_WRITE, (long) index * capacity, capacity);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+        });
+    }
+
+    @Override
+    public byte[] get(String key) {
+        return store.read(key, new SegmentStore.Reader<byte[]>() {
+            @Override
+            public byte[] read(ByteBuffer buffer) {
+                final byte[] bytes = new byte[buffer.remaining()];
+                buffer.get(bytes);
+                return bytes;
+            }
+        });
+    }
+
+    @Override
+    public void put(String key, ObjectId entityId, byte[] value) {
+        store.put(key, entityId, value, -1);
+    }
+
+    @Override
+    public void invalidate(ObjectId entityId) {
+        store.invalidate(entityId);
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
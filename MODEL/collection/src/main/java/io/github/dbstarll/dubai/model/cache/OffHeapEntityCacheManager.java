@@ -0,0 +1,196 @@
+package io.github.dbstarll.dubai.model.cache;
+
+import io.github.dbstarll.dubai.model.entity.Entity;
+import io.github.dbstarll.dubai.model.entity.EntityFactory;
+import io.github.dbstarll.dubai.model.notify.EntityNotifyListener;
+import io.github.dbstarll.dubai.model.notify.NotifyType;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * 将实体以BSON格式保存在堆外内存中的EntityCacheManager实现.
+ * 缓存的实体不再以代理对象的形式常驻堆内，命中时才解码为实体，以降低大量缓存对象带来的GC压力.
+ * 内存按固定大小的段分配，段数达到上限时整段淘汰最早写入的数据.
+ */
+public class OffHeapEntityCacheManager implements EntityCacheManager, EntityNotifyListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(OffHeapEntityCacheManager.class);
+
+    private static final int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+
+    private static final SegmentStore.SegmentAllocator DIRECT_ALLOCATOR = new SegmentStore.SegmentAllocator() {
+        @Override
+        public ByteBuffer allocate(int index, int capacity) {
+            return ByteBuffer.allocateDirect(capacity);
+        }
+    };
+
+    private final EntityBsonCodec codec;
+    private final SegmentStore store;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * 构造OffHeapEntityCacheManager.
+     *
+     * @param codecRegistry 编解码实体使用的CodecRegistry，通常与MongoClient使用的相同
+     * @param maxMemory     最大使用的堆外内存字节数
+     */
+    public OffHeapEntityCacheManager(CodecRegistry codecRegistry, long maxMemory) {
+        this(codecRegistry, DEFAULT_SEGMENT_SIZE, (int) Math.max(2, maxMemory / DEFAULT_SEGMENT_SIZE));
+    }
+
+    /**
+     * 构造OffHeapEntityCacheManager.
+     *
+     * @param codecRegistry 编解码实体使用的CodecRegistry，通常与MongoClient使用的相同
+     * @param segmentSize   每个内存段的字节数，也是单个实体编码后的最大字节数
+     * @param maxSegments   最大内存段数
+     */
+    public OffHeapEntityCacheManager(CodecRegistry codecRegistry, int segmentSize, int maxSegments) {
+        this.codec = new EntityBsonCodec(notNull(codecRegistry, "codecRegistry is null"));
+        this.store = new SegmentStore(segmentSize, maxSegments, DIRECT_ALLOCATOR);
+    }
+
+    @Override
+    public <E extends Entity> E find(final Class<E> entityClass, String key,
+                                     UpdateCacheHandler<E> updateCacheHandler) {
+        final E cached = store.read(storeKey(entityClass, key), new SegmentStore.Reader<E>() {
+            @Override
+            public E read(ByteBuffer buffer) {
+                return decode(entityClass, buffer);
+            }
+        });
+        if (cached != null) {
+            hitCount.incrementAndGet();
+            return cached;
+        }
+
+        missCount.incrementAndGet();
+        final long generation = store.generation();
+        final E loaded = updateCacheHandler.updateCache(key);
+        if (loaded != null) {
+            put(entityClass, key, loaded, generation);
+        }
+        return loaded;
+    }
+
+    @Override
+    public <E extends Entity> E get(final Class<E> entityClass, String key) {
+        final E cached = store.read(storeKey(entityClass, key), new SegmentStore.Reader<E>() {
+            @Override
+            public E read(ByteBuffer buffer) {
+                return decode(entityClass, buffer);
+            }
+        });
+        if (cached != null) {
+            hitCount.incrementAndGet();
+        } else {
+            missCount.incrementAndGet();
+        }
+        return cached;
+    }
+
+    @Override
+    public <E extends Entity> void update(Class<E> entityClass, ObjectId entityId, NotifyType notifyType) {
+        if (entityId != null) {
+            store.invalidate(entityId);
+        }
+    }
+
+    @Override
+    public <E extends Entity> void set(String key, E entity) {
+        if (entity != null) {
+            put(EntityFactory.getEntityClass(entity), key, entity, -1);
+        }
+    }
+
+    @Override
+    public <E extends Entity> long generation(Class<E> entityClass) {
+        return store.generation();
+    }
+
+    @Override
+    public <E extends Entity> void set(String key, E entity, long generation) {
+        if (entity != null) {
+            put(EntityFactory.getEntityClass(entity), key, entity, generation);
+        }
+    }
+
+    @Override
+    public <E extends Entity> void onNotify(Class<E> entityClass, ObjectId id, NotifyType notifyType,
+                                            ObjectId companyId, String clientId) {
+        update(entityClass, id, notifyType);
+    }
+
+    /**
+     * 清空缓存.
+     */
+    public void invalidateAll() {
+        store.clear();
+    }
+
+    /**
+     * 获得缓存统计，其中weight为有效数据的字节数.
+     *
+     * @return 缓存统计
+     */
+    public CacheStats stats() {
+        final SegmentStore.Stats stats = store.stats();
+        return new CacheStats(hitCount.get(), missCount.get(), stats.evictionCount, stats.invalidationCount,
+                stats.entries, stats.liveBytes);
+    }
+
+    /**
+     * 获得已分配的堆外内存字节数.
+     *
+     * @return 已分配的堆外内存字节数
+     */
+    public long getMemoryUsage() {
+        return store.stats().allocatedBytes;
+    }
+
+    /**
+     * 获得碎片率，即已删除或被覆盖但尚未回收的字节数占已写入字节数的比例.
+     *
+     * @return 碎片率
+     */
+    public double getFragmentation() {
+        final SegmentStore.Stats stats = store.stats();
+        final long written = stats.liveBytes + stats.deadBytes;
+        return written == 0 ? 0 : (double) stats.deadBytes / written;
+    }
+
+    private <E extends Entity> void put(Class<E> entityClass, String key, E entity, long generation) {
+        if (entity.getId() == null) {
+            return;
+        }
+        final byte[] bytes;
+        try {
+            bytes = codec.encode(entity);
+        } catch (RuntimeException ex) {
+            LOGGER.debug("encode entity failed: {}", ex.getMessage());
+            return;
+        }
+        store.put(storeKey(entityClass, key), entity.getId(), bytes, generation);
+    }
+
+    private <E extends Entity> E decode(Class<E> entityClass, ByteBuffer buffer) {
+        try {
+            return codec.decode(entityClass, buffer);
+        } catch (RuntimeException ex) {
+            LOGGER.debug("decode entity failed: {}", ex.getMessage());
+            return null;
+        }
+    }
+
+    private static String storeKey(Class<?> entityClass, String key) {
+        return entityClass.getName() + ':' + key;
+    }
+}
@@ -0,0 +1,190 @@
+package io.github.dbstarll.dubai.model.cache;
+
+import io.github.dbstarll.dubai.model.entity.Entity;
+import io.github.dbstarll.dubai.model.entity.func.Cacheable;
+import io.github.dbstarll.dubai.model.notify.EntityNotifyListener;
+import io.github.dbstarll.dubai.model.notify.NotifyType;
+import org.bson.types.ObjectId;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * 缓存find、count、distinct的查询结果.
+ * <ul>
+ * <li>只缓存通过{@link #enable(Class)}启用的Cacheable实体类</li>
+ * <li>每个实体类维护一个版本号，实体类有任何变更时版本号递增，之前缓存的所有查询结果随之失效</li>
+ * <li>find的结果只保存实体ID列表，读取时再通过实体缓存获得实体</li>
+ * </ul>
+ * 可以注册为{@link io.github.dbstarll.dubai.model.notify.EntityNotifyConsumer}的监听器，以接收其他节点的实体变更通知.
+ */
+public class QueryResultCache implements EntityNotifyListener {
+    private static final int DEFAULT_MAXIMUM_SIZE = 1000;
+    private static final int DEFAULT_MAXIMUM_RESULT_SIZE = 1000;
+
+    private final Set<Class<?>> enabled = ConcurrentHashMap.newKeySet();
+    private final ConcurrentMap<Class<?>, AtomicLong> versions = new ConcurrentHashMap<>();
+    private final Map<String, Result> results;
+    private final int maximumResultSize;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    public QueryResultCache() {
+        this(DEFAULT_MAXIMUM_SIZE, DEFAULT_MAXIMUM_RESULT_SIZE);
+    }
+
+    /**
+     * 构造QueryResultCache.
+     *
+     * @param maximumSize       最多缓存的查询结果数，超出时淘汰最久未访问的结果
+     * @param maximumResultSize 单个find或distinct结果最多包含的条目数，超出时不缓存
+     */
+    public QueryResultCache(final int maximumSize, int maximumResultSize) {
+        isTrue(maximumSize > 0, "maximumSize must be positive: %d", maximumSize);
+        isTrue(maximumResultSize > 0, "maximumResultSize must be positive: %d", maximumResultSize);
+        this.maximumResultSize = maximumResultSize;
+        this.results = new LinkedHashMap<String, Result>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Result> eldest) {
+                return size() > maximumSize;
+            }
+        };
+    }
+
+    /**
+     * 启用指定实体类的查询结果缓存.
+     *
+     * @param entityClass 实现了Cacheable的实体类
+     */
+    public void enable(Class<? extends Entity> entityClass) {
+        notNull(entityClass, "entityClass is null");
+        isTrue(Cacheable.class.isAssignableFrom(entityClass), "not Cacheable: %s", entityClass.getName());
+        enabled.add(entityClass);
+    }
+
+    public boolean isEnabled(Class<?> entityClass) {
+        return enabled.contains(entityClass);
+    }
+
+    public int getMaximumResultSize() {
+        return maximumResultSize;
+    }
+
+    /**
+     * 获得实体类当前的版本号，在查询数据库之前获取，配合{@link #put(Class, String, long, Object)}使用.
+     *
+     * @param entityClass 实体类
+     * @return 版本号
+     */
+    public long version(Class<?> entityClass) {
+        final AtomicLong version = versions.get(entityClass);
+        return version == null ? 0 : version.get();
+    }
+
+    /**
+     * 递增实体类的版本号，使该实体类已缓存的所有查询结果失效.
+     *
+     * @param entityClass 实体类
+     */
+    public void bump(Class<?> entityClass) {
+        AtomicLong version = versions.get(entityClass);
+        if (version == null) {
+            final AtomicLong created = new AtomicLong();
+            version = versions.putIfAbsent(entityClass, created);
+            if (version == null) {
+                version = created;
+            }
+        }
+        version.incrementAndGet();
+    }
+
+    /**
+     * 获得缓存的查询结果.
+     *
+     * @param entityClass 实体类
+     * @param key         查询的缓存key
+     * @param <T>         查询结果的类型
+     * @return 缓存的查询结果，未缓存或已失效时返回null
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(Class<?> entityClass, String key) {
+        final String resultKey = resultKey(entityClass, key);
+        final long version = version(entityClass);
+        synchronized (results) {
+            final Result result = results.get(resultKey);
+            if (result != null && result.version == version) {
+                hitCount.incrementAndGet();
+                return (T) result.value;
+            } else if (result != null) {
+                results.remove(resultKey);
+            }
+        }
+        missCount.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * 缓存查询结果，如果自获得版本号以来实体类发生过变更则放弃写入.
+     *
+     * @param entityClass 实体类
+     * @param key         查询的缓存key
+     * @param version     查询数据库之前获得的版本号
+     * @param value       查询结果，必须是不可变的
+     */
+    public void put(Class<?> entityClass, String key, long version, Object value) {
+        if (value != null && version == version(entityClass)) {
+            synchronized (results) {
+                results.put(resultKey(entityClass, key), new Result(version, value));
+            }
+        }
+    }
+
+    @Override
+    public <E extends Entity> void onNotify(Class<E> entityClass, ObjectId id, NotifyType notifyType,
+                                            ObjectId companyId, String clientId) {
+        if (isEnabled(entityClass)) {
+            bump(entityClass);
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * 清空所有缓存的查询结果.
+     */
+    public void clear() {
+        synchronized (results) {
+            results.clear();
+        }
+    }
+
+    private static String resultKey(Class<?> entityClass, String key) {
+        return entityClass.getName() + '/' + key;
+    }
+
+    private static final class Result {
+        private final long version;
+        private final Object value;
+
+        private Result(long version, Object value) {
+            this.version = version;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package io.github.dbstarll.dubai.model.cache;
+
+import org.bson.types.ObjectId;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * 基于固定大小内存段的日志结构存储.
+ * 数据只追加写入当前段，当前段写满后切换到下一个段，段数达到上限时整段淘汰最早写入的段；
+ * 删除或覆盖的数据只计入失效字节，在所在的段被淘汰时回收.
+ */
+final class SegmentStore {
+    private final int segmentSize;
+    private final ByteBuffer[] segments;
+    private final SegmentAllocator allocator;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<String, Location> index = new HashMap<>();
+    private final Map<ObjectId, Set<String>> keysById = new HashMap<>();
+    private final Set<String>[] keysBySegment;
+    private final long[] deadBySegment;
+
+    private long segmentSequence = -1;
+    private int writeOffset;
+    private long liveBytes;
+    private long deadBytes;
+    private int allocatedSegments;
+    private volatile long generation;
+
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong invalidationCount = new AtomicLong();
+
+    @SuppressWarnings("unchecked")
+    SegmentStore(int segmentSize, int maxSegments, SegmentAllocator allocator) {
+        isTrue(segmentSize > 0, "segmentSize must be positive: %d", segmentSize);
+        isTrue(maxSegments > 1, "maxSegments must be greater than 1: %d", maxSegments);
+        this.segmentSize = segmentSize;
+        this.segments = new ByteBuffer[maxSegments];
+        this.keysBySegment = new Set[maxSegments];
+        this.deadBySegment = new long[maxSegments];
+        this.allocator = notNull(allocator, "allocator is null");
+    }
+
+    long generation() {
+        return generation;
+    }
+
+    /**
+     * 写入数据.
+     *
+     * @param key        key
+     * @param id         数据所属的实体ID
+     * @param bytes      数据
+     * @param generation 开始加载数据时的失效代数，期间发生过失效则放弃写入，-1表示不检查
+     * @return 是否写入成功
+     */
+    boolean put(String key, ObjectId id, byte[] bytes, long generation) {
+        if (bytes.length > segmentSize) {
+            return false;
+        }
+        lock.writeLock().lock();
+        try {
+            if (generation >= 0 && generation != this.generation) {
+                return false;
+            }
+            remove(index.remove(key), key);
+            if (segmentSequence < 0 || writeOffset + bytes.length > segmentSize) {
+                nextSegment();
+            }
+            final int slot = slot(segmentSequence);
+            final ByteBuffer segment = segments[slot].duplicate();
+            segment.position(writeOffset);
+            segment.put(bytes);
+            final Location location = new Location(segmentSequence, writeOffset, bytes.length, id);
+            writeOffset += bytes.length;
+            liveBytes += bytes.length;
+            index.put(key, location);
+            keysBySegment[slot].add(key);
+            Set<String> keys = keysById.get(id);
+            if (keys == null) {
+                keys = new HashSet<>();
+                keysById.put(id, keys);
+            }
+            keys.add(key);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 读取数据，reader在读锁内执行，不可保留传入的ByteBuffer.
+     *
+     * @param key    key
+     * @param reader 数据的读取器
+     * @param <T>    读取结果的类型
+     * @return 读取结果，数据不存在时返回null
+     */
+    <T> T read(String key, Reader<T> reader) {
+        lock.readLock().lock();
+        try {
+            final Location location = index.get(key);
+            if (location == null) {
+                return null;
+            }
+            final ByteBuffer buffer = segments[slot(location.segment)].duplicate();
+            buffer.position(location.offset);
+            buffer.limit(location.offset + location.length);
+            return reader.read(buffer.slice());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 删除数据.
+     *
+     * @param key key
+     * @return 数据是否存在
+     */
+    boolean remove(String key) {
+        lock.writeLock().lock();
+        try {
+            return remove(index.remove(key), key);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 失效实体相关的所有数据.
+     *
+     * @param id 实体ID
+     * @return 失效的条目数
+     */
+    int invalidate(ObjectId id) {
+        lock.writeLock().lock();
+        try {
+            generation++;
+            final Set<String> keys = keysById.get(id);
+            int count = 0;
+            if (keys != null) {
+                for (String key : keys.toArray(new String[keys.size()])) {
+                    if (remove(index.remove(key), key)) {
+                        count++;
+                    }
+                }
+            }
+            invalidationCount.addAndGet(count);
+            return count;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 清空所有数据，已分配的内存段保留以供重用.
+     */
+    void clear() {
+        lock.writeLock().lock();
+        try {
+            generation++;
+            invalidationCount.addAndGet(index.size());
+            index.clear();
+            keysById.clear();
+            for (Set<String> keys : keysBySegment) {
+                if (keys != null) {
+                    keys.clear();
+                }
+            }
+            Arrays.fill(deadBySegment, 0);
+            liveBytes = 0;
+            deadBytes = 0;
+            writeOffset = segmentSize;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean remove(Location location, String key) {
+        if (location == null) {
+            return false;
+        }
+        final int slot = slot(location.segment);
+        keysBySegment[slot].remove(key);
+        unindex(location, key);
+        liveBytes -= location.length;
+        deadBytes += location.length;
+        deadBySegment[slot] += location.length;
+        return true;
+    }
+
+    private void unindex(Location location, String key) {
+        final Set<String> keys = keysById.get(location.id);
+        if (keys != null && keys.remove(key) && keys.isEmpty()) {
+            keysById.remove(location.id);
+        }
+    }
+
+    private void nextSegment() {
+        segmentSequence++;
+        writeOffset = 0;
+        final int slot = slot(segmentSequence);
+        if (segments[slot] == null) {
+            segments[slot] = allocator.allocate(slot, segmentSize);
+            keysBySegment[slot] = new HashSet<>();
+            allocatedSegments++;
+        } else {
+            evictSegment(slot);
+        }
+    }
+
+    private void evictSegment(int slot) {
+        final Set<String> keys = keysBySegment[slot];
+        for (String key : keys) {
+            final Location location = index.remove(key);
+            unindex(location, key);
+            liveBytes -= location.length;
+        }
+        evictionCount.addAndGet(keys.size());
+        keys.clear();
+        deadBytes -= deadBySegment[slot];
+        deadBySegment[slot] = 0;
+    }
+
+    private int slot(long sequence) {
+        return (int) (sequence % segments.length);
+    }
+
+    /**
+     * 获得统计信息.
+     *
+     * @return 统计信息
+     */
+    Stats stats() {
+        lock.readLock().lock();
+        try {
+            return new Stats(index.size(), (long) allocatedSegments * segmentSize, liveBytes, deadBytes,
+                    evictionCount.get(), invalidationCount.get());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    interface SegmentAllocator {
+        ByteBuffer allocate(int index, int capacity);
+    }
+
+    interface Reader<T> {
+        T read(ByteBuffer buffer);
+    }
+
+    static final class Stats {
+        final long entries;
+        final long allocatedBytes;
+        final long liveBytes;
+        final long deadBytes;
+        final long evictionCount;
+        final long invalidationCount;
+
+        private Stats(long entries, long allocatedBytes, long liveBytes, long deadBytes, long evictionCount,
+                      long invalidationCount) {
+            this.entries = entries;
+            this.allocatedBytes = allocatedBytes;
+            this.liveBytes = liveBytes;
+            this.deadBytes = deadBytes;
+            this.evictionCount = evictionCount;
+            this.invalidationCount = invalidationCount;
+        }
+    }
+
+    private static final class Location {
+        private final long segment;
+        private final int offset;
+        private final int length;
+        private final ObjectId id;
+
+        private Location(long segment, int offset, int length, ObjectId id) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.id = id;
+        }
+    }
+}
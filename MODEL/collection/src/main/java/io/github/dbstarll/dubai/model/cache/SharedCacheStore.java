@@ -0,0 +1,32 @@
+package io.github.dbstarll.dubai.model.cache;
+
+import org.bson.types.ObjectId;
+
+/**
+ * 多个节点共享的二级缓存存储，保存实体编码后的BSON字节.
+ */
+public interface SharedCacheStore {
+    /**
+     * 读取缓存.
+     *
+     * @param key 缓存key
+     * @return 实体的BSON字节，不存在时返回null
+     */
+    byte[] get(String key);
+
+    /**
+     * 写入缓存.
+     *
+     * @param key      缓存key
+     * @param entityId 实体ID，用于按实体失效
+     * @param value    实体的BSON字节
+     */
+    void put(String key, ObjectId entityId, byte[] value);
+
+    /**
+     * 失效与实体相关的所有缓存.
+     *
+     * @param entityId 实体ID
+     */
+    void invalidate(ObjectId entityId);
+}
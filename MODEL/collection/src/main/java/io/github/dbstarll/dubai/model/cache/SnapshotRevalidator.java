@@ -0,0 +1,23 @@
+package io.github.dbstarll.dubai.model.cache;
+
+import io.github.dbstarll.dubai.model.entity.Entity;
+import org.bson.types.ObjectId;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * 校验快照中的实体是否仍然有效.
+ */
+public interface SnapshotRevalidator {
+    /**
+     * 查询实体当前的最后修改时间.
+     *
+     * @param entityClass 实体类
+     * @param ids         实体ID
+     * @param <E>         实体类
+     * @return 实体ID到最后修改时间的映射，已不存在的实体不包含在结果中
+     */
+    <E extends Entity> Map<ObjectId, Date> lastModified(Class<E> entityClass, Collection<ObjectId> ids);
+}
@@ -13,9 +13,13 @@ import org.bson.BsonDocument;
 import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.notNull;
+
 public abstract class AbstractCollection<E extends Entity> implements Collection<E> {
 
     @Override
@@ -119,7 +123,7 @@ public abstract class AbstractCollection<E extends Entity> implements Collection
     }
 
     @Override
-    public final E findById(ObjectId id) {
+    public E findById(ObjectId id) {
         if (id == null) {
             return null;
         }
@@ -166,7 +170,7 @@ public abstract class AbstractCollection<E extends Entity> implements Collection
         }
 
         final Date now = new Date();
-        setEntityLastModified(entity, now);
+        setEntityLastModified(entity, nextLastModified(entity, now));
 
         if (entity.getId() == null) {
             setEntityId(entity, newEntityId == null ? new ObjectId() : newEntityId);
@@ -180,13 +184,68 @@ public abstract class AbstractCollection<E extends Entity> implements Collection
         return entity;
     }
 
+    @Override
+    public final E saveIfUnmodified(E entity) {
+        if (entity == null) {
+            return null;
+        }
+
+        final ObjectId id = notNull(entity.getId(), "entity not saved");
+        final Date lastModified = entity.getLastModified();
+        setEntityLastModified(entity, nextLastModified(entity, new Date()));
+
+        final UpdateResult result = this.replaceOne(Filters.and(Filters.eq(Entity.FIELD_NAME_ID, id),
+                Filters.eq(Entity.FIELD_NAME_LAST_MODIFIED, lastModified)), entity);
+        if (result.wasAcknowledged() && result.getMatchedCount() == 0) {
+            setEntityLastModified(entity, lastModified);
+            return null;
+        }
+        return entity;
+    }
+
+    @Override
+    public final List<E> saveAll(List<E> entities, int batchSize) {
+        isTrue(batchSize > 0, "batchSize must be positive: %d", batchSize);
+        if (entities == null || entities.isEmpty()) {
+            return entities;
+        }
+
+        final Date now = new Date();
+        for (int from = 0, size = entities.size(); from < size; from += batchSize) {
+            final List<E> batch = entities.subList(from, Math.min(size, from + batchSize));
+            final List<E> inserts = new ArrayList<>(batch.size());
+            final List<E> replacements = new ArrayList<>(batch.size());
+            for (E entity : batch) {
+                if (entity == null) {
+                    continue;
+                }
+                setEntityLastModified(entity, nextLastModified(entity, now));
+                if (entity.getId() == null) {
+                    setEntityId(entity, new ObjectId());
+                    setEntityDateCreated(entity, now);
+                    inserts.add(entity);
+                } else {
+                    replacements.add(entity);
+                }
+            }
+            if (!inserts.isEmpty()) {
+                this.insertMany(inserts);
+            }
+            if (!replacements.isEmpty()) {
+                this.replaceAll(null, replacements, new BulkWriteOptions());
+            }
+        }
+
+        return entities;
+    }
+
     @Override
     public final FindIterable<E> findByIds(java.util.Collection<ObjectId> ids) {
         return find(Filters.in(Entity.FIELD_NAME_ID, ids));
     }
 
     @Override
-    public final boolean contains(ObjectId id) {
+    public boolean contains(ObjectId id) {
         return count(Filters.eq(id)) > 0;
     }
 
@@ -210,6 +269,22 @@ public abstract class AbstractCollection<E extends Entity> implements Collection
         ((EntityModifier) entity).setDateCreated(dateCreated);
     }
 
+    /**
+     * 计算实体写入后的最后修改时间. 新的最后修改时间总是大于实体原来的最后修改时间，
+     * 即使在同一毫秒内多次写入，lastModified作为版本号也不会重复，{@link #saveIfUnmodified}不会因此丢失更新.
+     *
+     * @param entity 被写入的实体
+     * @param now    当前时间
+     * @return 最后修改时间
+     */
+    private static <E extends Entity> Date nextLastModified(E entity, Date now) {
+        final Date lastModified = entity.getLastModified();
+        if (lastModified == null || lastModified.getTime() < now.getTime()) {
+            return now;
+        }
+        return new Date(lastModified.getTime() + 1);
+    }
+
     /**
      * 设置实体的最后修改时间.
      *
@@ -8,6 +8,7 @@ import io.github.dbstarll.dubai.model.entity.Entity;
 import org.bson.BsonDocument;
 import org.bson.conversions.Bson;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public class BaseCollection<E extends Entity> extends AbstractCollection<E> {
@@ -107,6 +108,25 @@ public class BaseCollection<E extends Entity> extends AbstractCollection<E> {
         mongoCollection.insertMany(documents, options);
     }
 
+    @Override
+    public long replaceAll(Bson filter, List<? extends E> replacements, BulkWriteOptions options) {
+        if (replacements.isEmpty()) {
+            return 0;
+        }
+        final List<WriteModel<E>> requests = new ArrayList<>(replacements.size());
+        for (E replacement : replacements) {
+            final Bson idFilter = Filters.eq(Entity.FIELD_NAME_ID, replacement.getId());
+            requests.add(new ReplaceOneModel<E>(filter == null ? idFilter : Filters.and(idFilter, filter),
+                    replacement));
+        }
+        return mongoCollection.bulkWrite(requests, options).getMatchedCount();
+    }
+
+    @Override
+    public String createIndex(Bson keys, IndexOptions options) {
+        return mongoCollection.createIndex(keys, options);
+    }
+
     public String getNamespace() {
         return mongoCollection.getNamespace().getFullName();
     }
@@ -0,0 +1,475 @@
+package io.github.dbstarll.dubai.model.collection;
+
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonNumber;
+import org.bson.BsonType;
+import org.bson.BsonValue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+
+/**
+ * 在内存中对BsonDocument执行查询条件和排序.
+ * 支持字段相等、$eq、$ne、$in、$nin、$gt、$gte、$lt、$lte、$exists以及$and、$or、$nor的组合，
+ * 字段名可以使用点号访问嵌套文档和数组中的文档，数字段同时按数组下标访问；
+ * 数组和文档按MongoDB的规则逐个元素、逐个字段按顺序比较，按数组字段排序时升序取最小元素、降序取最大元素.
+ * 不支持的查询条件编译结果为null，调用者应改为查询数据库.
+ */
+final class BsonMatcher {
+    private BsonMatcher() {
+        // 工具类禁止实例化
+    }
+
+    interface Condition {
+        boolean matches(BsonDocument document);
+    }
+
+    /**
+     * 编译查询条件.
+     *
+     * @param query 查询条件
+     * @return 编译后的条件，包含不支持的操作符时返回null
+     */
+    static Condition compile(BsonDocument query) {
+        final List<Condition> conditions = new ArrayList<>(query.size());
+        for (Entry<String, BsonValue> entry : query.entrySet()) {
+            final Condition condition = compile(entry.getKey(), entry.getValue());
+            if (condition == null) {
+                return null;
+            }
+            conditions.add(condition);
+        }
+        return conditions.size() == 1 ? conditions.get(0) : all(conditions);
+    }
+
+    private static Condition compile(final String key, final BsonValue value) {
+        if ("$and".equals(key) || "$or".equals(key) || "$nor".equals(key)) {
+            final List<Condition> branches = compileBranches(value);
+            if (branches == null) {
+                return null;
+            } else if ("$and".equals(key)) {
+                return all(branches);
+            } else if ("$or".equals(key)) {
+                return any(branches);
+            } else {
+                return not(any(branches));
+            }
+        } else if (key.startsWith("$")) {
+            return null;
+        } else if (value.isDocument() && !value.asDocument().isEmpty()
+                && value.asDocument().getFirstKey().startsWith("$")) {
+            final List<Condition> conditions = new ArrayList<>(value.asDocument().size());
+            for (Entry<String, BsonValue> operator : value.asDocument().entrySet()) {
+                final Condition condition = compileOperator(key, operator.getKey(), operator.getValue());
+                if (condition == null) {
+                    return null;
+                }
+                conditions.add(condition);
+            }
+            return conditions.size() == 1 ? conditions.get(0) : all(conditions);
+        } else if (value.isRegularExpression() || value.isJavaScript()) {
+            return null;
+        } else {
+            return eq(key, value);
+        }
+    }
+
+    private static List<Condition> compileBranches(BsonValue value) {
+        if (!value.isArray() || value.asArray().isEmpty()) {
+            return null;
+        }
+        final List<Condition> branches = new ArrayList<>(value.asArray().size());
+        for (BsonValue branch : value.asArray()) {
+            final Condition condition = branch.isDocument() ? compile(branch.asDocument()) : null;
+            if (condition == null) {
+                return null;
+            }
+            branches.add(condition);
+        }
+        return branches;
+    }
+
+    private static Condition compileOperator(final String path, String operator, final BsonValue operand) {
+        switch (operator) {
+            case "$eq":
+                return operand.isRegularExpression() ? null : eq(path, operand);
+            case "$ne":
+                return operand.isRegularExpression() ? null : not(eq(path, operand));
+            case "$in":
+                return in(path, operand);
+            case "$nin":
+                final Condition in = in(path, operand);
+                return in == null ? null : not(in);
+            case "$gt":
+                return isComparable(operand) ? range(path, operand, 1, 1) : null;
+            case "$gte":
+                return isComparable(operand) ? range(path, operand, 0, 1) : null;
+            case "$lt":
+                return isComparable(operand) ? range(path, operand, -1, -1) : null;
+            case "$lte":
+                return isComparable(operand) ? range(path, operand, -1, 0) : null;
+            case "$exists":
+                final boolean exists = operand.isBoolean() ? operand.asBoolean().getValue()
+                        : operand.isNumber() && operand.asNumber().doubleValue() != 0;
+                return new Condition() {
+                    @Override
+                    public boolean matches(BsonDocument document) {
+                        return values(document, path).isEmpty() != exists;
+                    }
+                };
+            default:
+                return null;
+        }
+    }
+
+    private static Condition eq(final String path, final BsonValue value) {
+        return new Condition() {
+            @Override
+            public boolean matches(BsonDocument document) {
+                return contains(values(document, path), value);
+            }
+        };
+    }
+
+    private static Condition in(final String path, BsonValue operand) {
+        if (!operand.isArray()) {
+            return null;
+        }
+        for (BsonValue value : operand.asArray()) {
+            if (value.isRegularExpression()) {
+                return null;
+            }
+        }
+        final List<BsonValue> values = operand.asArray().getValues();
+        return new Condition() {
+            @Override
+            public boolean matches(BsonDocument document) {
+                final List<BsonValue> candidates = values(document, path);
+                for (BsonValue value : values) {
+                    if (contains(candidates, value)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * 判断范围条件的边界是否可以在本地比较，数组、文档等其他类型的边界改为查询数据库.
+     */
+    private static boolean isComparable(BsonValue bound) {
+        if (bound.isNumber()) {
+            return true;
+        }
+        switch (bound.getBsonType()) {
+            case STRING:
+            case OBJECT_ID:
+            case DATE_TIME:
+            case TIMESTAMP:
+            case BOOLEAN:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 范围条件，比较结果等于low或high时匹配，只比较同一类型的值.
+     */
+    private static Condition range(final String path, final BsonValue bound, final int low, final int high) {
+        return new Condition() {
+            @Override
+            public boolean matches(BsonDocument document) {
+                for (BsonValue candidate : values(document, path)) {
+                    final Integer result = compare(candidate, bound);
+                    if (result != null && (Integer.signum(result) == low || Integer.signum(result) == high)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        };
+    }
+
+    private static Condition all(final List<Condition> conditions) {
+        return new Condition() {
+            @Override
+            public boolean matches(BsonDocument document) {
+                for (Condition condition : conditions) {
+                    if (!condition.matches(document)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        };
+    }
+
+    private static Condition any(final List<Condition> conditions) {
+        return new Condition() {
+            @Override
+            public boolean matches(BsonDocument document) {
+                for (Condition condition : conditions) {
+                    if (condition.matches(document)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        };
+    }
+
+    private static Condition not(final Condition condition) {
+        return new Condition() {
+            @Override
+            public boolean matches(BsonDocument document) {
+                return !condition.matches(document);
+            }
+        };
+    }
+
+    private static boolean contains(List<BsonValue> candidates, BsonValue value) {
+        if (value.isNull() && candidates.isEmpty()) {
+            return true;
+        }
+        for (BsonValue candidate : candidates) {
+            if (equals(candidate, value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 获得字段的所有候选值：字段值为数组时，数组本身和数组中的每个元素都是候选值；
+     * 路径中间经过数组时，数字段按下标取数组元素继续查找，同时对数组中的每个文档继续查找.
+     *
+     * @param document 文档
+     * @param path     以点号分隔的字段路径
+     * @return 候选值列表，字段不存在时返回空列表
+     */
+    static List<BsonValue> values(BsonDocument document, String path) {
+        final List<BsonValue> values = new ArrayList<>();
+        collect(document, path.split("\\."), 0, values);
+        return values;
+    }
+
+    private static void collect(BsonValue current, String[] names, int index, List<BsonValue> values) {
+        if (index == names.length) {
+            values.add(current);
+            if (current.isArray()) {
+                values.addAll(current.asArray().getValues());
+            }
+        } else if (current.isDocument()) {
+            final BsonValue child = current.asDocument().get(names[index]);
+            if (child != null) {
+                collect(child, names, index + 1, values);
+            }
+        } else if (current.isArray()) {
+            final BsonArray array = current.asArray();
+            final int position = position(names[index]);
+            if (position >= 0 && position < array.size()) {
+                collect(array.get(position), names, index + 1, values);
+            }
+            for (BsonValue item : array) {
+                if (item.isDocument()) {
+                    collect(item, names, index, values);
+                }
+            }
+        }
+    }
+
+    /**
+     * 解析数组下标.
+     *
+     * @param name 字段名
+     * @return 字段名全部由数字组成时返回下标，否则返回-1
+     */
+    private static int position(String name) {
+        if (name.isEmpty() || name.length() > 9) {
+            return -1;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (!Character.isDigit(name.charAt(i))) {
+                return -1;
+            }
+        }
+        return Integer.parseInt(name);
+    }
+
+    /**
+     * 判断两个值是否相等：数值类型之间按数值比较，数组按顺序逐个元素比较，文档按顺序逐个字段比较.
+     *
+     * @param v1 值1
+     * @param v2 值2
+     * @return 是否相等
+     */
+    static boolean equals(BsonValue v1, BsonValue v2) {
+        if (v1.isNumber() && v2.isNumber()) {
+            return compareNumbers(v1.asNumber(), v2.asNumber()) == 0;
+        } else if (v1.isArray() && v2.isArray()) {
+            final List<BsonValue> items1 = v1.asArray().getValues();
+            final List<BsonValue> items2 = v2.asArray().getValues();
+            if (items1.size() != items2.size()) {
+                return false;
+            }
+            for (int i = 0; i < items1.size(); i++) {
+                if (!equals(items1.get(i), items2.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (v1.isDocument() && v2.isDocument()) {
+            if (v1.asDocument().size() != v2.asDocument().size()) {
+                return false;
+            }
+            final Iterator<Entry<String, BsonValue>> entries2 = v2.asDocument().entrySet().iterator();
+            for (Entry<String, BsonValue> entry1 : v1.asDocument().entrySet()) {
+                final Entry<String, BsonValue> entry2 = entries2.next();
+                if (!entry1.getKey().equals(entry2.getKey()) || !equals(entry1.getValue(), entry2.getValue())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return v1.equals(v2);
+    }
+
+    /**
+     * 比较同一类型的两个值，数值类型之间可以相互比较.
+     *
+     * @param v1 值1
+     * @param v2 值2
+     * @return 比较结果，类型不同或不可比较时返回null
+     */
+    static Integer compare(BsonValue v1, BsonValue v2) {
+        if (v1.isNumber() && v2.isNumber()) {
+            return compareNumbers(v1.asNumber(), v2.asNumber());
+        } else if (v1.getBsonType() != v2.getBsonType()) {
+            return null;
+        }
+        switch (v1.getBsonType()) {
+            case STRING:
+                return v1.asString().getValue().compareTo(v2.asString().getValue());
+            case OBJECT_ID:
+                return v1.asObjectId().getValue().compareTo(v2.asObjectId().getValue());
+            case DATE_TIME:
+                return Long.compare(v1.asDateTime().getValue(), v2.asDateTime().getValue());
+            case TIMESTAMP:
+                return v1.asTimestamp().compareTo(v2.asTimestamp());
+            case BOOLEAN:
+                return Boolean.compare(v1.asBoolean().getValue(), v2.asBoolean().getValue());
+            default:
+                return null;
+        }
+    }
+
+    private static int compareNumbers(BsonNumber n1, BsonNumber n2) {
+        if (n1.getBsonType() == BsonType.DECIMAL128 || n2.getBsonType() == BsonType.DECIMAL128) {
+            return n1.decimal128Value().bigDecimalValue().compareTo(n2.decimal128Value().bigDecimalValue());
+        } else if (n1.getBsonType() == BsonType.DOUBLE || n2.getBsonType() == BsonType.DOUBLE) {
+            return Double.compare(n1.doubleValue(), n2.doubleValue());
+        }
+        return Long.compare(n1.longValue(), n2.longValue());
+    }
+
+    /**
+     * 编译排序条件.
+     *
+     * @param sort 排序条件
+     * @return 比较器，包含不支持的排序方式时返回null
+     */
+    static Comparator<BsonDocument> sort(BsonDocument sort) {
+        final List<String> paths = new ArrayList<>(sort.size());
+        final List<Integer> directions = new ArrayList<>(sort.size());
+        for (Entry<String, BsonValue> entry : sort.entrySet()) {
+            if (!entry.getValue().isNumber()) {
+                return null;
+            }
+            paths.add(entry.getKey());
+            directions.add(entry.getValue().asNumber().intValue() < 0 ? -1 : 1);
+        }
+        return new Comparator<BsonDocument>() {
+            @Override
+            public int compare(BsonDocument o1, BsonDocument o2) {
+                for (int i = 0; i < paths.size(); i++) {
+                    final int direction = directions.get(i);
+                    final int result = compareForSort(sortKey(o1, paths.get(i), direction),
+                            sortKey(o2, paths.get(i), direction));
+                    if (result != 0) {
+                        return result * direction;
+                    }
+                }
+                return 0;
+            }
+        };
+    }
+
+    /**
+     * 获得排序使用的值，字段值为数组时升序取最小的元素，降序取最大的元素.
+     */
+    private static BsonValue sortKey(BsonDocument document, String path, int direction) {
+        BsonValue key = null;
+        for (BsonValue value : values(document, path)) {
+            if (!value.isArray() && (key == null || compareForSort(value, key) * direction < 0)) {
+                key = value;
+            }
+        }
+        return key;
+    }
+
+    private static int compareForSort(BsonValue v1, BsonValue v2) {
+        final int order1 = typeOrder(v1);
+        final int order2 = typeOrder(v2);
+        if (order1 != order2) {
+            return Integer.compare(order1, order2);
+        } else if (v1 == null || v1.isNull()) {
+            return 0;
+        }
+        final Integer result = compare(v1, v2);
+        return result == null ? 0 : result;
+    }
+
+    /**
+     * 不同类型之间的排序，与MongoDB的BSON类型比较顺序一致.
+     */
+    private static int typeOrder(BsonValue value) {
+        if (value == null || value.isNull()) {
+            return 0;
+        } else if (value.isNumber()) {
+            return 1;
+        }
+        switch (value.getBsonType()) {
+            case STRING:
+            case SYMBOL:
+                return 2;
+            case DOCUMENT:
+                return 3;
+            case ARRAY:
+                return 4;
+            case BINARY:
+                return 5;
+            case OBJECT_ID:
+                return 6;
+            case BOOLEAN:
+                return 7;
+            case DATE_TIME:
+                return 8;
+            case TIMESTAMP:
+                return 9;
+            default:
+                return 10;
+        }
+    }
+
+    static <T> List<T> page(List<T> list, int skip, int limit) {
+        final int from = Math.min(Math.max(skip, 0), list.size());
+        final int to = limit == 0 ? list.size() : Math.min(list.size(), from + Math.abs(limit));
+        return from == 0 && to == list.size() ? list : new ArrayList<>(list.subList(from, to));
+    }
+}
@@ -1,15 +1,38 @@
 package io.github.dbstarll.dubai.model.collection;
 
+import com.mongodb.client.DistinctIterable;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.model.CountOptions;
+import com.mongodb.client.model.Filters;
+import io.github.dbstarll.dubai.model.cache.CacheKeyBuilder;
 import io.github.dbstarll.dubai.model.cache.EntityCacheManager;
 import io.github.dbstarll.dubai.model.cache.EntityCacheManager.UpdateCacheHandler;
+import io.github.dbstarll.dubai.model.cache.QueryResultCache;
 import io.github.dbstarll.dubai.model.entity.Entity;
 import io.github.dbstarll.dubai.model.entity.EntityFactory;
 import io.github.dbstarll.dubai.model.notify.NotifyType;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
 import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
 public class CacheableCollection<E extends Entity> extends NotifiableCollection<E> {
     private EntityCacheManager entityCacheManager = new DefaultCacheManager();
+    private CacheKeyBuilder cacheKeyBuilder = new CacheKeyBuilder(null);
+    private QueryResultCache queryResultCache;
+    private final ConcurrentMap<String, Loading<E>> loading = new ConcurrentHashMap<>();
 
     public CacheableCollection(Collection<E> collection) {
         super(collection);
@@ -23,18 +46,280 @@ public class CacheableCollection<E extends Entity> extends NotifiableCollection<
         return entityCacheManager;
     }
 
+    public final void setCacheKeyBuilder(CacheKeyBuilder cacheKeyBuilder) {
+        this.cacheKeyBuilder = cacheKeyBuilder;
+    }
+
+    protected final CacheKeyBuilder getCacheKeyBuilder() {
+        return cacheKeyBuilder;
+    }
+
+    /**
+     * 设置查询结果缓存，只有在查询结果缓存中启用了本实体类时，find、count、distinct的结果才会被缓存.
+     *
+     * @param queryResultCache 查询结果缓存
+     */
+    public final void setQueryResultCache(QueryResultCache queryResultCache) {
+        this.queryResultCache = queryResultCache;
+    }
+
+    protected final QueryResultCache getQueryResultCache() {
+        return queryResultCache;
+    }
+
+    private boolean isQueryCacheable() {
+        return queryResultCache != null && queryResultCache.isEnabled(getEntityClass());
+    }
+
+    @Override
+    public long count(Bson filter, CountOptions options) {
+        if (!isQueryCacheable() || options.getCollation() != null) {
+            return super.count(filter, options);
+        }
+
+        final Class<E> entityClass = getEntityClass();
+        final String key = cacheKeyBuilder.build("count", entityClass, filter,
+                new BsonDocument("skip", new BsonInt32(options.getSkip())).append("limit",
+                        new BsonInt32(options.getLimit())));
+        final Long cached = queryResultCache.get(entityClass, key);
+        if (cached != null) {
+            return cached;
+        }
+        final long version = queryResultCache.version(entityClass);
+        final long count = super.count(filter, options);
+        queryResultCache.put(entityClass, key, version, count);
+        return count;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> FindIterable<T> find(Bson filter, Class<T> resultClass) {
+        final FindIterable<T> iterable = super.find(filter, resultClass);
+        if (resultClass == getEntityClass() && isQueryCacheable()) {
+            return (FindIterable<T>) new CachingFindIterable<>(new CachingFindIterable.Loader<E>() {
+                @Override
+                public List<E> load(Bson filter, Bson sort, int skip, int limit, FindIterable<E> delegate) {
+                    return findCached(filter, sort, skip, limit, delegate);
+                }
+            }, (FindIterable<E>) iterable, filter);
+        }
+        return iterable;
+    }
+
+    @Override
+    public <T> DistinctIterable<T> distinct(final String fieldName, Bson filter, final Class<T> resultClass) {
+        final DistinctIterable<T> iterable = super.distinct(fieldName, filter, resultClass);
+        if (isQueryCacheable()) {
+            return new CachingDistinctIterable<>(new CachingDistinctIterable.Loader<T>() {
+                @Override
+                public List<T> load(Bson filter, DistinctIterable<T> delegate) {
+                    return distinctCached(fieldName, filter, resultClass, delegate);
+                }
+            }, iterable, filter);
+        }
+        return iterable;
+    }
+
+    /**
+     * 获得find的结果.
+     * 缓存中只保存实体ID列表，命中时先从实体缓存中取出已缓存的实体，其余的用一次$in查询从数据库读取，
+     * 任何一个实体已不存在时重新执行原查询；
+     * 未命中时查询数据库，同时将查询到的实体放入实体缓存.
+     *
+     * @param filter   查询条件
+     * @param sort     排序
+     * @param skip     跳过的条目数
+     * @param limit    最多返回的条目数
+     * @param delegate 数据库的FindIterable
+     * @return 查询结果
+     */
+    private List<E> findCached(Bson filter, Bson sort, int skip, int limit, FindIterable<E> delegate) {
+        final Class<E> entityClass = getEntityClass();
+        final String key = cacheKeyBuilder.build("find", entityClass, filter, sort,
+                new BsonDocument("skip", new BsonInt32(skip)).append("limit", new BsonInt32(limit)));
+        final ObjectId[] ids = queryResultCache.get(entityClass, key);
+        if (ids != null) {
+            final List<E> resolved = resolve(ids);
+            if (resolved != null) {
+                return resolved;
+            }
+        }
+
+        final long version = queryResultCache.version(entityClass);
+        final long generation = entityCacheManager.generation(entityClass);
+        final List<E> loaded = delegate.into(new ArrayList<E>());
+        if (loaded.size() > queryResultCache.getMaximumResultSize()
+                || version != queryResultCache.version(entityClass)) {
+            return loaded;
+        }
+        final ObjectId[] loadedIds = new ObjectId[loaded.size()];
+        final List<E> results = new ArrayList<>(loaded.size());
+        for (int i = 0; i < loadedIds.length; i++) {
+            final E entity = loaded.get(i);
+            loadedIds[i] = entity.getId();
+            entityCacheManager.set(cacheKeyBuilder.build(entityClass, Filters.eq(Entity.FIELD_NAME_ID,
+                    entity.getId())), entity, generation);
+            results.add(EntityFactory.clone(entity));
+        }
+        queryResultCache.put(entityClass, key, version, loadedIds);
+        return results;
+    }
+
+    private List<E> resolve(ObjectId[] ids) {
+        final Class<E> entityClass = getEntityClass();
+        final String[] keys = new String[ids.length];
+        final List<E> entities = new ArrayList<>(Collections.<E>nCopies(ids.length, null));
+        final List<ObjectId> misses = new ArrayList<>();
+        for (int i = 0; i < ids.length; i++) {
+            keys[i] = cacheKeyBuilder.build(entityClass, Filters.eq(Entity.FIELD_NAME_ID, ids[i]));
+            final E cached = entityCacheManager.get(entityClass, keys[i]);
+            if (cached != null) {
+                entities.set(i, EntityFactory.clone(cached));
+            } else {
+                misses.add(ids[i]);
+            }
+        }
+        if (misses.isEmpty()) {
+            return entities;
+        }
+
+        final long generation = entityCacheManager.generation(entityClass);
+        final Map<ObjectId, E> loaded = new HashMap<>();
+        for (E entity : collection.find(Filters.in(Entity.FIELD_NAME_ID, misses), entityClass)
+                .into(new ArrayList<E>(misses.size()))) {
+            loaded.put(entity.getId(), entity);
+        }
+        for (int i = 0; i < ids.length; i++) {
+            if (entities.get(i) == null) {
+                final E entity = loaded.get(ids[i]);
+                if (entity == null) {
+                    return null;
+                }
+                entityCacheManager.set(keys[i], entity, generation);
+                entities.set(i, EntityFactory.clone(entity));
+            }
+        }
+        return entities;
+    }
+
+    /**
+     * 获得distinct的结果，结果列表是不可修改的.
+     *
+     * @param fieldName   字段名
+     * @param filter      查询条件
+     * @param resultClass 结果类型
+     * @param delegate    数据库的DistinctIterable
+     * @return 查询结果
+     */
+    private <T> List<T> distinctCached(String fieldName, Bson filter, Class<T> resultClass,
+                                       DistinctIterable<T> delegate) {
+        final Class<E> entityClass = getEntityClass();
+        final String key = cacheKeyBuilder.build("distinct", entityClass, filter,
+                new BsonDocument("field", new BsonString(fieldName)).append("resultClass",
+                        new BsonString(resultClass.getName())));
+        final List<T> cached = queryResultCache.get(entityClass, key);
+        if (cached != null) {
+            return cached;
+        }
+
+        final long version = queryResultCache.version(entityClass);
+        final List<T> loaded = Collections.unmodifiableList(delegate.into(new ArrayList<T>()));
+        if (loaded.size() <= queryResultCache.getMaximumResultSize()) {
+            queryResultCache.put(entityClass, key, version, loaded);
+        }
+        return loaded;
+    }
+
+    @Override
+    protected void doNotify(E document, NotifyType notifyType) {
+        super.doNotify(document, notifyType);
+        if (document != null && queryResultCache != null) {
+            queryResultCache.bump(getEntityClass());
+        }
+    }
+
     @Override
     public E findOne(final Bson filter) {
-        final E val = entityCacheManager.find(getEntityClass(), filter.toString(), new UpdateCacheHandler<E>() {
+        final String cacheKey = cacheKeyBuilder.build(getEntityClass(), filter);
+        final E val = entityCacheManager.find(getEntityClass(), cacheKey, new UpdateCacheHandler<E>() {
             @Override
             public E updateCache(String key) {
-                return collection.findOne(filter);
+                return load(key, filter);
             }
         });
 
         return EntityFactory.clone(val);
     }
 
+    /**
+     * 从数据库加载实体，同一key同时只有一个调用者查询数据库，其他调用者等待并共享查询结果.
+     * 不共享在更早的失效代数下开始的查询：这样的查询结果可能是失效之前的旧实体，
+     * 调用者以新的失效代数写入缓存时不会被拒绝，因此重新查询.
+     *
+     * @param key    缓存key
+     * @param filter 查询条件
+     * @return 查询结果
+     */
+    private E load(String key, final Bson filter) {
+        final long generation = entityCacheManager.generation(getEntityClass());
+        final Loading<E> task = new Loading<>(generation, new Callable<E>() {
+            @Override
+            public E call() {
+                return collection.findOne(filter);
+            }
+        });
+        while (true) {
+            final Loading<E> exist = loading.putIfAbsent(key, task);
+            if (exist == null) {
+                break;
+            } else if (exist.generation >= generation) {
+                return getLoaded(exist);
+            } else if (loading.replace(key, exist, task)) {
+                break;
+            }
+        }
+        try {
+            task.run();
+        } finally {
+            loading.remove(key, task);
+        }
+        return getLoaded(task);
+    }
+
+    private static <E> E getLoaded(FutureTask<E> task) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return task.get();
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                } catch (ExecutionException ex) {
+                    final Throwable cause = ex.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    } else if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new IllegalStateException(cause);
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static final class Loading<E> extends FutureTask<E> {
+        private final long generation;
+
+        private Loading(long generation, Callable<E> callable) {
+            super(callable);
+            this.generation = generation;
+        }
+    }
+
     private static class DefaultCacheManager implements EntityCacheManager {
         @Override
         public <E extends Entity> E find(Class<E> entityClass, String key, UpdateCacheHandler<E> updateCacheHandler) {
@@ -0,0 +1,99 @@
+package io.github.dbstarll.dubai.model.collection;
+
+import com.mongodb.Function;
+import com.mongodb.client.DistinctIterable;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoIterable;
+import com.mongodb.client.model.Collation;
+import org.bson.conversions.Bson;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 结果可以来自缓存或内存副本的DistinctIterable.
+ * 所有设置都同步到数据库的DistinctIterable上，设置了排序规则后直接查询数据库.
+ *
+ * @param <T> 结果类型
+ */
+final class CachingDistinctIterable<T> extends CachingMongoIterable<T> implements DistinctIterable<T> {
+    private final Loader<T> loader;
+    private final DistinctIterable<T> delegate;
+    private Bson filter;
+    private boolean cacheable = true;
+
+    CachingDistinctIterable(Loader<T> loader, DistinctIterable<T> delegate, Bson filter) {
+        this.loader = loader;
+        this.delegate = delegate;
+        this.filter = filter;
+    }
+
+    @Override
+    List<T> results() {
+        final List<T> results = loader.load(filter, delegate);
+        if (results != null) {
+            return results;
+        }
+        final List<T> loaded = new ArrayList<>();
+        delegate.into(loaded);
+        return loaded;
+    }
+
+    @Override
+    public MongoCursor<T> cursor() {
+        return cacheable ? super.cursor() : delegate.cursor();
+    }
+
+    @Override
+    public T first() {
+        return cacheable ? super.first() : delegate.first();
+    }
+
+    @Override
+    public <U> MongoIterable<U> map(Function<T, U> mapper) {
+        return cacheable ? super.map(mapper) : delegate.map(mapper);
+    }
+
+    @Override
+    public <A extends java.util.Collection<? super T>> A into(A target) {
+        return cacheable ? super.into(target) : delegate.into(target);
+    }
+
+    @Override
+    public DistinctIterable<T> filter(Bson filter) {
+        this.filter = filter;
+        delegate.filter(filter);
+        return this;
+    }
+
+    @Override
+    public DistinctIterable<T> maxTime(long maxTime, TimeUnit timeUnit) {
+        delegate.maxTime(maxTime, timeUnit);
+        return this;
+    }
+
+    @Override
+    public DistinctIterable<T> batchSize(int batchSize) {
+        delegate.batchSize(batchSize);
+        return this;
+    }
+
+    @Override
+    public DistinctIterable<T> collation(Collation collation) {
+        this.cacheable = false;
+        delegate.collation(collation);
+        return this;
+    }
+
+    interface Loader<T> {
+        /**
+         * 加载查询结果.
+         *
+         * @param filter   查询条件
+         * @param delegate 数据库的DistinctIterable
+         * @return 查询结果，返回null时直接查询数据库
+         */
+        List<T> load(Bson filter, DistinctIterable<T> delegate);
+    }
+}
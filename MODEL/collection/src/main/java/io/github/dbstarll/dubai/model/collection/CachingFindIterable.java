@@ -0,0 +1,254 @@
+package io.github.dbstarll.dubai.model.collection;
+
+import com.mongodb.CursorType;
+import com.mongodb.ExplainVerbosity;
+import com.mongodb.Function;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoIterable;
+import com.mongodb.client.model.Collation;
+import io.github.dbstarll.dubai.model.entity.Entity;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 结果可以来自缓存或内存副本的FindIterable.
+ * 所有设置都同步到数据库的FindIterable上，设置了投影、排序规则等会改变结果形态的选项后直接查询数据库.
+ *
+ * @param <E> 实体类
+ */
+final class CachingFindIterable<E extends Entity> extends CachingMongoIterable<E> implements FindIterable<E> {
+    private final Loader<E> loader;
+    private final FindIterable<E> delegate;
+    private Bson filter;
+    private Bson sort;
+    private int skip;
+    private int limit;
+    private boolean cacheable = true;
+
+    CachingFindIterable(Loader<E> loader, FindIterable<E> delegate, Bson filter) {
+        this.loader = loader;
+        this.delegate = delegate;
+        this.filter = filter;
+    }
+
+    @Override
+    List<E> results() {
+        final List<E> results = loader.load(filter, sort, skip, limit, delegate);
+        if (results != null) {
+            return results;
+        }
+        final List<E> loaded = new ArrayList<>();
+        delegate.into(loaded);
+        return loaded;
+    }
+
+    @Override
+    public MongoCursor<E> cursor() {
+        return cacheable ? super.cursor() : delegate.cursor();
+    }
+
+    /**
+     * 按limit为1查询并缓存，不读取完整的结果列表.
+     */
+    @Override
+    public E first() {
+        if (!cacheable) {
+            return delegate.first();
+        }
+        final int original = limit;
+        limit(1);
+        try {
+            return super.first();
+        } finally {
+            limit(original);
+        }
+    }
+
+    @Override
+    public <U> MongoIterable<U> map(Function<E, U> mapper) {
+        return cacheable ? super.map(mapper) : delegate.map(mapper);
+    }
+
+    @Override
+    public <A extends java.util.Collection<? super E>> A into(A target) {
+        return cacheable ? super.into(target) : delegate.into(target);
+    }
+
+    @Override
+    public FindIterable<E> filter(Bson filter) {
+        this.filter = filter;
+        delegate.filter(filter);
+        return this;
+    }
+
+    @Override
+    public FindIterable<E> limit(int limit) {
+        this.limit = limit;
+        delegate.limit(limit);
+        return this;
+    }
+
+    @Override
+    public FindIterable<E> skip(int skip) {
+        this.skip = skip;
+        delegate.skip(skip);
+        return this;
+    }
+
+    @Override
+    public FindIterable<E> sort(Bson sort) {
+        this.sort = sort;
+        delegate.sort(sort);
+        return this;
+    }
+
+    @Override
+    public FindIterable<E> maxTime(long maxTime, TimeUnit timeUnit) {
+        delegate.maxTime(maxTime, timeUnit);
+        return this;
+    }
+
+    @Override
+    public FindIterable<E> maxAwaitTime(long maxAwaitTime, TimeUnit timeUnit) {
+        delegate.maxAwaitTime(maxAwaitTime, timeUnit);
+        return this;
+    }
+
+    @Override
+    public FindIterable<E> projection(Bson projection) {
+        this.cacheable = false;
+        delegate.projection(projection);
+        return this;
+    }
+
+    @Override
+    public FindIterable<E> noCursorTimeout(boolean noCursorTimeout) {
+        delegate.noCursorTimeout(noCursorTimeout);
+        return this;
+    }
+
+    @Override
+    @Deprecated
+    public FindIterable<E> oplogReplay(boolean oplogReplay) {
+        delegate.oplogReplay(oplogReplay);
+        return this;
+    }
+
+    @Override
+    public FindIterable<E> partial(boolean partial) {
+        this.cacheable = false;
+        delegate.partial(partial);
+        return this;
+    }
+
+    @Override
+    public FindIterable<E> cursorType(CursorType cursorType) {
+        this.cacheable = false;
+        delegate.cursorType(cursorType);
+        return this;
+    }
+
+    @Override
+    public FindIterable<E> batchSize(int batchSize) {
+        delegate.batchSize(batchSize);
+        return this;
+    }
+
+    @Override
+    public FindIterable<E> collation(Collation collation) {
+        this.cacheable = false;
+        delegate.collation(collation);
+        return this;
+    }
+
+    @Override
+    public FindIterable<E> comment(String comment) {
+        delegate.comment(comment);
+        return this;
+    }
+
+    @Override
+    public FindIterable<E> hint(Bson hint) {
+        delegate.hint(hint);
+        return this;
+    }
+
+    @Override
+    public FindIterable<E> hintString(String hint) {
+        delegate.hintString(hint);
+        return this;
+    }
+
+    @Override
+    public FindIterable<E> max(Bson max) {
+        this.cacheable = false;
+        delegate.max(max);
+        return this;
+    }
+
+    @Override
+    public FindIterable<E> min(Bson min) {
+        this.cacheable = false;
+        delegate.min(min);
+        return this;
+    }
+
+    @Override
+    public FindIterable<E> returnKey(boolean returnKey) {
+        this.cacheable = false;
+        delegate.returnKey(returnKey);
+        return this;
+    }
+
+    @Override
+    public FindIterable<E> showRecordId(boolean showRecordId) {
+        this.cacheable = false;
+        delegate.showRecordId(showRecordId);
+        return this;
+    }
+
+    @Override
+    public FindIterable<E> allowDiskUse(Boolean allowDiskUse) {
+        delegate.allowDiskUse(allowDiskUse);
+        return this;
+    }
+
+    @Override
+    public Document explain() {
+        return delegate.explain();
+    }
+
+    @Override
+    public Document explain(ExplainVerbosity verbosity) {
+        return delegate.explain(verbosity);
+    }
+
+    @Override
+    public <T> T explain(Class<T> explainResultClass) {
+        return delegate.explain(explainResultClass);
+    }
+
+    @Override
+    public <T> T explain(Class<T> explainResultClass, ExplainVerbosity verbosity) {
+        return delegate.explain(explainResultClass, verbosity);
+    }
+
+    interface Loader<E> {
+        /**
+         * 加载查询结果.
+         *
+         * @param filter   查询条件
+         * @param sort     排序
+         * @param skip     跳过的条目数
+         * @param limit    最多返回的条目数
+         * @param delegate 数据库的FindIterable
+         * @return 查询结果，返回null时直接查询数据库
+         */
+        List<E> load(Bson filter, Bson sort, int skip, int limit, FindIterable<E> delegate);
+    }
+}
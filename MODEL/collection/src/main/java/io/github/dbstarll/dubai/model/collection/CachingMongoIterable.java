@@ -0,0 +1,66 @@
+package io.github.dbstarll.dubai.model.collection;
+
+import com.mongodb.Function;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoIterable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 查询结果可以来自缓存的MongoIterable，子类通过{@link #results()}提供完整的结果列表.
+ *
+ * @param <T> 结果类型
+ */
+abstract class CachingMongoIterable<T> implements MongoIterable<T> {
+    /**
+     * 获得完整的结果列表，在每次遍历时调用.
+     *
+     * @return 结果列表
+     */
+    abstract List<T> results();
+
+    @Override
+    public MongoCursor<T> iterator() {
+        return cursor();
+    }
+
+    @Override
+    public MongoCursor<T> cursor() {
+        return new ListMongoCursor<>(results());
+    }
+
+    @Override
+    public T first() {
+        final List<T> results = results();
+        return results.isEmpty() ? null : results.get(0);
+    }
+
+    @Override
+    public <U> MongoIterable<U> map(final Function<T, U> mapper) {
+        final CachingMongoIterable<T> source = this;
+        return new CachingMongoIterable<U>() {
+            @Override
+            List<U> results() {
+                final List<T> results = source.results();
+                final List<U> mapped = new ArrayList<>(results.size());
+                for (T result : results) {
+                    mapped.add(mapper.apply(result));
+                }
+                return mapped;
+            }
+
+            @Override
+            public MongoIterable<U> batchSize(int batchSize) {
+                source.batchSize(batchSize);
+                return this;
+            }
+        };
+    }
+
+    @Override
+    public <A extends java.util.Collection<? super T>> A into(A target) {
+        target.addAll(results());
+        return target;
+    }
+}
@@ -457,6 +457,55 @@ public interface Collection<E extends Entity> {
      */
     E save(E entity, ObjectId newEntityId);
 
+    /**
+     * 以实体当前的lastModified作为版本号更新一个实体.
+     *
+     * <p>
+     * 只有数据库中实体的lastModified与entity的lastModified相同时才执行更新，并将lastModified更新为当前时间；
+     * 否则不做任何修改，entity的lastModified保持不变，返回null。
+     * </p>
+     *
+     * @param entity 需要更新的实体，id不能为null
+     * @return 返回更新后的实体，若实体已被修改或者已不存在，则返回null
+     */
+    E saveIfUnmodified(E entity);
+
+    /**
+     * 批量插入或更新实体.
+     *
+     * <p>
+     * 与逐个调用{@link #save(Entity)}的效果相同，但每batchSize个实体中需要插入的实体通过一次insertMany写入，
+     * 需要更新的实体通过一次{@link #replaceAll(Bson, List, BulkWriteOptions)}写入。列表中的null会被忽略。
+     * </p>
+     *
+     * @param entities  需要插入或更新的实体
+     * @param batchSize 每次批量写入的最大实体数
+     * @return 返回传入的实体列表
+     */
+    List<E> saveAll(List<E> entities, int batchSize);
+
+    /**
+     * 按实体的id批量替换实体，所有替换在一次bulkWrite中完成.
+     *
+     * @param filter       与每个实体的id条件合并的附加查询条件，可以为null
+     * @param replacements 替换的实体，id不能为null
+     * @param options      bulkWrite的选项
+     * @return 匹配到的实体数
+     * @throws com.mongodb.MongoBulkWriteException if there's an exception in the bulk write operation
+     * @throws com.mongodb.MongoException          if the write failed due some other failure
+     */
+    long replaceAll(Bson filter, List<? extends E> replacements, BulkWriteOptions options);
+
+    /**
+     * 在实体集合上创建索引，索引已经存在时不做任何处理.
+     *
+     * @param keys    索引的字段
+     * @param options 索引的选项
+     * @return 索引名
+     * @throws com.mongodb.MongoException if the write failed due some other failure
+     */
+    String createIndex(Bson keys, IndexOptions options);
+
     /**
      * 返回不带defunct字段过滤的Collection对象，以便进行物理删除和全量查询.
      *
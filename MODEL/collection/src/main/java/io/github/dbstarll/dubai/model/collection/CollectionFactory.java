@@ -1,19 +1,41 @@
 package io.github.dbstarll.dubai.model.collection;
 
 import com.mongodb.client.MongoDatabase;
+import io.github.dbstarll.dubai.model.cache.CacheKeyBuilder;
+import io.github.dbstarll.dubai.model.cache.CompanyCounterStore;
 import io.github.dbstarll.dubai.model.cache.EntityCacheManager;
+import io.github.dbstarll.dubai.model.cache.QueryResultCache;
 import io.github.dbstarll.dubai.model.entity.Entity;
 import io.github.dbstarll.dubai.model.entity.EntityFactory;
+import io.github.dbstarll.dubai.model.entity.IdFilter;
+import io.github.dbstarll.dubai.model.entity.Replicated;
 import io.github.dbstarll.dubai.model.entity.func.Cacheable;
 import io.github.dbstarll.dubai.model.entity.func.Defunctable;
 import io.github.dbstarll.dubai.model.entity.func.Notifiable;
+import io.github.dbstarll.dubai.model.entity.join.CompanyBase;
+import io.github.dbstarll.dubai.model.notify.EntityNotifyConsumer;
 import io.github.dbstarll.dubai.model.notify.NotifyProvider;
 
+import java.util.concurrent.Executor;
+
 public final class CollectionFactory {
+    private static final Executor ID_FILTER_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            final Thread thread = new Thread(command, "id-filter-build");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    };
+
     private final MongoDatabase mongoDatabase;
     private NotifyProvider notifyProvider;
     private EntityCacheManager entityCacheManager;
     private CollectionNameGenerator collectionNameGenerator = new AnnotationCollectionNameGenerator();
+    private CacheKeyBuilder cacheKeyBuilder;
+    private QueryResultCache queryResultCache;
+    private EntityNotifyConsumer entityNotifyConsumer;
+    private CompanyCounterStore companyCounterStore;
 
     public CollectionFactory(MongoDatabase mongoDatabase) {
         this.mongoDatabase = mongoDatabase;
@@ -27,6 +49,29 @@ public final class CollectionFactory {
         this.entityCacheManager = entityCacheManager;
     }
 
+    public void setQueryResultCache(QueryResultCache queryResultCache) {
+        this.queryResultCache = queryResultCache;
+    }
+
+    /**
+     * 设置实体变更通知的消费者，标注了{@link Replicated}的实体类的Collection会注册为监听器以同步内存副本.
+     *
+     * @param entityNotifyConsumer 实体变更通知的消费者
+     */
+    public void setEntityNotifyConsumer(EntityNotifyConsumer entityNotifyConsumer) {
+        this.entityNotifyConsumer = entityNotifyConsumer;
+    }
+
+    /**
+     * 设置按公司计数的存储，创建Notifiable并且是CompanyBase的实体类的Collection时启用计数，
+     * 在发送变更通知以及修改companyId时同时更新计数.
+     *
+     * @param companyCounterStore 按公司计数的存储
+     */
+    public void setCompanyCounterStore(CompanyCounterStore companyCounterStore) {
+        this.companyCounterStore = companyCounterStore;
+    }
+
     public void setCollectionNameGenerator(CollectionNameGenerator collectionNameGenerator) {
         this.collectionNameGenerator = collectionNameGenerator;
     }
@@ -41,7 +86,14 @@ public final class CollectionFactory {
     public <E extends Entity> Collection<E> newInstance(Class<E> entityClass) throws CollectionInitializeException {
         if (EntityFactory.isEntityClass(entityClass)) {
             Collection<E> collection = buildBaseCollection(entityClass);
-            if (Cacheable.class.isAssignableFrom(entityClass)) {
+            if (companyCounterStore != null && CompanyBase.class.isAssignableFrom(entityClass)
+                    && Notifiable.class.isAssignableFrom(entityClass)) {
+                collection = buildCompanyCountingCollection(collection);
+            }
+            final Replicated replicated = entityClass.getAnnotation(Replicated.class);
+            if (replicated != null && Notifiable.class.isAssignableFrom(entityClass)) {
+                collection = buildReplicatedCollection(collection, replicated);
+            } else if (Cacheable.class.isAssignableFrom(entityClass)) {
                 collection = buildCacheableCollection(collection);
             } else if (Notifiable.class.isAssignableFrom(entityClass)) {
                 collection = buildNotifiableCollection(collection);
@@ -49,6 +101,10 @@ public final class CollectionFactory {
             if (Defunctable.class.isAssignableFrom(entityClass)) {
                 collection = buildDefunctableCollection(collection);
             }
+            final IdFilter idFilter = entityClass.getAnnotation(IdFilter.class);
+            if (idFilter != null && entityNotifyConsumer != null && Notifiable.class.isAssignableFrom(entityClass)) {
+                collection = buildIdFilteredCollection(collection, idFilter);
+            }
             return collection;
         } else {
             throw new CollectionInitializeException("Invalid EntityClass: " + entityClass);
@@ -63,23 +119,71 @@ public final class CollectionFactory {
 
     private <E extends Entity> CacheableCollection<E> buildCacheableCollection(Collection<E> base) {
         final CacheableCollection<E> collection = new CacheableCollection<>(base);
+        collection.setCacheKeyBuilder(getCacheKeyBuilder());
         if (entityCacheManager != null) {
             collection.setEntityCacheManager(entityCacheManager);
         }
-        if (notifyProvider != null) {
-            collection.setNotifyProvider(notifyProvider);
+        if (queryResultCache != null) {
+            collection.setQueryResultCache(queryResultCache);
+        }
+        final NotifyProvider provider = getNotifyProvider(base.getEntityClass());
+        if (provider != null) {
+            collection.setNotifyProvider(provider);
+        }
+        return collection;
+    }
+
+    private NotifyProvider getNotifyProvider(Class<?> entityClass) {
+        if (companyCounterStore != null && CompanyBase.class.isAssignableFrom(entityClass)) {
+            return companyCounterStore.decorate(notifyProvider);
+        }
+        return notifyProvider;
+    }
+
+    private synchronized CacheKeyBuilder getCacheKeyBuilder() {
+        if (cacheKeyBuilder == null) {
+            cacheKeyBuilder = new CacheKeyBuilder(mongoDatabase.getCodecRegistry());
+        }
+        return cacheKeyBuilder;
+    }
+
+    private <E extends Entity> ReplicatedCollection<E> buildReplicatedCollection(Collection<E> base,
+                                                                                 Replicated replicated) {
+        final ReplicatedCollection<E> collection = new ReplicatedCollection<>(base, mongoDatabase.getCodecRegistry(),
+                replicated.indexes(), replicated.maxSize());
+        final NotifyProvider provider = getNotifyProvider(base.getEntityClass());
+        if (provider != null) {
+            collection.setNotifyProvider(provider);
+        }
+        if (entityNotifyConsumer != null) {
+            entityNotifyConsumer.regist(collection, base.getEntityClass());
         }
         return collection;
     }
 
     private <E extends Entity> NotifiableCollection<E> buildNotifiableCollection(Collection<E> base) {
         final NotifiableCollection<E> collection = new NotifiableCollection<>(base);
-        if (notifyProvider != null) {
-            collection.setNotifyProvider(notifyProvider);
+        final NotifyProvider provider = getNotifyProvider(base.getEntityClass());
+        if (provider != null) {
+            collection.setNotifyProvider(provider);
         }
         return collection;
     }
 
+    private <E extends Entity> IdFilteredCollection<E> buildIdFilteredCollection(Collection<E> base,
+                                                                                 IdFilter idFilter) {
+        final IdFilteredCollection<E> collection = new IdFilteredCollection<>(base, idFilter.expectedInsertions(),
+                idFilter.fpp());
+        entityNotifyConsumer.regist(collection, base.getEntityClass());
+        collection.setBuildExecutor(ID_FILTER_EXECUTOR);
+        return collection;
+    }
+
+    private <E extends Entity> CompanyCountingCollection<E> buildCompanyCountingCollection(Collection<E> base) {
+        companyCounterStore.enable(base.getEntityClass());
+        return new CompanyCountingCollection<>(base, companyCounterStore);
+    }
+
     private <E extends Entity> DefunctableCollection<E> buildDefunctableCollection(Collection<E> base) {
         return new DefunctableCollection<>(base);
     }
@@ -71,6 +71,14 @@ public abstract class CollectionWrapper<E extends Entity> extends AbstractCollec
         return collection.updateOne(filter, update, updateOptions);
     }
 
+    public long replaceAll(Bson filter, List<? extends E> replacements, BulkWriteOptions options) {
+        return collection.replaceAll(filter, replacements, options);
+    }
+
+    public String createIndex(Bson keys, IndexOptions options) {
+        return collection.createIndex(keys, options);
+    }
+
     public UpdateResult updateMany(Bson filter, Bson update, UpdateOptions updateOptions) {
         return collection.updateMany(filter, update, updateOptions);
     }
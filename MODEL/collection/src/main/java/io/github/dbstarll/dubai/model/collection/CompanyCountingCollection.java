@@ -0,0 +1,188 @@
+package io.github.dbstarll.dubai.model.collection;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.FindOneAndReplaceOptions;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.result.UpdateResult;
+import io.github.dbstarll.dubai.model.cache.CompanyCounterStore;
+import io.github.dbstarll.dubai.model.entity.Entity;
+import io.github.dbstarll.dubai.model.entity.func.Defunctable;
+import io.github.dbstarll.dubai.model.entity.join.CompanyBase;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * 维护按公司计数的Collection：更新或替换实体时比较写入前后实体计入的公司，companyId或者失效状态改变时转移计数.
+ * 新增和删除由{@link CompanyCounterStore#decorate}根据变更通知更新，不在这里处理.
+ *
+ * @param <E> 实体类
+ */
+public class CompanyCountingCollection<E extends Entity> extends CollectionWrapper<E> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CompanyCountingCollection.class);
+
+    private static final Bson PROJECTION = Projections.include(CompanyBase.FIELD_NAME_COMPANY_ID,
+            Defunctable.FIELD_NAME_DEFUNCT);
+
+    private final CompanyCounterStore companyCounterStore;
+
+    public CompanyCountingCollection(Collection<E> collection, CompanyCounterStore companyCounterStore) {
+        super(collection);
+        this.companyCounterStore = notNull(companyCounterStore, "companyCounterStore is null");
+    }
+
+    @Override
+    public UpdateResult replaceOne(Bson filter, E replacement, ReplaceOptions replaceOptions) {
+        final Map<ObjectId, ObjectId> before = snapshot(filter, true);
+        final UpdateResult result = super.replaceOne(filter, replacement, replaceOptions);
+        move(before, replacement);
+        return result;
+    }
+
+    @Override
+    public long replaceAll(Bson filter, List<? extends E> replacements, BulkWriteOptions options) {
+        final List<ObjectId> ids = new ArrayList<>(replacements.size());
+        for (E replacement : replacements) {
+            ids.add(replacement.getId());
+        }
+        final Bson idsFilter = Filters.in(Entity.FIELD_NAME_ID, ids);
+        final Map<ObjectId, ObjectId> before = ids.isEmpty() ? Collections.<ObjectId, ObjectId>emptyMap()
+                : snapshot(filter == null ? idsFilter : Filters.and(idsFilter, filter), false);
+        final long matched = super.replaceAll(filter, replacements, options);
+        for (E replacement : replacements) {
+            move(before, replacement);
+        }
+        return matched;
+    }
+
+    @Override
+    public E findOneAndReplace(Bson filter, E replacement, FindOneAndReplaceOptions options) {
+        final Map<ObjectId, ObjectId> before = snapshot(filter, true);
+        final E replaced = super.findOneAndReplace(filter, replacement, options);
+        move(before, replacement);
+        return replaced;
+    }
+
+    @Override
+    public UpdateResult updateOne(Bson filter, Bson update, UpdateOptions updateOptions) {
+        if (!isCounted(update)) {
+            return super.updateOne(filter, update, updateOptions);
+        }
+        final Map<ObjectId, ObjectId> before = snapshot(filter, false);
+        final UpdateResult result = super.updateOne(filter, update, updateOptions);
+        moveUpdated(before);
+        return result;
+    }
+
+    @Override
+    public UpdateResult updateMany(Bson filter, Bson update, UpdateOptions updateOptions) {
+        if (!isCounted(update)) {
+            return super.updateMany(filter, update, updateOptions);
+        }
+        final Map<ObjectId, ObjectId> before = snapshot(filter, false);
+        final UpdateResult result = super.updateMany(filter, update, updateOptions);
+        moveUpdated(before);
+        return result;
+    }
+
+    @Override
+    public E findOneAndUpdate(Bson filter, Bson update, FindOneAndUpdateOptions options) {
+        if (!isCounted(update)) {
+            return super.findOneAndUpdate(filter, update, options);
+        }
+        final Map<ObjectId, ObjectId> before = snapshot(filter, true);
+        final E entity = super.findOneAndUpdate(filter, update, options);
+        moveUpdated(before);
+        return entity;
+    }
+
+    /**
+     * 判断更新是否可能改变实体计入的公司. 置为失效由变更通知按删除处理，无法解析的更新按可能改变处理.
+     */
+    private boolean isCounted(Bson update) {
+        if (update == DefunctableCollection.DEFUNCT) {
+            return false;
+        }
+        final BsonDocument document;
+        try {
+            document = update.toBsonDocument(BsonDocument.class, MongoClientSettings.getDefaultCodecRegistry());
+        } catch (RuntimeException ex) {
+            LOGGER.debug("render update failed: {}", ex.getMessage());
+            return true;
+        }
+        for (BsonValue fields : document.values()) {
+            if (fields.isDocument() && (fields.asDocument().containsKey(CompanyBase.FIELD_NAME_COMPANY_ID)
+                    || fields.asDocument().containsKey(Defunctable.FIELD_NAME_DEFUNCT))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 读取匹配的实体当前计入的公司.
+     *
+     * @return 实体ID到计入的公司ID的映射，实体不计数时公司ID为null
+     */
+    private Map<ObjectId, ObjectId> snapshot(Bson filter, boolean first) {
+        final Map<ObjectId, ObjectId> snapshot = new HashMap<>();
+        FindIterable<E> iterable = collection.find(filter).projection(PROJECTION);
+        if (first) {
+            iterable = iterable.limit(1);
+        }
+        final MongoCursor<E> cursor = iterable.iterator();
+        try {
+            while (cursor.hasNext()) {
+                final E entity = cursor.next();
+                snapshot.put(entity.getId(), countedCompanyId(entity));
+            }
+        } finally {
+            cursor.close();
+        }
+        return snapshot;
+    }
+
+    private void moveUpdated(Map<ObjectId, ObjectId> before) {
+        if (!before.isEmpty()) {
+            final Map<ObjectId, ObjectId> after = snapshot(Filters.in(Entity.FIELD_NAME_ID, before.keySet()), false);
+            for (Entry<ObjectId, ObjectId> entry : before.entrySet()) {
+                if (after.containsKey(entry.getKey())) {
+                    companyCounterStore.move(getEntityClass(), entry.getValue(), after.get(entry.getKey()));
+                }
+            }
+        }
+    }
+
+    private void move(Map<ObjectId, ObjectId> before, E replacement) {
+        if (replacement != null && before.containsKey(replacement.getId())) {
+            companyCounterStore.move(getEntityClass(), before.get(replacement.getId()),
+                    countedCompanyId(replacement));
+        }
+    }
+
+    private static ObjectId countedCompanyId(Entity entity) {
+        if (entity instanceof Defunctable && ((Defunctable) entity).isDefunct()) {
+            return null;
+        }
+        return ((CompanyBase) entity).getCompanyId();
+    }
+}
@@ -10,6 +10,7 @@ import io.github.dbstarll.dubai.model.entity.func.Defunctable;
 import org.bson.BsonBoolean;
 import org.bson.conversions.Bson;
 
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 public class DefunctableCollection<E extends Entity> extends CollectionWrapper<E> {
@@ -38,6 +39,11 @@ public class DefunctableCollection<E extends Entity> extends CollectionWrapper<E
         return super.replaceOne(queryFilter(filter), replacement, replaceOptions);
     }
 
+    @Override
+    public long replaceAll(Bson filter, List<? extends E> replacements, BulkWriteOptions options) {
+        return super.replaceAll(queryFilter(filter), replacements, options);
+    }
+
     @Override
     public UpdateResult updateOne(Bson filter, Bson update, UpdateOptions updateOptions) {
         return super.updateOne(queryFilter(filter), update, updateOptions);
@@ -0,0 +1,127 @@
+package io.github.dbstarll.dubai.model.collection;
+
+import org.bson.types.ObjectId;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * 实体ID的Bloom过滤器，线程安全，只能加入不能删除.
+ * 位数组大小和哈希函数个数根据预期数量和误判率计算，每个ID通过两个64位哈希值的组合得到各个位置.
+ */
+public final class IdBloomFilter {
+    private static final double LN2 = Math.log(2);
+
+    private final AtomicLongArray words;
+    private final long numBits;
+    private final int numHashFunctions;
+    private final AtomicLong bitCount = new AtomicLong();
+
+    /**
+     * 构造IdBloomFilter.
+     *
+     * @param expectedInsertions 预期加入的ID数量
+     * @param fpp                达到预期数量时的误判率
+     */
+    public IdBloomFilter(long expectedInsertions, double fpp) {
+        isTrue(expectedInsertions > 0, "expectedInsertions must be positive: %d", expectedInsertions);
+        isTrue(fpp > 0 && fpp < 1, "fpp must be in (0, 1): %f", fpp);
+        final long bits = Math.max(64, (long) (-expectedInsertions * Math.log(fpp) / (LN2 * LN2)));
+        final int wordCount = (int) Math.min(Integer.MAX_VALUE, (bits + 63) / 64);
+        this.words = new AtomicLongArray(wordCount);
+        this.numBits = wordCount * 64L;
+        this.numHashFunctions = Math.max(1, (int) Math.round((double) numBits / expectedInsertions * LN2));
+    }
+
+    /**
+     * 加入实体ID.
+     *
+     * @param id 实体ID
+     */
+    public void put(ObjectId id) {
+        final long h1 = hash(id);
+        final long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L) | 1;
+        for (int i = 0; i < numHashFunctions; i++) {
+            final long index = ((h1 + i * h2) & Long.MAX_VALUE) % numBits;
+            final int word = (int) (index >>> 6);
+            final long mask = 1L << index;
+            long current;
+            while (((current = words.get(word)) & mask) == 0) {
+                if (words.compareAndSet(word, current, current | mask)) {
+                    bitCount.incrementAndGet();
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * 判断实体ID是否可能存在.
+     *
+     * @param id 实体ID
+     * @return 返回false时一定不存在，返回true时可能存在
+     */
+    public boolean mightContain(ObjectId id) {
+        final long h1 = hash(id);
+        final long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L) | 1;
+        for (int i = 0; i < numHashFunctions; i++) {
+            final long index = ((h1 + i * h2) & Long.MAX_VALUE) % numBits;
+            if ((words.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 根据已置位的比例估算当前的误判率.
+     *
+     * @return 估算的误判率
+     */
+    public double expectedFpp() {
+        return Math.pow((double) bitCount.get() / numBits, numHashFunctions);
+    }
+
+    /**
+     * 获得位数组占用的内存字节数.
+     *
+     * @return 内存字节数
+     */
+    public long getMemoryBytes() {
+        return words.length() * 8L;
+    }
+
+    public int getNumHashFunctions() {
+        return numHashFunctions;
+    }
+
+    /**
+     * 将12字节的ObjectId混合为64位哈希值.
+     */
+    private static long hash(ObjectId id) {
+        final byte[] bytes = id.toByteArray();
+        long high = 0;
+        for (int i = 0; i < 8; i++) {
+            high = high << 8 | (bytes[i] & 0xff);
+        }
+        long low = 0;
+        for (int i = 8; i < bytes.length; i++) {
+            low = low << 8 | (bytes[i] & 0xff);
+        }
+        return mix(high ^ mix(low + 0x9E3779B97F4A7C15L));
+    }
+
+    /**
+     * MurmurHash3的64位finalizer.
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
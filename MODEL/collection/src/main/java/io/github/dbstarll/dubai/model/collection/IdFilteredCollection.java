@@ -0,0 +1,319 @@
+package io.github.dbstarll.dubai.model.collection;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.FindOneAndReplaceOptions;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.InsertOneOptions;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.result.UpdateResult;
+import io.github.dbstarll.dubai.model.entity.Entity;
+import io.github.dbstarll.dubai.model.notify.EntityNotifyListener;
+import io.github.dbstarll.dubai.model.notify.NotifyType;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 通过实体ID的Bloom过滤器加速contains和findById的Collection.
+ * <ul>
+ * <li>{@link #build()}通过只返回_id的全表扫描建立过滤器，建立完成前所有查询都访问数据库；
+ * 设置了{@link #setBuildExecutor}时在第一次查询时在后台建立</li>
+ * <li>本地的插入、upsert以及其他节点的insert通知会加入过滤器，其他节点插入后到通知到达前的短暂时间内可能误判为不存在</li>
+ * <li>过滤器判定不存在时直接返回，判定可能存在时再查询数据库</li>
+ * </ul>
+ *
+ * @param <E> 实体类
+ */
+public class IdFilteredCollection<E extends Entity> extends CollectionWrapper<E> implements EntityNotifyListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(IdFilteredCollection.class);
+
+    private static final int SCAN_BATCH_SIZE = 10000;
+
+    private final IdBloomFilter idFilter;
+    private volatile boolean ready;
+    private volatile Executor buildExecutor;
+    private final AtomicBoolean building = new AtomicBoolean();
+
+    private final AtomicLong negativeCount = new AtomicLong();
+    private final AtomicLong positiveCount = new AtomicLong();
+    private final AtomicLong falsePositiveCount = new AtomicLong();
+
+    /**
+     * 构造IdFilteredCollection.
+     *
+     * @param collection         被包装的Collection
+     * @param expectedInsertions 预期的实体数量
+     * @param fpp                达到预期实体数量时的误判率
+     */
+    public IdFilteredCollection(Collection<E> collection, long expectedInsertions, double fpp) {
+        super(collection);
+        this.idFilter = new IdBloomFilter(expectedInsertions, fpp);
+    }
+
+    /**
+     * 扫描数据表中的所有实体ID建立过滤器，扫描期间插入的实体同时通过插入路径加入过滤器.
+     */
+    public void build() {
+        long count = 0;
+        final long start = System.currentTimeMillis();
+        final MongoCursor<BsonDocument> cursor = collection.find(new BsonDocument(), BsonDocument.class)
+                .projection(Projections.include(Entity.FIELD_NAME_ID)).batchSize(SCAN_BATCH_SIZE).iterator();
+        try {
+            while (cursor.hasNext()) {
+                final BsonValue id = cursor.next().get(Entity.FIELD_NAME_ID);
+                if (id != null && id.isObjectId()) {
+                    idFilter.put(id.asObjectId().getValue());
+                    count++;
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        ready = true;
+        LOGGER.info("id filter of {} built: {} ids in {}ms, memory: {} bytes, expectedFpp: {}",
+                getEntityClass().getName(), count, System.currentTimeMillis() - start, idFilter.getMemoryBytes(),
+                idFilter.expectedFpp());
+    }
+
+    /**
+     * 设置在后台建立过滤器的Executor，设置后第一次查询时提交{@link #build()}，建立完成前所有查询都访问数据库.
+     *
+     * @param buildExecutor 建立过滤器的Executor
+     */
+    public void setBuildExecutor(Executor buildExecutor) {
+        this.buildExecutor = buildExecutor;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    private void buildOnDemand() {
+        final Executor executor = buildExecutor;
+        if (executor != null && building.compareAndSet(false, true)) {
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            build();
+                        } catch (RuntimeException ex) {
+                            LOGGER.warn("build id filter of " + getEntityClass().getName() + " failed", ex);
+                            building.set(false);
+                        }
+                    }
+                });
+            } catch (RuntimeException ex) {
+                LOGGER.warn("submit id filter build of " + getEntityClass().getName() + " failed", ex);
+                building.set(false);
+            }
+        }
+    }
+
+    @Override
+    public boolean contains(ObjectId id) {
+        if (isDefinitelyAbsent(id)) {
+            return false;
+        }
+        final boolean contains = super.contains(id);
+        checkFalsePositive(id, contains);
+        return contains;
+    }
+
+    @Override
+    public E findById(ObjectId id) {
+        if (isDefinitelyAbsent(id)) {
+            return null;
+        }
+        final E entity = super.findById(id);
+        checkFalsePositive(id, entity != null);
+        return entity;
+    }
+
+    private boolean isDefinitelyAbsent(ObjectId id) {
+        if (id == null) {
+            return false;
+        } else if (!ready) {
+            buildOnDemand();
+            return false;
+        } else if (idFilter.mightContain(id)) {
+            positiveCount.incrementAndGet();
+            return false;
+        }
+        negativeCount.incrementAndGet();
+        return true;
+    }
+
+    private void checkFalsePositive(ObjectId id, boolean exists) {
+        if (id != null && ready && !exists) {
+            falsePositiveCount.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void insertOne(E document, InsertOneOptions options) {
+        put(document);
+        super.insertOne(document, options);
+    }
+
+    @Override
+    public void insertMany(List<? extends E> documents, InsertManyOptions options) {
+        for (E document : documents) {
+            put(document);
+        }
+        super.insertMany(documents, options);
+    }
+
+    @Override
+    public UpdateResult replaceOne(Bson filter, E replacement, ReplaceOptions replaceOptions) {
+        return putUpserted(super.replaceOne(filter, replacement, replaceOptions));
+    }
+
+    @Override
+    public UpdateResult updateOne(Bson filter, Bson update, UpdateOptions updateOptions) {
+        return putUpserted(super.updateOne(filter, update, updateOptions));
+    }
+
+    @Override
+    public UpdateResult updateMany(Bson filter, Bson update, UpdateOptions updateOptions) {
+        return putUpserted(super.updateMany(filter, update, updateOptions));
+    }
+
+    @Override
+    public E findOneAndReplace(Bson filter, E replacement, FindOneAndReplaceOptions options) {
+        final E entity = super.findOneAndReplace(filter, replacement, options);
+        if (options.isUpsert()) {
+            if (replacement != null && replacement.getId() != null) {
+                put(replacement);
+            } else {
+                putUpserted(filter, entity);
+            }
+        }
+        return entity;
+    }
+
+    @Override
+    public E findOneAndUpdate(Bson filter, Bson update, FindOneAndUpdateOptions options) {
+        final E entity = super.findOneAndUpdate(filter, update, options);
+        if (options.isUpsert()) {
+            putUpserted(filter, entity);
+        }
+        return entity;
+    }
+
+    @Override
+    public <T extends Entity> void onNotify(Class<T> entityClass, ObjectId id, NotifyType notifyType,
+                                            ObjectId companyId, String clientId) {
+        if (id != null && notifyType != NotifyType.delete && getEntityClass() == entityClass) {
+            idFilter.put(id);
+        }
+    }
+
+    private void put(E document) {
+        if (document != null && document.getId() != null) {
+            idFilter.put(document.getId());
+        }
+    }
+
+    /**
+     * 处理findOneAndXxx的upsert：返回了实体时直接加入；未返回实体时可能插入了新实体，
+     * 从查询条件中获取_id，无法获取时过滤器不再可信，停止使用直到重新{@link #build()}.
+     */
+    private void putUpserted(Bson filter, E entity) {
+        if (entity != null) {
+            put(entity);
+            return;
+        }
+        BsonValue id = null;
+        try {
+            id = filter.toBsonDocument(BsonDocument.class, MongoClientSettings.getDefaultCodecRegistry())
+                    .get(Entity.FIELD_NAME_ID);
+        } catch (RuntimeException ex) {
+            LOGGER.debug("render filter failed: {}", ex.getMessage());
+        }
+        if (id != null && id.isObjectId()) {
+            idFilter.put(id.asObjectId().getValue());
+        } else if (ready) {
+            ready = false;
+            building.set(false);
+            LOGGER.warn("id filter of {} disabled: upserted id unknown, rebuild required", getEntityClass().getName());
+        }
+    }
+
+    private UpdateResult putUpserted(UpdateResult result) {
+        final BsonValue upsertedId = result == null ? null : result.getUpsertedId();
+        if (upsertedId != null && upsertedId.isObjectId()) {
+            idFilter.put(upsertedId.asObjectId().getValue());
+        }
+        return result;
+    }
+
+    /**
+     * 获得过滤器直接判定为不存在的次数.
+     *
+     * @return 判定为不存在的次数
+     */
+    public long getNegativeCount() {
+        return negativeCount.get();
+    }
+
+    /**
+     * 获得过滤器判定为可能存在的次数.
+     *
+     * @return 判定为可能存在的次数
+     */
+    public long getPositiveCount() {
+        return positiveCount.get();
+    }
+
+    /**
+     * 获得过滤器判定为可能存在但数据库中不存在的次数.
+     *
+     * @return 误判次数
+     */
+    public long getFalsePositiveCount() {
+        return falsePositiveCount.get();
+    }
+
+    /**
+     * 获得实际观测到的误判率，即所有不存在的ID中被误判为可能存在的比例.
+     * 被删除的实体仍然留在过滤器中，也计为误判.
+     *
+     * @return 观测到的误判率
+     */
+    public double getFalsePositiveRate() {
+        final long falsePositives = falsePositiveCount.get();
+        final long absent = falsePositives + negativeCount.get();
+        return absent == 0 ? 0 : (double) falsePositives / absent;
+    }
+
+    /**
+     * 根据已置位的比例估算的误判率.
+     *
+     * @return 估算的误判率
+     */
+    public double getExpectedFpp() {
+        return idFilter.expectedFpp();
+    }
+
+    /**
+     * 获得过滤器占用的内存字节数.
+     *
+     * @return 内存字节数
+     */
+    public long getMemoryBytes() {
+        return idFilter.getMemoryBytes();
+    }
+}
@@ -0,0 +1,64 @@
+package io.github.dbstarll.dubai.model.collection;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.ServerCursor;
+import com.mongodb.client.MongoCursor;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * 遍历内存中结果列表的MongoCursor.
+ *
+ * @param <T> 结果类型
+ */
+final class ListMongoCursor<T> implements MongoCursor<T> {
+    private final List<T> results;
+    private int position;
+
+    ListMongoCursor(List<T> results) {
+        this.results = results;
+    }
+
+    @Override
+    public void close() {
+        // do nothing
+    }
+
+    @Override
+    public boolean hasNext() {
+        return position < results.size();
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return results.get(position++);
+    }
+
+    /**
+     * 获得尚未遍历的结果数.
+     *
+     * @return 尚未遍历的结果数
+     */
+    public int available() {
+        return results.size() - position;
+    }
+
+    @Override
+    public T tryNext() {
+        return hasNext() ? results.get(position++) : null;
+    }
+
+    @Override
+    public ServerCursor getServerCursor() {
+        return null;
+    }
+
+    @Override
+    public ServerAddress getServerAddress() {
+        return null;
+    }
+}
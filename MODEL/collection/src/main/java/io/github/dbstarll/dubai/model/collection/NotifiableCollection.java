@@ -1,5 +1,7 @@
 package io.github.dbstarll.dubai.model.collection;
 
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
 import com.mongodb.client.FindIterable;
 import com.mongodb.client.model.*;
 import com.mongodb.client.result.DeleteResult;
@@ -8,10 +10,14 @@ import io.github.dbstarll.dubai.model.entity.Entity;
 import io.github.dbstarll.dubai.model.notify.NotifyProvider;
 import io.github.dbstarll.dubai.model.notify.NotifyType;
 import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 public class NotifiableCollection<E extends Entity> extends CollectionWrapper<E> {
     private NotifyProvider notifyProvider = new DefaultNotifyProvider();
@@ -68,10 +74,38 @@ public class NotifiableCollection<E extends Entity> extends CollectionWrapper<E>
     @Override
     public UpdateResult replaceOne(Bson filter, E replacement, ReplaceOptions replaceOptions) {
         final UpdateResult result = super.replaceOne(filter, replacement, replaceOptions);
-        doNotify(replacement, NotifyType.update);
+        if (!result.wasAcknowledged() || result.getMatchedCount() > 0 || result.getUpsertedId() != null) {
+            doNotify(replacement, NotifyType.update);
+        }
         return result;
     }
 
+    /**
+     * 批量替换后只通知实际被替换的实体. 写入前读取同时匹配ID和过滤条件的实体作为候选，
+     * 写入部分失败时再根据{@link MongoBulkWriteException}排除未执行或执行失败的请求.
+     */
+    @Override
+    public long replaceAll(Bson filter, List<? extends E> replacements, BulkWriteOptions options) {
+        final Set<ObjectId> candidates = matchedIds(filter, replacements);
+        try {
+            final long matched = super.replaceAll(filter, replacements, options);
+            if (matched > 0) {
+                doNotify(replacements, candidates, Collections.<Integer>emptySet(), replacements.size());
+            }
+            return matched;
+        } catch (MongoBulkWriteException ex) {
+            final Set<Integer> failed = new HashSet<>();
+            int firstFailed = replacements.size();
+            for (BulkWriteError error : ex.getWriteErrors()) {
+                failed.add(error.getIndex());
+                firstFailed = Math.min(firstFailed, error.getIndex());
+            }
+            doNotify(replacements, candidates, failed,
+                    options == null || options.isOrdered() ? firstFailed : replacements.size());
+            throw ex;
+        }
+    }
+
     @Override
     public DeleteResult deleteOne(Bson filter, DeleteOptions options) {
         E document = findOne(filter);
@@ -118,7 +152,7 @@ public class NotifiableCollection<E extends Entity> extends CollectionWrapper<E>
         return updated;
     }
 
-    private void doNotify(E document, NotifyType notifyType) {
+    protected void doNotify(E document, NotifyType notifyType) {
         notifyProvider.doNotify(document, notifyType);
     }
 
@@ -128,6 +162,34 @@ public class NotifiableCollection<E extends Entity> extends CollectionWrapper<E>
         }
     }
 
+    private void doNotify(List<? extends E> replacements, Set<ObjectId> candidates, Set<Integer> failed, int to) {
+        for (int i = 0; i < to; i++) {
+            final E replacement = replacements.get(i);
+            if (replacement != null && !failed.contains(i) && candidates.contains(replacement.getId())) {
+                doNotify(replacement, NotifyType.update);
+            }
+        }
+    }
+
+    private Set<ObjectId> matchedIds(Bson filter, List<? extends E> replacements) {
+        final List<ObjectId> ids = new ArrayList<>(replacements.size());
+        for (E replacement : replacements) {
+            if (replacement != null && replacement.getId() != null) {
+                ids.add(replacement.getId());
+            }
+        }
+        if (ids.isEmpty()) {
+            return Collections.emptySet();
+        }
+        final Bson idsFilter = Filters.in(Entity.FIELD_NAME_ID, ids);
+        final Set<ObjectId> matched = new HashSet<>();
+        for (E e : toList(collection.find(filter == null ? idsFilter : Filters.and(idsFilter, filter))
+                .projection(Projections.include(Entity.FIELD_NAME_ID)))) {
+            matched.add(e.getId());
+        }
+        return matched;
+    }
+
     private static <E extends Entity> List<E> toList(FindIterable<E> iterable) {
         List<E> ret = new ArrayList<E>();
         for (Iterator<E> iterator = iterable.iterator(); iterator != null && iterator.hasNext(); ) {
@@ -0,0 +1,486 @@
+package io.github.dbstarll.dubai.model.collection;
+
+import com.mongodb.client.DistinctIterable;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.CountOptions;
+import com.mongodb.client.model.Filters;
+import io.github.dbstarll.dubai.model.cache.CacheKeyBuilder;
+import io.github.dbstarll.dubai.model.collection.BsonMatcher.Condition;
+import io.github.dbstarll.dubai.model.entity.Entity;
+import io.github.dbstarll.dubai.model.entity.EntityFactory;
+import io.github.dbstarll.dubai.model.notify.EntityNotifyListener;
+import io.github.dbstarll.dubai.model.notify.NotifyType;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonDocumentWriter;
+import org.bson.BsonDouble;
+import org.bson.BsonValue;
+import org.bson.codecs.Decoder;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.configuration.CodecConfigurationException;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * 在内存中保存整个数据表副本的Collection，适用于数据量小、读取频繁的实体类.
+ * <ul>
+ * <li>首次查询时加载整个数据表（包括已删除的条目），之后通过本地写入和实体变更通知逐条从数据库重新读取</li>
+ * <li>加载期间收到的变更在加载完成后重新读取，本地写入后立即重新读取，收到的每条通知都重新读取</li>
+ * <li>find、count、distinct在本地执行，支持等值、$in、范围以及$and/$or组合的查询条件，其他查询条件直接查询数据库</li>
+ * <li>可以为指定字段建立等值索引，等值和$in查询通过索引定位候选条目</li>
+ * <li>数据表超出最大条目数时放弃内存副本，直接查询数据库</li>
+ * </ul>
+ * 需要注册为{@link io.github.dbstarll.dubai.model.notify.EntityNotifyConsumer}的监听器，以接收其他节点的实体变更通知.
+ *
+ * @param <E> 实体类
+ */
+public class ReplicatedCollection<E extends Entity> extends NotifiableCollection<E> implements EntityNotifyListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReplicatedCollection.class);
+
+    private static final EncoderContext ENCODER_CONTEXT = EncoderContext.builder().build();
+    private static final DecoderContext DECODER_CONTEXT = DecoderContext.builder().build();
+
+    private final CodecRegistry codecRegistry;
+    private final Set<String> indexFields;
+    private final int maxSize;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TreeMap<ObjectId, Row<E>> rows = new TreeMap<>();
+    private final Map<String, Map<BsonValue, Set<ObjectId>>> indexes = new HashMap<>();
+    private volatile State state = State.UNLOADED;
+
+    private final Object refreshLock = new Object();
+    private final Set<ObjectId> pending = new LinkedHashSet<>();
+    private int loading;
+
+    /**
+     * 构造ReplicatedCollection.
+     *
+     * @param collection    被包装的Collection
+     * @param codecRegistry 编码实体和渲染查询条件使用的CodecRegistry
+     * @param indexFields   需要建立等值索引的字段
+     * @param maxSize       最多加载的条目数
+     */
+    public ReplicatedCollection(Collection<E> collection, CodecRegistry codecRegistry, String[] indexFields,
+                                int maxSize) {
+        super(collection);
+        this.codecRegistry = notNull(codecRegistry, "codecRegistry is null");
+        this.indexFields = new HashSet<>(Arrays.asList(indexFields));
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * 从数据库重新加载整个数据表，加载期间收到的变更在加载完成后重新读取.
+     */
+    public void reload() {
+        synchronized (pending) {
+            loading++;
+        }
+        try {
+            synchronized (refreshLock) {
+                load();
+            }
+        } finally {
+            replay();
+        }
+    }
+
+    private void load() {
+        lock.writeLock().lock();
+        try {
+            clear();
+            final MongoCursor<E> cursor = collection.find(new BsonDocument(), getEntityClass()).limit(maxSize + 1)
+                    .iterator();
+            try {
+                while (cursor.hasNext()) {
+                    add(cursor.next());
+                }
+            } finally {
+                cursor.close();
+            }
+            if (rows.size() > maxSize) {
+                LOGGER.warn("{} exceeds maxSize {}, replication disabled", getEntityClass().getName(), maxSize);
+                clear();
+                state = State.OVERSIZED;
+            } else {
+                LOGGER.debug("{} replicated: {} rows", getEntityClass().getName(), rows.size());
+                state = State.LOADED;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 重新读取加载期间收到变更的条目，直到没有新的变更.
+     */
+    private void replay() {
+        while (true) {
+            final List<ObjectId> ids;
+            synchronized (pending) {
+                if (pending.isEmpty()) {
+                    loading--;
+                    return;
+                }
+                ids = new ArrayList<>(pending);
+                pending.clear();
+            }
+            for (ObjectId id : ids) {
+                refresh(id);
+            }
+        }
+    }
+
+    /**
+     * 判断内存副本是否可用，首次调用时加载整个数据表.
+     *
+     * @return 内存副本是否可用
+     */
+    public boolean isReplicated() {
+        if (state == State.UNLOADED) {
+            synchronized (this) {
+                if (state == State.UNLOADED) {
+                    reload();
+                }
+            }
+        }
+        return state == State.LOADED;
+    }
+
+    @Override
+    public long count(Bson filter, CountOptions options) {
+        if (options.getCollation() == null && isReplicated()) {
+            final List<Row<E>> matched = match(filter, null);
+            if (matched != null) {
+                return BsonMatcher.page(matched, options.getSkip(), options.getLimit()).size();
+            }
+        }
+        return super.count(filter, options);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> FindIterable<T> find(Bson filter, Class<T> resultClass) {
+        final FindIterable<T> iterable = super.find(filter, resultClass);
+        if (resultClass == getEntityClass() && state != State.OVERSIZED) {
+            return (FindIterable<T>) new CachingFindIterable<>(new CachingFindIterable.Loader<E>() {
+                @Override
+                public List<E> load(Bson filter, Bson sort, int skip, int limit, FindIterable<E> delegate) {
+                    return findLocal(filter, sort, skip, limit);
+                }
+            }, (FindIterable<E>) iterable, filter);
+        }
+        return iterable;
+    }
+
+    @Override
+    public <T> DistinctIterable<T> distinct(final String fieldName, Bson filter, final Class<T> resultClass) {
+        final DistinctIterable<T> iterable = super.distinct(fieldName, filter, resultClass);
+        if (state != State.OVERSIZED) {
+            return new CachingDistinctIterable<>(new CachingDistinctIterable.Loader<T>() {
+                @Override
+                public List<T> load(Bson filter, DistinctIterable<T> delegate) {
+                    return distinctLocal(fieldName, filter, resultClass);
+                }
+            }, iterable, filter);
+        }
+        return iterable;
+    }
+
+    private List<E> findLocal(Bson filter, Bson sort, int skip, int limit) {
+        if (!isReplicated()) {
+            return null;
+        }
+        final Comparator<BsonDocument> comparator = sort == null ? null : BsonMatcher.sort(render(sort));
+        if (sort != null && comparator == null) {
+            return null;
+        }
+        final List<Row<E>> matched = match(filter, comparator);
+        if (matched == null) {
+            return null;
+        }
+        final List<Row<E>> paged = BsonMatcher.page(matched, skip, limit);
+        final List<E> results = new ArrayList<>(paged.size());
+        for (Row<E> row : paged) {
+            results.add(EntityFactory.clone(row.entity));
+        }
+        return results;
+    }
+
+    private <T> List<T> distinctLocal(String fieldName, Bson filter, Class<T> resultClass) {
+        if (!isReplicated()) {
+            return null;
+        }
+        final Decoder<T> decoder;
+        try {
+            decoder = codecRegistry.get(resultClass);
+        } catch (CodecConfigurationException ex) {
+            return null;
+        }
+        final List<Row<E>> matched = match(filter, null);
+        if (matched == null) {
+            return null;
+        }
+        final Set<BsonValue> values = new LinkedHashSet<>();
+        for (Row<E> row : matched) {
+            for (BsonValue value : BsonMatcher.values(row.document, fieldName)) {
+                if (!value.isArray()) {
+                    values.add(value);
+                }
+            }
+        }
+        final List<T> results = new ArrayList<>(values.size());
+        for (BsonValue value : values) {
+            final BsonDocumentReader reader = new BsonDocumentReader(new BsonDocument("v", value));
+            reader.readStartDocument();
+            reader.readName();
+            results.add(decoder.decode(reader, DECODER_CONTEXT));
+        }
+        return results;
+    }
+
+    /**
+     * 在内存副本中查找匹配查询条件的条目.
+     *
+     * @param filter     查询条件
+     * @param comparator 排序，为null时按_id升序
+     * @return 匹配的条目，查询条件不支持在本地执行时返回null
+     */
+    private List<Row<E>> match(Bson filter, Comparator<BsonDocument> comparator) {
+        final BsonDocument query;
+        final Condition condition;
+        try {
+            query = CacheKeyBuilder.canonicalize(render(filter));
+            condition = BsonMatcher.compile(query);
+        } catch (RuntimeException ex) {
+            LOGGER.debug("render filter failed: {}", ex.getMessage());
+            return null;
+        }
+        if (condition == null) {
+            return null;
+        }
+
+        final List<Row<E>> matched = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            if (state != State.LOADED) {
+                return null;
+            }
+            for (Row<E> row : candidates(query)) {
+                if (condition.matches(row.document)) {
+                    matched.add(row);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (comparator != null) {
+            Collections.sort(matched, new Comparator<Row<E>>() {
+                @Override
+                public int compare(Row<E> o1, Row<E> o2) {
+                    return comparator.compare(o1.document, o2.document);
+                }
+            });
+        }
+        return matched;
+    }
+
+    /**
+     * 通过等值索引缩小候选范围，选择候选最少的索引；没有可用的索引时返回所有条目.
+     */
+    private java.util.Collection<Row<E>> candidates(BsonDocument query) {
+        final List<BsonValue> terms = query.containsKey("$and") ? query.getArray("$and").getValues()
+                : Collections.<BsonValue>singletonList(query);
+        Set<ObjectId> best = null;
+        for (BsonValue term : terms) {
+            final Set<ObjectId> ids = lookup(term.asDocument());
+            if (ids != null && (best == null || ids.size() < best.size())) {
+                best = ids;
+            }
+        }
+        if (best == null) {
+            return rows.values();
+        }
+        final List<Row<E>> candidates = new ArrayList<>(best.size());
+        for (ObjectId id : best) {
+            candidates.add(rows.get(id));
+        }
+        return candidates;
+    }
+
+    private Set<ObjectId> lookup(BsonDocument term) {
+        if (term.size() != 1 || !indexFields.contains(term.getFirstKey())) {
+            return null;
+        }
+        final Map<BsonValue, Set<ObjectId>> index = indexes.get(term.getFirstKey());
+        final BsonValue value = term.get(term.getFirstKey());
+        final List<BsonValue> keys;
+        if (value.isDocument() && value.asDocument().size() == 1 && value.asDocument().containsKey("$in")
+                && value.asDocument().isArray("$in")) {
+            keys = value.asDocument().getArray("$in").getValues();
+        } else if (value.isDocument() && !value.asDocument().isEmpty()
+                && value.asDocument().getFirstKey().startsWith("$")) {
+            return null;
+        } else {
+            keys = Collections.singletonList(value);
+        }
+
+        final Set<ObjectId> ids = new HashSet<>();
+        for (BsonValue key : keys) {
+            if (key.isNull() || key.isRegularExpression() || key.isArray() || key.isDocument()) {
+                return null;
+            }
+            final Set<ObjectId> matched = index.get(indexKey(key));
+            if (matched != null) {
+                ids.addAll(matched);
+            }
+        }
+        return ids;
+    }
+
+    @Override
+    public <T extends Entity> void onNotify(Class<T> entityClass, ObjectId id, NotifyType notifyType,
+                                            ObjectId companyId, String clientId) {
+        if (getEntityClass() == entityClass && id != null) {
+            apply(id);
+        }
+    }
+
+    @Override
+    protected void doNotify(E document, NotifyType notifyType) {
+        super.doNotify(document, notifyType);
+        if (document != null && document.getId() != null) {
+            apply(document.getId());
+        }
+    }
+
+    private void apply(ObjectId id) {
+        synchronized (pending) {
+            if (loading > 0) {
+                pending.add(id);
+                return;
+            }
+        }
+        if (state == State.LOADED) {
+            refresh(id);
+        }
+    }
+
+    /**
+     * 从数据库重新读取条目，已删除（defunct）的条目与加载时一样保留在副本中，只有数据库中不存在的条目才移除.
+     */
+    private void refresh(ObjectId id) {
+        synchronized (refreshLock) {
+            final E entity = collection.findOne(Filters.eq(Entity.FIELD_NAME_ID, id));
+            lock.writeLock().lock();
+            try {
+                if (state != State.LOADED) {
+                    return;
+                }
+                remove(id);
+                if (entity != null) {
+                    add(entity);
+                }
+                if (rows.size() > maxSize) {
+                    LOGGER.warn("{} exceeds maxSize {}, replication disabled", getEntityClass().getName(), maxSize);
+                    clear();
+                    state = State.OVERSIZED;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private void add(E entity) {
+        final BsonDocument document = new BsonDocument();
+        codecRegistry.get(getEntityClass()).encode(new BsonDocumentWriter(document), entity, ENCODER_CONTEXT);
+        final Row<E> row = new Row<>(entity, document);
+        rows.put(entity.getId(), row);
+        for (String field : indexFields) {
+            Map<BsonValue, Set<ObjectId>> index = indexes.get(field);
+            if (index == null) {
+                index = new HashMap<>();
+                indexes.put(field, index);
+            }
+            for (BsonValue value : BsonMatcher.values(document, field)) {
+                Set<ObjectId> ids = index.get(indexKey(value));
+                if (ids == null) {
+                    ids = new HashSet<>();
+                    index.put(indexKey(value), ids);
+                }
+                ids.add(entity.getId());
+            }
+        }
+    }
+
+    private void remove(ObjectId id) {
+        final Row<E> row = rows.remove(id);
+        if (row != null) {
+            for (String field : indexFields) {
+                final Map<BsonValue, Set<ObjectId>> index = indexes.get(field);
+                for (BsonValue value : BsonMatcher.values(row.document, field)) {
+                    final BsonValue key = indexKey(value);
+                    final Set<ObjectId> ids = index.get(key);
+                    if (ids != null && ids.remove(id) && ids.isEmpty()) {
+                        index.remove(key);
+                    }
+                }
+            }
+        }
+    }
+
+    private void clear() {
+        rows.clear();
+        indexes.clear();
+        for (String field : indexFields) {
+            indexes.put(field, new HashMap<BsonValue, Set<ObjectId>>());
+        }
+    }
+
+    /**
+     * 数值类型统一为double作为索引key，使不同数值类型的相等值落在同一个索引条目中.
+     */
+    private static BsonValue indexKey(BsonValue value) {
+        return value.isNumber() ? new BsonDouble(value.asNumber().doubleValue()) : value;
+    }
+
+    private BsonDocument render(Bson bson) {
+        return bson == null ? new BsonDocument() : bson.toBsonDocument(getEntityClass(), codecRegistry);
+    }
+
+    private enum State {
+        UNLOADED, LOADED, OVERSIZED
+    }
+
+    private static final class Row<E> {
+        private final E entity;
+        private final BsonDocument document;
+
+        private Row(E entity, BsonDocument document) {
+            this.entity = entity;
+            this.document = document;
+        }
+    }
+}
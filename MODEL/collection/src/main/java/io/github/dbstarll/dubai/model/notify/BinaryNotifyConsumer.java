@@ -0,0 +1,7 @@
+package io.github.dbstarll.dubai.model.notify;
+
+public interface BinaryNotifyConsumer extends NotifyConsumer {
+    void regist(BinaryNotifyListener listener);
+
+    void unRegist(BinaryNotifyListener listener);
+}
@@ -0,0 +1,88 @@
+package io.github.dbstarll.dubai.model.notify;
+
+import org.bson.types.ObjectId;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 二进制通知记录的格式.
+ * <pre>
+ * int      classId    实体类编号，见{@link NotifyClassTable}
+ * byte[12] id         实体ID
+ * byte     notifyType 通知类型的序号
+ * byte     flags      可选字段标志
+ * byte[12] companyId  可选，flags包含FLAG_COMPANY_ID时存在
+ * long     timestamp  可选，flags包含FLAG_TIMESTAMP时存在，发送通知时的毫秒时间戳
+ * </pre>
+ * 每条记录的长度可以由flags计算得出，多条记录可以直接拼接在一个消息中.
+ */
+public final class BinaryNotifyFormat {
+    public static final int OBJECT_ID_LENGTH = 12;
+    public static final int HEADER_LENGTH = 4 + OBJECT_ID_LENGTH + 1 + 1;
+    public static final int TIMESTAMP_LENGTH = 8;
+    public static final int MAX_RECORD_LENGTH = HEADER_LENGTH + OBJECT_ID_LENGTH + TIMESTAMP_LENGTH;
+
+    public static final byte FLAG_COMPANY_ID = 0x01;
+    public static final byte FLAG_TIMESTAMP = 0x02;
+
+    private BinaryNotifyFormat() {
+    }
+
+    /**
+     * 计算通知记录的长度.
+     *
+     * @param companyId 公司ID，可以为null
+     * @return 记录的长度
+     */
+    public static int recordLength(ObjectId companyId) {
+        return recordLength(companyId, false);
+    }
+
+    /**
+     * 计算通知记录的长度.
+     *
+     * @param companyId 公司ID，可以为null
+     * @param timestamp 是否包含时间戳
+     * @return 记录的长度
+     */
+    public static int recordLength(ObjectId companyId, boolean timestamp) {
+        return HEADER_LENGTH + (companyId == null ? 0 : OBJECT_ID_LENGTH) + (timestamp ? TIMESTAMP_LENGTH : 0);
+    }
+
+    /**
+     * 将一条通知记录写入到缓冲区.
+     *
+     * @param buffer     缓冲区
+     * @param classId    实体类编号
+     * @param id         实体ID
+     * @param notifyType 通知类型
+     * @param companyId  公司ID，可以为null
+     */
+    public static void write(ByteBuffer buffer, int classId, ObjectId id, NotifyType notifyType, ObjectId companyId) {
+        write(buffer, classId, id, notifyType, companyId, -1);
+    }
+
+    /**
+     * 将一条带时间戳的通知记录写入到缓冲区.
+     *
+     * @param buffer     缓冲区
+     * @param classId    实体类编号
+     * @param id         实体ID
+     * @param notifyType 通知类型
+     * @param companyId  公司ID，可以为null
+     * @param timestamp  发送通知时的毫秒时间戳，小于0时不写入
+     */
+    public static void write(ByteBuffer buffer, int classId, ObjectId id, NotifyType notifyType, ObjectId companyId,
+                             long timestamp) {
+        buffer.putInt(classId);
+        id.putToByteBuffer(buffer);
+        buffer.put((byte) notifyType.ordinal());
+        buffer.put((byte) ((companyId == null ? 0 : FLAG_COMPANY_ID) | (timestamp < 0 ? 0 : FLAG_TIMESTAMP)));
+        if (companyId != null) {
+            companyId.putToByteBuffer(buffer);
+        }
+        if (timestamp >= 0) {
+            buffer.putLong(timestamp);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package io.github.dbstarll.dubai.model.notify;
+
+import java.nio.ByteBuffer;
+
+public interface BinaryNotifyListener {
+    /**
+     * 接收二进制格式的通知，一条消息中可以包含连续的多条通知记录.
+     *
+     * @param message  消息内容，从position读到limit
+     * @param clientId 发送方标识
+     */
+    void onNotify(ByteBuffer message, String clientId);
+}
@@ -0,0 +1,134 @@
+package io.github.dbstarll.dubai.model.notify;
+
+import io.github.dbstarll.dubai.model.entity.Entity;
+import io.github.dbstarll.dubai.model.entity.join.CompanyBase;
+import org.bson.types.ObjectId;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 解析二进制通知记录的NotifyParser，可以重复使用以避免为每条消息创建解析器.
+ * 解析时按绝对位置读取消息，不复制缓冲区；实体ID和公司ID在第一次读取时才解码，跳过的记录不会创建ObjectId.
+ * 非线程安全.
+ */
+public final class BinaryNotifyParser implements NotifyParser {
+    private static final NotifyType[] NOTIFY_TYPES = NotifyType.values();
+    private static final int ID_OFFSET = 4;
+    private static final int TYPE_OFFSET = ID_OFFSET + BinaryNotifyFormat.OBJECT_ID_LENGTH;
+
+    private ByteBuffer buffer;
+    private int position;
+    private int limit;
+    private int classId;
+    private int idOffset;
+    private ObjectId id;
+    private NotifyType notifyType;
+    private int companyIdOffset;
+    private ObjectId companyId;
+    private long timestamp;
+
+    /**
+     * 开始解析一个新的消息.
+     *
+     * @param message 消息内容，从position读到limit，解析不会修改message的position
+     * @return 解析器本身
+     */
+    public BinaryNotifyParser reset(ByteBuffer message) {
+        this.buffer = message.order() == ByteOrder.BIG_ENDIAN ? message : message.duplicate();
+        this.position = message.position();
+        this.limit = message.limit();
+        clear();
+        return this;
+    }
+
+    private void clear() {
+        this.classId = 0;
+        this.idOffset = -1;
+        this.id = null;
+        this.notifyType = null;
+        this.companyIdOffset = -1;
+        this.companyId = null;
+        this.timestamp = -1;
+    }
+
+    /**
+     * 读取下一条通知记录.
+     *
+     * @return 是否读取到了完整的记录
+     */
+    public boolean next() {
+        clear();
+        if (buffer == null || limit - position < BinaryNotifyFormat.HEADER_LENGTH) {
+            return false;
+        }
+        final int record = position;
+        final int type = buffer.get(record + TYPE_OFFSET);
+        final int flags = buffer.get(record + TYPE_OFFSET + 1);
+        int offset = record + BinaryNotifyFormat.HEADER_LENGTH;
+        if ((flags & BinaryNotifyFormat.FLAG_COMPANY_ID) != 0) {
+            if (limit - offset < BinaryNotifyFormat.OBJECT_ID_LENGTH) {
+                position = limit;
+                return false;
+            }
+            companyIdOffset = offset;
+            offset += BinaryNotifyFormat.OBJECT_ID_LENGTH;
+        }
+        if ((flags & BinaryNotifyFormat.FLAG_TIMESTAMP) != 0) {
+            if (limit - offset < BinaryNotifyFormat.TIMESTAMP_LENGTH) {
+                position = limit;
+                return false;
+            }
+            timestamp = buffer.getLong(offset);
+            offset += BinaryNotifyFormat.TIMESTAMP_LENGTH;
+        }
+        classId = buffer.getInt(record);
+        idOffset = record + ID_OFFSET;
+        notifyType = type >= 0 && type < NOTIFY_TYPES.length ? NOTIFY_TYPES[type] : null;
+        position = offset;
+        return true;
+    }
+
+    public int getClassId() {
+        return classId;
+    }
+
+    /**
+     * 获得发送通知时的毫秒时间戳.
+     *
+     * @return 毫秒时间戳，记录中不包含时间戳时返回-1
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public ObjectId getObjectId(String key) {
+        if (Entity.FIELD_NAME_ID.equals(key)) {
+            if (id == null && idOffset >= 0) {
+                id = readObjectId(idOffset);
+            }
+            return id;
+        } else if (CompanyBase.FIELD_NAME_COMPANY_ID.equals(key)) {
+            if (companyId == null && companyIdOffset >= 0) {
+                companyId = readObjectId(companyIdOffset);
+            }
+            return companyId;
+        } else {
+            return null;
+        }
+    }
+
+    private ObjectId readObjectId(int offset) {
+        final byte[] bytes = new byte[BinaryNotifyFormat.OBJECT_ID_LENGTH];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(offset + i);
+        }
+        return new ObjectId(bytes);
+    }
+
+    @Override
+    public NotifyType getNotifyType() {
+        return notifyType;
+    }
+}
@@ -0,0 +1,74 @@
+package io.github.dbstarll.dubai.model.notify;
+
+import io.github.dbstarll.dubai.model.entity.Entity;
+import io.github.dbstarll.dubai.model.entity.EntityFactory;
+import io.github.dbstarll.dubai.model.entity.join.CompanyBase;
+import org.bson.types.ObjectId;
+
+import java.nio.ByteBuffer;
+
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * 以二进制格式发送通知的NotifyProvider，支持通过{@link NotifyBatch}将多条通知合并为一条消息.
+ * 默认不写入时间戳，与不识别{@link BinaryNotifyFormat#FLAG_TIMESTAMP}的节点保持兼容.
+ */
+public final class BinaryNotifyProvider implements NotifyProvider {
+    private final BinaryNotifyPublisher publisher;
+    private final boolean timestamp;
+
+    public BinaryNotifyProvider(BinaryNotifyPublisher publisher) {
+        this(publisher, false);
+    }
+
+    /**
+     * 构造BinaryNotifyProvider.
+     *
+     * @param publisher 发送通知的BinaryNotifyPublisher
+     * @param timestamp 是否在通知记录中写入发送时间戳，只有所有节点都能解析时间戳时才能开启
+     */
+    public BinaryNotifyProvider(BinaryNotifyPublisher publisher, boolean timestamp) {
+        this.publisher = notNull(publisher, "publisher is null");
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * 发送通知，当前线程处于{@link NotifyBatch}范围内时追加到批次中，在最外层范围关闭时一起发送.
+     */
+    @Override
+    public <E extends Entity> void doNotify(E e, NotifyType notifyType) {
+        final byte[] record = encode(e, notifyType, timestamp);
+        if (!NotifyBatch.add(publisher, record)) {
+            publisher.publish(record);
+        }
+    }
+
+    /**
+     * 将实体的变更通知编码为不带时间戳的二进制格式.
+     *
+     * @param e          实体
+     * @param notifyType 通知类型
+     * @param <E>        实体类
+     * @return 编码后的通知记录
+     */
+    public static <E extends Entity> byte[] encode(E e, NotifyType notifyType) {
+        return encode(e, notifyType, false);
+    }
+
+    /**
+     * 将实体的变更通知编码为二进制格式.
+     *
+     * @param e          实体
+     * @param notifyType 通知类型
+     * @param timestamp  是否写入发送通知时的时间戳
+     * @param <E>        实体类
+     * @return 编码后的通知记录
+     */
+    public static <E extends Entity> byte[] encode(E e, NotifyType notifyType, boolean timestamp) {
+        final ObjectId companyId = e instanceof CompanyBase ? ((CompanyBase) e).getCompanyId() : null;
+        final byte[] bytes = new byte[BinaryNotifyFormat.recordLength(companyId, timestamp)];
+        BinaryNotifyFormat.write(ByteBuffer.wrap(bytes), NotifyClassTable.getClassId(EntityFactory.getEntityClass(e)),
+                e.getId(), notifyType, companyId, timestamp ? System.currentTimeMillis() : -1);
+        return bytes;
+    }
+}
@@ -0,0 +1,5 @@
+package io.github.dbstarll.dubai.model.notify;
+
+public interface BinaryNotifyPublisher {
+    void publish(byte[] message);
+}
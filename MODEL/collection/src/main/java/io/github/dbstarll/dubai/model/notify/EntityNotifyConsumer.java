@@ -8,30 +8,61 @@ import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.util.LinkedList;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
-public final class EntityNotifyConsumer implements NotifyListener, Closeable {
+import static org.apache.commons.lang3.Validate.notNull;
+
+public final class EntityNotifyConsumer implements NotifyListener, BinaryNotifyListener, Closeable {
     private static final Logger LOGGER = LoggerFactory.getLogger(EntityNotifyConsumer.class);
 
+    private static final Registration[] EMPTY = new Registration[0];
+    private static final ByteBuffer EMPTY_MESSAGE = ByteBuffer.allocate(0);
+    private static final ThreadLocal<ParserSlot> PARSERS = new ThreadLocal<ParserSlot>() {
+        @Override
+        protected ParserSlot initialValue() {
+            return new ParserSlot();
+        }
+    };
+
     private NotifyConsumer notifyConsumer = new DefaultNotifyConsumer();
+    private NotifyClassTable notifyClassTable = new NotifyClassTable();
 
-    private final List<EntityNotifyListener> listeners = new LinkedList<>();
+    private final Object lock = new Object();
+    private volatile Registration[] registrations = EMPTY;
+    private final ConcurrentMap<Class<?>, Registration[]> routes = new ConcurrentHashMap<>();
     private final ConcurrentMap<String, Class<? extends Entity>> entityClasses = new ConcurrentHashMap<>();
+    private final Set<Integer> unknownClassIds = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
 
     public void setNotifyConsumer(NotifyConsumer notifyConsumer) {
         this.notifyConsumer = notifyConsumer;
     }
 
+    public void setNotifyClassTable(NotifyClassTable notifyClassTable) {
+        this.notifyClassTable = notNull(notifyClassTable, "notifyClassTable is null");
+    }
+
     public void start() {
-        notifyConsumer.regist(this);
+        notifyConsumer.regist((NotifyListener) this);
+        if (notifyConsumer instanceof BinaryNotifyConsumer) {
+            ((BinaryNotifyConsumer) notifyConsumer).regist((BinaryNotifyListener) this);
+        }
     }
 
     @Override
     public void close() throws IOException {
-        notifyConsumer.unRegist(this);
+        if (notifyConsumer instanceof BinaryNotifyConsumer) {
+            ((BinaryNotifyConsumer) notifyConsumer).unRegist((BinaryNotifyListener) this);
+        }
+        notifyConsumer.unRegist((NotifyListener) this);
     }
 
     @Override
@@ -42,44 +73,173 @@ public final class EntityNotifyConsumer implements NotifyListener, Closeable {
             final ObjectId companyId = parser.getObjectId(CompanyBase.FIELD_NAME_COMPANY_ID);
             final NotifyType notifyType = parser.getNotifyType();
             if (id != null && notifyType != null) {
-                onNotify(entityClass, id, notifyType, companyId, value);
+                onNotify(entityClass, id, notifyType, companyId, value, -1);
             }
         }
     }
 
+    /**
+     * 解析二进制消息并分发给监听器. 每个线程复用一个解析器，监听器在通知线程中再次收到消息时使用新的解析器.
+     * 没有监听器关注的记录不会解码实体ID，未注册的实体类编号作为{@link Entity}分发给接收所有实体类通知的监听器.
+     */
+    @Override
+    public void onNotify(ByteBuffer message, String clientId) {
+        final ParserSlot slot = PARSERS.get();
+        final boolean owner = !slot.busy;
+        final BinaryNotifyParser parser = owner ? slot.parser : new BinaryNotifyParser();
+        slot.busy = true;
+        try {
+            parser.reset(message);
+            while (parser.next()) {
+                final NotifyType notifyType = parser.getNotifyType();
+                if (notifyType != null) {
+                    Class<? extends Entity> entityClass = notifyClassTable.getEntityClass(parser.getClassId());
+                    if (entityClass == null) {
+                        unknownClassId(parser.getClassId());
+                        entityClass = Entity.class;
+                    }
+                    final Registration[] route = route(entityClass);
+                    if (route.length > 0) {
+                        dispatch(route, entityClass, parser.getObjectId(Entity.FIELD_NAME_ID), notifyType,
+                                parser.getObjectId(CompanyBase.FIELD_NAME_COMPANY_ID), clientId,
+                                parser.getTimestamp());
+                    }
+                }
+            }
+        } finally {
+            if (owner) {
+                parser.reset(EMPTY_MESSAGE);
+                slot.busy = false;
+            }
+        }
+    }
+
+    private void unknownClassId(int classId) {
+        if (unknownClassIds.add(classId)) {
+            LOGGER.warn("unknown classId: {}, dispatch to listeners of all entities", classId);
+        } else {
+            LOGGER.debug("unknown classId: {}", classId);
+        }
+    }
+
     private void onNotify(Class<? extends Entity> entityClass, ObjectId id, NotifyType notifyType, ObjectId companyId,
-                          String clientId) {
+                          String clientId, long timestamp) {
+        dispatch(route(entityClass), entityClass, id, notifyType, companyId, clientId, timestamp);
+    }
+
+    private static void dispatch(Registration[] route, Class<? extends Entity> entityClass, ObjectId id,
+                                 NotifyType notifyType, ObjectId companyId, String clientId, long timestamp) {
         LOGGER.debug("{} - {}@{}, companyId: {}", notifyType, entityClass.getName(), id, companyId);
-        synchronized (listeners) {
-            for (EntityNotifyListener listener : listeners) {
-                try {
-                    listener.onNotify(entityClass, id, notifyType, companyId, clientId);
-                } catch (Throwable ex) {
-                    LOGGER.error("entity notify failed: " + listener, ex);
-                }
+        for (Registration registration : route) {
+            registration.dispatch(entityClass, id, notifyType, companyId, clientId, timestamp);
+        }
+    }
+
+    /**
+     * 获得关注指定实体类的监听器列表，结果按实体类缓存，在注册或注销监听器时失效.
+     *
+     * @param entityClass 实体类
+     * @return 关注该实体类的监听器列表
+     */
+    private Registration[] route(Class<? extends Entity> entityClass) {
+        final Registration[] cached = routes.get(entityClass);
+        if (cached != null) {
+            return cached;
+        }
+
+        final Registration[] snapshot = registrations;
+        final List<Registration> matched = new ArrayList<>(snapshot.length);
+        for (Registration registration : snapshot) {
+            if (registration.entityType.isAssignableFrom(entityClass)) {
+                matched.add(registration);
             }
         }
+        final Registration[] route = matched.isEmpty() ? EMPTY : matched.toArray(new Registration[matched.size()]);
+        synchronized (lock) {
+            if (registrations == snapshot) {
+                routes.putIfAbsent(entityClass, route);
+            }
+        }
+        return route;
     }
 
     /**
-     * 注册EntityNotifyListener.
+     * 注册EntityNotifyListener，接收所有实体类的通知.
      *
      * @param listener 注册的监听器
      */
     public void regist(EntityNotifyListener listener) {
-        synchronized (listeners) {
-            LOGGER.info("regist: {}: {}", listener, listeners.add(listener));
+        regist(listener, Entity.class, null);
+    }
+
+    /**
+     * 注册EntityNotifyListener，只接收指定类型的通知，类型可以是实体类，也可以是实体实现的接口，例如Cacheable.
+     *
+     * @param listener   注册的监听器
+     * @param entityType 关注的实体类或接口
+     */
+    public void regist(EntityNotifyListener listener, Class<?> entityType) {
+        regist(listener, entityType, null);
+    }
+
+    /**
+     * 注册EntityNotifyListener，只接收指定类型的通知，并在指定的Executor中执行监听器.
+     *
+     * @param listener   注册的监听器
+     * @param entityType 关注的实体类或接口
+     * @param executor   执行监听器的Executor，为null时在通知线程中直接执行
+     */
+    public void regist(EntityNotifyListener listener, Class<?> entityType, Executor executor) {
+        final Registration registration = new Registration(notNull(listener, "listener is null"),
+                notNull(entityType, "entityType is null"), executor);
+        if (Entity.class != entityType && Entity.class.isAssignableFrom(entityType)) {
+            registEntityClass(entityType.asSubclass(Entity.class));
         }
+        synchronized (lock) {
+            final Registration[] current = registrations;
+            final Registration[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = registration;
+            registrations = updated;
+            routes.clear();
+        }
+        LOGGER.info("regist: {}: {}", listener, entityType.getName());
     }
 
     /**
-     * 注销EntityNotifyListener.
+     * 注销EntityNotifyListener，该监听器的所有注册都会被移除.
      *
      * @param listener 注销的监听器
      */
     public void unRegist(EntityNotifyListener listener) {
-        synchronized (listeners) {
-            LOGGER.info("unRegist: {}: {}", listener, listeners.remove(listener));
+        boolean removed = false;
+        synchronized (lock) {
+            final Registration[] current = registrations;
+            final List<Registration> remain = new ArrayList<>(current.length);
+            for (Registration registration : current) {
+                if (registration.listener.equals(listener)) {
+                    removed = true;
+                } else {
+                    remain.add(registration);
+                }
+            }
+            if (removed) {
+                registrations = remain.isEmpty() ? EMPTY : remain.toArray(new Registration[remain.size()]);
+                routes.clear();
+            }
+        }
+        LOGGER.info("unRegist: {}: {}", listener, removed);
+    }
+
+    /**
+     * 注册需要接收二进制通知的实体类.
+     *
+     * @param entityClass 实体类
+     */
+    public void registEntityClass(Class<? extends Entity> entityClass) {
+        try {
+            notifyClassTable.register(entityClass);
+        } catch (IllegalArgumentException ex) {
+            LOGGER.warn(ex.getMessage());
         }
     }
 
@@ -90,6 +250,7 @@ public final class EntityNotifyConsumer implements NotifyListener, Closeable {
                 final Class<?> entityClass = getClass().getClassLoader().loadClass(className);
                 if (Entity.class.isAssignableFrom(entityClass)) {
                     entityClasses.putIfAbsent(className, (Class<? extends Entity>) entityClass);
+                    registEntityClass((Class<? extends Entity>) entityClass);
                 } else {
                     LOGGER.warn("Unknown Entity Class: {}", entityClass);
                     entityClasses.putIfAbsent(className, NullEntity.class);
@@ -106,6 +267,55 @@ public final class EntityNotifyConsumer implements NotifyListener, Closeable {
     private interface NullEntity extends Entity {
     }
 
+    private static final class ParserSlot {
+        private final BinaryNotifyParser parser = new BinaryNotifyParser();
+        private boolean busy;
+    }
+
+    private static final class Registration {
+        private final EntityNotifyListener listener;
+        private final Class<?> entityType;
+        private final Executor executor;
+
+        private Registration(EntityNotifyListener listener, Class<?> entityType, Executor executor) {
+            this.listener = listener;
+            this.entityType = entityType;
+            this.executor = executor;
+        }
+
+        private void dispatch(final Class<? extends Entity> entityClass, final ObjectId id, final NotifyType notifyType,
+                              final ObjectId companyId, final String clientId, final long timestamp) {
+            if (executor == null) {
+                invoke(entityClass, id, notifyType, companyId, clientId, timestamp);
+            } else {
+                try {
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            invoke(entityClass, id, notifyType, companyId, clientId, timestamp);
+                        }
+                    });
+                } catch (RejectedExecutionException ex) {
+                    LOGGER.error("entity notify rejected: " + listener, ex);
+                }
+            }
+        }
+
+        private void invoke(Class<? extends Entity> entityClass, ObjectId id, NotifyType notifyType, ObjectId companyId,
+                            String clientId, long timestamp) {
+            try {
+                if (timestamp >= 0 && listener instanceof TimedEntityNotifyListener) {
+                    ((TimedEntityNotifyListener) listener).onNotify(entityClass, id, notifyType, companyId, clientId,
+                            timestamp);
+                } else {
+                    listener.onNotify(entityClass, id, notifyType, companyId, clientId);
+                }
+            } catch (Throwable ex) {
+                LOGGER.error("entity notify failed: " + listener, ex);
+            }
+        }
+    }
+
     private static class DefaultNotifyConsumer implements NotifyConsumer {
         @Override
         public void regist(NotifyListener listener) {
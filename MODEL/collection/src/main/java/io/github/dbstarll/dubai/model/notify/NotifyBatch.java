@@ -0,0 +1,85 @@
+package io.github.dbstarll.dubai.model.notify;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * 当前线程上的批量通知范围.
+ * 在{@link #begin()}和{@link #close()}之间，{@link BinaryNotifyProvider}不再逐条发送通知，而是将记录追加到批次中，
+ * 关闭时每个{@link BinaryNotifyPublisher}只发送一条包含所有记录的消息. 范围可以嵌套，最外层关闭时才发送.
+ * 记录只在写入成功后追加，因此即使范围内的写入抛出了异常，已收集的通知也在关闭时发送，多余的失效通知是无害的.
+ * 其他NotifyProvider不受影响，仍然逐条发送.
+ *
+ * <pre>
+ * try (NotifyBatch batch = NotifyBatch.begin()) {
+ *     collection.updateMany(filter, update);
+ * }
+ * </pre>
+ */
+public final class NotifyBatch implements Closeable {
+    private static final ThreadLocal<Batch> CURRENT = new ThreadLocal<>();
+
+    private final Batch batch;
+    private boolean closed;
+
+    private NotifyBatch(Batch batch) {
+        this.batch = batch;
+    }
+
+    /**
+     * 在当前线程上开始批量通知，已经存在批量通知范围时加入该范围.
+     *
+     * @return 批量通知范围
+     */
+    public static NotifyBatch begin() {
+        Batch batch = CURRENT.get();
+        if (batch == null) {
+            batch = new Batch();
+            CURRENT.set(batch);
+        }
+        batch.depth++;
+        return new NotifyBatch(batch);
+    }
+
+    /**
+     * 将记录追加到当前线程的批次中.
+     *
+     * @return 当前线程不在批量通知范围内时返回false，调用者需要直接发送
+     */
+    static boolean add(BinaryNotifyPublisher publisher, byte[] record) {
+        final Batch batch = CURRENT.get();
+        if (batch == null) {
+            return false;
+        }
+        ByteArrayOutputStream message = batch.messages.get(publisher);
+        if (message == null) {
+            message = new ByteArrayOutputStream();
+            batch.messages.put(publisher, message);
+        }
+        message.write(record, 0, record.length);
+        return true;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (--batch.depth == 0) {
+            CURRENT.remove();
+            for (Entry<BinaryNotifyPublisher, ByteArrayOutputStream> entry : batch.messages.entrySet()) {
+                entry.getKey().publish(entry.getValue().toByteArray());
+            }
+            batch.messages.clear();
+        }
+    }
+
+    private static final class Batch {
+        private final Map<BinaryNotifyPublisher, ByteArrayOutputStream> messages = new IdentityHashMap<>();
+        private int depth;
+    }
+}
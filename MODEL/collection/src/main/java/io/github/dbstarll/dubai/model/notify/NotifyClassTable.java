@@ -0,0 +1,69 @@
+package io.github.dbstarll.dubai.model.notify;
+
+import io.github.dbstarll.dubai.model.entity.Entity;
+import io.github.dbstarll.dubai.model.entity.EntityFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * 二进制通知中使用的实体类编号表.
+ * 实体类的编号由类名计算得出，发送方和接收方无需同步编号，接收方只需注册关注的实体类即可.
+ * 同一个JVM中计算过编号的实体类名都会被记录，不同的类名得到相同的编号时立即抛出异常，
+ * 以免其中一个实体类的通知被当作另一个实体类分发.
+ */
+public final class NotifyClassTable {
+    private static final ConcurrentMap<Integer, String> CLASS_NAMES = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<Integer, Class<? extends Entity>> entityClasses = new ConcurrentHashMap<>();
+
+    /**
+     * 注册实体类.
+     *
+     * @param entityClass 实体类
+     * @return 实体类的编号
+     * @throws IllegalArgumentException 编号与已注册的其他实体类冲突时
+     */
+    public int register(Class<? extends Entity> entityClass) {
+        notNull(entityClass, "entityClass is null");
+        final Class<? extends Entity> original = EntityFactory.getEntityClass(entityClass);
+        final int classId = getClassId(original);
+        final Class<? extends Entity> exist = entityClasses.putIfAbsent(classId, original);
+        if (exist != null && exist != original) {
+            throw new IllegalArgumentException("classId conflict: " + exist.getName() + " and " + original.getName());
+        }
+        return classId;
+    }
+
+    /**
+     * 根据编号获得已注册的实体类.
+     *
+     * @param classId 实体类的编号
+     * @return 实体类，未注册时返回null
+     */
+    public Class<? extends Entity> getEntityClass(int classId) {
+        return entityClasses.get(classId);
+    }
+
+    /**
+     * 计算实体类的编号.
+     *
+     * @param entityClass 实体类
+     * @return 实体类的编号
+     * @throws IllegalArgumentException 编号与本JVM中其他实体类的编号冲突时
+     */
+    public static int getClassId(Class<?> entityClass) {
+        final String name = entityClass.getName();
+        final int classId = name.hashCode();
+        String exist = CLASS_NAMES.get(classId);
+        if (exist == null) {
+            exist = CLASS_NAMES.putIfAbsent(classId, name);
+        }
+        if (exist != null && !exist.equals(name)) {
+            throw new IllegalArgumentException("classId conflict: " + exist + " and " + name);
+        }
+        return classId;
+    }
+}
@@ -0,0 +1,13 @@
+package io.github.dbstarll.dubai.model.notify;
+
+import io.github.dbstarll.dubai.model.entity.Entity;
+import org.bson.types.ObjectId;
+
+/**
+ * 需要获知通知发送时间的EntityNotifyListener.
+ * 通知中携带了发送时间时调用带timestamp的方法，否则调用{@link EntityNotifyListener}的方法.
+ */
+public interface TimedEntityNotifyListener extends EntityNotifyListener {
+    <E extends Entity> void onNotify(Class<E> entityClass, ObjectId id, NotifyType notifyType, ObjectId companyId,
+                                     String clientId, long timestamp);
+}
@@ -0,0 +1,9 @@
+package io.github.dbstarll.dubai.model.collection.test;
+
+import io.github.dbstarll.dubai.model.entity.Table;
+import io.github.dbstarll.dubai.model.entity.join.CompanyBase;
+
+@Table
+public interface CompanyEntity extends NotifiableEntity, CompanyBase {
+
+}
@@ -0,0 +1,25 @@
+package io.github.dbstarll.dubai.model.collection.test;
+
+import io.github.dbstarll.dubai.model.collection.test.SimpleEntity.Type;
+import io.github.dbstarll.dubai.model.entity.Entity;
+import io.github.dbstarll.dubai.model.entity.Replicated;
+import io.github.dbstarll.dubai.model.entity.Table;
+import io.github.dbstarll.dubai.model.entity.func.Cacheable;
+
+import java.util.List;
+
+@Table
+@Replicated(indexes = "type", maxSize = 3)
+public interface ReplicatedEntity extends Entity, Cacheable {
+    Type getType();
+
+    void setType(Type type);
+
+    int getRank();
+
+    void setRank(int rank);
+
+    List<Integer> getScores();
+
+    void setScores(List<Integer> scores);
+}
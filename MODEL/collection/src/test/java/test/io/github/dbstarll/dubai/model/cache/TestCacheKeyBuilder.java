@@ -0,0 +1,74 @@
+package test.io.github.dbstarll.dubai.model.cache;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.model.Filters;
+import io.github.dbstarll.dubai.model.cache.CacheKeyBuilder;
+import io.github.dbstarll.dubai.model.collection.test.SimpleEntity;
+import junit.framework.TestCase;
+import org.bson.BsonDocument;
+import org.bson.conversions.Bson;
+
+public class TestCacheKeyBuilder extends TestCase {
+    private final CacheKeyBuilder builder = new CacheKeyBuilder(MongoClientSettings.getDefaultCodecRegistry());
+
+    private String key(Bson filter) {
+        return builder.build(SimpleEntity.class, filter);
+    }
+
+    /**
+     * 测试字段顺序与$and写法不影响key.
+     */
+    public void testAndOrder() {
+        final String key = key(Filters.and(Filters.eq("a", 1), Filters.eq("b", "x")));
+        assertEquals(key, key(Filters.and(Filters.eq("b", "x"), Filters.eq("a", 1))));
+        assertEquals(key, key(BsonDocument.parse("{b: 'x', a: 1}")));
+        assertEquals(key, key(BsonDocument.parse("{$and: [{a: 1}, {$and: [{b: 'x'}]}]}")));
+        assertEquals(key, key(BsonDocument.parse("{a: {$eq: 1}, b: 'x'}")));
+        assertEquals(22, key.length());
+    }
+
+    /**
+     * 测试操作符与数组元素的顺序不影响key.
+     */
+    public void testOperators() {
+        final String range = key(Filters.and(Filters.gt("a", 1), Filters.lt("a", 5)));
+        assertEquals(range, key(BsonDocument.parse("{a: {$lt: 5, $gt: 1}}")));
+
+        final String in = key(Filters.in("a", 3, 1, 2));
+        assertEquals(in, key(Filters.in("a", 1, 2, 3, 1)));
+        assertFalse(in.equals(key(Filters.in("a", 1, 2))));
+
+        final String or = key(Filters.or(Filters.eq("a", 1), Filters.eq("b", 2)));
+        assertEquals(or, key(Filters.or(Filters.eq("b", 2), Filters.eq("a", 1))));
+
+        final String elemMatch = key(BsonDocument.parse("{a: {$elemMatch: {x: 1, y: 2}}}"));
+        assertEquals(elemMatch, key(BsonDocument.parse("{a: {$elemMatch: {y: 2, x: 1}}}")));
+    }
+
+    /**
+     * 测试语义不同的查询条件得到不同的key.
+     */
+    public void testDifferent() {
+        assertFalse(key(Filters.eq("a", 1)).equals(key(Filters.eq("a", 1L))));
+        assertFalse(key(Filters.eq("a", 1)).equals(key(Filters.eq("a", "1"))));
+        assertFalse(key(Filters.eq("a", 1)).equals(key(Filters.eq("b", 1))));
+        assertFalse(key(BsonDocument.parse("{a: {x: 1, y: 2}}")).equals(key(BsonDocument.parse("{a: {y: 2, x: 1}}"))));
+    }
+
+    /**
+     * 测试没有CodecRegistry时使用toString.
+     */
+    public void testFallback() {
+        final Bson filter = Filters.eq("a", 1);
+        assertEquals("toString:" + filter.toString(), new CacheKeyBuilder(null).build(SimpleEntity.class, filter));
+    }
+
+    /**
+     * 测试规范化结果.
+     */
+    public void testCanonicalize() {
+        assertEquals(new BsonDocument(), CacheKeyBuilder.canonicalize(new BsonDocument()));
+        assertEquals(BsonDocument.parse("{a: 1}"),
+                CacheKeyBuilder.canonicalize(BsonDocument.parse("{$and: [{a: 1}, {a: 1}]}")));
+    }
+}
@@ -0,0 +1,155 @@
+package test.io.github.dbstarll.dubai.model.cache;
+
+import io.github.dbstarll.dubai.model.cache.CacheSnapshot;
+import io.github.dbstarll.dubai.model.cache.EntityCacheManager.UpdateCacheHandler;
+import io.github.dbstarll.dubai.model.cache.LocalEntityCacheManager;
+import io.github.dbstarll.dubai.model.cache.SnapshotRevalidator;
+import io.github.dbstarll.dubai.model.collection.test.SimpleEntity;
+import io.github.dbstarll.dubai.model.entity.Entity;
+import io.github.dbstarll.dubai.model.entity.EntityFactory;
+import io.github.dbstarll.dubai.model.entity.EntityModifier;
+import io.github.dbstarll.dubai.model.mongodb.MongoClientFactory;
+import junit.framework.TestCase;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.types.ObjectId;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestCacheSnapshot extends TestCase {
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private final CodecRegistry codecRegistry = new MongoClientFactory().getMongoClientSettingsbuilder().build()
+            .getCodecRegistry();
+
+    private File file;
+
+    @Override
+    protected void setUp() throws Exception {
+        this.file = File.createTempFile("cache-snapshot", ".dat");
+        assertTrue(file.delete());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        file.delete();
+    }
+
+    private static SimpleEntity newEntity(Date lastModified) {
+        final SimpleEntity entity = EntityFactory.newInstance(SimpleEntity.class);
+        ((EntityModifier) entity).setId(new ObjectId());
+        ((EntityModifier) entity).setLastModified(lastModified);
+        return entity;
+    }
+
+    private static UpdateCacheHandler<SimpleEntity> handler(final AtomicInteger loads) {
+        return new UpdateCacheHandler<SimpleEntity>() {
+            @Override
+            public SimpleEntity updateCache(String key) {
+                loads.incrementAndGet();
+                return null;
+            }
+        };
+    }
+
+    /**
+     * 测试写入快照并在启动时校验后恢复.
+     *
+     * @throws Exception Exception
+     */
+    public void testWriteAndRestore() throws Exception {
+        final Date lastModified = new Date(1000);
+        final SimpleEntity valid = newEntity(lastModified);
+        final SimpleEntity modified = newEntity(lastModified);
+        final SimpleEntity deleted = newEntity(lastModified);
+
+        final LocalEntityCacheManager before = new LocalEntityCacheManager();
+        before.set("valid", valid);
+        before.set("modified", modified);
+        before.set("deleted", deleted);
+        assertEquals(3, new CacheSnapshot(before, codecRegistry, file).write());
+        assertTrue(file.isFile());
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+
+        final Map<ObjectId, Date> current = new HashMap<>();
+        current.put(valid.getId(), lastModified);
+        current.put(modified.getId(), new Date(2000));
+        final LocalEntityCacheManager after = new LocalEntityCacheManager();
+        final CacheSnapshot snapshot = new CacheSnapshot(after, codecRegistry, file);
+        assertFalse(snapshot.isReady());
+        snapshot.restore(new SnapshotRevalidator() {
+            @Override
+            public <E extends Entity> Map<ObjectId, Date> lastModified(Class<E> entityClass,
+                                                                       Collection<ObjectId> ids) {
+                assertEquals(SimpleEntity.class, entityClass);
+                assertEquals(3, ids.size());
+                return current;
+            }
+        }, DIRECT);
+        assertTrue(snapshot.awaitReady(1, TimeUnit.SECONDS));
+        assertTrue(snapshot.isReady());
+        assertEquals(1, snapshot.getRestoredCount());
+        assertEquals(2, snapshot.getStaleCount());
+
+        final AtomicInteger loads = new AtomicInteger();
+        assertEquals(valid.getId(), after.find(SimpleEntity.class, "valid", handler(loads)).getId());
+        assertEquals(0, loads.get());
+        assertNull(after.find(SimpleEntity.class, "modified", handler(loads)));
+        assertNull(after.find(SimpleEntity.class, "deleted", handler(loads)));
+        assertEquals(2, loads.get());
+    }
+
+    /**
+     * 测试快照不存在或已损坏时也能就绪.
+     *
+     * @throws IOException IOException
+     */
+    public void testMissingOrCorrupted() throws IOException {
+        final SnapshotRevalidator revalidator = new SnapshotRevalidator() {
+            @Override
+            public <E extends Entity> Map<ObjectId, Date> lastModified(Class<E> entityClass,
+                                                                       Collection<ObjectId> ids) {
+                throw new IllegalStateException("should not revalidate");
+            }
+        };
+
+        final CacheSnapshot missing = new CacheSnapshot(new LocalEntityCacheManager(), codecRegistry, file);
+        missing.restore(revalidator, DIRECT);
+        assertTrue(missing.isReady());
+
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[]{1, 2, 3});
+        }
+        final CacheSnapshot corrupted = new CacheSnapshot(new LocalEntityCacheManager(), codecRegistry, file);
+        corrupted.restore(revalidator, DIRECT);
+        assertTrue(corrupted.isReady());
+        assertEquals(0, corrupted.getRestoredCount());
+    }
+
+    /**
+     * 测试批量校验的条目数必须大于0.
+     */
+    public void testSetBatchSize() {
+        final CacheSnapshot snapshot = new CacheSnapshot(new LocalEntityCacheManager(), codecRegistry, file);
+        snapshot.setBatchSize(1);
+        try {
+            snapshot.setBatchSize(0);
+            fail("throw IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            assertEquals("batchSize must be positive: 0", ex.getMessage());
+        }
+    }
+}
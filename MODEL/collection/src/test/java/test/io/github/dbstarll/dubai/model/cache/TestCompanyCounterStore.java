@@ -0,0 +1,189 @@
+package test.io.github.dbstarll.dubai.model.cache;
+
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.UpdateOptions;
+import io.github.dbstarll.dubai.model.cache.CompanyCounterStore;
+import io.github.dbstarll.dubai.model.collection.test.CompanyEntity;
+import io.github.dbstarll.dubai.model.collection.test.NotifiableEntity;
+import io.github.dbstarll.dubai.model.entity.Entity;
+import io.github.dbstarll.dubai.model.entity.EntityFactory;
+import io.github.dbstarll.dubai.model.entity.EntityModifier;
+import io.github.dbstarll.dubai.model.notify.NotifyProvider;
+import io.github.dbstarll.dubai.model.notify.NotifyType;
+import mockit.Expectations;
+import mockit.Mocked;
+import mockit.Verifications;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+import static org.junit.Assert.*;
+
+public class TestCompanyCounterStore {
+    @Mocked
+    MongoDatabase mongoDatabase;
+
+    @Mocked
+    MongoCollection<Document> counters;
+
+    @Mocked
+    FindIterable<Document> findIterable;
+
+    private CompanyCounterStore store;
+    private final ObjectId companyId = new ObjectId();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    /**
+     * 初始化.
+     */
+    @Before
+    public void setUp() {
+        new Expectations() {
+            {
+                mongoDatabase.getCollection(CompanyCounterStore.DEFAULT_COLLECTION_NAME);
+                result = counters;
+            }
+        };
+        this.store = new CompanyCounterStore(mongoDatabase);
+        this.store.enable(CompanyEntity.class);
+    }
+
+    private LongSupplier counter(final long count) {
+        return new LongSupplier() {
+            @Override
+            public long getAsLong() {
+                loads.incrementAndGet();
+                return count;
+            }
+        };
+    }
+
+    private void counterDocument(final Document document) {
+        new Expectations() {
+            {
+                counters.find((Bson) any);
+                result = findIterable;
+                findIterable.first();
+                result = document;
+            }
+        };
+    }
+
+    private CompanyEntity entity(boolean defunct) {
+        final CompanyEntity entity = EntityFactory.newInstance(CompanyEntity.class);
+        ((EntityModifier) entity).setId(new ObjectId());
+        entity.setCompanyId(companyId);
+        entity.setDefunct(defunct);
+        return entity;
+    }
+
+    /**
+     * 测试计数不存在时以实际数量校准.
+     */
+    @Test
+    public void testCountMissing() {
+        counterDocument(null);
+        assertEquals(10, store.count(CompanyEntity.class, companyId, counter(10)));
+        assertEquals(1, loads.get());
+        new Verifications() {
+            {
+                counters.updateOne((Bson) any, (Bson) any, (UpdateOptions) any);
+                times = 1;
+            }
+        };
+    }
+
+    /**
+     * 测试在校准间隔内直接返回保存的计数.
+     */
+    @Test
+    public void testCountFresh() {
+        counterDocument(new Document("count", 5L).append("reconciled", new Date()));
+        assertEquals(5, store.count(CompanyEntity.class, companyId, counter(10)));
+        assertEquals(0, loads.get());
+        new Verifications() {
+            {
+                counters.updateOne((Bson) any, (Bson) any, (UpdateOptions) any);
+                times = 0;
+            }
+        };
+    }
+
+    /**
+     * 测试超过校准间隔后重新校准.
+     */
+    @Test
+    public void testCountStale() {
+        store.setReconcileInterval(1, TimeUnit.SECONDS);
+        counterDocument(new Document("count", 5).append("reconciled", new Date(System.currentTimeMillis() - 2000)));
+        assertEquals(10, store.count(CompanyEntity.class, companyId, counter(10)));
+        assertEquals(1, loads.get());
+    }
+
+    /**
+     * 测试新增和删除实体时增量更新计数，更新、失效实体以及未启用的实体类不更新计数.
+     *
+     * @param delegate 被包装的NotifyProvider
+     */
+    @Test
+    public void testDecorate(@Mocked final NotifyProvider delegate) {
+        final NotifyProvider provider = store.decorate(delegate);
+        final CompanyEntity entity = entity(false);
+        provider.doNotify(entity, NotifyType.insert);
+        provider.doNotify(entity, NotifyType.update);
+        provider.doNotify(entity, NotifyType.delete);
+        provider.doNotify(entity(true), NotifyType.delete);
+        provider.doNotify(EntityFactory.newInstance(NotifiableEntity.class), NotifyType.insert);
+        new Verifications() {
+            {
+                delegate.doNotify((Entity) any, (NotifyType) any);
+                times = 5;
+                counters.updateOne((Bson) any, (Bson) any);
+                times = 2;
+            }
+        };
+    }
+
+    /**
+     * 测试在两个公司之间转移计数，公司没有改变以及未启用的实体类不更新计数.
+     */
+    @Test
+    public void testMove() {
+        final ObjectId otherCompanyId = new ObjectId();
+        store.move(CompanyEntity.class, companyId, otherCompanyId);
+        store.move(CompanyEntity.class, companyId, companyId);
+        store.move(CompanyEntity.class, null, companyId);
+        store.move(CompanyEntity.class, null, null);
+        store.move(NotifiableEntity.class, companyId, otherCompanyId);
+        new Verifications() {
+            {
+                counters.updateOne((Bson) any, (Bson) any);
+                times = 3;
+            }
+        };
+    }
+
+    /**
+     * 测试只能启用CompanyBase的实体类.
+     */
+    @Test
+    public void testEnable() {
+        assertTrue(store.isEnabled(CompanyEntity.class));
+        assertFalse(store.isEnabled(NotifiableEntity.class));
+        try {
+            store.enable(NotifiableEntity.class);
+            fail("throw IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            assertEquals("not CompanyBase: " + NotifiableEntity.class.getName(), ex.getMessage());
+        }
+    }
+}
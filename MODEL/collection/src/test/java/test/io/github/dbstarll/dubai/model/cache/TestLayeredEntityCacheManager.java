@@ -0,0 +1,126 @@
+package test.io.github.dbstarll.dubai.model.cache;
+
+import io.github.dbstarll.dubai.model.cache.EntityCacheManager.UpdateCacheHandler;
+import io.github.dbstarll.dubai.model.cache.LayeredEntityCacheManager;
+import io.github.dbstarll.dubai.model.cache.MappedFileSharedCacheStore;
+import io.github.dbstarll.dubai.model.collection.test.SimpleEntity;
+import io.github.dbstarll.dubai.model.entity.EntityFactory;
+import io.github.dbstarll.dubai.model.entity.EntityModifier;
+import io.github.dbstarll.dubai.model.mongodb.MongoClientFactory;
+import io.github.dbstarll.dubai.model.notify.BinaryNotifyProvider;
+import io.github.dbstarll.dubai.model.notify.BinaryNotifyPublisher;
+import io.github.dbstarll.dubai.model.notify.EntityNotifyConsumer;
+import io.github.dbstarll.dubai.model.notify.NotifyType;
+import junit.framework.TestCase;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.types.ObjectId;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestLayeredEntityCacheManager extends TestCase {
+    private final CodecRegistry codecRegistry = new MongoClientFactory().getMongoClientSettingsbuilder().build()
+            .getCodecRegistry();
+
+    private File file;
+    private MappedFileSharedCacheStore sharedCacheStore;
+
+    @Override
+    protected void setUp() throws Exception {
+        this.file = File.createTempFile("shared-cache", ".dat");
+        this.sharedCacheStore = new MappedFileSharedCacheStore(file, 64 * 1024, 2);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        sharedCacheStore.close();
+        assertTrue(file.delete());
+    }
+
+    private static UpdateCacheHandler<SimpleEntity> handler(final SimpleEntity entity, final AtomicInteger loads) {
+        return new UpdateCacheHandler<SimpleEntity>() {
+            @Override
+            public SimpleEntity updateCache(String key) {
+                loads.incrementAndGet();
+                return entity;
+            }
+        };
+    }
+
+    /**
+     * 测试两个节点共享二级缓存，并通过通知失效其他节点的缓存，直接调用update不会再次发送通知.
+     *
+     * @throws IOException IOException
+     */
+    public void testCrossNodeInvalidation() throws IOException {
+        final LayeredEntityCacheManager node1 = new LayeredEntityCacheManager(codecRegistry, sharedCacheStore);
+        final LayeredEntityCacheManager node2 = new LayeredEntityCacheManager(codecRegistry, sharedCacheStore);
+        final EntityNotifyConsumer consumer2 = new EntityNotifyConsumer();
+        consumer2.regist(node2, SimpleEntity.class);
+        final AtomicInteger published = new AtomicInteger();
+        final BinaryNotifyProvider provider = new BinaryNotifyProvider(new BinaryNotifyPublisher() {
+            @Override
+            public void publish(byte[] message) {
+                published.incrementAndGet();
+                consumer2.onNotify(ByteBuffer.wrap(message), "node1");
+            }
+        }, true);
+
+        final SimpleEntity entity = EntityFactory.newInstance(SimpleEntity.class);
+        ((EntityModifier) entity).setId(new ObjectId());
+        entity.setType(SimpleEntity.Type.t1);
+        final AtomicInteger loads = new AtomicInteger();
+
+        assertSame(entity, node1.find(SimpleEntity.class, "k1", handler(entity, loads)));
+        final SimpleEntity shared = node2.find(SimpleEntity.class, "k1", handler(entity, loads));
+        assertEquals(1, loads.get());
+        assertEquals(entity.getId(), shared.getId());
+        assertEquals(SimpleEntity.Type.t1, shared.getType());
+        assertEquals(1, node1.getSharedMissCount());
+        assertEquals(1, node2.getSharedHitCount());
+
+        assertSame(shared, node2.find(SimpleEntity.class, "k1", handler(entity, loads)));
+        assertEquals(1, node2.getSharedHitCount());
+
+        node1.update(SimpleEntity.class, entity.getId(), NotifyType.update);
+        assertEquals(1, node1.getInvalidationCount());
+        assertEquals(0, node2.getInvalidationCount());
+        assertEquals(0, published.get());
+
+        // 模拟NotifiableCollection在写入后发送的通知
+        provider.doNotify(entity, NotifyType.update);
+        assertEquals(1, published.get());
+        assertEquals(1, node1.getInvalidationCount());
+        assertEquals(1, node2.getInvalidationCount());
+        assertTrue(node2.getInvalidationLatencyMax() >= 0);
+        assertEquals(0.0, node1.getInvalidationLatencyAvg());
+
+        assertSame(entity, node2.find(SimpleEntity.class, "k1", handler(entity, loads)));
+        assertEquals(2, loads.get());
+        assertEquals(1, node2.getSharedMissCount());
+        consumer2.close();
+    }
+
+    /**
+     * 测试set同时写入两级缓存.
+     */
+    public void testSet() {
+        final LayeredEntityCacheManager node1 = new LayeredEntityCacheManager(codecRegistry, sharedCacheStore);
+        final LayeredEntityCacheManager node2 = new LayeredEntityCacheManager(codecRegistry, sharedCacheStore);
+        final SimpleEntity entity = EntityFactory.newInstance(SimpleEntity.class);
+        ((EntityModifier) entity).setId(new ObjectId());
+        final AtomicInteger loads = new AtomicInteger();
+
+        node1.set("k1", entity);
+        assertEquals(entity.getId(), node2.find(SimpleEntity.class, "k1", handler(entity, loads)).getId());
+        assertEquals(0, loads.get());
+
+        node2.onNotify(SimpleEntity.class, entity.getId(), NotifyType.delete, null, null);
+        node1.find(SimpleEntity.class, "k1", handler(entity, loads));
+        assertEquals(0, loads.get());
+        node2.find(SimpleEntity.class, "k1", handler(entity, loads));
+        assertEquals(1, loads.get());
+    }
+}
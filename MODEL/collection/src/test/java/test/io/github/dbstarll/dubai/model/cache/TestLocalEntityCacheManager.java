@@ -0,0 +1,373 @@
+package test.io.github.dbstarll.dubai.model.cache;
+
+import io.github.dbstarll.dubai.model.cache.CacheSpec;
+import io.github.dbstarll.dubai.model.cache.CacheStats;
+import io.github.dbstarll.dubai.model.cache.EntityCacheManager.UpdateCacheHandler;
+import io.github.dbstarll.dubai.model.cache.LocalEntityCacheManager;
+import io.github.dbstarll.dubai.model.collection.test.CacheableEntity;
+import io.github.dbstarll.dubai.model.collection.test.SimpleEntity;
+import io.github.dbstarll.dubai.model.entity.Entity;
+import io.github.dbstarll.dubai.model.entity.EntityFactory;
+import io.github.dbstarll.dubai.model.entity.EntityModifier;
+import io.github.dbstarll.dubai.model.notify.NotifyType;
+import junit.framework.TestCase;
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class TestLocalEntityCacheManager extends TestCase {
+    private static <E extends Entity> E newEntity(Class<E> entityClass) {
+        final E entity = EntityFactory.newInstance(entityClass);
+        ((EntityModifier) entity).setId(new ObjectId());
+        return entity;
+    }
+
+    private static <E extends Entity> UpdateCacheHandler<E> handler(final E entity, final AtomicInteger loads) {
+        return new UpdateCacheHandler<E>() {
+            @Override
+            public E updateCache(String key) {
+                loads.incrementAndGet();
+                return entity;
+            }
+        };
+    }
+
+    /**
+     * 测试缓存命中与按实体ID失效.
+     */
+    public void testFindAndUpdate() {
+        final LocalEntityCacheManager manager = new LocalEntityCacheManager();
+        final CacheableEntity entity = newEntity(CacheableEntity.class);
+        final CacheableEntity other = newEntity(CacheableEntity.class);
+        final AtomicInteger loads = new AtomicInteger();
+
+        assertSame(entity, manager.find(CacheableEntity.class, "k1", handler(entity, loads)));
+        assertSame(entity, manager.find(CacheableEntity.class, "k2", handler(entity, loads)));
+        assertSame(other, manager.find(CacheableEntity.class, "k3", handler(other, loads)));
+        assertEquals(3, loads.get());
+
+        assertSame(entity, manager.find(CacheableEntity.class, "k1", handler(entity, loads)));
+        assertSame(entity, manager.find(CacheableEntity.class, "k2", handler(entity, loads)));
+        assertEquals(3, loads.get());
+
+        manager.update(CacheableEntity.class, entity.getId(), NotifyType.update);
+        assertSame(entity, manager.find(CacheableEntity.class, "k1", handler(entity, loads)));
+        assertSame(entity, manager.find(CacheableEntity.class, "k2", handler(entity, loads)));
+        assertSame(other, manager.find(CacheableEntity.class, "k3", handler(other, loads)));
+        assertEquals(5, loads.get());
+
+        final CacheStats stats = manager.stats(CacheableEntity.class);
+        assertEquals(3, stats.getHitCount());
+        assertEquals(5, stats.getMissCount());
+        assertEquals(2, stats.getInvalidationCount());
+        assertEquals(3, stats.getSize());
+        assertEquals(3, manager.stats().getSize());
+        assertEquals(0, manager.stats(SimpleEntity.class).getSize());
+    }
+
+    /**
+     * 测试通过通知失效缓存.
+     */
+    public void testOnNotify() {
+        final LocalEntityCacheManager manager = new LocalEntityCacheManager();
+        final CacheableEntity entity = newEntity(CacheableEntity.class);
+        final AtomicInteger loads = new AtomicInteger();
+
+        manager.set("k1", entity);
+        assertSame(entity, manager.find(CacheableEntity.class, "k1", handler(entity, loads)));
+        assertEquals(0, loads.get());
+
+        manager.onNotify(CacheableEntity.class, entity.getId(), NotifyType.delete, null, "client");
+        assertSame(entity, manager.find(CacheableEntity.class, "k1", handler(entity, loads)));
+        assertEquals(1, loads.get());
+    }
+
+    /**
+     * 测试null结果不缓存.
+     */
+    public void testNotCacheNull() {
+        final LocalEntityCacheManager manager = new LocalEntityCacheManager();
+        final AtomicInteger loads = new AtomicInteger();
+        assertNull(manager.find(CacheableEntity.class, "k1", handler((CacheableEntity) null, loads)));
+        assertNull(manager.find(CacheableEntity.class, "k1", handler((CacheableEntity) null, loads)));
+        assertEquals(2, loads.get());
+    }
+
+    /**
+     * 测试容量限制与频率准入.
+     */
+    public void testMaximumSize() {
+        final LocalEntityCacheManager manager = new LocalEntityCacheManager();
+        manager.setSpec(CacheableEntity.class, CacheSpec.maximumSize(10));
+        final AtomicInteger loads = new AtomicInteger();
+
+        final CacheableEntity hot = newEntity(CacheableEntity.class);
+        for (int i = 0; i < 5; i++) {
+            manager.find(CacheableEntity.class, "hot", handler(hot, loads));
+        }
+        for (int i = 0; i < 100; i++) {
+            manager.find(CacheableEntity.class, "cold" + i, handler(newEntity(CacheableEntity.class), loads));
+        }
+        assertEquals(10, manager.stats(CacheableEntity.class).getSize());
+        assertEquals(91, manager.stats(CacheableEntity.class).getEvictionCount());
+
+        final int before = loads.get();
+        manager.find(CacheableEntity.class, "hot", handler(hot, loads));
+        assertEquals(before, loads.get());
+    }
+
+    /**
+     * 测试多个线程并发命中时统计准确，缓冲的访问记录在之后写入时参与频率准入.
+     */
+    public void testConcurrentHits() throws InterruptedException {
+        final LocalEntityCacheManager manager = new LocalEntityCacheManager();
+        manager.setSpec(CacheableEntity.class, CacheSpec.maximumSize(10));
+        final AtomicInteger loads = new AtomicInteger();
+        final CacheableEntity hot = newEntity(CacheableEntity.class);
+        manager.find(CacheableEntity.class, "hot", handler(hot, loads));
+
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 1000; j++) {
+                        manager.find(CacheableEntity.class, "hot", handler(hot, loads));
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(1, loads.get());
+        assertEquals(8000, manager.stats(CacheableEntity.class).getHitCount());
+
+        for (int i = 0; i < 100; i++) {
+            manager.find(CacheableEntity.class, "cold" + i, handler(newEntity(CacheableEntity.class), loads));
+        }
+        manager.find(CacheableEntity.class, "hot", handler(hot, loads));
+        assertEquals(101, loads.get());
+    }
+
+    /**
+     * 测试最大权重.
+     */
+    public void testMaximumWeight() {
+        final LocalEntityCacheManager manager = new LocalEntityCacheManager();
+        manager.setDefaultSpec(CacheSpec.maximumSize(100).withMaximumWeight(10, new CacheSpec.Weigher() {
+            @Override
+            public int weigh(String key, Entity entity) {
+                return key.length();
+            }
+        }));
+        final AtomicInteger loads = new AtomicInteger();
+        manager.find(CacheableEntity.class, "12345", handler(newEntity(CacheableEntity.class), loads));
+        manager.find(CacheableEntity.class, "1234", handler(newEntity(CacheableEntity.class), loads));
+        assertEquals(9, manager.stats(CacheableEntity.class).getWeight());
+        manager.find(CacheableEntity.class, "123", handler(newEntity(CacheableEntity.class), loads));
+        assertEquals(2, manager.stats(CacheableEntity.class).getSize());
+        assertEquals(7, manager.stats(CacheableEntity.class).getWeight());
+        manager.find(CacheableEntity.class, "12345678901", handler(newEntity(CacheableEntity.class), loads));
+        assertEquals(2, manager.stats(CacheableEntity.class).getSize());
+    }
+
+    /**
+     * 测试过期时间.
+     *
+     * @throws InterruptedException InterruptedException
+     */
+    public void testExpireAfterWrite() throws InterruptedException {
+        final LocalEntityCacheManager manager = new LocalEntityCacheManager();
+        manager.setSpec(CacheableEntity.class, CacheSpec.maximumSize(100).withExpireAfterWrite(20,
+                TimeUnit.MILLISECONDS));
+        final CacheableEntity entity = newEntity(CacheableEntity.class);
+        final AtomicInteger loads = new AtomicInteger();
+        manager.find(CacheableEntity.class, "k1", handler(entity, loads));
+        manager.find(CacheableEntity.class, "k1", handler(entity, loads));
+        assertEquals(1, loads.get());
+        Thread.sleep(50);
+        manager.find(CacheableEntity.class, "k1", handler(entity, loads));
+        assertEquals(2, loads.get());
+    }
+
+    /**
+     * 测试清空缓存.
+     */
+    public void testInvalidateAll() {
+        final LocalEntityCacheManager manager = new LocalEntityCacheManager();
+        manager.set("k1", newEntity(CacheableEntity.class));
+        manager.set("k2", newEntity(CacheableEntity.class));
+        manager.invalidateAll(SimpleEntity.class);
+        assertEquals(2, manager.stats(CacheableEntity.class).getSize());
+        manager.invalidateAll(CacheableEntity.class);
+        assertEquals(0, manager.stats(CacheableEntity.class).getSize());
+        assertEquals(1.0, manager.stats().hitRate());
+    }
+
+    /**
+     * 测试缓存空结果，以及新增或修改时失效空结果.
+     */
+    public void testNegativeCache() {
+        final LocalEntityCacheManager manager = new LocalEntityCacheManager();
+        manager.setDefaultSpec(CacheSpec.maximumSize(100).withNegativeExpireAfterWrite(1, TimeUnit.MINUTES));
+        final AtomicInteger loads = new AtomicInteger();
+        final CacheableEntity entity = newEntity(CacheableEntity.class);
+
+        assertNull(manager.find(CacheableEntity.class, "k1", handler((CacheableEntity) null, loads)));
+        assertNull(manager.find(CacheableEntity.class, "k1", handler((CacheableEntity) null, loads)));
+        assertEquals(1, loads.get());
+
+        manager.update(CacheableEntity.class, new ObjectId(), NotifyType.delete);
+        assertNull(manager.find(CacheableEntity.class, "k1", handler((CacheableEntity) null, loads)));
+        assertEquals(1, loads.get());
+
+        manager.update(CacheableEntity.class, entity.getId(), NotifyType.insert);
+        assertSame(entity, manager.find(CacheableEntity.class, "k1", handler(entity, loads)));
+        assertSame(entity, manager.find(CacheableEntity.class, "k1", handler(entity, loads)));
+        assertEquals(2, loads.get());
+        assertEquals(1, manager.stats(CacheableEntity.class).getInvalidationCount());
+    }
+
+    /**
+     * 测试过期条目在重新加载期间返回旧值.
+     *
+     * @throws InterruptedException InterruptedException
+     */
+    public void testStaleWhileRefresh() throws InterruptedException {
+        final LocalEntityCacheManager manager = new LocalEntityCacheManager();
+        manager.setDefaultSpec(CacheSpec.maximumSize(100).withExpireAfterWrite(20, TimeUnit.MILLISECONDS));
+        final CacheableEntity stale = newEntity(CacheableEntity.class);
+        final CacheableEntity fresh = newEntity(CacheableEntity.class);
+        final AtomicInteger loads = new AtomicInteger();
+        manager.set("k1", stale);
+        Thread.sleep(50);
+
+        final AtomicReference<CacheableEntity> during = new AtomicReference<>();
+        assertSame(fresh, manager.find(CacheableEntity.class, "k1", new UpdateCacheHandler<CacheableEntity>() {
+            @Override
+            public CacheableEntity updateCache(String key) {
+                loads.incrementAndGet();
+                during.set(manager.find(CacheableEntity.class, "k1", handler(fresh, loads)));
+                return fresh;
+            }
+        }));
+        assertEquals(1, loads.get());
+        assertSame(stale, during.get());
+        assertSame(fresh, manager.find(CacheableEntity.class, "k1", handler(fresh, loads)));
+        assertEquals(1, loads.get());
+    }
+
+    /**
+     * 测试加载失败后不再返回旧值.
+     *
+     * @throws InterruptedException InterruptedException
+     */
+    public void testLoadFailed() throws InterruptedException {
+        final LocalEntityCacheManager manager = new LocalEntityCacheManager();
+        manager.setDefaultSpec(CacheSpec.maximumSize(100).withExpireAfterWrite(20, TimeUnit.MILLISECONDS));
+        final CacheableEntity entity = newEntity(CacheableEntity.class);
+        final AtomicInteger loads = new AtomicInteger();
+        manager.set("k1", entity);
+        Thread.sleep(50);
+
+        try {
+            manager.find(CacheableEntity.class, "k1", new UpdateCacheHandler<CacheableEntity>() {
+                @Override
+                public CacheableEntity updateCache(String key) {
+                    throw new IllegalStateException("test");
+                }
+            });
+            fail("throw IllegalStateException");
+        } catch (IllegalStateException ex) {
+            assertEquals("test", ex.getMessage());
+        }
+        assertNull(manager.find(CacheableEntity.class, "k1", handler((CacheableEntity) null, loads)));
+        assertEquals(1, loads.get());
+    }
+
+    /**
+     * 测试条目在过期前被访问时提前刷新.
+     *
+     * @throws InterruptedException InterruptedException
+     */
+    public void testRefreshAhead() throws InterruptedException {
+        final LocalEntityCacheManager manager = new LocalEntityCacheManager();
+        manager.setDefaultSpec(CacheSpec.maximumSize(100).withExpireAfterWrite(1, TimeUnit.SECONDS)
+                .withRefreshAhead(900, TimeUnit.MILLISECONDS));
+        final List<Runnable> tasks = new ArrayList<>();
+        manager.setRefreshExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        });
+        final CacheableEntity old = newEntity(CacheableEntity.class);
+        final CacheableEntity fresh = newEntity(CacheableEntity.class);
+        final AtomicInteger loads = new AtomicInteger();
+        manager.set("k1", old);
+
+        assertSame(old, manager.find(CacheableEntity.class, "k1", handler(fresh, loads)));
+        assertTrue(tasks.isEmpty());
+
+        Thread.sleep(150);
+        assertSame(old, manager.find(CacheableEntity.class, "k1", handler(fresh, loads)));
+        assertSame(old, manager.find(CacheableEntity.class, "k1", handler(fresh, loads)));
+        assertEquals(1, tasks.size());
+        assertEquals(0, loads.get());
+
+        tasks.remove(0).run();
+        assertEquals(1, loads.get());
+        assertSame(fresh, manager.find(CacheableEntity.class, "k1", handler(fresh, loads)));
+        assertTrue(tasks.isEmpty());
+    }
+
+    /**
+     * 测试提前刷新失败或被拒绝后可以再次刷新.
+     *
+     * @throws InterruptedException InterruptedException
+     */
+    public void testRefreshAheadFailed() throws InterruptedException {
+        final LocalEntityCacheManager manager = new LocalEntityCacheManager();
+        manager.setDefaultSpec(CacheSpec.maximumSize(100).withExpireAfterWrite(1, TimeUnit.SECONDS)
+                .withRefreshAhead(900, TimeUnit.MILLISECONDS));
+        final AtomicInteger executes = new AtomicInteger();
+        manager.setRefreshExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                if (executes.incrementAndGet() == 1) {
+                    throw new RejectedExecutionException();
+                }
+                command.run();
+            }
+        });
+        final CacheableEntity entity = newEntity(CacheableEntity.class);
+        manager.set("k1", entity);
+        Thread.sleep(150);
+
+        final UpdateCacheHandler<CacheableEntity> failed = new UpdateCacheHandler<CacheableEntity>() {
+            @Override
+            public CacheableEntity updateCache(String key) {
+                throw new IllegalStateException("test");
+            }
+        };
+        assertSame(entity, manager.find(CacheableEntity.class, "k1", failed));
+        assertSame(entity, manager.find(CacheableEntity.class, "k1", failed));
+        assertEquals(2, executes.get());
+
+        final AtomicInteger loads = new AtomicInteger();
+        final CacheableEntity fresh = newEntity(CacheableEntity.class);
+        assertSame(entity, manager.find(CacheableEntity.class, "k1", handler(fresh, loads)));
+        assertEquals(1, loads.get());
+        assertSame(fresh, manager.find(CacheableEntity.class, "k1", handler(fresh, loads)));
+    }
+}
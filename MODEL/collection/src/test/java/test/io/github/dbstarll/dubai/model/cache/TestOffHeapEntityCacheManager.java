@@ -0,0 +1,103 @@
+package test.io.github.dbstarll.dubai.model.cache;
+
+import io.github.dbstarll.dubai.model.cache.CacheStats;
+import io.github.dbstarll.dubai.model.cache.EntityCacheManager.UpdateCacheHandler;
+import io.github.dbstarll.dubai.model.cache.OffHeapEntityCacheManager;
+import io.github.dbstarll.dubai.model.collection.test.SimpleEntity;
+import io.github.dbstarll.dubai.model.entity.EntityFactory;
+import io.github.dbstarll.dubai.model.entity.EntityModifier;
+import io.github.dbstarll.dubai.model.mongodb.MongoClientFactory;
+import io.github.dbstarll.dubai.model.notify.NotifyType;
+import junit.framework.TestCase;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.types.ObjectId;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestOffHeapEntityCacheManager extends TestCase {
+    private final CodecRegistry codecRegistry = new MongoClientFactory().getMongoClientSettingsbuilder().build()
+            .getCodecRegistry();
+
+    private static SimpleEntity newEntity() {
+        final SimpleEntity entity = EntityFactory.newInstance(SimpleEntity.class);
+        ((EntityModifier) entity).setId(new ObjectId());
+        entity.setType(SimpleEntity.Type.t2);
+        return entity;
+    }
+
+    private static UpdateCacheHandler<SimpleEntity> handler(final SimpleEntity entity, final AtomicInteger loads) {
+        return new UpdateCacheHandler<SimpleEntity>() {
+            @Override
+            public SimpleEntity updateCache(String key) {
+                loads.incrementAndGet();
+                return entity;
+            }
+        };
+    }
+
+    /**
+     * 测试缓存命中时解码实体，以及按实体ID失效.
+     */
+    public void testFindAndUpdate() {
+        final OffHeapEntityCacheManager manager = new OffHeapEntityCacheManager(codecRegistry, 1024 * 1024);
+        final SimpleEntity entity = newEntity();
+        final AtomicInteger loads = new AtomicInteger();
+
+        assertSame(entity, manager.find(SimpleEntity.class, "k1", handler(entity, loads)));
+        final SimpleEntity cached = manager.find(SimpleEntity.class, "k1", handler(entity, loads));
+        assertEquals(1, loads.get());
+        assertNotSame(entity, cached);
+        assertEquals(entity.getId(), cached.getId());
+        assertEquals(SimpleEntity.Type.t2, cached.getType());
+
+        manager.update(SimpleEntity.class, entity.getId(), NotifyType.update);
+        manager.find(SimpleEntity.class, "k1", handler(entity, loads));
+        assertEquals(2, loads.get());
+
+        final CacheStats stats = manager.stats();
+        assertEquals(1, stats.getHitCount());
+        assertEquals(2, stats.getMissCount());
+        assertEquals(1, stats.getInvalidationCount());
+        assertEquals(1, stats.getSize());
+        assertTrue(stats.getWeight() > 0);
+        assertEquals(4L * 1024 * 1024, manager.getMemoryUsage());
+    }
+
+    /**
+     * 测试整段淘汰与碎片率.
+     */
+    public void testSegmentEviction() {
+        final OffHeapEntityCacheManager manager = new OffHeapEntityCacheManager(codecRegistry, 256, 2);
+        final AtomicInteger loads = new AtomicInteger();
+        assertEquals(0.0, manager.getFragmentation());
+
+        final SimpleEntity entity = newEntity();
+        manager.set("k0", entity);
+        manager.set("k0", entity);
+        assertTrue(manager.getFragmentation() > 0);
+
+        for (int i = 1; i < 50; i++) {
+            manager.find(SimpleEntity.class, "k" + i, handler(newEntity(), loads));
+        }
+        assertEquals(512, manager.getMemoryUsage());
+        assertTrue(manager.stats().getEvictionCount() > 0);
+        assertTrue(manager.stats().getSize() < 49);
+
+        manager.invalidateAll();
+        assertEquals(0, manager.stats().getSize());
+        assertEquals(0.0, manager.getFragmentation());
+    }
+
+    /**
+     * 测试通过通知失效缓存.
+     */
+    public void testOnNotify() {
+        final OffHeapEntityCacheManager manager = new OffHeapEntityCacheManager(codecRegistry, 1024 * 1024);
+        final SimpleEntity entity = newEntity();
+        final AtomicInteger loads = new AtomicInteger();
+        manager.set("k1", entity);
+        manager.onNotify(SimpleEntity.class, entity.getId(), NotifyType.delete, null, null);
+        manager.find(SimpleEntity.class, "k1", handler(entity, loads));
+        assertEquals(1, loads.get());
+    }
+}
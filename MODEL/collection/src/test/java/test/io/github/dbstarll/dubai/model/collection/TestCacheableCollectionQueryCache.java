@@ -0,0 +1,301 @@
+package test.io.github.dbstarll.dubai.model.collection;
+
+import com.mongodb.client.DistinctIterable;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.model.CountOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import io.github.dbstarll.dubai.model.cache.CacheKeyBuilder;
+import io.github.dbstarll.dubai.model.cache.LocalEntityCacheManager;
+import io.github.dbstarll.dubai.model.cache.QueryResultCache;
+import io.github.dbstarll.dubai.model.collection.CacheableCollection;
+import io.github.dbstarll.dubai.model.collection.Collection;
+import io.github.dbstarll.dubai.model.collection.test.CacheableEntity;
+import io.github.dbstarll.dubai.model.entity.Entity;
+import io.github.dbstarll.dubai.model.entity.EntityFactory;
+import io.github.dbstarll.dubai.model.entity.EntityModifier;
+import io.github.dbstarll.dubai.model.mongodb.MongoClientFactory;
+import io.github.dbstarll.dubai.model.notify.NotifyType;
+import mockit.Delegate;
+import mockit.Expectations;
+import mockit.Injectable;
+import mockit.Mocked;
+import mockit.Verifications;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TestCacheableCollectionQueryCache {
+    @Injectable
+    Collection<CacheableEntity> base;
+
+    @Mocked
+    FindIterable<CacheableEntity> findIterable;
+
+    @Mocked
+    DistinctIterable<String> distinctIterable;
+
+    private CacheableEntity entity1;
+    private CacheableEntity entity2;
+    private QueryResultCache queryResultCache;
+    private LocalEntityCacheManager entityCacheManager;
+    private CacheableCollection<CacheableEntity> collection;
+    private CacheKeyBuilder cacheKeyBuilder;
+    private Runnable onRead;
+
+    private static CacheableEntity newEntity() {
+        final CacheableEntity entity = EntityFactory.newInstance(CacheableEntity.class);
+        ((EntityModifier) entity).setId(new ObjectId());
+        return entity;
+    }
+
+    /**
+     * 初始化collection.
+     */
+    @Before
+    public void initialize() {
+        this.entity1 = newEntity();
+        this.entity2 = newEntity();
+        this.queryResultCache = new QueryResultCache();
+        this.collection = new CacheableCollection<>(base);
+        this.entityCacheManager = new LocalEntityCacheManager();
+        collection.setEntityCacheManager(entityCacheManager);
+        this.cacheKeyBuilder = new CacheKeyBuilder(new MongoClientFactory().getMongoClientSettingsbuilder().build()
+                .getCodecRegistry());
+        collection.setCacheKeyBuilder(cacheKeyBuilder);
+        collection.setQueryResultCache(queryResultCache);
+
+        new Expectations() {
+            {
+                base.getEntityClass();
+                result = CacheableEntity.class;
+                minTimes = 0;
+                base.find((Bson) any, CacheableEntity.class);
+                result = findIterable;
+                minTimes = 0;
+                findIterable.into((ArrayList<CacheableEntity>) any);
+                result = new Delegate<List<CacheableEntity>>() {
+                    @SuppressWarnings("unused")
+                    List<CacheableEntity> into(List<CacheableEntity> target) {
+                        if (onRead != null) {
+                            onRead.run();
+                        }
+                        target.addAll(Arrays.asList(entity1, entity2));
+                        return target;
+                    }
+                };
+                minTimes = 0;
+                base.count((Bson) any, (CountOptions) any);
+                result = 2L;
+                minTimes = 0;
+                base.distinct("type", (Bson) any, String.class);
+                result = distinctIterable;
+                minTimes = 0;
+                distinctIterable.into((ArrayList<String>) any);
+                result = new Delegate<List<String>>() {
+                    @SuppressWarnings("unused")
+                    List<String> into(List<String> target) {
+                        target.addAll(Arrays.asList("t1", "t2"));
+                        return target;
+                    }
+                };
+                minTimes = 0;
+            }
+        };
+    }
+
+    /**
+     * 测试未启用的实体类不缓存查询结果.
+     */
+    @Test
+    public void testDisabled() {
+        assertEquals(2, collection.count(Filters.eq("type", "t1")));
+        assertEquals(2, collection.count(Filters.eq("type", "t1")));
+        assertEquals(0, queryResultCache.getMissCount());
+
+        new Verifications() {
+            {
+                base.count((Bson) any, (CountOptions) any);
+                times = 2;
+            }
+        };
+    }
+
+    /**
+     * 测试缓存find的结果，命中时通过实体缓存获得实体.
+     */
+    @Test
+    public void testFind() {
+        queryResultCache.enable(CacheableEntity.class);
+        final List<CacheableEntity> first = collection.find(Filters.eq("type", "t1")).into(new ArrayList<>());
+        final List<CacheableEntity> second = collection.find(Filters.eq("type", "t1")).into(new ArrayList<>());
+        assertEquals(2, second.size());
+        assertEquals(entity1.getId(), second.get(0).getId());
+        assertEquals(entity2.getId(), second.get(1).getId());
+        assertNotSame(entity1, first.get(0));
+        assertNotSame(first.get(0), second.get(0));
+        assertEquals(1, queryResultCache.getMissCount());
+        assertEquals(1, queryResultCache.getHitCount());
+
+        new Verifications() {
+            {
+                findIterable.into((ArrayList<CacheableEntity>) any);
+                times = 1;
+                base.findOne((Bson) any);
+                times = 0;
+            }
+        };
+    }
+
+    /**
+     * 测试first按limit为1查询并单独缓存.
+     */
+    @Test
+    public void testFirst() {
+        queryResultCache.enable(CacheableEntity.class);
+        final FindIterable<CacheableEntity> iterable = collection.find(Filters.eq("type", "t1"));
+        assertEquals(entity1.getId(), iterable.first().getId());
+        assertEquals(entity1.getId(), collection.find(Filters.eq("type", "t1")).first().getId());
+        assertEquals(1, queryResultCache.getMissCount());
+        assertEquals(1, queryResultCache.getHitCount());
+
+        new Verifications() {
+            {
+                findIterable.limit(1);
+                times = 2;
+                findIterable.limit(0);
+                times = 2;
+                findIterable.into((ArrayList<CacheableEntity>) any);
+                times = 1;
+            }
+        };
+    }
+
+    /**
+     * 测试命中查询结果缓存时，未在实体缓存中的实体用一次$in查询读取.
+     */
+    @Test
+    public void testResolveMisses() {
+        queryResultCache.enable(CacheableEntity.class);
+        collection.find(Filters.eq("type", "t1")).into(new ArrayList<>());
+        entityCacheManager.update(CacheableEntity.class, entity2.getId(), NotifyType.update);
+        final List<CacheableEntity> second = collection.find(Filters.eq("type", "t1")).into(new ArrayList<>());
+        assertEquals(Arrays.asList(entity1.getId(), entity2.getId()),
+                Arrays.asList(second.get(0).getId(), second.get(1).getId()));
+        assertEquals(1, queryResultCache.getHitCount());
+
+        collection.find(Filters.eq("type", "t1")).into(new ArrayList<>());
+        assertEquals(2, queryResultCache.getHitCount());
+
+        new Verifications() {
+            {
+                base.find((Bson) any, CacheableEntity.class);
+                times = 4;
+                findIterable.into((ArrayList<CacheableEntity>) any);
+                times = 2;
+                base.findOne((Bson) any);
+                times = 0;
+            }
+        };
+    }
+
+    /**
+     * 测试读取期间收到实体变更通知时，读到的实体不放入实体缓存.
+     */
+    @Test
+    public void testNotifyDuringRead() {
+        queryResultCache.enable(CacheableEntity.class);
+        this.onRead = new Runnable() {
+            @Override
+            public void run() {
+                entityCacheManager.update(CacheableEntity.class, entity1.getId(), NotifyType.update);
+            }
+        };
+        assertEquals(2, collection.find(Filters.eq("type", "t1")).into(new ArrayList<>()).size());
+        assertNull(entityCacheManager.get(CacheableEntity.class, cacheKeyBuilder.build(CacheableEntity.class,
+                Filters.eq(Entity.FIELD_NAME_ID, entity1.getId()))));
+
+        this.onRead = null;
+        assertEquals(2, collection.find(Filters.eq("type", "t2")).into(new ArrayList<>()).size());
+        assertNotNull(entityCacheManager.get(CacheableEntity.class, cacheKeyBuilder.build(CacheableEntity.class,
+                Filters.eq(Entity.FIELD_NAME_ID, entity1.getId()))));
+    }
+
+    /**
+     * 测试不同的排序和分页分别缓存，设置投影后不使用缓存.
+     */
+    @Test
+    public void testFindOptions() {
+        queryResultCache.enable(CacheableEntity.class);
+        collection.find(Filters.eq("type", "t1")).limit(2).into(new ArrayList<>());
+        collection.find(Filters.eq("type", "t1")).limit(2).into(new ArrayList<>());
+        collection.find(Filters.eq("type", "t1")).skip(1).into(new ArrayList<>());
+        collection.find(Filters.eq("type", "t1")).projection(Projections.include("type")).into(new ArrayList<>());
+        assertEquals(2, queryResultCache.getMissCount());
+        assertEquals(1, queryResultCache.getHitCount());
+
+        new Verifications() {
+            {
+                findIterable.into((ArrayList<CacheableEntity>) any);
+                times = 3;
+            }
+        };
+    }
+
+    /**
+     * 测试缓存count和distinct的结果.
+     */
+    @Test
+    public void testCountAndDistinct() {
+        queryResultCache.enable(CacheableEntity.class);
+        assertEquals(2, collection.count(Filters.eq("type", "t1")));
+        assertEquals(2, collection.count(Filters.eq("type", "t1")));
+        assertEquals(Arrays.asList("t1", "t2"), collection.distinct("type", String.class).into(new ArrayList<>()));
+        assertEquals(Arrays.asList("t1", "t2"), collection.distinct("type", String.class).into(new ArrayList<>()));
+
+        new Verifications() {
+            {
+                base.count((Bson) any, (CountOptions) any);
+                times = 1;
+                distinctIterable.into((ArrayList<String>) any);
+                times = 1;
+            }
+        };
+    }
+
+    /**
+     * 测试收到变更通知或本地写入后查询结果失效.
+     */
+    @Test
+    public void testInvalidate() {
+        queryResultCache.enable(CacheableEntity.class);
+        collection.count(Filters.eq("type", "t1"));
+        queryResultCache.onNotify(CacheableEntity.class, entity1.getId(), NotifyType.update, null, null);
+        collection.count(Filters.eq("type", "t1"));
+        collection.count(Filters.eq("type", "t1"));
+        collection.insertOne(newEntity());
+        collection.count(Filters.eq("type", "t1"));
+
+        new Verifications() {
+            {
+                base.count((Bson) any, (CountOptions) any);
+                times = 3;
+            }
+        };
+    }
+
+    /**
+     * 测试只有Cacheable的实体类可以启用查询结果缓存.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testEnableNotCacheable() {
+        queryResultCache.enable(io.github.dbstarll.dubai.model.collection.test.SimpleEntity.class);
+    }
+}
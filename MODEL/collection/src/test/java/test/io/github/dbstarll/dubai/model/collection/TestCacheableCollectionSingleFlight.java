@@ -0,0 +1,155 @@
+package test.io.github.dbstarll.dubai.model.collection;
+
+import com.mongodb.client.model.Filters;
+import io.github.dbstarll.dubai.model.cache.LocalEntityCacheManager;
+import io.github.dbstarll.dubai.model.collection.CacheableCollection;
+import io.github.dbstarll.dubai.model.collection.Collection;
+import io.github.dbstarll.dubai.model.collection.test.CacheableEntity;
+import io.github.dbstarll.dubai.model.entity.EntityFactory;
+import io.github.dbstarll.dubai.model.entity.EntityModifier;
+import io.github.dbstarll.dubai.model.notify.NotifyType;
+import mockit.Delegate;
+import mockit.Expectations;
+import mockit.Injectable;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class TestCacheableCollectionSingleFlight {
+    @Injectable
+    Collection<CacheableEntity> base;
+
+    /**
+     * 测试同一查询条件的并发加载只查询一次数据库.
+     *
+     * @throws InterruptedException InterruptedException
+     */
+    @Test
+    public void testSingleFlight() throws InterruptedException {
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CacheableEntity entity = EntityFactory.newInstance(CacheableEntity.class);
+        new Expectations() {
+            {
+                base.getEntityClass();
+                result = CacheableEntity.class;
+                minTimes = 0;
+                base.findOne((Bson) any);
+                result = new Delegate<CacheableEntity>() {
+                    @SuppressWarnings("unused")
+                    CacheableEntity findOne(Bson filter) throws InterruptedException {
+                        loads.incrementAndGet();
+                        started.countDown();
+                        release.await(5, TimeUnit.SECONDS);
+                        return entity;
+                    }
+                };
+            }
+        };
+
+        final CacheableCollection<CacheableEntity> collection = new CacheableCollection<>(base);
+        final Bson filter = Filters.eq("_id", new ObjectId());
+        final AtomicReference<CacheableEntity> result1 = new AtomicReference<>();
+        final AtomicReference<CacheableEntity> result2 = new AtomicReference<>();
+        final Thread thread1 = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                result1.set(collection.findOne(filter));
+            }
+        });
+        final Thread thread2 = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                result2.set(collection.findOne(filter));
+            }
+        });
+        thread1.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        thread2.start();
+        Thread.sleep(100);
+        release.countDown();
+        thread1.join(5000);
+        thread2.join(5000);
+
+        assertEquals(1, loads.get());
+        assertNotNull(result1.get());
+        assertNotNull(result2.get());
+        assertNotSame(result1.get(), result2.get());
+
+        collection.findOne(filter);
+        assertEquals(2, loads.get());
+    }
+
+    /**
+     * 测试加载期间收到变更通知后，之后的调用者不共享变更之前开始的查询，缓存中保存的是变更之后的实体.
+     *
+     * @throws InterruptedException InterruptedException
+     */
+    @Test
+    public void testNotifyDuringLoad() throws InterruptedException {
+        final ObjectId id = new ObjectId();
+        final CacheableEntity stale = newEntity(id, 1);
+        final CacheableEntity fresh = newEntity(id, 2);
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        new Expectations() {
+            {
+                base.getEntityClass();
+                result = CacheableEntity.class;
+                minTimes = 0;
+                base.findOne((Bson) any);
+                result = new Delegate<CacheableEntity>() {
+                    @SuppressWarnings("unused")
+                    CacheableEntity findOne(Bson filter) throws InterruptedException {
+                        if (loads.incrementAndGet() > 1) {
+                            return fresh;
+                        }
+                        started.countDown();
+                        release.await(5, TimeUnit.SECONDS);
+                        return stale;
+                    }
+                };
+            }
+        };
+
+        final LocalEntityCacheManager cacheManager = new LocalEntityCacheManager();
+        final CacheableCollection<CacheableEntity> collection = new CacheableCollection<>(base);
+        collection.setEntityCacheManager(cacheManager);
+        final Bson filter = Filters.eq("_id", id);
+        final AtomicReference<CacheableEntity> result1 = new AtomicReference<>();
+        final Thread thread1 = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                result1.set(collection.findOne(filter));
+            }
+        });
+        thread1.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        cacheManager.update(CacheableEntity.class, id, NotifyType.update);
+
+        assertEquals(fresh.getLastModified(), collection.findOne(filter).getLastModified());
+        release.countDown();
+        thread1.join(5000);
+        assertEquals(stale.getLastModified(), result1.get().getLastModified());
+
+        assertEquals(fresh.getLastModified(), collection.findOne(filter).getLastModified());
+        assertEquals(2, loads.get());
+    }
+
+    private static CacheableEntity newEntity(ObjectId id, long lastModified) {
+        final CacheableEntity entity = EntityFactory.newInstance(CacheableEntity.class);
+        ((EntityModifier) entity).setId(id);
+        ((EntityModifier) entity).setLastModified(new Date(lastModified));
+        return entity;
+    }
+}
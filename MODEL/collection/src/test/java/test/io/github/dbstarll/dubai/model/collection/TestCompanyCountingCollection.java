@@ -0,0 +1,162 @@
+package test.io.github.dbstarll.dubai.model.collection;
+
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import io.github.dbstarll.dubai.model.cache.CompanyCounterStore;
+import io.github.dbstarll.dubai.model.collection.Collection;
+import io.github.dbstarll.dubai.model.collection.CompanyCountingCollection;
+import io.github.dbstarll.dubai.model.collection.test.CompanyEntity;
+import io.github.dbstarll.dubai.model.collection.test.MockMongoCursor;
+import io.github.dbstarll.dubai.model.entity.Entity;
+import io.github.dbstarll.dubai.model.entity.EntityFactory;
+import io.github.dbstarll.dubai.model.entity.EntityModifier;
+import mockit.Expectations;
+import mockit.Injectable;
+import mockit.Mocked;
+import mockit.Verifications;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class TestCompanyCountingCollection {
+    @Injectable
+    Collection<CompanyEntity> base;
+
+    @Mocked
+    FindIterable<CompanyEntity> findIterable;
+
+    @Mocked
+    CompanyCounterStore store;
+
+    private final ObjectId companyId = new ObjectId();
+    private final ObjectId otherCompanyId = new ObjectId();
+    private CompanyCountingCollection<CompanyEntity> collection;
+
+    /**
+     * 初始化collection.
+     */
+    @Before
+    public void initialize() {
+        new Expectations() {
+            {
+                base.getEntityClass();
+                result = CompanyEntity.class;
+                minTimes = 0;
+                base.find((Bson) any);
+                result = findIterable;
+                minTimes = 0;
+                findIterable.projection((Bson) any);
+                result = findIterable;
+                minTimes = 0;
+                findIterable.limit(anyInt);
+                result = findIterable;
+                minTimes = 0;
+            }
+        };
+        this.collection = new CompanyCountingCollection<>(base, store);
+    }
+
+    private CompanyEntity entity(ObjectId id, ObjectId companyId, boolean defunct) {
+        final CompanyEntity entity = EntityFactory.newInstance(CompanyEntity.class);
+        ((EntityModifier) entity).setId(id);
+        entity.setCompanyId(companyId);
+        entity.setDefunct(defunct);
+        return entity;
+    }
+
+    /**
+     * 测试替换实体时companyId改变则转移计数.
+     */
+    @Test
+    public void testReplaceChangeCompany() {
+        final ObjectId id = new ObjectId();
+        new Expectations() {
+            {
+                findIterable.iterator();
+                result = new MockMongoCursor<>(Arrays.asList(entity(id, companyId, false)).iterator());
+            }
+        };
+        collection.replaceOne(Filters.eq(Entity.FIELD_NAME_ID, id), entity(id, otherCompanyId, false),
+                new ReplaceOptions());
+
+        new Verifications() {
+            {
+                store.move(CompanyEntity.class, companyId, otherCompanyId);
+                times = 1;
+            }
+        };
+    }
+
+    /**
+     * 测试替换为失效的实体时从原公司的计数中减去.
+     */
+    @Test
+    public void testReplaceDefunct() {
+        final ObjectId id = new ObjectId();
+        new Expectations() {
+            {
+                findIterable.iterator();
+                result = new MockMongoCursor<>(Arrays.asList(entity(id, companyId, false)).iterator());
+            }
+        };
+        collection.replaceOne(Filters.eq(Entity.FIELD_NAME_ID, id), entity(id, companyId, true),
+                new ReplaceOptions());
+
+        new Verifications() {
+            {
+                store.move(CompanyEntity.class, companyId, null);
+                times = 1;
+            }
+        };
+    }
+
+    /**
+     * 测试更新companyId时比较更新前后的实体转移计数.
+     */
+    @Test
+    public void testUpdateCompany() {
+        final ObjectId id = new ObjectId();
+        new Expectations() {
+            {
+                findIterable.iterator();
+                returns(new MockMongoCursor<>(Arrays.asList(entity(id, companyId, false)).iterator()),
+                        new MockMongoCursor<>(Arrays.asList(entity(id, otherCompanyId, false)).iterator()));
+            }
+        };
+        collection.updateMany(Filters.eq(Entity.FIELD_NAME_ID, id), Updates.set("companyId", otherCompanyId),
+                new UpdateOptions());
+
+        new Verifications() {
+            {
+                store.move(CompanyEntity.class, companyId, otherCompanyId);
+                times = 1;
+            }
+        };
+    }
+
+    /**
+     * 测试不涉及companyId和失效状态的更新不读取实体.
+     */
+    @Test
+    public void testUpdateOtherField() {
+        collection.updateOne(Filters.eq(Entity.FIELD_NAME_ID, new ObjectId()), Updates.set("type", "t1"),
+                new UpdateOptions());
+
+        new Verifications() {
+            {
+                base.find((Bson) any);
+                times = 0;
+                base.updateOne((Bson) any, (Bson) any, (UpdateOptions) any);
+                times = 1;
+                store.move((Class<?>) any, (ObjectId) any, (ObjectId) any);
+                times = 0;
+            }
+        };
+    }
+}
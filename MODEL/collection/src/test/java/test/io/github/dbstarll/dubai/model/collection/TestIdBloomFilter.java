@@ -0,0 +1,64 @@
+package test.io.github.dbstarll.dubai.model.collection;
+
+import io.github.dbstarll.dubai.model.collection.IdBloomFilter;
+import junit.framework.TestCase;
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TestIdBloomFilter extends TestCase {
+    /**
+     * 测试加入的ID一定判定为可能存在，未加入的ID误判率接近配置值.
+     */
+    public void testFalsePositiveRate() {
+        final IdBloomFilter filter = new IdBloomFilter(10000, 0.01);
+        final List<ObjectId> ids = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            final ObjectId id = new ObjectId();
+            ids.add(id);
+            filter.put(id);
+        }
+        for (ObjectId id : ids) {
+            assertTrue(filter.mightContain(id));
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 100000; i++) {
+            if (filter.mightContain(new ObjectId())) {
+                falsePositives++;
+            }
+        }
+        assertTrue("falsePositives: " + falsePositives, falsePositives < 2000);
+        assertTrue(filter.expectedFpp() > 0.005 && filter.expectedFpp() < 0.02);
+        assertEquals(7, filter.getNumHashFunctions());
+        assertEquals(11984, filter.getMemoryBytes());
+    }
+
+    /**
+     * 测试空的过滤器.
+     */
+    public void testEmpty() {
+        final IdBloomFilter filter = new IdBloomFilter(100, 0.001);
+        assertFalse(filter.mightContain(new ObjectId()));
+        assertEquals(0.0, filter.expectedFpp());
+    }
+
+    /**
+     * 测试非法的参数.
+     */
+    public void testInvalid() {
+        try {
+            new IdBloomFilter(0, 0.01);
+            fail("throw IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            assertEquals("expectedInsertions must be positive: 0", ex.getMessage());
+        }
+        try {
+            new IdBloomFilter(100, 1);
+            fail("throw IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            assertTrue(ex.getMessage().startsWith("fpp must be in (0, 1)"));
+        }
+    }
+}
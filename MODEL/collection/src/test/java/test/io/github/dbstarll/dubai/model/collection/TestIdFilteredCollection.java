@@ -0,0 +1,201 @@
+package test.io.github.dbstarll.dubai.model.collection;
+
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.model.CountOptions;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.result.UpdateResult;
+import io.github.dbstarll.dubai.model.collection.Collection;
+import io.github.dbstarll.dubai.model.collection.IdFilteredCollection;
+import io.github.dbstarll.dubai.model.collection.test.MockMongoCursor;
+import io.github.dbstarll.dubai.model.collection.test.SimpleEntity;
+import io.github.dbstarll.dubai.model.entity.EntityFactory;
+import io.github.dbstarll.dubai.model.notify.NotifyType;
+import mockit.Expectations;
+import mockit.Injectable;
+import mockit.Mocked;
+import mockit.Verifications;
+import org.bson.BsonDocument;
+import org.bson.BsonObjectId;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+public class TestIdFilteredCollection {
+    @Injectable
+    Collection<SimpleEntity> base;
+
+    @Mocked
+    FindIterable<BsonDocument> scan;
+
+    private final List<ObjectId> ids = new ArrayList<>();
+    private IdFilteredCollection<SimpleEntity> collection;
+
+    /**
+     * 初始化collection.
+     */
+    @Before
+    public void initialize() {
+        final List<BsonDocument> documents = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            final ObjectId id = new ObjectId();
+            ids.add(id);
+            documents.add(new BsonDocument("_id", new BsonObjectId(id)));
+        }
+        new Expectations() {
+            {
+                base.getEntityClass();
+                result = SimpleEntity.class;
+                minTimes = 0;
+                base.find((Bson) any, BsonDocument.class);
+                result = scan;
+                scan.projection((Bson) any);
+                result = scan;
+                scan.batchSize(anyInt);
+                result = scan;
+                scan.iterator();
+                result = new MockMongoCursor<>(documents.iterator());
+            }
+        };
+        this.collection = new IdFilteredCollection<>(base, 1000, 0.01);
+    }
+
+    private void recordCount(final long count) {
+        new Expectations() {
+            {
+                base.count((Bson) any, (CountOptions) any);
+                result = count;
+                minTimes = 0;
+            }
+        };
+    }
+
+    /**
+     * 测试建立过滤器之前所有查询都访问数据库.
+     */
+    @Test
+    public void testNotReady() {
+        recordCount(1);
+        assertFalse(collection.isReady());
+        assertTrue(collection.contains(new ObjectId()));
+        collection.build();
+        assertTrue(collection.isReady());
+        assertTrue(collection.getMemoryBytes() > 0);
+        assertTrue(collection.getExpectedFpp() > 0);
+
+        new Verifications() {
+            {
+                base.count((Bson) any, (CountOptions) any);
+                times = 1;
+            }
+        };
+    }
+
+    /**
+     * 测试设置了Executor时第一次查询触发建立过滤器，触发的查询仍然访问数据库.
+     */
+    @Test
+    public void testBuildOnDemand() {
+        recordCount(1);
+        final List<Runnable> tasks = new ArrayList<>();
+        collection.setBuildExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        });
+        assertTrue(collection.contains(new ObjectId()));
+        assertTrue(collection.contains(new ObjectId()));
+        assertEquals(1, tasks.size());
+        assertFalse(collection.isReady());
+
+        tasks.get(0).run();
+        assertTrue(collection.isReady());
+        assertFalse(collection.contains(new ObjectId()));
+
+        new Verifications() {
+            {
+                base.count((Bson) any, (CountOptions) any);
+                times = 2;
+            }
+        };
+    }
+
+    /**
+     * 测试一定不存在的ID直接返回.
+     */
+    @Test
+    public void testContains() {
+        recordCount(1);
+        collection.build();
+        for (ObjectId id : ids) {
+            assertTrue(collection.contains(id));
+        }
+        final ObjectId absent = new ObjectId();
+        assertFalse(collection.contains(absent));
+        assertNull(collection.findById(absent));
+        assertEquals(2, collection.getNegativeCount());
+        assertEquals(100, collection.getPositiveCount());
+        assertEquals(0, collection.getFalsePositiveCount());
+        assertEquals(0, collection.getFalsePositiveRate(), 0);
+
+        new Verifications() {
+            {
+                base.count((Bson) any, (CountOptions) any);
+                times = 100;
+                base.find((Bson) any, SimpleEntity.class);
+                times = 0;
+            }
+        };
+    }
+
+    /**
+     * 测试插入、upsert和insert通知会加入过滤器.
+     */
+    @Test
+    public void testInsert(@Mocked final UpdateResult updateResult) {
+        recordCount(1);
+        collection.build();
+        final SimpleEntity entity = EntityFactory.newInstance(SimpleEntity.class);
+        entity.setType(SimpleEntity.Type.t1);
+        collection.save(entity);
+        assertTrue(collection.contains(entity.getId()));
+
+        final ObjectId upserted = new ObjectId();
+        new Expectations() {
+            {
+                base.updateOne((Bson) any, (Bson) any, (UpdateOptions) any);
+                result = updateResult;
+                updateResult.getUpsertedId();
+                result = new BsonObjectId(upserted);
+            }
+        };
+        collection.updateOne(new BsonDocument(), new BsonDocument(), new UpdateOptions().upsert(true));
+        assertTrue(collection.contains(upserted));
+
+        final ObjectId notified = new ObjectId();
+        collection.onNotify(SimpleEntity.class, notified, NotifyType.delete, null, null);
+        assertFalse(collection.contains(notified));
+        collection.onNotify(SimpleEntity.class, notified, NotifyType.insert, null, null);
+        assertTrue(collection.contains(notified));
+    }
+
+    /**
+     * 测试统计误判.
+     */
+    @Test
+    public void testFalsePositive() {
+        recordCount(0);
+        collection.build();
+        assertFalse(collection.contains(ids.get(0)));
+        assertEquals(1, collection.getPositiveCount());
+        assertEquals(1, collection.getFalsePositiveCount());
+        assertEquals(1, collection.getFalsePositiveRate(), 0);
+    }
+}
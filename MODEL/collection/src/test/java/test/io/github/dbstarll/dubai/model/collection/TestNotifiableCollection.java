@@ -0,0 +1,160 @@
+package test.io.github.dbstarll.dubai.model.collection;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.model.BulkWriteOptions;
+import io.github.dbstarll.dubai.model.collection.Collection;
+import io.github.dbstarll.dubai.model.collection.NotifiableCollection;
+import io.github.dbstarll.dubai.model.collection.test.MockMongoCursor;
+import io.github.dbstarll.dubai.model.collection.test.SimpleNotifiableEntity;
+import io.github.dbstarll.dubai.model.entity.Entity;
+import io.github.dbstarll.dubai.model.entity.EntityFactory;
+import io.github.dbstarll.dubai.model.entity.EntityModifier;
+import io.github.dbstarll.dubai.model.notify.NotifyProvider;
+import io.github.dbstarll.dubai.model.notify.NotifyType;
+import mockit.Expectations;
+import mockit.Injectable;
+import mockit.Mocked;
+import org.bson.BsonDocument;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TestNotifiableCollection {
+    @Injectable
+    Collection<SimpleNotifiableEntity> base;
+
+    @Mocked
+    FindIterable<SimpleNotifiableEntity> findIterable;
+
+    @Mocked
+    MongoBulkWriteException bulkWriteException;
+
+    private final List<ObjectId> notified = new ArrayList<>();
+    private final List<SimpleNotifiableEntity> entities = new ArrayList<>();
+    private NotifiableCollection<SimpleNotifiableEntity> collection;
+
+    /**
+     * 初始化collection.
+     */
+    @Before
+    public void initialize() {
+        for (int i = 0; i < 3; i++) {
+            final SimpleNotifiableEntity entity = EntityFactory.newInstance(SimpleNotifiableEntity.class);
+            ((EntityModifier) entity).setId(new ObjectId());
+            entities.add(entity);
+        }
+        new Expectations() {
+            {
+                base.find((Bson) any);
+                result = findIterable;
+                minTimes = 0;
+                findIterable.projection((Bson) any);
+                result = findIterable;
+                minTimes = 0;
+            }
+        };
+        this.collection = new NotifiableCollection<>(base);
+        this.collection.setNotifyProvider(new NotifyProvider() {
+            @Override
+            public <E extends Entity> void doNotify(E e, NotifyType notifyType) {
+                notified.add(e.getId());
+            }
+        });
+    }
+
+    private void matches(final SimpleNotifiableEntity... matched) {
+        new Expectations() {
+            {
+                findIterable.iterator();
+                result = new MockMongoCursor<>(Arrays.asList(matched).iterator());
+            }
+        };
+    }
+
+    /**
+     * 测试批量替换只通知匹配了过滤条件的实体.
+     */
+    @Test
+    public void testReplaceAllMatched() {
+        matches(entities.get(0), entities.get(2));
+        new Expectations() {
+            {
+                base.replaceAll((Bson) any, entities, (BulkWriteOptions) any);
+                result = 2L;
+            }
+        };
+        assertEquals(2, collection.replaceAll(null, entities, new BulkWriteOptions()));
+        assertEquals(Arrays.asList(entities.get(0).getId(), entities.get(2).getId()), notified);
+    }
+
+    /**
+     * 测试没有任何实体被替换时不发送通知.
+     */
+    @Test
+    public void testReplaceAllNoneMatched() {
+        matches(entities.get(0));
+        new Expectations() {
+            {
+                base.replaceAll((Bson) any, entities, (BulkWriteOptions) any);
+                result = 0L;
+            }
+        };
+        assertEquals(0, collection.replaceAll(null, entities, new BulkWriteOptions()));
+        assertTrue(notified.isEmpty());
+    }
+
+    /**
+     * 测试有序写入部分失败时只通知失败位置之前的实体.
+     */
+    @Test
+    public void testReplaceAllOrderedFailed() {
+        matches(entities.get(0), entities.get(1), entities.get(2));
+        new Expectations() {
+            {
+                base.replaceAll((Bson) any, entities, (BulkWriteOptions) any);
+                result = bulkWriteException;
+                bulkWriteException.getWriteErrors();
+                result = Arrays.asList(new BulkWriteError(11000, "duplicate key", new BsonDocument(), 1));
+            }
+        };
+        try {
+            collection.replaceAll(null, entities, new BulkWriteOptions());
+            fail("throw MongoBulkWriteException");
+        } catch (MongoBulkWriteException ex) {
+            assertSame(bulkWriteException, ex);
+        }
+        assertEquals(Arrays.asList(entities.get(0).getId()), notified);
+    }
+
+    /**
+     * 测试无序写入部分失败时通知除失败位置以外的实体.
+     */
+    @Test
+    public void testReplaceAllUnorderedFailed() {
+        matches(entities.get(0), entities.get(1), entities.get(2));
+        new Expectations() {
+            {
+                base.replaceAll((Bson) any, entities, (BulkWriteOptions) any);
+                result = bulkWriteException;
+                bulkWriteException.getWriteErrors();
+                result = Arrays.asList(new BulkWriteError(11000, "duplicate key", new BsonDocument(), 1));
+            }
+        };
+        try {
+            collection.replaceAll(null, entities, new BulkWriteOptions().ordered(false));
+            fail("throw MongoBulkWriteException");
+        } catch (MongoBulkWriteException ex) {
+            assertSame(bulkWriteException, ex);
+        }
+        assertEquals(Arrays.asList(entities.get(0).getId(), entities.get(2).getId()), notified);
+    }
+}
@@ -0,0 +1,334 @@
+package test.io.github.dbstarll.dubai.model.collection;
+
+import com.mongodb.client.DistinctIterable;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.CountOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.Updates;
+import io.github.dbstarll.dubai.model.collection.Collection;
+import io.github.dbstarll.dubai.model.collection.ReplicatedCollection;
+import io.github.dbstarll.dubai.model.collection.test.MockMongoCursor;
+import io.github.dbstarll.dubai.model.collection.test.ReplicatedEntity;
+import io.github.dbstarll.dubai.model.collection.test.SimpleEntity.Type;
+import io.github.dbstarll.dubai.model.entity.Entity;
+import io.github.dbstarll.dubai.model.entity.EntityFactory;
+import io.github.dbstarll.dubai.model.entity.EntityModifier;
+import io.github.dbstarll.dubai.model.entity.Replicated;
+import io.github.dbstarll.dubai.model.mongodb.MongoClientFactory;
+import io.github.dbstarll.dubai.model.notify.NotifyType;
+import mockit.Delegate;
+import mockit.Expectations;
+import mockit.Injectable;
+import mockit.Mocked;
+import mockit.Verifications;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TestReplicatedCollection {
+    @Injectable
+    Collection<ReplicatedEntity> base;
+
+    @Mocked
+    FindIterable<ReplicatedEntity> findIterable;
+
+    @Mocked
+    DistinctIterable<Type> distinctIterable;
+
+    private final List<ReplicatedEntity> entities = new ArrayList<>();
+    private ReplicatedCollection<ReplicatedEntity> collection;
+    private Runnable onLoad;
+
+    private static ReplicatedEntity newEntity(Type type, int rank) {
+        final ReplicatedEntity entity = EntityFactory.newInstance(ReplicatedEntity.class);
+        ((EntityModifier) entity).setId(new ObjectId());
+        entity.setType(type);
+        entity.setRank(rank);
+        return entity;
+    }
+
+    /**
+     * 初始化collection.
+     */
+    @Before
+    public void initialize() {
+        entities.add(newEntity(Type.t1, 3));
+        entities.add(newEntity(Type.t2, 1));
+        entities.add(newEntity(Type.t1, 2));
+        final Replicated replicated = ReplicatedEntity.class.getAnnotation(Replicated.class);
+        this.collection = new ReplicatedCollection<>(base, new MongoClientFactory().getMongoClientSettingsbuilder()
+                .build().getCodecRegistry(), replicated.indexes(), replicated.maxSize());
+
+        new Expectations() {
+            {
+                base.getEntityClass();
+                result = ReplicatedEntity.class;
+                minTimes = 0;
+                base.find((Bson) any, ReplicatedEntity.class);
+                result = findIterable;
+                minTimes = 0;
+                findIterable.limit(anyInt);
+                result = findIterable;
+                minTimes = 0;
+                findIterable.iterator();
+                result = new Delegate<MongoCursor<ReplicatedEntity>>() {
+                    @SuppressWarnings("unused")
+                    MongoCursor<ReplicatedEntity> iterator() {
+                        return new MockMongoCursor<>(loading(entities.iterator()));
+                    }
+                };
+                minTimes = 0;
+            }
+        };
+    }
+
+    private Iterator<ReplicatedEntity> loading(final Iterator<ReplicatedEntity> iterator) {
+        return new Iterator<ReplicatedEntity>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public ReplicatedEntity next() {
+                if (onLoad != null) {
+                    onLoad.run();
+                }
+                return iterator.next();
+            }
+        };
+    }
+
+    private static List<Integer> ranks(Iterable<ReplicatedEntity> entities) {
+        final List<Integer> ranks = new ArrayList<>();
+        for (ReplicatedEntity entity : entities) {
+            ranks.add(entity.getRank());
+        }
+        return ranks;
+    }
+
+    /**
+     * 测试等值、$in、范围和$or查询在本地执行.
+     */
+    @Test
+    public void testFind() {
+        assertEquals(Arrays.asList(3, 2), ranks(collection.find(Filters.eq("type", Type.t1))));
+        assertEquals(Arrays.asList(3, 1, 2), ranks(collection.find(Filters.in("type", Type.t1, Type.t2))));
+        assertEquals(Arrays.asList(3, 2), ranks(collection.find(Filters.gte("rank", 2))));
+        assertEquals(Arrays.asList(2), ranks(collection.find(Filters.and(Filters.eq("type", Type.t1),
+                Filters.lt("rank", 3)))));
+        assertEquals(Arrays.asList(1, 2), ranks(collection.find(Filters.or(Filters.eq("type", Type.t2),
+                Filters.eq("rank", 2)))));
+        assertEquals(Arrays.asList(1, 2, 3), ranks(collection.find().sort(Sorts.ascending("rank"))));
+        assertEquals(Arrays.asList(2), ranks(collection.find().sort(Sorts.descending("rank")).skip(1).limit(1)));
+        assertEquals(entities.get(1).getId(), collection.findById(entities.get(1).getId()).getId());
+        assertNotSame(entities.get(1), collection.findById(entities.get(1).getId()));
+        assertNull(collection.findOne(Filters.eq("rank", 4)));
+
+        new Verifications() {
+            {
+                findIterable.iterator();
+                times = 1;
+                findIterable.into((List<ReplicatedEntity>) any);
+                times = 0;
+            }
+        };
+    }
+
+    /**
+     * 测试不支持的查询条件直接查询数据库.
+     */
+    @Test
+    public void testUnsupported() {
+        collection.find(Filters.regex("name", "^a")).into(new ArrayList<ReplicatedEntity>());
+
+        new Verifications() {
+            {
+                findIterable.into((List<ReplicatedEntity>) any);
+                times = 1;
+            }
+        };
+    }
+
+    /**
+     * 测试count和distinct在本地执行.
+     */
+    @Test
+    public void testCountAndDistinct() {
+        assertEquals(2, collection.count(Filters.eq("type", Type.t1)));
+        assertEquals(1, collection.count(Filters.eq("type", Type.t1), new CountOptions().limit(1)));
+        assertEquals(Arrays.asList(Type.t1, Type.t2), collection.distinct("type", Type.class)
+                .into(new ArrayList<Type>()));
+
+        new Verifications() {
+            {
+                base.count((Bson) any, (CountOptions) any);
+                times = 0;
+                distinctIterable.into((List<Type>) any);
+                times = 0;
+            }
+        };
+    }
+
+    /**
+     * 测试收到变更通知后更新内存副本.
+     */
+    @Test
+    public void testNotify() {
+        assertEquals(2, collection.count(Filters.eq("type", Type.t1)));
+        final ReplicatedEntity changed = EntityFactory.clone(entities.get(0));
+        changed.setType(Type.t2);
+        new Expectations() {
+            {
+                base.findOne((Bson) any);
+                returns(changed, entities.get(1), null);
+            }
+        };
+        collection.onNotify(ReplicatedEntity.class, changed.getId(), NotifyType.update, null, null);
+        assertEquals(1, collection.count(Filters.eq("type", Type.t1)));
+        assertEquals(2, collection.count(Filters.eq("type", Type.t2)));
+
+        // 已删除（defunct）的条目仍然在数据库中，与加载时一样保留在副本中
+        collection.onNotify(ReplicatedEntity.class, entities.get(1).getId(), NotifyType.delete, null, null);
+        assertEquals(2, collection.count(Filters.eq("type", Type.t2)));
+        assertEquals(3, collection.count());
+
+        collection.onNotify(ReplicatedEntity.class, entities.get(1).getId(), NotifyType.delete, null, null);
+        assertEquals(1, collection.count(Filters.eq("type", Type.t2)));
+        assertEquals(2, collection.count());
+
+        collection.onNotify(Entity.class, entities.get(2).getId(), NotifyType.delete, null, null);
+        assertEquals(2, collection.count());
+    }
+
+    /**
+     * 测试加载期间收到的变更在加载完成后重新读取.
+     */
+    @Test
+    public void testNotifyDuringReload() {
+        final ReplicatedEntity changed = EntityFactory.clone(entities.get(0));
+        changed.setType(Type.t2);
+        new Expectations() {
+            {
+                base.findOne((Bson) any);
+                result = changed;
+            }
+        };
+        this.onLoad = new Runnable() {
+            @Override
+            public void run() {
+                collection.onNotify(ReplicatedEntity.class, changed.getId(), NotifyType.update, null, null);
+            }
+        };
+
+        assertTrue(collection.isReplicated());
+        assertEquals(1, collection.count(Filters.eq("type", Type.t1)));
+        assertEquals(2, collection.count(Filters.eq("type", Type.t2)));
+
+        new Verifications() {
+            {
+                base.findOne((Bson) any);
+                times = 1;
+            }
+        };
+    }
+
+    /**
+     * 测试本地写入直接更新副本，之后收到的通知（包括本地写入回传的通知）仍然重新读取.
+     */
+    @Test
+    public void testLocalWrite() {
+        assertTrue(collection.isReplicated());
+        final ReplicatedEntity changed = EntityFactory.clone(entities.get(0));
+        changed.setType(Type.t2);
+        new Expectations() {
+            {
+                base.findOne((Bson) any);
+                result = changed;
+            }
+        };
+
+        collection.updateOne(Filters.eq(Entity.FIELD_NAME_ID, changed.getId()), Updates.set("type", Type.t2));
+        assertEquals(2, collection.count(Filters.eq("type", Type.t2)));
+        new Verifications() {
+            {
+                base.findOne((Bson) any);
+                times = 1;
+            }
+        };
+
+        collection.onNotify(ReplicatedEntity.class, changed.getId(), NotifyType.update, null, null);
+        new Verifications() {
+            {
+                base.findOne((Bson) any);
+                times = 2;
+            }
+        };
+    }
+
+    /**
+     * 测试数组字段按MongoDB的规则匹配和排序，数字段按数组下标访问.
+     */
+    @Test
+    public void testArray() {
+        entities.get(0).setScores(Arrays.asList(1, 9));
+        entities.get(1).setScores(Arrays.asList(5));
+        entities.get(2).setScores(Arrays.asList(9, 1));
+
+        assertEquals(Arrays.asList(3), ranks(collection.find(Filters.eq("scores", Arrays.asList(1L, 9L)))));
+        assertEquals(Arrays.asList(3, 2), ranks(collection.find(Filters.eq("scores", 9))));
+        assertEquals(Arrays.asList(2), ranks(collection.find(Filters.eq("scores.0", 9))));
+        assertEquals(Arrays.asList(1), ranks(collection.find(Filters.exists("scores.1", false))));
+        assertEquals(Arrays.asList(2, 3, 1), ranks(collection.find().sort(Sorts.ascending("scores", "rank"))));
+        assertEquals(Arrays.asList(3, 2, 1), ranks(collection.find().sort(Sorts.descending("scores", "rank"))));
+
+        new Verifications() {
+            {
+                findIterable.into((List<ReplicatedEntity>) any);
+                times = 0;
+            }
+        };
+    }
+
+    /**
+     * 测试数组作为范围条件的边界时直接查询数据库.
+     */
+    @Test
+    public void testArrayRangeUnsupported() {
+        collection.find(Filters.gt("scores", Arrays.asList(1, 2))).into(new ArrayList<ReplicatedEntity>());
+
+        new Verifications() {
+            {
+                findIterable.into((List<ReplicatedEntity>) any);
+                times = 1;
+            }
+        };
+    }
+
+    /**
+     * 测试超出最大条目数时放弃内存副本.
+     */
+    @Test
+    public void testOversized() {
+        entities.add(newEntity(Type.t2, 4));
+        assertFalse(collection.isReplicated());
+        collection.count(Filters.eq("type", Type.t1));
+
+        new Verifications() {
+            {
+                base.count((Bson) any, (CountOptions) any);
+                times = 1;
+            }
+        };
+    }
+}
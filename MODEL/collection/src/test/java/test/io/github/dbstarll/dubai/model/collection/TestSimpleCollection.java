@@ -8,12 +8,16 @@ import io.github.dbstarll.dubai.model.collection.Collection;
 import io.github.dbstarll.dubai.model.collection.CollectionFactory;
 import io.github.dbstarll.dubai.model.collection.test.SimpleEntity;
 import io.github.dbstarll.dubai.model.entity.EntityFactory;
+import io.github.dbstarll.dubai.model.entity.EntityModifier;
 import io.github.dbstarll.dubai.model.entity.info.Namable;
 import io.github.dbstarll.dubai.model.mongodb.MongoClientFactory;
 import mockit.Expectations;
 import mockit.Injectable;
 import mockit.Mocked;
 import mockit.Verifications;
+import org.bson.BsonDateTime;
+import org.bson.BsonDocument;
+import org.bson.BsonObjectId;
 import org.bson.Document;
 import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
@@ -212,6 +216,91 @@ public class TestSimpleCollection {
         };
     }
 
+    /**
+     * 测试同一毫秒内多次写入时lastModified仍然递增，条件更新不会匹配到旧的版本号.
+     */
+    @Test
+    public void testSaveIfUnmodifiedSameMillisecond() {
+        final SimpleEntity entity = collection.save(EntityFactory.newInstance(entityClass));
+        final Date future = new Date(System.currentTimeMillis() + 60000);
+        ((EntityModifier) entity).setLastModified(future);
+        new Expectations() {
+            {
+                updateResult.wasAcknowledged();
+                result = true;
+                updateResult.getMatchedCount();
+                result = 1L;
+            }
+        };
+        assertSame(entity, collection.saveIfUnmodified(entity));
+        assertEquals(future.getTime() + 1, entity.getLastModified().getTime());
+        assertSame(entity, collection.save(entity));
+        assertEquals(future.getTime() + 2, entity.getLastModified().getTime());
+    }
+
+    /**
+     * 测试以lastModified为版本号的条件更新.
+     */
+    @Test
+    public void testSaveIfUnmodified() {
+        final SimpleEntity entity = collection.save(EntityFactory.newInstance(entityClass));
+        final Date lastModified = entity.getLastModified();
+        new Expectations() {
+            {
+                updateResult.wasAcknowledged();
+                result = true;
+                updateResult.getMatchedCount();
+                returns(1L, 0L);
+            }
+        };
+        assertSame(entity, collection.saveIfUnmodified(entity));
+        assertNotSame(lastModified, entity.getLastModified());
+
+        final Date saved = entity.getLastModified();
+        assertNull(collection.saveIfUnmodified(entity));
+        assertSame(saved, entity.getLastModified());
+        assertNull(collection.saveIfUnmodified(null));
+
+        new Verifications() {
+            {
+                mongoCollection.replaceOne(new BsonDocument("_id", new BsonObjectId(entity.getId()))
+                        .append("lastModified", new BsonDateTime(lastModified.getTime())), entity,
+                        (ReplaceOptions) any);
+                times = 1;
+                mongoCollection.replaceOne((Bson) any, (SimpleEntity) any, (ReplaceOptions) any);
+                times = 2;
+            }
+        };
+    }
+
+    /**
+     * 测试批量保存按batchSize分批写入.
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testSaveAll() {
+        final SimpleEntity saved = collection.save(EntityFactory.newInstance(entityClass));
+        final SimpleEntity entity1 = EntityFactory.newInstance(entityClass);
+        final SimpleEntity entity2 = EntityFactory.newInstance(entityClass);
+        final List<SimpleEntity> entities = Arrays.asList(entity1, entity2, null, saved);
+        assertSame(entities, collection.saveAll(entities, 2));
+        assertNotNull(entity1.getId());
+        assertNotNull(entity2.getDateCreated());
+        assertEquals(entity1.getLastModified(), saved.getLastModified());
+
+        new Verifications() {
+            {
+                List<SimpleEntity> inserts;
+                mongoCollection.insertMany(inserts = withCapture(), (InsertManyOptions) any);
+                times = 1;
+                assertEquals(Arrays.asList(entity1, entity2), inserts);
+                mongoCollection.bulkWrite((List<WriteModel<SimpleEntity>>) any, (BulkWriteOptions) any);
+                times = 1;
+            }
+        };
+        assertNull(collection.saveAll(null, 2));
+    }
+
     @Test
     public void testSaveNull() {
         assertNull(collection.save(null));
@@ -0,0 +1,287 @@
+package test.io.github.dbstarll.dubai.model.notify;
+
+import io.github.dbstarll.dubai.model.collection.test.CacheableEntity;
+import io.github.dbstarll.dubai.model.collection.test.SimpleEntity;
+import io.github.dbstarll.dubai.model.entity.Entity;
+import io.github.dbstarll.dubai.model.entity.EntityFactory;
+import io.github.dbstarll.dubai.model.entity.EntityModifier;
+import io.github.dbstarll.dubai.model.entity.join.CompanyBase;
+import io.github.dbstarll.dubai.model.notify.*;
+import junit.framework.TestCase;
+import org.bson.types.ObjectId;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class TestBinaryNotify extends TestCase {
+    /**
+     * 测试实体类编号表.
+     */
+    public void testNotifyClassTable() {
+        final NotifyClassTable table = new NotifyClassTable();
+        assertNull(table.getEntityClass(NotifyClassTable.getClassId(SimpleEntity.class)));
+        assertEquals(NotifyClassTable.getClassId(SimpleEntity.class), table.register(SimpleEntity.class));
+        assertEquals(NotifyClassTable.getClassId(SimpleEntity.class), table.register(SimpleEntity.class));
+        assertEquals(SimpleEntity.class, table.getEntityClass(NotifyClassTable.getClassId(SimpleEntity.class)));
+
+        final SimpleEntity entity = EntityFactory.newInstance(SimpleEntity.class);
+        assertEquals(NotifyClassTable.getClassId(SimpleEntity.class), table.register(entity.getClass()));
+    }
+
+    /**
+     * 测试不同的类名得到相同的编号时抛出异常.
+     */
+    public void testClassIdConflict() {
+        assertEquals(Aa.class.getName().hashCode(), BB.class.getName().hashCode());
+        assertEquals(Aa.class.getName().hashCode(), NotifyClassTable.getClassId(Aa.class));
+        try {
+            NotifyClassTable.getClassId(BB.class);
+            fail("throw IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            assertEquals("classId conflict: " + Aa.class.getName() + " and " + BB.class.getName(), ex.getMessage());
+        }
+    }
+
+    /**
+     * 测试编码和解析多条通知记录.
+     */
+    public void testFormatAndParser() {
+        final int classId = NotifyClassTable.getClassId(SimpleEntity.class);
+        final ObjectId id1 = new ObjectId();
+        final ObjectId id2 = new ObjectId();
+        final ObjectId companyId = new ObjectId();
+        final ByteBuffer buffer = ByteBuffer.allocate(BinaryNotifyFormat.recordLength(null)
+                + BinaryNotifyFormat.recordLength(companyId, true));
+        BinaryNotifyFormat.write(buffer, classId, id1, NotifyType.insert, null);
+        BinaryNotifyFormat.write(buffer, classId, id2, NotifyType.delete, companyId, 123L);
+        assertFalse(buffer.hasRemaining());
+        buffer.flip();
+
+        final BinaryNotifyParser parser = new BinaryNotifyParser().reset(buffer);
+        assertTrue(parser.next());
+        assertEquals(classId, parser.getClassId());
+        assertEquals(id1, parser.getObjectId(Entity.FIELD_NAME_ID));
+        assertNull(parser.getObjectId(CompanyBase.FIELD_NAME_COMPANY_ID));
+        assertEquals(NotifyType.insert, parser.getNotifyType());
+        assertEquals(-1, parser.getTimestamp());
+        assertTrue(parser.next());
+        assertEquals(123L, parser.getTimestamp());
+        assertEquals(id2, parser.getObjectId(Entity.FIELD_NAME_ID));
+        assertEquals(companyId, parser.getObjectId(CompanyBase.FIELD_NAME_COMPANY_ID));
+        assertNull(parser.getObjectId("other"));
+        assertEquals(NotifyType.delete, parser.getNotifyType());
+        assertFalse(parser.next());
+        assertEquals(0, buffer.position());
+
+        buffer.limit(buffer.limit() - 1);
+        parser.reset(buffer);
+        assertTrue(parser.next());
+        assertFalse(parser.next());
+    }
+
+    /**
+     * 测试BinaryNotifyProvider发送的通知被EntityNotifyConsumer接收.
+     *
+     * @throws IOException IOException
+     */
+    public void testProviderToConsumer() throws IOException {
+        final List<byte[]> messages = new ArrayList<>();
+        final BinaryNotifyProvider provider = new BinaryNotifyProvider(new BinaryNotifyPublisher() {
+            @Override
+            public void publish(byte[] message) {
+                messages.add(message);
+            }
+        });
+
+        final ObjectId id = new ObjectId();
+        final SimpleEntity entity = EntityFactory.newInstance(SimpleEntity.class);
+        ((EntityModifier) entity).setId(id);
+        provider.doNotify(entity, NotifyType.update);
+        assertEquals(1, messages.size());
+        assertEquals(BinaryNotifyFormat.recordLength(null), messages.get(0).length);
+        final BinaryNotifyParser parser = new BinaryNotifyParser().reset(ByteBuffer.wrap(messages.get(0)));
+        assertTrue(parser.next());
+        assertEquals(-1, parser.getTimestamp());
+
+        final long now = System.currentTimeMillis();
+        new BinaryNotifyProvider(new BinaryNotifyPublisher() {
+            @Override
+            public void publish(byte[] message) {
+                messages.add(message);
+            }
+        }, true).doNotify(entity, NotifyType.update);
+        assertEquals(BinaryNotifyFormat.recordLength(null, true), messages.get(1).length);
+        assertTrue(parser.reset(ByteBuffer.wrap(messages.get(1))).next());
+        assertEquals(id, parser.getObjectId(Entity.FIELD_NAME_ID));
+        assertTrue(parser.getTimestamp() >= now);
+
+        final AtomicReference<BinaryNotifyListener> registed = new AtomicReference<>();
+        final EntityNotifyConsumer consumer = new EntityNotifyConsumer();
+        consumer.setNotifyConsumer(new BinaryNotifyConsumer() {
+            @Override
+            public void regist(BinaryNotifyListener listener) {
+                registed.set(listener);
+            }
+
+            @Override
+            public void unRegist(BinaryNotifyListener listener) {
+                registed.set(null);
+            }
+
+            @Override
+            public void regist(NotifyListener listener) {
+            }
+
+            @Override
+            public void unRegist(NotifyListener listener) {
+            }
+        });
+        consumer.start();
+        assertSame(consumer, registed.get());
+
+        final List<Class<?>> classes = new ArrayList<>();
+        final AtomicReference<ObjectId> idValue = new AtomicReference<>();
+        final AtomicReference<String> clientIdValue = new AtomicReference<>();
+        consumer.regist(new EntityNotifyListener() {
+            @Override
+            public <E extends Entity> void onNotify(Class<E> entityClass, ObjectId id, NotifyType notifyType,
+                                                    ObjectId companyId, String clientId) {
+                classes.add(entityClass);
+                idValue.set(id);
+                clientIdValue.set(clientId);
+            }
+        }, CacheableEntity.class);
+
+        consumer.onNotify(ByteBuffer.wrap(messages.get(0)), "client");
+        assertTrue(classes.isEmpty());
+
+        consumer.registEntityClass(SimpleEntity.class);
+        consumer.onNotify(ByteBuffer.wrap(messages.get(0)), "client");
+        assertTrue(classes.isEmpty());
+
+        final CacheableEntity cacheable = EntityFactory.newInstance(CacheableEntity.class);
+        ((EntityModifier) cacheable).setId(id);
+        consumer.onNotify(ByteBuffer.wrap(BinaryNotifyProvider.encode(cacheable, NotifyType.insert)), "client");
+        assertEquals(1, classes.size());
+        assertEquals(CacheableEntity.class, classes.get(0));
+        assertEquals(id, idValue.get());
+        assertEquals("client", clientIdValue.get());
+
+        consumer.close();
+        assertNull(registed.get());
+    }
+
+    /**
+     * 测试未注册的实体类编号分发给接收所有实体类通知的监听器，以及监听器中再次收到消息时不影响外层的解析.
+     */
+    public void testUnknownClassId() {
+        final ObjectId id1 = new ObjectId();
+        final ObjectId id2 = new ObjectId();
+        final ByteBuffer buffer = ByteBuffer.allocate(2 * BinaryNotifyFormat.recordLength(null));
+        BinaryNotifyFormat.write(buffer, NotifyClassTable.getClassId(SimpleEntity.class), id1, NotifyType.insert,
+                null);
+        BinaryNotifyFormat.write(buffer, NotifyClassTable.getClassId(SimpleEntity.class), id2, NotifyType.update,
+                null);
+        buffer.flip();
+        final ByteBuffer nested = ByteBuffer.allocate(BinaryNotifyFormat.recordLength(null));
+        BinaryNotifyFormat.write(nested, NotifyClassTable.getClassId(CacheableEntity.class), id1, NotifyType.delete,
+                null);
+        nested.flip();
+
+        final EntityNotifyConsumer consumer = new EntityNotifyConsumer();
+        final List<Class<?>> classes = new ArrayList<>();
+        final List<ObjectId> ids = new ArrayList<>();
+        consumer.regist(new EntityNotifyListener() {
+            @Override
+            public <E extends Entity> void onNotify(Class<E> entityClass, ObjectId id, NotifyType notifyType,
+                                                    ObjectId companyId, String clientId) {
+                classes.add(entityClass);
+                ids.add(id);
+                if (NotifyType.insert == notifyType) {
+                    consumer.onNotify(nested, clientId);
+                }
+            }
+        });
+        consumer.onNotify(buffer, "client");
+        assertEquals(Arrays.<Class<?>>asList(Entity.class, Entity.class, Entity.class), classes);
+        assertEquals(Arrays.asList(id1, id1, id2), ids);
+    }
+
+    /**
+     * 测试NotifyBatch范围内的通知合并为一条消息，嵌套的范围在最外层关闭时发送.
+     */
+    public void testNotifyBatch() {
+        final List<byte[]> messages = new ArrayList<>();
+        final BinaryNotifyProvider provider = new BinaryNotifyProvider(new BinaryNotifyPublisher() {
+            @Override
+            public void publish(byte[] message) {
+                messages.add(message);
+            }
+        });
+
+        final SimpleEntity entity = EntityFactory.newInstance(SimpleEntity.class);
+        ((EntityModifier) entity).setId(new ObjectId());
+        try (NotifyBatch batch = NotifyBatch.begin()) {
+            provider.doNotify(entity, NotifyType.insert);
+            try (NotifyBatch nested = NotifyBatch.begin()) {
+                provider.doNotify(entity, NotifyType.update);
+            }
+            provider.doNotify(entity, NotifyType.delete);
+            assertTrue(messages.isEmpty());
+        }
+        assertEquals(1, messages.size());
+        assertEquals(3 * BinaryNotifyFormat.recordLength(null), messages.get(0).length);
+
+        final BinaryNotifyParser parser = new BinaryNotifyParser().reset(ByteBuffer.wrap(messages.get(0)));
+        assertTrue(parser.next());
+        assertEquals(NotifyType.insert, parser.getNotifyType());
+        assertTrue(parser.next());
+        assertEquals(NotifyType.update, parser.getNotifyType());
+        assertTrue(parser.next());
+        assertEquals(NotifyType.delete, parser.getNotifyType());
+        assertFalse(parser.next());
+
+        provider.doNotify(entity, NotifyType.update);
+        assertEquals(2, messages.size());
+    }
+
+    /**
+     * 测试NotifyBatch范围内抛出异常时，已收集的通知仍然在关闭时发送.
+     */
+    public void testNotifyBatchException() {
+        final List<byte[]> messages = new ArrayList<>();
+        final BinaryNotifyProvider provider = new BinaryNotifyProvider(new BinaryNotifyPublisher() {
+            @Override
+            public void publish(byte[] message) {
+                messages.add(message);
+            }
+        });
+
+        final SimpleEntity entity = EntityFactory.newInstance(SimpleEntity.class);
+        ((EntityModifier) entity).setId(new ObjectId());
+        try (NotifyBatch batch = NotifyBatch.begin()) {
+            provider.doNotify(entity, NotifyType.insert);
+            try (NotifyBatch nested = NotifyBatch.begin()) {
+                provider.doNotify(entity, NotifyType.update);
+                throw new IllegalStateException("write failed");
+            }
+        } catch (IllegalStateException ex) {
+            assertEquals("write failed", ex.getMessage());
+        }
+        assertEquals(1, messages.size());
+        assertEquals(2 * BinaryNotifyFormat.recordLength(null), messages.get(0).length);
+
+        provider.doNotify(entity, NotifyType.delete);
+        assertEquals(2, messages.size());
+    }
+
+    private interface Aa extends Entity {
+    }
+
+    private interface BB extends Entity {
+    }
+}
@@ -1,13 +1,16 @@
 package test.io.github.dbstarll.dubai.model.notify;
 
+import io.github.dbstarll.dubai.model.collection.test.CacheableEntity;
 import io.github.dbstarll.dubai.model.collection.test.SimpleEntity;
 import io.github.dbstarll.dubai.model.entity.Entity;
+import io.github.dbstarll.dubai.model.entity.func.Cacheable;
 import io.github.dbstarll.dubai.model.entity.join.CompanyBase;
 import io.github.dbstarll.dubai.model.notify.*;
 import junit.framework.TestCase;
 import org.bson.types.ObjectId;
 
 import java.io.IOException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
@@ -210,4 +213,109 @@ public class TestEntityNotifyConsumer extends TestCase {
         consumer.unRegist(listener);
         consumer.close();
     }
+
+    /**
+     * 测试按实体类型注册listener.
+     *
+     * @throws IOException IOException
+     */
+    public void testListenerWithEntityType() throws IOException {
+        final EntityNotifyConsumer consumer = new EntityNotifyConsumer();
+
+        final AtomicInteger all = new AtomicInteger(0);
+        final AtomicInteger cacheable = new AtomicInteger(0);
+        final AtomicReference<Class<?>> classValue = new AtomicReference<>();
+        final EntityNotifyListener allListener = new EntityNotifyListener() {
+            @Override
+            public <E extends Entity> void onNotify(Class<E> entityClass, ObjectId id, NotifyType notifyType,
+                                                    ObjectId companyId, String clientId) {
+                all.incrementAndGet();
+            }
+        };
+        final EntityNotifyListener cacheableListener = new EntityNotifyListener() {
+            @Override
+            public <E extends Entity> void onNotify(Class<E> entityClass, ObjectId id, NotifyType notifyType,
+                                                    ObjectId companyId, String clientId) {
+                cacheable.incrementAndGet();
+                classValue.set(entityClass);
+            }
+        };
+        consumer.regist(allListener);
+        consumer.regist(cacheableListener, Cacheable.class);
+
+        final NotifyParser notifyParser = new NotifyParser() {
+            @Override
+            public ObjectId getObjectId(String key) {
+                return Entity.FIELD_NAME_ID.equals(key) ? new ObjectId() : null;
+            }
+
+            @Override
+            public NotifyType getNotifyType() {
+                return NotifyType.update;
+            }
+        };
+        consumer.onNotify(SimpleEntity.class.getName(), "value", notifyParser);
+        consumer.onNotify(CacheableEntity.class.getName(), "value", notifyParser);
+        consumer.onNotify(CacheableEntity.class.getName(), "value", notifyParser);
+        assertEquals(3, all.get());
+        assertEquals(2, cacheable.get());
+        assertEquals(CacheableEntity.class, classValue.get());
+
+        consumer.unRegist(cacheableListener);
+        consumer.onNotify(CacheableEntity.class.getName(), "value", notifyParser);
+        assertEquals(4, all.get());
+        assertEquals(2, cacheable.get());
+
+        consumer.unRegist(allListener);
+        consumer.onNotify(SimpleEntity.class.getName(), "value", notifyParser);
+        assertEquals(4, all.get());
+        consumer.close();
+    }
+
+    /**
+     * 测试在指定的Executor中执行listener.
+     *
+     * @throws IOException IOException
+     */
+    public void testListenerWithExecutor() throws IOException {
+        final EntityNotifyConsumer consumer = new EntityNotifyConsumer();
+
+        final AtomicInteger executes = new AtomicInteger(0);
+        final AtomicInteger calls = new AtomicInteger(0);
+        final Executor executor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                executes.incrementAndGet();
+                command.run();
+            }
+        };
+        final EntityNotifyListener listener = new EntityNotifyListener() {
+            @Override
+            public <E extends Entity> void onNotify(Class<E> entityClass, ObjectId id, NotifyType notifyType,
+                                                    ObjectId companyId, String clientId) {
+                calls.incrementAndGet();
+                throw new RuntimeException("test");
+            }
+        };
+        consumer.regist(listener, SimpleEntity.class, executor);
+
+        final NotifyParser notifyParser = new NotifyParser() {
+            @Override
+            public ObjectId getObjectId(String key) {
+                return new ObjectId();
+            }
+
+            @Override
+            public NotifyType getNotifyType() {
+                return NotifyType.delete;
+            }
+        };
+        consumer.onNotify(SimpleEntity.class.getName(), "value", notifyParser);
+        consumer.onNotify(CacheableEntity.class.getName(), "value", notifyParser);
+        consumer.unRegist(listener);
+        consumer.close();
+
+        assertEquals(1, executes.get());
+        assertEquals(1, calls.get());
+    }
 }
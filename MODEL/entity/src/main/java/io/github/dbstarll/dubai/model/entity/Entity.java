@@ -6,6 +6,7 @@ import java.util.Date;
 
 public interface Entity extends Base, Cloneable {
     String FIELD_NAME_ID = "_id";
+    String FIELD_NAME_LAST_MODIFIED = "lastModified";
 
     ObjectId getId();
 
@@ -0,0 +1,31 @@
+package io.github.dbstarll.dubai.model.entity;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * 为实体类维护一个实体ID的Bloom过滤器，contains和findById对一定不存在的ID直接返回，不再查询数据库.
+ * 其他节点插入的实体需要通过变更通知加入过滤器，因此只对Notifiable的实体类并且配置了EntityNotifyConsumer时生效.
+ */
+@Documented
+@Retention(RUNTIME)
+@Target(TYPE)
+public @interface IdFilter {
+    /**
+     * 预期的实体数量.
+     *
+     * @return 预期的实体数量
+     */
+    long expectedInsertions() default 1000000;
+
+    /**
+     * 达到预期实体数量时的误判率.
+     *
+     * @return 误判率
+     */
+    double fpp() default 0.01;
+}
@@ -0,0 +1,20 @@
+package io.github.dbstarll.dubai.model.entity;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * 以lastModified作为版本号对实体进行乐观并发更新.
+ * 服务保存实体时从缓存中获取实体原件，并且只有数据库中实体的lastModified与实体加载时一致时才执行更新，
+ * 否则视为实体已被其他人修改，保存失败. 每次写入时lastModified都会大于写入前的值，
+ * 同一毫秒内的多次写入也会得到不同的版本号.
+ */
+@Documented
+@Retention(RUNTIME)
+@Target(TYPE)
+public @interface OptimisticSave {
+}
@@ -0,0 +1,31 @@
+package io.github.dbstarll.dubai.model.entity;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * 标记数据量小、读取频繁的实体类，整个数据表会加载到内存中，查询在本地完成，并通过变更通知保持同步.
+ * 只对实现了Notifiable的实体类生效.
+ */
+@Documented
+@Retention(RUNTIME)
+@Target(TYPE)
+public @interface Replicated {
+    /**
+     * 需要建立等值索引的字段，等值和$in查询可以通过索引直接定位.
+     *
+     * @return 字段名列表
+     */
+    String[] indexes() default {};
+
+    /**
+     * 最多加载的条目数，数据表超出时不再使用内存副本，直接查询数据库.
+     *
+     * @return 最多加载的条目数
+     */
+    int maxSize() default 10000;
+}
@@ -0,0 +1,131 @@
+package io.github.dbstarll.dubai.model.service;
+
+import io.github.dbstarll.dubai.model.collection.Collection;
+import io.github.dbstarll.dubai.model.entity.Entity;
+import io.github.dbstarll.dubai.model.service.ServiceFactory.GeneralValidateable;
+import io.github.dbstarll.dubai.model.service.ServiceFactory.PositionMethod;
+import io.github.dbstarll.dubai.model.service.ServiceFactory.PositionValidation;
+import io.github.dbstarll.dubai.model.service.validation.Validation;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * 由{@link io.github.dbstarll.dubai.model.service.processor.EntityServiceProcessor}在编译期生成的服务实现类的基类.
+ * <ul>
+ * <li>生成的类为每个{@link Implementation}接口持有一个final的Implemental字段，每个方法直接调用对应的Implemental</li>
+ * <li>Implemental在第一次调用时完成自动装配和afterPropertiesSet，与代理方式下的行为一致</li>
+ * <li>{@link GeneralValidateable}的实现与代理方式相同</li>
+ * <li>方法调用不经过代理，不记录{@link io.github.dbstarll.dubai.model.service.metrics.ServiceMetrics}调用统计</li>
+ * </ul>
+ *
+ * @param <E> 实体类
+ * @param <S> 服务类
+ */
+public abstract class AbstractGeneratedService<E extends Entity, S extends Service<E>>
+        implements ImplementalAutowirerAware, GeneralValidateable<E> {
+    /**
+     * 生成类的类名后缀，生成类与服务接口位于同一个包中.
+     */
+    public static final String CLASS_NAME_SUFFIX = "$$DubaiService";
+
+    final Class<S> serviceClass;
+    private final Class<E> entityClass;
+    private final Map<Class<?>, Implemental> implementals = new LinkedHashMap<>();
+    private final Set<Implemental> readyImplementals = Collections.newSetFromMap(
+            new IdentityHashMap<Implemental, Boolean>());
+    private final AtomicReference<java.util.Collection<PositionValidation<E>>> validationRef = new AtomicReference<>();
+
+    private volatile ImplementalAutowirer autowirer;
+    private volatile boolean initialized;
+
+    protected AbstractGeneratedService(Class<S> serviceClass, Collection<E> collection) {
+        this.serviceClass = notNull(serviceClass, "serviceClass is null");
+        this.entityClass = notNull(collection, "collection is null").getEntityClass();
+    }
+
+    /**
+     * 在构造函数中登记服务接口对应的Implemental.
+     *
+     * @param serviceInterface 标注了{@link Implementation}的服务接口
+     * @param implemental      Implemental实例
+     * @param <I>              Implemental类
+     * @return 传入的Implemental实例
+     */
+    protected final <I extends Implemental> I register(Class<?> serviceInterface, I implemental) {
+        implementals.put(serviceInterface, implemental);
+        return implemental;
+    }
+
+    @Override
+    public final void setImplementalAutowirer(ImplementalAutowirer implementalAutowirer) {
+        this.autowirer = implementalAutowirer;
+    }
+
+    /**
+     * 确保所有Implemental已完成初始化，生成的每个方法在调用Implemental之前调用.
+     */
+    protected final void ready() {
+        if (!initialized) {
+            initialize();
+        }
+    }
+
+    /**
+     * 依次初始化Implemental，某个Implemental初始化失败时抛出异常，下次调用时只重试尚未完成初始化的Implemental.
+     */
+    private synchronized void initialize() {
+        if (!initialized) {
+            for (Implemental implemental : implementals.values()) {
+                if (!readyImplementals.contains(implemental)) {
+                    try {
+                        if (autowirer != null) {
+                            autowirer.autowire(implemental);
+                        }
+                        implemental.afterPropertiesSet();
+                    } catch (Throwable ex) {
+                        throw new UnsupportedOperationException("不能初始化Implemental：" + implemental.getClass(), ex);
+                    }
+                    readyImplementals.add(implemental);
+                }
+            }
+            initialized = true;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public final java.util.Collection<PositionValidation<E>> generalValidations() {
+        ready();
+        if (validationRef.get() == null) {
+            final java.util.Collection<PositionValidation<E>> validations = new LinkedList<>();
+            for (PositionMethod entry : ServiceFactory.getPositionMethods(serviceClass, entityClass)) {
+                final Implemental implemental = implementals.get(entry.getValue().key);
+                if (implemental != null) {
+                    final Validation<E> validation;
+                    try {
+                        validation = (Validation<E>) entry.getValue().value.invoke(implemental);
+                    } catch (InvocationTargetException ex) {
+                        throw new UnsupportedOperationException(entry.getValue().value.toString(),
+                                ex.getTargetException());
+                    } catch (IllegalAccessException ex) {
+                        throw new UnsupportedOperationException(entry.getValue().value.toString(), ex);
+                    }
+                    if (validation != null) {
+                        validations.add(new PositionValidation<>(entry.getKey(), validation));
+                    }
+                }
+            }
+            validationRef.compareAndSet(null, Collections.unmodifiableCollection(validations));
+        }
+        return validationRef.get();
+    }
+}
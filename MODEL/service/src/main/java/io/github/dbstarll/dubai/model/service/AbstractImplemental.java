@@ -4,34 +4,51 @@ import com.mongodb.client.model.Filters;
 import io.github.dbstarll.dubai.model.collection.Collection;
 import io.github.dbstarll.dubai.model.entity.Base;
 import io.github.dbstarll.dubai.model.entity.Entity;
+import io.github.dbstarll.dubai.model.entity.EntityModifier;
+import io.github.dbstarll.dubai.model.entity.OptimisticSave;
 import io.github.dbstarll.dubai.model.entity.func.Defunctable;
 import io.github.dbstarll.dubai.model.entity.info.Describable;
 import io.github.dbstarll.dubai.model.entity.info.Namable;
 import io.github.dbstarll.dubai.model.notify.NotifyType;
 import io.github.dbstarll.dubai.model.service.ServiceFactory.GeneralValidateable;
-import io.github.dbstarll.dubai.model.service.ServiceFactory.PositionValidation;
+import io.github.dbstarll.dubai.model.service.validate.BatchValidate;
+import io.github.dbstarll.dubai.model.service.validate.DefaultValidate;
 import io.github.dbstarll.dubai.model.service.validate.Validate;
 import io.github.dbstarll.dubai.model.service.validate.ValidateException;
 import io.github.dbstarll.dubai.model.service.validate.ValidateWrapper;
 import io.github.dbstarll.dubai.model.service.validation.AbstractValidation;
+import io.github.dbstarll.dubai.model.service.validation.AsyncValidations;
 import io.github.dbstarll.dubai.model.service.validation.GeneralValidation;
-import io.github.dbstarll.dubai.model.service.validation.GeneralValidation.Position;
 import io.github.dbstarll.dubai.model.service.validation.MultiValidation;
 import io.github.dbstarll.dubai.model.service.validation.Validation;
+import io.github.dbstarll.dubai.model.service.validation.ValidationPipeline;
 import org.apache.commons.lang3.StringUtils;
 import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
 import static org.apache.commons.lang3.Validate.*;
 
 public abstract class AbstractImplemental<E extends Entity, S extends Service<E>> implements Implemental {
     private static final Logger LOGGER = LoggerFactory.getLogger(AbstractImplemental.class);
+    private static final String ERROR_MODIFIED = "实体已被修改，请重新加载后再保存";
+    private static final int SAVE_BATCH_SIZE = 1000;
+    private static final int PARALLEL_THRESHOLD = 64;
 
     protected final S service;
     protected final Class<E> entityClass;
     private final Collection<E> collection;
+    private final boolean optimisticSave;
+    private volatile ValidationPipeline<E> validationPipeline;
 
     /**
      * 构建AbstractImplemental.
@@ -43,6 +60,7 @@ public abstract class AbstractImplemental<E extends Entity, S extends Service<E>
         this.service = notNull(service, "service is null");
         this.collection = notNull(collection, "collection is null");
         this.entityClass = collection.getEntityClass();
+        this.optimisticSave = entityClass.isAnnotationPresent(OptimisticSave.class);
     }
 
     @Override
@@ -97,6 +115,8 @@ public abstract class AbstractImplemental<E extends Entity, S extends Service<E>
      * <li>校验未通过，且有{@link Validate}，在{@link Validate}中填充校验结果，返回null</li>
      * <li>校验未通过，且未设置{@link Validate}，抛出ValidateException</li>
      * </ol>
+     * 实体类标注了{@link OptimisticSave}时，实体原件优先从缓存中获取，并以实体加载时的lastModified为条件进行更新，
+     * 实体在加载后已被修改时视为校验未通过.
      *
      * @param entity      需要插入或更新的实体
      * @param newEntityId 插入时指定entity的id
@@ -112,14 +132,19 @@ public abstract class AbstractImplemental<E extends Entity, S extends Service<E>
         final Validate v = ValidateWrapper.wrap(validate);
 
         try {
-            final boolean save = checkSave(entity, v, validations);
+            final boolean optimistic = optimisticSave && entity != null && entity.getId() != null;
+            final boolean save = checkSave(entity, optimistic, v, validations);
             if (!v.hasErrors()) {
                 LOGGER.debug("validateAndSave with change: {}", save);
                 if (save) {
                     final NotifyType notifyType = entity.getId() == null ? NotifyType.insert : NotifyType.update;
-                    final E saved = collection.save(entity, newEntityId);
-                    onEntitySaved(saved, validate, notifyType);
-                    return saved;
+                    final E saved = optimistic ? collection.saveIfUnmodified(entity)
+                            : collection.save(entity, newEntityId);
+                    if (saved != null) {
+                        onEntitySaved(saved, validate, notifyType);
+                        return saved;
+                    }
+                    v.addActionError(ERROR_MODIFIED);
                 } else {
                     return null;
                 }
@@ -139,48 +164,287 @@ public abstract class AbstractImplemental<E extends Entity, S extends Service<E>
     }
 
     @SafeVarargs
-    private final boolean checkSave(final E entity, final Validate v, final Validation<E>... validations) {
+    private final boolean checkSave(final E entity, final boolean optimistic, final Validate v,
+                                    final Validation<E>... validations) {
         if (entity == null) {
             v.addActionError("实体未设置");
         } else if (entity.getId() == null) {
-            getValidation(validations).validate(entity, null, v);
+            getValidationPipeline().validate(entity, null, v, validations);
             return true;
         } else {
-            final E original = collection.original().findById(entity.getId());
-            if (original == null) {
-                v.addActionError("实体未找到");
-            } else {
-                getValidation(validations).validate(entity, original, v);
-                return !v.hasErrors() && !entity.equals(original);
-            }
+            final E original = optimistic ? findOriginal(entity) : collection.original().findById(entity.getId());
+            return checkUpdate(entity, original, optimistic, v, validations);
         }
         return false;
     }
 
     @SafeVarargs
-    private final Validation<E> getValidation(final Validation<E>... validations) {
-        final MultiValidation<E> mv = new MultiValidation<>(entityClass);
-        if (service instanceof GeneralValidateable) {
-            @SuppressWarnings("unchecked") final GeneralValidateable<E> general = (GeneralValidateable<E>) service;
-            final Iterable<PositionValidation<E>> generalValidations = general.generalValidations();
-            addValidation(mv, generalValidations, Position.FIRST);
-            addValidation(mv, generalValidations, Position.PRE);
-            mv.addValidation(validations);
-            addValidation(mv, generalValidations, Position.POST);
-            addValidation(mv, generalValidations, Position.LAST);
+    private final boolean checkUpdate(final E entity, final E original, final boolean optimistic, final Validate v,
+                                      final Validation<E>... validations) {
+        if (original == null) {
+            v.addActionError("实体未找到");
+        } else if (optimistic && !Objects.equals(entity.getLastModified(), original.getLastModified())) {
+            v.addActionError(ERROR_MODIFIED);
         } else {
-            mv.addValidation(validations);
+            getValidationPipeline().validate(entity, original, v, validations);
+            return !v.hasErrors() && !entity.equals(original);
+        }
+        return false;
+    }
+
+    /**
+     * 对一批实体进行校验然后保存. 每个实体的处理方式与{@link #validateAndSave}相同，区别在于：
+     * <ul>
+     * <li>所有待更新实体的原件通过一次$in查询获得</li>
+     * <li>实体数量较多时，每{@value #PARALLEL_THRESHOLD}个实体一组，在{@link AsyncValidations#getExecutor()}中并行校验，
+     * 因此校验必须是线程安全的</li>
+     * <li>校验通过且有被修改内容的实体每{@value #SAVE_BATCH_SIZE}个批量写入一次</li>
+     * </ul>
+     * 每个实体的校验结果按实体在列表中的位置记录在{@link BatchValidate}中，批量写入失败记录在{@link BatchValidate}自身.
+     * 某一批写入失败时，之前已写入的实体仍正常返回，失败及之后未写入的实体恢复写入前的id和时间戳.
+     *
+     * @param entities    需要插入或更新的实体
+     * @param validate    校验结果容器
+     * @param validations 校验回调，实现对特定实体的具体校验内容
+     * @return 与entities一一对应的列表，已保存的位置为更新后的实体，未保存的位置为null
+     * @throws ValidateException 如果有实体校验未通过，且未设置校验结果容器，则抛出此异常
+     */
+    @SafeVarargs
+    protected final List<E> validateAndSaveAll(final List<E> entities, final BatchValidate validate,
+                                               final Validation<E>... validations) throws ValidateException {
+        notNull(entities, "entities is null");
+        noNullElements(validations, "validations contains null element at index: %d");
+        final BatchValidate v = validate == null ? new BatchValidate() : validate;
+        final int size = entities.size();
+        final List<E> saved = new ArrayList<>(Collections.<E>nCopies(size, null));
+
+        try {
+            final Validate[] entityValidates = new Validate[size];
+            final boolean[] saves = new boolean[size];
+            checkSaveAll(entities, findOriginals(entities), entityValidates, saves, validations);
+
+            final List<E> toSave = new ArrayList<>();
+            final List<Integer> indexes = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                v.addEntityErrors(i, entityValidates[i]);
+                if (saves[i] && !entityValidates[i].hasErrors()) {
+                    toSave.add(entities.get(i));
+                    indexes.add(i);
+                }
+            }
+            LOGGER.debug("validateAndSaveAll with change: {}/{}", toSave.size(), size);
+
+            final NotifyType[] notifyTypes = new NotifyType[toSave.size()];
+            for (int i = 0; i < notifyTypes.length; i++) {
+                notifyTypes[i] = toSave.get(i).getId() == null ? NotifyType.insert : NotifyType.update;
+            }
+            if (optimisticSave) {
+                saveAllIfUnmodified(toSave, indexes, v);
+            } else {
+                final int written = saveInChunks(toSave, v);
+                for (int i = written; i < toSave.size(); i++) {
+                    toSave.set(i, null);
+                }
+            }
+            for (int i = 0; i < notifyTypes.length; i++) {
+                final E entity = toSave.get(i);
+                if (entity != null) {
+                    final int index = indexes.get(i);
+                    saved.set(index, entity);
+                    onEntitySaved(entity, entityValidates[index], notifyTypes[i]);
+                }
+            }
+        } catch (Throwable ex) {
+            v.addActionError(ex.getMessage());
+            LOGGER.error("validateAndSaveAll failed!", ex);
+        }
+
+        if (validate == null && v.hasErrors()) {
+            throw new ValidateException(v);
+        }
+        return saved;
+    }
+
+    private Map<ObjectId, E> findOriginals(final List<E> entities) {
+        final List<ObjectId> ids = new ArrayList<>(entities.size());
+        for (E entity : entities) {
+            if (entity != null && entity.getId() != null) {
+                ids.add(entity.getId());
+            }
+        }
+        final Map<ObjectId, E> originals = new HashMap<>(ids.size());
+        if (!ids.isEmpty()) {
+            for (E original : collection.original().findByIds(ids)) {
+                originals.put(original.getId(), original);
+            }
+        }
+        return originals;
+    }
+
+    /**
+     * 乐观更新时新插入的实体仍然批量写入，更新的实体逐个按版本条件写入，冲突或写入失败的实体在toSave中置为null，
+     * 并作为该实体的校验错误记录.
+     */
+    private void saveAllIfUnmodified(final List<E> toSave, final List<Integer> indexes, final BatchValidate v) {
+        final List<E> inserts = new ArrayList<>();
+        final List<Integer> insertPositions = new ArrayList<>();
+        for (int i = 0; i < toSave.size(); i++) {
+            final E entity = toSave.get(i);
+            if (entity.getId() == null) {
+                inserts.add(entity);
+                insertPositions.add(i);
+            } else {
+                final Date lastModified = entity.getLastModified();
+                final Validate failed = new DefaultValidate();
+                try {
+                    if (collection.saveIfUnmodified(entity) == null) {
+                        failed.addActionError(ERROR_MODIFIED);
+                    }
+                } catch (Throwable ex) {
+                    ((EntityModifier) entity).setLastModified(lastModified);
+                    failed.addActionError(ex.getMessage());
+                    LOGGER.error("validateAndSaveAll failed!", ex);
+                }
+                if (failed.hasErrors()) {
+                    toSave.set(i, null);
+                    v.addEntityErrors(indexes.get(i), failed);
+                }
+            }
+        }
+        final int written = saveInChunks(inserts, v);
+        for (int i = written; i < inserts.size(); i++) {
+            toSave.set(insertPositions.get(i), null);
         }
-        return mv;
     }
 
-    private void addValidation(final MultiValidation<E> mv, final Iterable<PositionValidation<E>> validations,
-                               final Position position) {
-        for (PositionValidation<E> pv : validations) {
-            if (position == pv.getKey()) {
-                mv.addValidation(pv.getValue());
+    /**
+     * 每{@value #SAVE_BATCH_SIZE}个实体一组依次写入. 某一组写入失败时停止写入，失败原因记录在{@link BatchValidate}自身，
+     * 该组实体恢复写入前的id、创建时间和最后修改时间，之前各组已写入的实体不受影响.
+     *
+     * @return 已写入的实体数量，即entities中前多少个实体已被写入
+     */
+    private int saveInChunks(final List<E> entities, final BatchValidate v) {
+        final int size = entities.size();
+        for (int from = 0; from < size; from += SAVE_BATCH_SIZE) {
+            final List<E> chunk = entities.subList(from, Math.min(size, from + SAVE_BATCH_SIZE));
+            final ObjectId[] ids = new ObjectId[chunk.size()];
+            final Date[] dateCreateds = new Date[chunk.size()];
+            final Date[] lastModifieds = new Date[chunk.size()];
+            for (int i = 0; i < ids.length; i++) {
+                final E entity = chunk.get(i);
+                ids[i] = entity.getId();
+                dateCreateds[i] = entity.getDateCreated();
+                lastModifieds[i] = entity.getLastModified();
+            }
+            try {
+                collection.saveAll(chunk, SAVE_BATCH_SIZE);
+            } catch (Throwable ex) {
+                for (int i = 0; i < ids.length; i++) {
+                    final EntityModifier modifier = (EntityModifier) chunk.get(i);
+                    modifier.setId(ids[i]);
+                    modifier.setDateCreated(dateCreateds[i]);
+                    modifier.setLastModified(lastModifieds[i]);
+                }
+                v.addActionError(ex.getMessage());
+                LOGGER.error("validateAndSaveAll failed after {} entities saved!", from, ex);
+                return from;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * 并行检查一批实体是否需要保存，每个实体的校验结果写入对应位置.
+     * 实体数量较少时直接在当前线程中执行，否则分组提交到校验执行器，最后一组在当前线程中执行.
+     */
+    private void checkSaveAll(List<E> entities, Map<ObjectId, E> originals, Validate[] validates, boolean[] saves,
+                              Validation<E>[] validations) {
+        final int size = entities.size();
+        if (size <= PARALLEL_THRESHOLD) {
+            new CheckSaveTask(entities, originals, validates, saves, 0, size, validations).run();
+            return;
+        }
+        final List<CheckSaveTask> tasks = new ArrayList<>((size + PARALLEL_THRESHOLD - 1) / PARALLEL_THRESHOLD);
+        for (int from = 0; from < size; from += PARALLEL_THRESHOLD) {
+            tasks.add(new CheckSaveTask(entities, originals, validates, saves, from,
+                    Math.min(size, from + PARALLEL_THRESHOLD), validations));
+        }
+        AsyncValidations.invokeAll(tasks);
+    }
+
+    /**
+     * 检查一组实体是否需要保存.
+     */
+    private final class CheckSaveTask implements Runnable {
+        private final List<E> entities;
+        private final Map<ObjectId, E> originals;
+        private final Validate[] validates;
+        private final boolean[] saves;
+        private final int from;
+        private final int to;
+        private final Validation<E>[] validations;
+
+        private CheckSaveTask(List<E> entities, Map<ObjectId, E> originals, Validate[] validates, boolean[] saves,
+                              int from, int to, Validation<E>[] validations) {
+            this.entities = entities;
+            this.originals = originals;
+            this.validates = validates;
+            this.saves = saves;
+            this.from = from;
+            this.to = to;
+            this.validations = validations;
+        }
+
+        @Override
+        public void run() {
+            for (int i = from; i < to; i++) {
+                final E entity = entities.get(i);
+                final Validate validate = new DefaultValidate();
+                try {
+                    if (entity == null) {
+                        validate.addActionError("实体未设置");
+                    } else if (entity.getId() == null) {
+                        getValidationPipeline().validate(entity, null, validate, validations);
+                        saves[i] = true;
+                    } else {
+                        saves[i] = checkUpdate(entity, originals.get(entity.getId()), optimisticSave, validate,
+                                validations);
+                    }
+                } catch (Throwable ex) {
+                    validate.addActionError(ex.getMessage());
+                    LOGGER.error("validateAndSaveAll failed!", ex);
+                }
+                validates[i] = validate;
+            }
+        }
+    }
+
+    /**
+     * 获得乐观更新时的实体原件. 优先使用缓存中的实体，版本与待保存的实体不一致时才从数据库中重新读取.
+     */
+    private E findOriginal(final E entity) {
+        final E cached = collection.findById(entity.getId());
+        if (cached != null && Objects.equals(entity.getLastModified(), cached.getLastModified())) {
+            return cached;
+        }
+        return collection.original().findById(entity.getId());
+    }
+
+    /**
+     * 获得预先编译的校验流水线，通用校验在第一次使用时编译一次.
+     */
+    private ValidationPipeline<E> getValidationPipeline() {
+        ValidationPipeline<E> pipeline = validationPipeline;
+        if (pipeline == null) {
+            if (service instanceof GeneralValidateable) {
+                @SuppressWarnings("unchecked") final GeneralValidateable<E> general = (GeneralValidateable<E>) service;
+                pipeline = ValidationPipeline.compile(entityClass, general.generalValidations());
+            } else {
+                pipeline = ValidationPipeline.compile(entityClass, null);
             }
+            validationPipeline = pipeline;
         }
+        return pipeline;
     }
 
     @Deprecated
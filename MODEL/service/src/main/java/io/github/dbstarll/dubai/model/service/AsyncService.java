@@ -0,0 +1,36 @@
+package io.github.dbstarll.dubai.model.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * 服务的异步门面，通过{@link ServiceFactory#newAsyncInstance}获得.
+ * <p>
+ * 子接口可以声明与服务方法同名、参数兼容的方法，返回值为{@link CompletableFuture}，
+ * 调用时在指定的执行器中执行对应的服务方法，例如：
+ * </p>
+ * <pre>
+ * public interface AsyncUserService extends AsyncService&lt;UserService&gt; {
+ *     CompletableFuture&lt;User&gt; findById(ObjectId id);
+ * }
+ * </pre>
+ *
+ * @param <S> 服务类
+ */
+public interface AsyncService<S extends Service<?>> {
+    /**
+     * 获得被包装的服务.
+     *
+     * @return 被包装的服务
+     */
+    S getService();
+
+    /**
+     * 在执行器中调用服务，用于子接口中没有声明的服务方法.
+     *
+     * @param call 对服务的调用
+     * @param <T>  调用结果的类型
+     * @return 调用结果
+     */
+    <T> CompletableFuture<T> supply(Function<? super S, ? extends T> call);
+}
@@ -0,0 +1,171 @@
+package io.github.dbstarll.dubai.model.service;
+
+import org.apache.commons.lang3.ClassUtils;
+import org.apache.commons.lang3.reflect.TypeUtils;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * {@link AsyncService}代理的调用处理.
+ * 在构造时将异步接口的每个方法解析为服务中同名、参数和返回值兼容的方法，调用时提交到执行器执行.
+ *
+ * @param <S> 服务类
+ */
+final class AsyncServiceHandler<S extends Service<?>> implements InvocationHandler {
+    private final Class<?> asyncClass;
+    private final S service;
+    private final Executor executor;
+    private final Map<Method, Method> targets;
+
+    AsyncServiceHandler(Class<?> asyncClass, Class<?> serviceClass, S service, Executor executor) {
+        this.asyncClass = asyncClass;
+        this.service = notNull(service, "service is null");
+        this.executor = notNull(executor, "executor is null");
+        this.targets = resolve(asyncClass, serviceClass);
+    }
+
+    private static Map<Method, Method> resolve(Class<?> asyncClass, Class<?> serviceClass) {
+        final Map<Method, Method> targets = new HashMap<>();
+        for (Method m : asyncClass.getMethods()) {
+            if (m.getDeclaringClass() == AsyncService.class || m.getDeclaringClass() == Object.class) {
+                continue;
+            }
+            isTrue(m.getReturnType().isAssignableFrom(CompletableFuture.class),
+                    "异步方法必须返回CompletableFuture：%s", m);
+            final Method target = findTarget(serviceClass, m);
+            isTrue(target != null, "服务%s中没有与异步方法对应的方法：%s", serviceClass.getName(), m);
+            targets.put(m, target);
+        }
+        return Collections.unmodifiableMap(targets);
+    }
+
+    /**
+     * 查找同名、参数兼容并且返回值与CompletableFuture的类型参数兼容的服务方法.
+     * 有多个时选择参数最具体的一个，不能确定唯一的方法时抛出异常.
+     */
+    private static Method findTarget(Class<?> serviceClass, Method asyncMethod) {
+        final Class<?> resultType = getResultType(asyncMethod);
+        final List<Method> candidates = new ArrayList<>();
+        for (Method m : serviceClass.getMethods()) {
+            if (m.getName().equals(asyncMethod.getName())
+                    && ClassUtils.isAssignable(asyncMethod.getParameterTypes(), m.getParameterTypes(), false)
+                    && isResultAssignable(getReturnType(serviceClass, m), resultType)) {
+                candidates.add(m);
+            }
+        }
+        Method found = null;
+        for (Method m : candidates) {
+            if (!isMostSpecific(m, candidates)) {
+                continue;
+            } else if (found == null) {
+                found = m;
+            } else {
+                // 参数相同的方法只是返回值协变的重写，取返回值最具体的一个
+                isTrue(Arrays.equals(found.getParameterTypes(), m.getParameterTypes()),
+                        "服务%s中有多个与异步方法对应的方法：%s", serviceClass.getName(), asyncMethod);
+                if (found.getReturnType().isAssignableFrom(m.getReturnType())) {
+                    found = m;
+                }
+            }
+        }
+        isTrue(found != null || candidates.isEmpty(), "服务%s中有多个与异步方法对应的方法：%s",
+                serviceClass.getName(), asyncMethod);
+        return found;
+    }
+
+    private static boolean isMostSpecific(Method method, List<Method> candidates) {
+        for (Method candidate : candidates) {
+            if (!ClassUtils.isAssignable(method.getParameterTypes(), candidate.getParameterTypes(), false)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 获得异步方法返回的CompletableFuture的类型参数，不能确定时返回Object.
+     */
+    private static Class<?> getResultType(Method asyncMethod) {
+        final Type returnType = asyncMethod.getGenericReturnType();
+        if (returnType instanceof ParameterizedType) {
+            return TypeUtils.getRawType(((ParameterizedType) returnType).getActualTypeArguments()[0], null);
+        }
+        return Object.class;
+    }
+
+    /**
+     * 获得服务方法在服务类中的返回值类型，返回值为类型变量时按服务类的类型参数解析，不能确定时返回null.
+     */
+    private static Class<?> getReturnType(Class<?> serviceClass, Method method) {
+        return TypeUtils.getRawType(method.getGenericReturnType(), serviceClass);
+    }
+
+    private static boolean isResultAssignable(Class<?> returnType, Class<?> resultType) {
+        if (returnType == null || resultType == null || resultType == Object.class) {
+            return true;
+        } else if (returnType == void.class) {
+            return resultType == Void.class;
+        }
+        return ClassUtils.isAssignable(returnType, resultType, true);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Object invoke(Object proxy, Method method, final Object[] args) throws Throwable {
+        final Method target = targets.get(method);
+        if (target != null) {
+            return supplyAsync(new Supplier<Object>() {
+                @Override
+                public Object get() {
+                    try {
+                        return target.invoke(service, args);
+                    } catch (InvocationTargetException ex) {
+                        throw new CompletionException(ex.getTargetException());
+                    } catch (IllegalAccessException ex) {
+                        throw new CompletionException(ex);
+                    }
+                }
+            });
+        } else if (method.getDeclaringClass() == AsyncService.class) {
+            if ("getService".equals(method.getName())) {
+                return service;
+            }
+            final Function<? super S, ?> call = (Function<? super S, ?>) args[0];
+            return supplyAsync(new Supplier<Object>() {
+                @Override
+                public Object get() {
+                    return call.apply(service);
+                }
+            });
+        } else if ("equals".equals(method.getName())) {
+            return proxy == args[0];
+        } else if ("hashCode".equals(method.getName())) {
+            return System.identityHashCode(proxy);
+        } else if ("toString".equals(method.getName())) {
+            return asyncClass.getName() + "[" + service + "]";
+        }
+        throw new UnsupportedOperationException(method.toString());
+    }
+
+    private CompletableFuture<Object> supplyAsync(Supplier<Object> supplier) {
+        return CompletableFuture.supplyAsync(supplier, executor);
+    }
+}
@@ -0,0 +1,43 @@
+package io.github.dbstarll.dubai.model.service;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * 缓存服务方法的返回结果，以方法和参数为key，适用于由聚合查询计算得到、调用频繁而变化较少的结果.
+ * <ul>
+ * <li>只对通过{@link ServiceFactory}代理的服务接口方法生效</li>
+ * <li>服务的实体类有任何变更通知时，该服务缓存的所有结果失效；实体类不是Notifiable时只依赖过期时间</li>
+ * <li>返回值为null时不缓存，缓存的结果必须是不可变的</li>
+ * </ul>
+ */
+@Documented
+@Retention(RUNTIME)
+@Target(METHOD)
+public @interface CachedResult {
+    /**
+     * 缓存结果的有效时间.
+     *
+     * @return 有效时间
+     */
+    long ttl() default 60;
+
+    /**
+     * 有效时间的单位.
+     *
+     * @return 时间单位
+     */
+    TimeUnit unit() default TimeUnit.SECONDS;
+
+    /**
+     * 该方法最多缓存的结果数，超出时淘汰最久未访问的结果.
+     *
+     * @return 最多缓存的结果数
+     */
+    int maxSize() default 1000;
+}
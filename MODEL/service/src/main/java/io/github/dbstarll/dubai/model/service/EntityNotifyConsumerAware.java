@@ -0,0 +1,7 @@
+package io.github.dbstarll.dubai.model.service;
+
+import io.github.dbstarll.dubai.model.notify.EntityNotifyConsumer;
+
+public interface EntityNotifyConsumerAware {
+    void setEntityNotifyConsumer(EntityNotifyConsumer entityNotifyConsumer);
+}
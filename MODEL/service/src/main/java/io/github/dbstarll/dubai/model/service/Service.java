@@ -3,11 +3,14 @@ package io.github.dbstarll.dubai.model.service;
 import com.mongodb.client.FindIterable;
 import io.github.dbstarll.dubai.model.entity.Entity;
 import io.github.dbstarll.dubai.model.service.impl.ServiceImplemental;
+import io.github.dbstarll.dubai.model.service.validate.BatchValidate;
 import io.github.dbstarll.dubai.model.service.validate.Validate;
 import io.github.dbstarll.dubai.model.service.validate.ValidateException;
 import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
 
+import java.util.List;
+
 @Implementation(ServiceImplemental.class)
 public interface Service<E extends Entity> extends Base {
     Class<E> getEntityClass();
@@ -70,4 +73,16 @@ public interface Service<E extends Entity> extends Base {
      * @throws ValidateException 如果校验未通过，且未设置校验结果容器，则抛出此异常
      */
     E save(E entity, Validate validate) throws ValidateException;
+
+    /**
+     * 对一批实体进行校验然后保存.
+     * 实体原件通过一次查询获得，校验在多个线程中并行执行，校验通过且有被修改内容的实体分批写入数据库.
+     * 每个实体的校验结果按实体在列表中的位置记录在{@link BatchValidate}中.
+     *
+     * @param entities 需要插入或更新的实体
+     * @param validate 校验结果容器
+     * @return 与entities一一对应的列表，已保存的位置为更新后的实体，未保存的位置为null
+     * @throws ValidateException 如果有实体校验未通过，且未设置校验结果容器，则抛出此异常
+     */
+    List<E> saveAll(List<E> entities, BatchValidate validate) throws ValidateException;
 }
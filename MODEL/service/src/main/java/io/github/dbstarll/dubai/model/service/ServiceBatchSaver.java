@@ -0,0 +1,21 @@
+package io.github.dbstarll.dubai.model.service;
+
+import io.github.dbstarll.dubai.model.entity.Entity;
+import io.github.dbstarll.dubai.model.service.validate.BatchValidate;
+import io.github.dbstarll.dubai.model.service.validate.ValidateException;
+
+import java.util.List;
+
+public interface ServiceBatchSaver<E extends Entity> {
+    /**
+     * 对一批实体进行校验然后保存. 每个实体的处理方式与{@link ServiceSaver#save}相同，
+     * 实体的校验结果按实体在列表中的位置记录在{@link BatchValidate}中.
+     * 服务实现此接口后，{@link Service#saveAll(List, BatchValidate)}将转由此方法处理.
+     *
+     * @param entities 需要插入或更新的实体
+     * @param validate 校验结果容器
+     * @return 与entities一一对应的列表，已保存的位置为更新后的实体，未保存的位置为null
+     * @throws ValidateException 如果有实体校验未通过，且未设置校验结果容器，则抛出此异常
+     */
+    List<E> saveBatch(List<E> entities, BatchValidate validate) throws ValidateException;
+}
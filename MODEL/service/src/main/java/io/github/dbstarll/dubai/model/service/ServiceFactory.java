@@ -2,6 +2,9 @@ package io.github.dbstarll.dubai.model.service;
 
 import io.github.dbstarll.dubai.model.entity.Entity;
 import io.github.dbstarll.dubai.model.entity.utils.PackageUtils;
+import io.github.dbstarll.dubai.model.notify.EntityNotifyConsumer;
+import io.github.dbstarll.dubai.model.service.metrics.MethodMetrics;
+import io.github.dbstarll.dubai.model.service.metrics.ServiceMetrics;
 import io.github.dbstarll.dubai.model.service.validation.GeneralValidation;
 import io.github.dbstarll.dubai.model.service.validation.GeneralValidation.Position;
 import io.github.dbstarll.dubai.model.service.validation.Validation;
@@ -9,15 +12,22 @@ import io.github.dbstarll.utils.lang.wrapper.EntryWrapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.*;
 import java.util.*;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicReference;
 
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.notNull;
+
 public final class ServiceFactory<E extends Entity, S extends Service<E>>
-        implements InvocationHandler, ImplementalAutowirerAware {
+        implements InvocationHandler, ImplementalAutowirerAware, EntityNotifyConsumerAware, ServiceMetricsAware {
     private static final Logger LOGGER = LoggerFactory.getLogger(ServiceFactory.class);
 
     private final Class<S> serviceClass;
@@ -25,10 +35,16 @@ public final class ServiceFactory<E extends Entity, S extends Service<E>>
     private final Class<E> entityClass;
     private final ConcurrentMap<Class<?>, Implemental> implementals = new ConcurrentHashMap<>();
     private final Map<String, MethodValue> methods;
+    private final Map<Method, MethodValue> dispatchTable;
+    private final ConcurrentMap<Method, MethodHandle> boundHandles = new ConcurrentHashMap<>();
     private final java.util.Collection<PositionMethod> positionMethods;
     private final AtomicReference<java.util.Collection<PositionValidation<E>>> validationRef = new AtomicReference<>();
+    private final ServiceResultCache resultCache;
+    private final ConcurrentMap<Method, MethodMetrics> methodMetrics = new ConcurrentHashMap<>();
+    private volatile ServiceMetrics methodMetricsOwner;
 
     private ImplementalAutowirer autowirer;
+    private volatile ServiceMetrics serviceMetrics;
 
     private ServiceFactory(Class<S> serviceClass, io.github.dbstarll.dubai.model.collection.Collection<E> collection) {
         this.serviceClass = serviceClass;
@@ -38,6 +54,25 @@ public final class ServiceFactory<E extends Entity, S extends Service<E>>
                 entityClass);
         this.methods = ms.getKey();
         this.positionMethods = ms.getValue();
+        this.dispatchTable = buildDispatchTable(serviceClass, entityClass, methods);
+        this.resultCache = ServiceResultCache.build(serviceClass);
+    }
+
+    /**
+     * 在构造代理时将服务接口的每个方法解析为实际调用的方法，调用时只需一次查表.
+     * 代理传入的Method与getMethods返回的是不同的实例，因此以Method本身而非对象标识为key，
+     * Method的hashCode和equals只比较声明类、方法名和参数类型，不再需要每次调用都生成MethodKey.
+     */
+    private static Map<Method, MethodValue> buildDispatchTable(Class<?> serviceClass, Class<?> entityClass,
+                                                               Map<String, MethodValue> methods) {
+        final Map<Method, MethodValue> table = new HashMap<>();
+        for (Method m : serviceClass.getMethods()) {
+            final MethodValue value = methods.get(new MethodKey(m, entityClass).key);
+            if (value != null) {
+                table.put(m, value);
+            }
+        }
+        return Collections.unmodifiableMap(table);
     }
 
     private static <E extends Entity,
@@ -74,6 +109,14 @@ public final class ServiceFactory<E extends Entity, S extends Service<E>>
         return EntryWrapper.wrap(methods, positionMethods);
     }
 
+    /**
+     * 获得服务类上所有{@link GeneralValidation}方法及其位置，供生成的服务类构造通用校验.
+     */
+    static <E extends Entity, S extends Service<E>> java.util.Collection<PositionMethod> getPositionMethods(
+            Class<S> serviceClass, Class<E> entityClass) {
+        return getMethods(serviceClass, entityClass).getValue();
+    }
+
     private static List<Type> getAllImplementationInterface(Type serviceType) {
         final List<Type> list = new LinkedList<>();
         for (Type type : getClass(serviceType).getGenericInterfaces()) {
@@ -98,6 +141,29 @@ public final class ServiceFactory<E extends Entity, S extends Service<E>>
         this.autowirer = implementalAutowirer;
     }
 
+    /**
+     * 注册结果缓存为服务实体类的变更通知监听器，服务中没有标注{@link CachedResult}的方法时不做任何处理.
+     *
+     * @param entityNotifyConsumer 实体变更通知的消费者
+     */
+    @Override
+    public void setEntityNotifyConsumer(EntityNotifyConsumer entityNotifyConsumer) {
+        if (resultCache != null && entityNotifyConsumer != null) {
+            entityNotifyConsumer.regist(resultCache, entityClass);
+        }
+    }
+
+    /**
+     * 设置服务调用统计，通过代理调用的服务方法都会记录调用次数、异常次数和耗时.
+     * {@link ServiceMetrics#close()}之后不再记录.
+     *
+     * @param serviceMetrics 服务调用统计，为null时停止记录
+     */
+    @Override
+    public void setServiceMetrics(ServiceMetrics serviceMetrics) {
+        this.serviceMetrics = serviceMetrics;
+    }
+
     @SuppressWarnings("unchecked")
     private java.util.Collection<PositionValidation<E>> buildGeneralValidation(Object proxy) throws Throwable {
         if (validationRef.get() == null) {
@@ -122,16 +188,71 @@ public final class ServiceFactory<E extends Entity, S extends Service<E>>
     }
 
     @Override
-    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
         if (method.getDeclaringClass() == Object.class) {
             return method.invoke(this, args);
-        } else if (method.getDeclaringClass() == ImplementalAutowirerAware.class) {
+        } else if (method.getDeclaringClass() == ImplementalAutowirerAware.class
+                || method.getDeclaringClass() == EntityNotifyConsumerAware.class
+                || method.getDeclaringClass() == ServiceMetricsAware.class) {
             return method.invoke(this, args);
         } else if (method.getDeclaringClass() == GeneralValidateable.class) {
             return buildGeneralValidation(proxy);
+        } else if (resultCache != null && resultCache.isCached(method)) {
+            return resultCache.get(method, args, new ServiceResultCache.Loader() {
+                @Override
+                public Object load() throws Throwable {
+                    return dispatch(proxy, method, args);
+                }
+            });
+        }
+        return dispatch(proxy, method, args);
+    }
+
+    private Object dispatch(Object proxy, Method method, Object[] args) throws Throwable {
+        final ServiceMetrics serviceMetrics = this.serviceMetrics;
+        if (serviceMetrics == null || serviceMetrics.isClosed()) {
+            return invokeImplemental(proxy, method, args);
         }
+        final long start = System.nanoTime();
+        boolean error = true;
+        try {
+            final Object result = invokeImplemental(proxy, method, args);
+            error = false;
+            return result;
+        } finally {
+            record(serviceMetrics, method, System.nanoTime() - start, error);
+        }
+    }
 
-        final MethodValue entry = methods.get(new MethodKey(method, entityClass).key);
+    /**
+     * 记录一次调用，第一次调用时解析方法对应的Implemental类并缓存调用统计.
+     * 没有对应Implemental的方法在调用时已经抛出UnsupportedOperationException，不记录调用统计.
+     */
+    private void record(ServiceMetrics serviceMetrics, Method method, long nanos, boolean error) {
+        if (methodMetricsOwner != serviceMetrics) {
+            methodMetrics.clear();
+            methodMetricsOwner = serviceMetrics;
+        }
+        MethodMetrics m = methodMetrics.get(method);
+        if (m == null) {
+            final MethodValue entry = lookup(method);
+            final Implemental implemental = entry == null ? null : implementals.get(entry.key);
+            if (implemental == null) {
+                return;
+            }
+            m = serviceMetrics.get(serviceClass, implemental.getClass(), method);
+            methodMetrics.putIfAbsent(method, m);
+        }
+        m.record(nanos, error);
+    }
+
+    private Object invokeImplemental(Object proxy, Method method, Object[] args) throws Throwable {
+        final MethodHandle handle = boundHandles.get(method);
+        if (handle != null) {
+            return handle.invokeExact(args);
+        }
+
+        final MethodValue entry = lookup(method);
         if (entry != null) {
             final Class<?> serviceInterface = entry.key;
             final Method overrideMethod = entry.value;
@@ -140,6 +261,11 @@ public final class ServiceFactory<E extends Entity, S extends Service<E>>
             }
             final Implemental implemental = findOrPutImplemental(proxy, serviceInterface);
             if (implemental != null) {
+                final MethodHandle bound = bind(overrideMethod, implemental);
+                if (bound != null) {
+                    boundHandles.putIfAbsent(method, bound);
+                    return bound.invokeExact(args);
+                }
                 try {
                     return overrideMethod.invoke(implemental, args);
                 } catch (InvocationTargetException ex) {
@@ -151,10 +277,62 @@ public final class ServiceFactory<E extends Entity, S extends Service<E>>
         throw new UnsupportedOperationException(method.toString());
     }
 
+    /**
+     * 将方法绑定到Implemental实例，得到类型为(Object[])Object的MethodHandle，
+     * 调用时不再需要反射的访问检查和参数包装，异常也直接抛出而不是包装在InvocationTargetException中.
+     *
+     * @param method      要调用的方法
+     * @param implemental Implemental实例
+     * @return 绑定后的MethodHandle，方法不可访问时返回null
+     */
+    private static MethodHandle bind(Method method, Implemental implemental) {
+        try {
+            return MethodHandles.publicLookup().unreflect(method).asFixedArity().bindTo(implemental)
+                    .asSpreader(Object[].class, method.getParameterCount())
+                    .asType(MethodType.methodType(Object.class, Object[].class));
+        } catch (IllegalAccessException ex) {
+            LOGGER.debug("bind method failed, fallback to reflection: {}", method, ex);
+            return null;
+        }
+    }
+
+    /**
+     * 构造所有Implemental，预先绑定所有方法的调用入口并构建通用校验.
+     */
+    private void warmUp(Object proxy) {
+        for (Entry<Method, MethodValue> entry : dispatchTable.entrySet()) {
+            final Implemental implemental = findOrPutImplemental(proxy, entry.getValue().key);
+            if (implemental != null && !boundHandles.containsKey(entry.getKey())) {
+                final MethodHandle bound = bind(entry.getValue().value, implemental);
+                if (bound != null) {
+                    boundHandles.putIfAbsent(entry.getKey(), bound);
+                }
+            }
+        }
+        try {
+            buildGeneralValidation(proxy);
+        } catch (RuntimeException | Error ex) {
+            throw ex;
+        } catch (Throwable ex) {
+            throw new UndeclaredThrowableException(ex);
+        }
+    }
+
+    private MethodValue lookup(Method method) {
+        final MethodValue entry = dispatchTable.get(method);
+        if (entry != null) {
+            return entry;
+        }
+        // 不在服务接口中的方法（例如包接口上声明的方法）很少调用，按原有方式查找
+        return methods.get(new MethodKey(method, entityClass).key);
+    }
+
     private Implemental findOrPutImplemental(Object proxy, Class<?> serviceInterface) {
-        if (!implementals.containsKey(serviceInterface)) {
-            putImplemental(proxy, serviceInterface, getImplementalClass(serviceInterface));
+        final Implemental implemental = implementals.get(serviceInterface);
+        if (implemental != null) {
+            return implemental;
         }
+        putImplemental(proxy, serviceInterface, getImplementalClass(serviceInterface));
         return implementals.get(serviceInterface);
     }
 
@@ -224,9 +402,14 @@ public final class ServiceFactory<E extends Entity, S extends Service<E>>
                                                                          io.github.dbstarll.dubai.model.collection.Collection<E> collection) {
         if (isServiceClass(serviceClass)) {
             if (serviceClass.isInterface()) {
+                final S generated = newGeneratedInstance(serviceClass, collection);
+                if (generated != null) {
+                    return generated;
+                }
                 final Class<?> packageInterface = PackageUtils.getPackageInterface(serviceClass, Package.class);
                 return (S) Proxy.newProxyInstance(serviceClass.getClassLoader(),
-                        new Class[]{serviceClass, ImplementalAutowirerAware.class, GeneralValidateable.class, packageInterface},
+                        new Class[]{serviceClass, ImplementalAutowirerAware.class, EntityNotifyConsumerAware.class,
+                                ServiceMetricsAware.class, GeneralValidateable.class, packageInterface},
                         new ServiceFactory<>(serviceClass, collection));
             } else {
                 try {
@@ -240,6 +423,97 @@ public final class ServiceFactory<E extends Entity, S extends Service<E>>
         }
     }
 
+    /**
+     * 如果存在编译期生成的服务类，则构造生成类的实例.
+     *
+     * @param serviceClass {@link Service}接口
+     * @param collection   {@link io.github.dbstarll.dubai.model.collection.Collection}实例
+     * @return 生成类的实例，不存在生成类或者构造失败时返回null
+     */
+    private static <E extends Entity, S extends Service<E>> S newGeneratedInstance(Class<S> serviceClass,
+            io.github.dbstarll.dubai.model.collection.Collection<E> collection) {
+        final String generatedClassName = serviceClass.getName() + AbstractGeneratedService.CLASS_NAME_SUFFIX;
+        final Class<?> generatedClass;
+        try {
+            generatedClass = Class.forName(generatedClassName, true, serviceClass.getClassLoader());
+        } catch (ClassNotFoundException ex) {
+            return null;
+        }
+        if (!serviceClass.isAssignableFrom(generatedClass)
+                || !AbstractGeneratedService.class.isAssignableFrom(generatedClass)) {
+            LOGGER.warn("Invalid generated service: {}", generatedClass);
+            return null;
+        }
+        try {
+            final S service = serviceClass.cast(generatedClass
+                    .getConstructor(io.github.dbstarll.dubai.model.collection.Collection.class).newInstance(collection));
+            LOGGER.debug("Service: {} use generated {}", serviceClass.getName(), generatedClassName);
+            return service;
+        } catch (Throwable ex) {
+            LOGGER.warn("不能实例化生成的服务类，使用代理：" + generatedClass, ex);
+            return null;
+        }
+    }
+
+    /**
+     * 预热服务实例：构造所有Implemental并完成自动装配，构建通用校验，预先绑定所有方法的调用入口，
+     * 使第一次调用的延迟与稳定状态一致. 不是由ServiceFactory构造的服务实例不做任何处理.
+     *
+     * @param service {@link Service}实例
+     */
+    @SuppressWarnings("rawtypes")
+    public static void warmUp(Service<?> service) {
+        if (Proxy.isProxyClass(service.getClass())) {
+            final InvocationHandler handler = Proxy.getInvocationHandler(service);
+            if (ServiceFactory.class.isInstance(handler)) {
+                ((ServiceFactory) handler).warmUp(service);
+            }
+        } else if (service instanceof AbstractGeneratedService) {
+            ((AbstractGeneratedService) service).generalValidations();
+        }
+    }
+
+    /**
+     * 构造服务的异步门面.
+     * 异步接口中声明的每个方法必须返回{@link java.util.concurrent.CompletableFuture}，
+     * 并且在服务中有同名、参数兼容的方法，调用时在executor中执行对应的服务方法.
+     *
+     * @param asyncClass 继承{@link AsyncService}的异步接口
+     * @param service    {@link Service}实例
+     * @param executor   执行服务调用的执行器
+     * @param <S>        服务类
+     * @param <A>        异步接口
+     * @return 异步门面
+     * @throws IllegalArgumentException 异步接口中的方法不能对应到服务方法时抛出此异常
+     */
+    @SuppressWarnings("unchecked")
+    public static <S extends Service<?>, A extends AsyncService<S>> A newAsyncInstance(Class<A> asyncClass, S service,
+                                                                                    Executor executor) {
+        isTrue(notNull(asyncClass, "asyncClass is null").isInterface(), "asyncClass must be an interface: %s",
+                asyncClass);
+        return (A) newAsyncProxy(asyncClass, service, executor);
+    }
+
+    /**
+     * 构造服务的异步门面，只提供{@link AsyncService#supply}.
+     *
+     * @param service  {@link Service}实例
+     * @param executor 执行服务调用的执行器
+     * @param <S>      服务类
+     * @return 异步门面
+     */
+    @SuppressWarnings("unchecked")
+    public static <S extends Service<?>> AsyncService<S> newAsyncInstance(S service, Executor executor) {
+        return (AsyncService<S>) newAsyncProxy(AsyncService.class, service, executor);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <S extends Service<?>> Object newAsyncProxy(Class<?> asyncClass, S service, Executor executor) {
+        final Class<?> serviceClass = getServiceClass((Service) notNull(service, "service is null"));
+        return Proxy.newProxyInstance(asyncClass.getClassLoader(), new Class[]{asyncClass},
+                new AsyncServiceHandler<>(asyncClass, serviceClass, service, executor));
+    }
+
     /**
      * 判断是否有效的实体类.
      *
@@ -275,6 +549,8 @@ public final class ServiceFactory<E extends Entity, S extends Service<E>>
             if (ServiceFactory.class.isInstance(handler)) {
                 return ((ServiceFactory<E, S>) handler).serviceClass;
             }
+        } else if (proxy instanceof AbstractGeneratedService) {
+            return ((AbstractGeneratedService<E, S>) proxy).serviceClass;
         }
         return (Class<S>) proxy.getClass();
     }
@@ -289,7 +565,7 @@ public final class ServiceFactory<E extends Entity, S extends Service<E>>
         }
     }
 
-    private static class PositionMethod extends EntryWrapper<Position, MethodValue> {
+    static class PositionMethod extends EntryWrapper<Position, MethodValue> {
         public PositionMethod(Position key, MethodValue value) {
             super(key, value);
         }
@@ -0,0 +1,7 @@
+package io.github.dbstarll.dubai.model.service;
+
+import io.github.dbstarll.dubai.model.service.metrics.ServiceMetrics;
+
+public interface ServiceMetricsAware {
+    void setServiceMetrics(ServiceMetrics serviceMetrics);
+}
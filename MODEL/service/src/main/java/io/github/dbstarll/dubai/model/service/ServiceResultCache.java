@@ -0,0 +1,192 @@
+package io.github.dbstarll.dubai.model.service;
+
+import io.github.dbstarll.dubai.model.entity.Entity;
+import io.github.dbstarll.dubai.model.notify.EntityNotifyListener;
+import io.github.dbstarll.dubai.model.notify.NotifyType;
+import org.bson.types.ObjectId;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * 服务方法的结果缓存，保存标注了{@link CachedResult}的方法的返回结果.
+ * <ul>
+ * <li>每个方法维护一个按最久未访问淘汰的结果表，以参数列表为key，数组参数复制后按内容比较</li>
+ * <li>维护一个版本号，收到服务实体类的变更通知时版本号递增，之前缓存的所有结果随之失效</li>
+ * <li>计算结果之前获取版本号，写入时版本号已变化则放弃写入，避免计算期间的变更被旧结果覆盖</li>
+ * </ul>
+ */
+final class ServiceResultCache implements EntityNotifyListener {
+    private final Map<Method, MethodCache> caches;
+    private final AtomicLong version = new AtomicLong();
+
+    private ServiceResultCache(Map<Method, MethodCache> caches) {
+        this.caches = caches;
+    }
+
+    /**
+     * 为服务类构造结果缓存.
+     *
+     * @param serviceClass 服务类
+     * @return 结果缓存，服务类中没有标注{@link CachedResult}的方法时返回null
+     */
+    static ServiceResultCache build(Class<?> serviceClass) {
+        final Map<Method, MethodCache> caches = new HashMap<>();
+        for (Method m : serviceClass.getMethods()) {
+            final CachedResult cachedResult = m.getAnnotation(CachedResult.class);
+            if (cachedResult != null && m.getReturnType() != void.class) {
+                caches.put(m, new MethodCache(cachedResult));
+            }
+        }
+        return caches.isEmpty() ? null : new ServiceResultCache(Collections.unmodifiableMap(caches));
+    }
+
+    boolean isCached(Method method) {
+        return caches.containsKey(method);
+    }
+
+    /**
+     * 从缓存中获得方法的返回结果，未缓存时调用loader计算并缓存.
+     *
+     * @param method 服务方法
+     * @param args   调用参数
+     * @param loader 计算返回结果
+     * @return 方法的返回结果
+     * @throws Throwable 计算返回结果时抛出的异常
+     */
+    Object get(Method method, Object[] args, Loader loader) throws Throwable {
+        final MethodCache cache = caches.get(method);
+        if (cache == null) {
+            return loader.load();
+        }
+
+        final Arguments key = new Arguments(args);
+        final long current = version.get();
+        final Object cached = cache.get(key, current);
+        if (cached != null) {
+            return cached;
+        }
+        final Object value = loader.load();
+        if (value != null && current == version.get()) {
+            cache.put(key, current, value);
+        }
+        return value;
+    }
+
+    /**
+     * 使所有缓存的结果失效.
+     */
+    void invalidate() {
+        version.incrementAndGet();
+    }
+
+    @Override
+    public <E extends Entity> void onNotify(Class<E> entityClass, ObjectId id, NotifyType notifyType,
+                                            ObjectId companyId, String clientId) {
+        invalidate();
+    }
+
+    interface Loader {
+        Object load() throws Throwable;
+    }
+
+    private static final class MethodCache {
+        private final long ttl;
+        private final Map<Arguments, Result> results;
+
+        private MethodCache(CachedResult cachedResult) {
+            isTrue(cachedResult.ttl() > 0, "ttl must be positive: %d", cachedResult.ttl());
+            isTrue(cachedResult.maxSize() > 0, "maxSize must be positive: %d", cachedResult.maxSize());
+            this.ttl = cachedResult.unit().toNanos(cachedResult.ttl());
+            final int maxSize = cachedResult.maxSize();
+            this.results = new LinkedHashMap<Arguments, Result>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Arguments, Result> eldest) {
+                    return size() > maxSize;
+                }
+            };
+        }
+
+        private Object get(Arguments key, long version) {
+            synchronized (results) {
+                final Result result = results.get(key);
+                if (result == null) {
+                    return null;
+                } else if (result.version == version && System.nanoTime() - result.expires < 0) {
+                    return result.value;
+                }
+                results.remove(key);
+                return null;
+            }
+        }
+
+        private void put(Arguments key, long version, Object value) {
+            synchronized (results) {
+                results.put(key, new Result(version, System.nanoTime() + ttl, value));
+            }
+        }
+    }
+
+    /**
+     * 以调用参数作为缓存的key，数组参数（包括嵌套的数组）在构造时复制，调用方之后修改数组不影响已缓存的key.
+     */
+    private static final class Arguments {
+        private static final Object[] EMPTY = new Object[0];
+
+        private final Object[] values;
+        private final int hashCode;
+
+        private Arguments(Object[] args) {
+            this.values = args == null ? EMPTY : (Object[]) copy(args);
+            this.hashCode = Arrays.deepHashCode(values);
+        }
+
+        private static Object copy(Object value) {
+            if (value instanceof Object[]) {
+                final Object[] copy = ((Object[]) value).clone();
+                for (int i = 0; i < copy.length; i++) {
+                    copy[i] = copy(copy[i]);
+                }
+                return copy;
+            } else if (value != null && value.getClass().isArray()) {
+                final int length = Array.getLength(value);
+                final Object copy = Array.newInstance(value.getClass().getComponentType(), length);
+                System.arraycopy(value, 0, copy, 0, length);
+                return copy;
+            }
+            return value;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return this == obj || obj instanceof Arguments && Arrays.deepEquals(values, ((Arguments) obj).values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    private static final class Result {
+        private final long version;
+        private final long expires;
+        private final Object value;
+
+        private Result(long version, long expires, Object value) {
+            this.version = version;
+            this.expires = expires;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package io.github.dbstarll.dubai.model.service.attach;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * 分批合并来源的选项.
+ */
+public final class MergeSourceOptions {
+    /**
+     * 缺省的每批实体数.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private double rateLimit;
+    private boolean createIndex = true;
+    private ProgressListener progressListener;
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * 设置每批更新的最大实体数.
+     *
+     * @param batchSize 每批更新的最大实体数
+     * @return this
+     */
+    public MergeSourceOptions batchSize(int batchSize) {
+        isTrue(batchSize > 0, "batchSize must be positive: %d", batchSize);
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    public double getRateLimit() {
+        return rateLimit;
+    }
+
+    /**
+     * 设置每秒最多更新的实体数，为0时不限制.
+     *
+     * @param rateLimit 每秒最多更新的实体数
+     * @return this
+     */
+    public MergeSourceOptions rateLimit(double rateLimit) {
+        isTrue(rateLimit >= 0, "rateLimit must not be negative: %f", rateLimit);
+        this.rateLimit = rateLimit;
+        return this;
+    }
+
+    public boolean isCreateIndex() {
+        return createIndex;
+    }
+
+    /**
+     * 设置是否在合并之前创建来源的索引，缺省为true.
+     *
+     * @param createIndex 是否创建索引
+     * @return this
+     */
+    public MergeSourceOptions createIndex(boolean createIndex) {
+        this.createIndex = createIndex;
+        return this;
+    }
+
+    public ProgressListener getProgressListener() {
+        return progressListener;
+    }
+
+    /**
+     * 设置进度的监听器，每批更新完成后通知.
+     *
+     * @param progressListener 进度的监听器
+     * @return this
+     */
+    public MergeSourceOptions progressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "MergeSourceOptions{batchSize=" + batchSize + ", rateLimit=" + rateLimit + ", createIndex="
+                + createIndex + '}';
+    }
+
+    public interface ProgressListener {
+        /**
+         * 一批更新完成.
+         *
+         * @param source   来源
+         * @param matched  到目前为止匹配的实体数
+         * @param modified 到目前为止修改的实体数
+         */
+        void onProgress(String source, long matched, long modified);
+    }
+}
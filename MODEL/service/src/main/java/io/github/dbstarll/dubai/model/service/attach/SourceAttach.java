@@ -13,6 +13,19 @@ import java.util.Map;
 public interface SourceAttach<E extends Entity & Sourceable> extends CoreAttachs {
     UpdateResult mergeSource(String source, ObjectId from, ObjectId to);
 
+    /**
+     * 分批合并来源：按实体id的顺序逐批找出来源为from的实体，每批通过一次updateMany改为to.
+     * 每批的变更通知在该批写入后合并发送，可以限制更新速率并报告进度.
+     * 线程被中断时在下一批开始前停止，返回已完成批次的合计结果. 合并是幂等的，中断后可以重新执行.
+     *
+     * @param source  来源
+     * @param from    原来的来源id
+     * @param to      新的来源id
+     * @param options 合并的选项
+     * @return 所有批次合计的更新结果
+     */
+    UpdateResult mergeSource(String source, ObjectId from, ObjectId to, MergeSourceOptions options);
+
     UpdateResult updateSource(ObjectId entityId, Map<String, ObjectId> sources);
 
     UpdateResult removeSource(ObjectId entityId, Map<String, ObjectId> sources);
@@ -2,6 +2,7 @@ package io.github.dbstarll.dubai.model.service.impl;
 
 import com.mongodb.client.FindIterable;
 import com.mongodb.client.result.DeleteResult;
+import io.github.dbstarll.dubai.model.cache.CompanyCounterStore;
 import io.github.dbstarll.dubai.model.collection.Collection;
 import io.github.dbstarll.dubai.model.entity.Entity;
 import io.github.dbstarll.dubai.model.entity.join.CompanyBase;
@@ -10,21 +11,42 @@ import io.github.dbstarll.dubai.model.service.attach.CompanyAttach;
 import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
 
+import java.util.function.LongSupplier;
+
 import static com.mongodb.client.model.Filters.eq;
 
 public final class CompanyAttachImplemental<E extends Entity & CompanyBase, S extends Service<E>>
         extends CoreImplementals<E, S> implements CompanyAttach<E> {
+    private CompanyCounterStore companyCounterStore;
+
     public CompanyAttachImplemental(S service, Collection<E> collection) {
         super(service, collection);
     }
 
+    /**
+     * 设置按公司计数的存储，实体类已由CollectionFactory启用计数时countByCompanyId从计数存储中读取.
+     *
+     * @param companyCounterStore 按公司计数的存储
+     */
+    public void setCompanyCounterStore(CompanyCounterStore companyCounterStore) {
+        this.companyCounterStore = companyCounterStore;
+    }
+
     @Override
     public Bson filterByCompanyId(ObjectId companyId) {
         return eq(CompanyBase.FIELD_NAME_COMPANY_ID, companyId);
     }
 
     @Override
-    public long countByCompanyId(ObjectId companyId) {
+    public long countByCompanyId(final ObjectId companyId) {
+        if (companyId != null && companyCounterStore != null && companyCounterStore.isEnabled(entityClass)) {
+            return companyCounterStore.count(entityClass, companyId, new LongSupplier() {
+                @Override
+                public long getAsLong() {
+                    return service.count(filterByCompanyId(companyId));
+                }
+            });
+        }
         return service.count(filterByCompanyId(companyId));
     }
 
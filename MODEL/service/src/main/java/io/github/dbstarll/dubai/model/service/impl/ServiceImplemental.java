@@ -4,15 +4,23 @@ import com.mongodb.client.FindIterable;
 import io.github.dbstarll.dubai.model.collection.Collection;
 import io.github.dbstarll.dubai.model.entity.Entity;
 import io.github.dbstarll.dubai.model.service.Service;
+import io.github.dbstarll.dubai.model.service.ServiceBatchSaver;
 import io.github.dbstarll.dubai.model.service.ServiceDeleter;
 import io.github.dbstarll.dubai.model.service.ServiceSaver;
+import io.github.dbstarll.dubai.model.service.validate.BatchValidate;
+import io.github.dbstarll.dubai.model.service.validate.DefaultValidate;
 import io.github.dbstarll.dubai.model.service.validate.Validate;
+import io.github.dbstarll.dubai.model.service.validate.ValidateException;
 import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public final class ServiceImplemental<E extends Entity, S extends Service<E>> extends CoreImplementals<E, S>
         implements Service<E> {
     private final boolean serviceSaver;
+    private final boolean serviceBatchSaver;
     private final boolean serviceDeleter;
 
     /**
@@ -24,6 +32,7 @@ public final class ServiceImplemental<E extends Entity, S extends Service<E>> ex
     public ServiceImplemental(S service, Collection<E> collection) {
         super(service, collection);
         this.serviceSaver = service instanceof ServiceSaver;
+        this.serviceBatchSaver = service instanceof ServiceBatchSaver;
         this.serviceDeleter = service instanceof ServiceDeleter;
     }
 
@@ -94,4 +103,33 @@ public final class ServiceImplemental<E extends Entity, S extends Service<E>> ex
             return validateAndSave(entity, newEntityId, validate);
         }
     }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public List<E> saveAll(List<E> entities, BatchValidate validate) {
+        if (serviceBatchSaver) {
+            return ((ServiceBatchSaver<E>) service).saveBatch(entities, validate);
+        } else if (serviceSaver) {
+            return saveEach(entities, validate);
+        } else {
+            return validateAndSaveAll(entities, validate);
+        }
+    }
+
+    /**
+     * 服务自定义了单个实体的保存时，逐个调用以保证自定义的校验生效.
+     */
+    private List<E> saveEach(List<E> entities, BatchValidate validate) {
+        final BatchValidate v = validate == null ? new BatchValidate() : validate;
+        final List<E> saved = new ArrayList<>(entities.size());
+        for (int i = 0; i < entities.size(); i++) {
+            final Validate entityValidate = new DefaultValidate();
+            saved.add(save(entities.get(i), null, entityValidate));
+            v.addEntityErrors(i, entityValidate);
+        }
+        if (validate == null && v.hasErrors()) {
+            throw new ValidateException(v);
+        }
+        return saved;
+    }
 }
@@ -1,12 +1,19 @@
 package io.github.dbstarll.dubai.model.service.impl;
 
 import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
 import com.mongodb.client.model.Updates;
 import com.mongodb.client.result.UpdateResult;
 import io.github.dbstarll.dubai.model.collection.Collection;
 import io.github.dbstarll.dubai.model.entity.Entity;
 import io.github.dbstarll.dubai.model.entity.info.Sourceable;
+import io.github.dbstarll.dubai.model.notify.NotifyBatch;
 import io.github.dbstarll.dubai.model.service.Service;
+import io.github.dbstarll.dubai.model.service.attach.MergeSourceOptions;
+import io.github.dbstarll.dubai.model.service.attach.MergeSourceOptions.ProgressListener;
 import io.github.dbstarll.dubai.model.service.attach.SourceAttach;
 import io.github.dbstarll.dubai.model.service.validate.Validate;
 import io.github.dbstarll.dubai.model.service.validation.GeneralValidation;
@@ -14,11 +21,16 @@ import io.github.dbstarll.dubai.model.service.validation.Validation;
 import org.apache.commons.lang3.StringUtils;
 import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import static com.mongodb.client.model.Filters.eq;
 import static org.apache.commons.lang3.Validate.notBlank;
@@ -26,6 +38,10 @@ import static org.apache.commons.lang3.Validate.notNull;
 
 public final class SourceAttachImplemental<E extends Entity & Sourceable, S extends Service<E>>
         extends CoreImplementals<E, S> implements SourceAttach<E> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SourceAttachImplemental.class);
+
+    private final Set<String> indexedSources = ConcurrentHashMap.newKeySet();
+
     public SourceAttachImplemental(S service, Collection<E> collection) {
         super(service, collection);
     }
@@ -36,6 +52,102 @@ public final class SourceAttachImplemental<E extends Entity & Sourceable, S exte
                 Updates.set(Sourceable.FIELD_NAME_SOURCES + "." + source, notNull(to)));
     }
 
+    @Override
+    public UpdateResult mergeSource(String source, ObjectId from, ObjectId to, MergeSourceOptions options) {
+        final String field = Sourceable.FIELD_NAME_SOURCES + "." + notBlank(source);
+        notNull(from);
+        notNull(to);
+        notNull(options, "options is null");
+        if (options.isCreateIndex()) {
+            ensureSourceIndex(field);
+        }
+
+        final ProgressListener listener = options.getProgressListener();
+        final long start = System.nanoTime();
+        long processed = 0;
+        long matched = 0;
+        long modified = 0;
+        boolean acknowledged = true;
+        ObjectId last = null;
+        while (true) {
+            if (Thread.currentThread().isInterrupted()) {
+                LOGGER.warn("mergeSource interrupted after {} entities", processed);
+                break;
+            }
+            final List<ObjectId> ids = nextIds(field, from, last, options.getBatchSize());
+            if (ids.isEmpty()) {
+                break;
+            }
+            last = ids.get(ids.size() - 1);
+
+            final UpdateResult result;
+            try (NotifyBatch batch = NotifyBatch.begin()) {
+                result = getCollection().updateMany(Filters.and(Filters.in(Entity.FIELD_NAME_ID, ids), eq(field, from)),
+                        Updates.set(field, to));
+            }
+            processed += ids.size();
+            if (result.wasAcknowledged()) {
+                matched += result.getMatchedCount();
+                modified += result.getModifiedCount();
+            } else {
+                acknowledged = false;
+            }
+            if (listener != null) {
+                listener.onProgress(source, matched, modified);
+            }
+            if (ids.size() < options.getBatchSize() || !throttle(options.getRateLimit(), processed, start)) {
+                break;
+            }
+        }
+        return acknowledged ? UpdateResult.acknowledged(matched, modified, null) : UpdateResult.unacknowledged();
+    }
+
+    /**
+     * 按id的顺序取出下一批来源为from的实体id，只读取id字段.
+     */
+    private List<ObjectId> nextIds(String field, ObjectId from, ObjectId last, int batchSize) {
+        final Bson filter = last == null ? eq(field, from) : Filters.and(eq(field, from),
+                Filters.gt(Entity.FIELD_NAME_ID, last));
+        final List<ObjectId> ids = new ArrayList<>(batchSize);
+        for (E e : getCollection().find(filter).projection(Projections.include(Entity.FIELD_NAME_ID))
+                .sort(Sorts.ascending(Entity.FIELD_NAME_ID)).limit(batchSize)) {
+            ids.add(e.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * 按速率限制等待，使到目前为止的平均速率不超过rateLimit.
+     *
+     * @return 等待被中断时返回false
+     */
+    private static boolean throttle(double rateLimit, long processed, long start) {
+        if (rateLimit > 0) {
+            final long expected = (long) (processed / rateLimit * TimeUnit.SECONDS.toNanos(1));
+            final long wait = expected - (System.nanoTime() - start);
+            if (wait > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    LOGGER.warn("mergeSource interrupted after {} entities", processed);
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 创建来源和id的复合索引，支持按来源过滤并按id顺序遍历，每个来源只创建一次.
+     */
+    private void ensureSourceIndex(String field) {
+        if (!indexedSources.contains(field)) {
+            getCollection().createIndex(Indexes.ascending(field, Entity.FIELD_NAME_ID), new IndexOptions());
+            indexedSources.add(field);
+        }
+    }
+
     @Override
     public UpdateResult updateSource(ObjectId entityId, Map<String, ObjectId> sources) {
         if (hasEmptyKeyOrValue(notNull(sources))) {
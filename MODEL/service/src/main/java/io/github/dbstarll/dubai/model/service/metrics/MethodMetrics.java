@@ -0,0 +1,178 @@
+package io.github.dbstarll.dubai.model.service.metrics;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * 一个服务方法的调用统计，按(服务接口, Implemental类, 方法)区分.
+ * 耗时按微秒以2的幂划分为{@link #BUCKETS}个区间：第0个区间为小于1微秒，第i个区间为[2^(i-1), 2^i)微秒，
+ * 最后一个区间包含所有更长的调用.
+ */
+public final class MethodMetrics {
+    /**
+     * 耗时直方图的区间数.
+     */
+    public static final int BUCKETS = 24;
+
+    private static final Recorder[] EMPTY_RECORDERS = new Recorder[0];
+
+    private final Class<?> serviceClass;
+    private final Class<?> implementalClass;
+    private final Method method;
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder errorCount = new LongAdder();
+    private final LongAdder totalTime = new LongAdder();
+    private final AtomicLong maxTime = new AtomicLong();
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private volatile Recorder[] recorders = EMPTY_RECORDERS;
+
+    MethodMetrics(Class<?> serviceClass, Class<?> implementalClass, Method method) {
+        this.serviceClass = serviceClass;
+        this.implementalClass = implementalClass;
+        this.method = method;
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * 记录一次调用.
+     *
+     * @param nanos 调用耗时，单位纳秒
+     * @param error 调用是否抛出了异常
+     */
+    public void record(long nanos, boolean error) {
+        count.increment();
+        if (error) {
+            errorCount.increment();
+        }
+        totalTime.add(nanos);
+        long max = maxTime.get();
+        while (nanos > max && !maxTime.compareAndSet(max, nanos)) {
+            max = maxTime.get();
+        }
+        buckets[bucket(nanos)].increment();
+        for (Recorder recorder : recorders) {
+            recorder.record(nanos, error);
+        }
+    }
+
+    /**
+     * 添加记录器，之后的每次调用都会同时交给记录器记录，例如记录到Micrometer的Timer.
+     *
+     * @param recorder 记录器
+     */
+    public synchronized void addRecorder(Recorder recorder) {
+        final Recorder[] current = recorders;
+        final Recorder[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = notNull(recorder, "recorder is null");
+        recorders = updated;
+    }
+
+    private static int bucket(long nanos) {
+        final long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+
+    /**
+     * 获得直方图区间的上界.
+     *
+     * @param bucket 区间序号
+     * @return 区间的上界，单位微秒，最后一个区间返回{@link Long#MAX_VALUE}
+     */
+    public static long getBucketUpperBound(int bucket) {
+        return bucket >= BUCKETS - 1 ? Long.MAX_VALUE : 1L << bucket;
+    }
+
+    public Class<?> getServiceClass() {
+        return serviceClass;
+    }
+
+    public Class<?> getImplementalClass() {
+        return implementalClass;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getErrorCount() {
+        return errorCount.sum();
+    }
+
+    /**
+     * 获得所有调用的总耗时.
+     *
+     * @return 总耗时，单位纳秒
+     */
+    public long getTotalTime() {
+        return totalTime.sum();
+    }
+
+    /**
+     * 获得单次调用的最大耗时.
+     *
+     * @return 最大耗时，单位纳秒
+     */
+    public long getMaxTime() {
+        return maxTime.get();
+    }
+
+    /**
+     * 获得耗时直方图.
+     *
+     * @return 每个区间的调用次数
+     */
+    public long[] getHistogram() {
+        final long[] histogram = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            histogram[i] = buckets[i].sum();
+        }
+        return histogram;
+    }
+
+    /**
+     * 根据直方图估算耗时的百分位数.
+     *
+     * @param histogram 耗时直方图
+     * @param percentile 百分位，取值范围(0, 1]
+     * @return 百分位数所在区间的上界，单位微秒，没有调用时返回0
+     */
+    static long percentile(long[] histogram, double percentile) {
+        long total = 0;
+        for (long c : histogram) {
+            total += c;
+        }
+        final long rank = (long) Math.ceil(total * percentile);
+        long seen = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            seen += histogram[i];
+            if (seen >= rank && seen > 0) {
+                return getBucketUpperBound(i);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 接收每次调用的记录器.
+     */
+    public interface Recorder {
+        void record(long nanos, boolean error);
+    }
+
+    @Override
+    public String toString() {
+        return serviceClass.getName() + "[" + implementalClass.getName() + "]." + method.getName();
+    }
+}
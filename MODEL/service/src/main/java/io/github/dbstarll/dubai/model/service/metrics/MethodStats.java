@@ -0,0 +1,100 @@
+package io.github.dbstarll.dubai.model.service.metrics;
+
+import java.beans.ConstructorProperties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一个服务方法调用统计的快照，供{@link ServiceMetricsMXBean}输出.
+ * 耗时的单位均为微秒，百分位数为直方图区间的上界.
+ */
+public final class MethodStats {
+    private final String service;
+    private final String implemental;
+    private final String method;
+    private final long count;
+    private final long errorCount;
+    private final long totalTime;
+    private final long maxTime;
+    private final long p50;
+    private final long p99;
+    private final long[] histogram;
+
+    /**
+     * 构造MethodStats.
+     *
+     * @param service     服务接口名
+     * @param implemental Implemental类名
+     * @param method      方法名
+     * @param count       调用次数
+     * @param errorCount  抛出异常的次数
+     * @param totalTime   总耗时
+     * @param maxTime     最大耗时
+     * @param p50         耗时的50%分位数
+     * @param p99         耗时的99%分位数
+     * @param histogram   耗时直方图
+     */
+    @ConstructorProperties({"service", "implemental", "method", "count", "errorCount", "totalTime", "maxTime",
+            "p50", "p99", "histogram"})
+    public MethodStats(String service, String implemental, String method, long count, long errorCount,
+                       long totalTime, long maxTime, long p50, long p99, long[] histogram) {
+        this.service = service;
+        this.implemental = implemental;
+        this.method = method;
+        this.count = count;
+        this.errorCount = errorCount;
+        this.totalTime = totalTime;
+        this.maxTime = maxTime;
+        this.p50 = p50;
+        this.p99 = p99;
+        this.histogram = histogram;
+    }
+
+    static MethodStats of(MethodMetrics metrics) {
+        final long[] histogram = metrics.getHistogram();
+        return new MethodStats(metrics.getServiceClass().getName(), metrics.getImplementalClass().getName(),
+                metrics.getMethod().toGenericString(), metrics.getCount(), metrics.getErrorCount(),
+                TimeUnit.NANOSECONDS.toMicros(metrics.getTotalTime()),
+                TimeUnit.NANOSECONDS.toMicros(metrics.getMaxTime()), MethodMetrics.percentile(histogram, 0.5),
+                MethodMetrics.percentile(histogram, 0.99), histogram);
+    }
+
+    public String getService() {
+        return service;
+    }
+
+    public String getImplemental() {
+        return implemental;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    public long getTotalTime() {
+        return totalTime;
+    }
+
+    public long getMaxTime() {
+        return maxTime;
+    }
+
+    public long getP50() {
+        return p50;
+    }
+
+    public long getP99() {
+        return p99;
+    }
+
+    public long[] getHistogram() {
+        return histogram;
+    }
+}
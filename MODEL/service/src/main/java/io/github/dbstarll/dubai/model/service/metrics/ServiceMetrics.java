@@ -0,0 +1,195 @@
+package io.github.dbstarll.dubai.model.service.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * 服务调用统计，通过{@link io.github.dbstarll.dubai.model.service.ServiceMetricsAware}注入服务后，
+ * 代理在分派点记录每个(服务接口, Implemental类, 方法)的调用次数、异常次数和耗时直方图.
+ * <ul>
+ * <li>通过{@link #registerMBean()}注册为JMX MBean</li>
+ * <li>通过{@link ServiceMetricsBinder}绑定到Micrometer的MeterRegistry</li>
+ * <li>编译期生成的服务类（{@code $$DubaiService}）直接调用Implemental，不经过代理，不记录调用统计；
+ * 需要统计这些服务时删除生成类或者不启用注解处理器，服务会回退为代理方式</li>
+ * </ul>
+ */
+public class ServiceMetrics implements ServiceMetricsMXBean, Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ServiceMetrics.class);
+
+    /**
+     * 注册MBean时使用的缺省名称.
+     */
+    public static final String OBJECT_NAME = "io.github.dbstarll.dubai:type=ServiceMetrics";
+
+    /**
+     * 获得带有上下文标识的MBean名称，同一个JVM中有多个应用上下文时用于区分各自的MBean.
+     *
+     * @param context 上下文标识，例如Spring ApplicationContext的id
+     * @return MBean的名称
+     * @throws MalformedObjectNameException 名称不合法时抛出此异常
+     */
+    public static ObjectName objectName(String context) throws MalformedObjectNameException {
+        return new ObjectName(OBJECT_NAME + ",context=" + ObjectName.quote(notNull(context, "context is null")));
+    }
+
+    private final ConcurrentMap<List<Object>, MethodMetrics> metrics = new ConcurrentHashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile ObjectName registered;
+    private volatile boolean closed;
+
+    /**
+     * 获得服务方法的调用统计，不存在时创建.
+     *
+     * @param serviceClass     服务接口
+     * @param implementalClass Implemental类
+     * @param method           服务方法
+     * @return 服务方法的调用统计
+     */
+    public MethodMetrics get(Class<?> serviceClass, Class<?> implementalClass, Method method) {
+        final List<Object> key = Arrays.<Object>asList(serviceClass, implementalClass, method);
+        final MethodMetrics existing = metrics.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        final MethodMetrics created = new MethodMetrics(notNull(serviceClass, "serviceClass is null"),
+                notNull(implementalClass, "implementalClass is null"), notNull(method, "method is null"));
+        final MethodMetrics previous = metrics.putIfAbsent(key, created);
+        if (previous != null) {
+            return previous;
+        }
+        for (Listener listener : listeners) {
+            listener.onCreate(created);
+        }
+        return created;
+    }
+
+    /**
+     * 获得所有服务方法的调用统计.
+     *
+     * @return 所有服务方法的调用统计
+     */
+    public Collection<MethodMetrics> getMethodMetrics() {
+        return Collections.unmodifiableCollection(metrics.values());
+    }
+
+    /**
+     * 添加监听器，已经存在的调用统计会立即通知监听器.
+     *
+     * @param listener 监听器
+     */
+    public void addListener(Listener listener) {
+        listeners.add(notNull(listener, "listener is null"));
+        for (MethodMetrics m : metrics.values()) {
+            listener.onCreate(m);
+        }
+    }
+
+    @Override
+    public List<MethodStats> getMethodStats() {
+        final List<MethodStats> stats = new ArrayList<>(metrics.size());
+        for (MethodMetrics m : metrics.values()) {
+            stats.add(MethodStats.of(m));
+        }
+        return stats;
+    }
+
+    @Override
+    public long getCount() {
+        long count = 0;
+        for (MethodMetrics m : metrics.values()) {
+            count += m.getCount();
+        }
+        return count;
+    }
+
+    @Override
+    public long getErrorCount() {
+        long count = 0;
+        for (MethodMetrics m : metrics.values()) {
+            count += m.getErrorCount();
+        }
+        return count;
+    }
+
+    /**
+     * 以{@link #OBJECT_NAME}注册到平台MBeanServer.
+     *
+     * @throws JMException 注册失败时抛出此异常
+     */
+    public void registerMBean() throws JMException {
+        registerMBean(new ObjectName(OBJECT_NAME));
+    }
+
+    /**
+     * 以指定的名称注册到平台MBeanServer.
+     *
+     * @param name MBean的名称
+     * @throws JMException 注册失败时抛出此异常
+     */
+    public synchronized void registerMBean(ObjectName name) throws JMException {
+        notNull(name, "name is null");
+        unregisterMBean();
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+        registered = name;
+        LOGGER.info("registerMBean: {}", name);
+    }
+
+    /**
+     * 从平台MBeanServer注销，并且注入了本实例的服务停止记录调用统计.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        unregisterMBean();
+    }
+
+    /**
+     * 是否已经关闭，关闭后服务不再记录调用统计.
+     *
+     * @return 已经关闭时返回true
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    private void unregisterMBean() {
+        final ObjectName name = registered;
+        if (name != null) {
+            registered = null;
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            try {
+                if (server.isRegistered(name)) {
+                    server.unregisterMBean(name);
+                }
+            } catch (JMException ex) {
+                LOGGER.warn("unregisterMBean failed: " + name, ex);
+            }
+        }
+    }
+
+    /**
+     * 调用统计的监听器，在第一次记录某个服务方法时通知.
+     */
+    public interface Listener {
+        void onCreate(MethodMetrics metrics);
+    }
+}
@@ -0,0 +1,76 @@
+package io.github.dbstarll.dubai.model.service.metrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * 将{@link ServiceMetrics}绑定到Micrometer，每个服务方法输出以下指标，标签为service、implemental和method：
+ * <ul>
+ * <li>dubai.service.invocations：调用耗时的Timer，发布百分位直方图，可以在监控系统中跨实例聚合百分位数</li>
+ * <li>dubai.service.errors：抛出异常的次数</li>
+ * </ul>
+ * 新出现的服务方法在第一次调用时注册指标，Timer只记录注册之后的调用. Micrometer是可选依赖，只有使用本类时才需要.
+ */
+public class ServiceMetricsBinder implements MeterBinder {
+    private static final String NAME_INVOCATIONS = "dubai.service.invocations";
+    private static final String NAME_ERRORS = "dubai.service.errors";
+
+    private final ServiceMetrics serviceMetrics;
+
+    public ServiceMetricsBinder(ServiceMetrics serviceMetrics) {
+        this.serviceMetrics = notNull(serviceMetrics, "serviceMetrics is null");
+    }
+
+    @Override
+    public void bindTo(final MeterRegistry registry) {
+        serviceMetrics.addListener(new ServiceMetrics.Listener() {
+            @Override
+            public void onCreate(MethodMetrics metrics) {
+                bind(registry, metrics);
+            }
+        });
+    }
+
+    /**
+     * 重载的方法使用不同的标签，否则后注册的指标会与先注册的合并.
+     */
+    private static String signature(Method method) {
+        final StringBuilder sb = new StringBuilder(method.getName()).append('(');
+        final Class<?>[] parameterTypes = method.getParameterTypes();
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(parameterTypes[i].getSimpleName());
+        }
+        return sb.append(')').toString();
+    }
+
+    private static void bind(MeterRegistry registry, MethodMetrics metrics) {
+        final Tags tags = Tags.of("service", metrics.getServiceClass().getName(),
+                "implemental", metrics.getImplementalClass().getName(), "method", signature(metrics.getMethod()));
+        final Timer timer = Timer.builder(NAME_INVOCATIONS).tags(tags).description("service method invocations")
+                .publishPercentileHistogram().register(registry);
+        metrics.addRecorder(new MethodMetrics.Recorder() {
+            @Override
+            public void record(long nanos, boolean error) {
+                timer.record(nanos, TimeUnit.NANOSECONDS);
+            }
+        });
+        FunctionCounter.builder(NAME_ERRORS, metrics, new ToDoubleFunction<MethodMetrics>() {
+            @Override
+            public double applyAsDouble(MethodMetrics value) {
+                return value.getErrorCount();
+            }
+        }).tags(tags).description("service method invocations that threw").register(registry);
+    }
+}
@@ -0,0 +1,29 @@
+package io.github.dbstarll.dubai.model.service.metrics;
+
+import java.util.List;
+
+/**
+ * 服务调用统计的JMX接口.
+ */
+public interface ServiceMetricsMXBean {
+    /**
+     * 获得所有服务方法的调用统计.
+     *
+     * @return 每个(服务接口, Implemental类, 方法)的调用统计
+     */
+    List<MethodStats> getMethodStats();
+
+    /**
+     * 获得所有服务方法的总调用次数.
+     *
+     * @return 总调用次数
+     */
+    long getCount();
+
+    /**
+     * 获得所有服务方法抛出异常的总次数.
+     *
+     * @return 抛出异常的总次数
+     */
+    long getErrorCount();
+}
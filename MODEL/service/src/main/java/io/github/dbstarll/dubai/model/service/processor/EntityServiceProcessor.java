@@ -0,0 +1,371 @@
+package io.github.dbstarll.dubai.model.service.processor;
+
+import io.github.dbstarll.dubai.model.service.AbstractGeneratedService;
+import io.github.dbstarll.dubai.model.service.CachedResult;
+import io.github.dbstarll.dubai.model.service.EntityService;
+import io.github.dbstarll.dubai.model.service.Implementation;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.IntersectionType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.TypeVariable;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic.Kind;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+/**
+ * 在编译期为{@link EntityService}接口生成具体的服务类，取代运行时的动态代理.
+ * <ul>
+ * <li>生成的类名为服务接口的类名加上{@link AbstractGeneratedService#CLASS_NAME_SUFFIX}，
+ * {@link io.github.dbstarll.dubai.model.service.ServiceFactory#newInstance}找到生成类时优先使用</li>
+ * <li>每个{@link Implementation}接口对应一个final的Implemental字段，每个方法直接调用对应的Implemental，
+ * 方法的分派规则与ServiceFactory相同：继承层次中后出现的{@link Implementation}接口优先</li>
+ * <li>Implemental不是public final、没有配套的构造函数，或者服务接口带有类型参数时，不生成服务类，运行时仍然使用代理</li>
+ * <li>服务接口中有标注了{@link CachedResult}的方法时，不生成服务类，由代理负责缓存结果</li>
+ * <li>服务接口中有方法没有对应的{@link Implementation}接口实现时，不生成服务类，与代理方式一样在调用时才报错</li>
+ * </ul>
+ * 处理器需要显式启用，例如在maven-compiler-plugin的annotationProcessors中加入本类.
+ */
+@SupportedAnnotationTypes("io.github.dbstarll.dubai.model.service.EntityService")
+public class EntityServiceProcessor extends AbstractProcessor {
+    private static final String SERVICE_CLASS_NAME = "io.github.dbstarll.dubai.model.service.Service";
+    private static final String BASE_CLASS_NAME = "io.github.dbstarll.dubai.model.service.AbstractGeneratedService";
+    private static final String COLLECTION_CLASS_NAME = "io.github.dbstarll.dubai.model.collection.Collection";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(EntityService.class)) {
+            if (element.getKind() == ElementKind.INTERFACE) {
+                final TypeElement service = (TypeElement) element;
+                try {
+                    final String source = generate(service);
+                    if (source != null) {
+                        write(service, source);
+                    }
+                } catch (IOException ex) {
+                    processingEnv.getMessager().printMessage(Kind.ERROR, "生成服务类失败：" + ex.getMessage(), service);
+                }
+            }
+        }
+        return false;
+    }
+
+    private void write(TypeElement service, String source) throws IOException {
+        final String className = getPackageName(service) + '.' + getGeneratedSimpleName(service);
+        try (Writer writer = processingEnv.getFiler().createSourceFile(className, service).openWriter()) {
+            writer.write(source);
+        }
+    }
+
+    private String generate(TypeElement service) {
+        final Types types = processingEnv.getTypeUtils();
+        if (!service.getTypeParameters().isEmpty() || service.getModifiers().contains(Modifier.PRIVATE)) {
+            return skip(service, "服务接口带有类型参数或者不可访问");
+        }
+        final DeclaredType serviceType = (DeclaredType) service.asType();
+        final DeclaredType entityType = findEntityType(serviceType);
+        if (entityType == null) {
+            return skip(service, "不能确定实体类");
+        }
+
+        final List<DeclaredType> interfaces = new ArrayList<>();
+        collectImplementationInterfaces(serviceType, interfaces);
+        final Map<TypeElement, Field> fields = new LinkedHashMap<>();
+        for (DeclaredType type : interfaces) {
+            final TypeElement element = (TypeElement) type.asElement();
+            if (!fields.containsKey(element)) {
+                final TypeElement implemental = getImplementalElement(element);
+                final String reason = checkImplemental(service, element, implemental);
+                if (reason != null) {
+                    return skip(service, reason);
+                }
+                fields.put(element, new Field("implemental" + fields.size(), type, implemental));
+            }
+        }
+
+        final List<ExecutableElement> serviceMethods = getMethods(service);
+        for (ExecutableElement method : serviceMethods) {
+            if (method.getAnnotation(CachedResult.class) != null) {
+                return skip(service, "方法标注了@CachedResult：" + method.getSimpleName());
+            }
+        }
+
+        final StringBuilder methods = new StringBuilder();
+        final Set<String> signatures = new HashSet<>();
+        for (ExecutableElement method : serviceMethods) {
+            final ExecutableType methodType = (ExecutableType) types.asMemberOf(serviceType, method);
+            if (signatures.add(signature(method, methodType))) {
+                final TypeElement target = findTarget(serviceType, interfaces, method, methodType);
+                if (target != null) {
+                    appendMethod(methods, method, methodType, fields.get(target));
+                } else if (method.getModifiers().contains(Modifier.ABSTRACT)) {
+                    return skip(service, "方法没有实现：" + method.getSimpleName());
+                }
+            }
+        }
+
+        final StringBuilder sb = new StringBuilder();
+        final String packageName = getPackageName(service);
+        if (!packageName.isEmpty()) {
+            sb.append("package ").append(packageName).append(";\n\n");
+        }
+        sb.append("/**\n * 由").append(EntityServiceProcessor.class.getName()).append("为{@link ")
+                .append(service.getQualifiedName()).append("}生成的服务类.\n */\n");
+        sb.append("@SuppressWarnings({\"unchecked\", \"rawtypes\"})\n");
+        sb.append("public final class ").append(getGeneratedSimpleName(service)).append(" extends ")
+                .append(BASE_CLASS_NAME).append('<').append(entityType).append(", ")
+                .append(service.getQualifiedName()).append("> implements ").append(service.getQualifiedName())
+                .append(" {\n");
+        for (Field field : fields.values()) {
+            sb.append("    private final ").append(field.type).append(' ').append(field.name).append(";\n");
+        }
+        sb.append("\n    public ").append(getGeneratedSimpleName(service)).append('(').append(COLLECTION_CLASS_NAME)
+                .append('<').append(entityType).append("> collection) {\n");
+        sb.append("        super(").append(service.getQualifiedName()).append(".class, collection);\n");
+        for (Entry<TypeElement, Field> entry : fields.entrySet()) {
+            sb.append("        this.").append(entry.getValue().name).append(" = register(")
+                    .append(entry.getKey().getQualifiedName()).append(".class, new ")
+                    .append(entry.getValue().implemental.getQualifiedName()).append("(this, collection));\n");
+        }
+        sb.append("    }\n").append(methods).append("}\n");
+        return sb.toString();
+    }
+
+    private String skip(TypeElement service, String reason) {
+        processingEnv.getMessager().printMessage(Kind.NOTE, "不生成服务类，运行时使用代理：" + reason, service);
+        return null;
+    }
+
+    private DeclaredType findEntityType(DeclaredType type) {
+        final Types types = processingEnv.getTypeUtils();
+        final TypeElement element = (TypeElement) type.asElement();
+        if (element.getQualifiedName().contentEquals(SERVICE_CLASS_NAME)) {
+            final List<? extends TypeMirror> arguments = type.getTypeArguments();
+            return arguments.size() == 1 && arguments.get(0).getKind() == TypeKind.DECLARED
+                    ? (DeclaredType) arguments.get(0) : null;
+        }
+        for (TypeMirror supertype : types.directSupertypes(type)) {
+            final DeclaredType entityType = findEntityType((DeclaredType) supertype);
+            if (entityType != null) {
+                return entityType;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 与ServiceFactory相同的顺序收集所有标注了{@link Implementation}的接口：先父接口，后子接口.
+     */
+    private void collectImplementationInterfaces(DeclaredType type, List<DeclaredType> interfaces) {
+        for (TypeMirror supertype : processingEnv.getTypeUtils().directSupertypes(type)) {
+            final DeclaredType declared = (DeclaredType) supertype;
+            if (declared.asElement().getKind() == ElementKind.INTERFACE) {
+                collectImplementationInterfaces(declared, interfaces);
+                if (declared.asElement().getAnnotation(Implementation.class) != null) {
+                    interfaces.add(declared);
+                }
+            }
+        }
+    }
+
+    private TypeElement getImplementalElement(TypeElement serviceInterface) {
+        for (AnnotationMirror annotation : serviceInterface.getAnnotationMirrors()) {
+            final TypeElement annotationType = (TypeElement) annotation.getAnnotationType().asElement();
+            if (annotationType.getQualifiedName().contentEquals(Implementation.class.getName())) {
+                for (Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : annotation
+                        .getElementValues().entrySet()) {
+                    if (entry.getKey().getSimpleName().contentEquals("value")
+                            && entry.getValue().getValue() instanceof DeclaredType) {
+                        return (TypeElement) ((DeclaredType) entry.getValue().getValue()).asElement();
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 检查Implemental是否满足ServiceFactory的要求，并且可以在生成的代码中直接构造.
+     *
+     * @return 不满足时返回原因，否则返回null
+     */
+    private String checkImplemental(TypeElement service, TypeElement serviceInterface, TypeElement implemental) {
+        final Types types = processingEnv.getTypeUtils();
+        if (implemental == null) {
+            return "不能获得Implemental：" + serviceInterface;
+        } else if (!implemental.getModifiers().contains(Modifier.PUBLIC)
+                || !implemental.getModifiers().contains(Modifier.FINAL)) {
+            return "Implemental is not public final: " + implemental;
+        } else if (!types.isAssignable(types.erasure(implemental.asType()), types.erasure(serviceInterface.asType()))) {
+            return "Implemental未实现" + serviceInterface + "：" + implemental;
+        }
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(implemental.getEnclosedElements())) {
+            final List<? extends VariableElement> parameters = constructor.getParameters();
+            if (constructor.getModifiers().contains(Modifier.PUBLIC) && parameters.size() == 2
+                    && isCollection(parameters.get(1).asType())
+                    && types.isAssignable(types.erasure(service.asType()), types.erasure(parameters.get(0).asType()))) {
+                return null;
+            }
+        }
+        return "Implemental没有配套的构造函数：" + implemental;
+    }
+
+    private boolean isCollection(TypeMirror type) {
+        final TypeMirror erasure = processingEnv.getTypeUtils().erasure(type);
+        return erasure.getKind() == TypeKind.DECLARED && ((TypeElement) ((DeclaredType) erasure).asElement())
+                .getQualifiedName().contentEquals(COLLECTION_CLASS_NAME);
+    }
+
+    private List<ExecutableElement> getMethods(TypeElement type) {
+        final Elements elements = processingEnv.getElementUtils();
+        final List<ExecutableElement> methods = new ArrayList<>();
+        for (ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers(type))) {
+            final Element owner = method.getEnclosingElement();
+            if (!method.getModifiers().contains(Modifier.STATIC) && !method.getModifiers().contains(Modifier.PRIVATE)
+                    && owner.getKind() == ElementKind.INTERFACE) {
+                methods.add(method);
+            }
+        }
+        return methods;
+    }
+
+    /**
+     * 在所有{@link Implementation}接口中查找方法的实现接口，后出现的接口优先.
+     */
+    private TypeElement findTarget(DeclaredType serviceType, List<DeclaredType> interfaces, ExecutableElement method,
+                                   ExecutableType methodType) {
+        final Types types = processingEnv.getTypeUtils();
+        final String signature = signature(method, methodType);
+        for (int i = interfaces.size() - 1; i >= 0; i--) {
+            final TypeElement element = (TypeElement) interfaces.get(i).asElement();
+            for (ExecutableElement candidate : getMethods(element)) {
+                if (candidate.getSimpleName().contentEquals(method.getSimpleName()) && signature.equals(
+                        signature(candidate, (ExecutableType) types.asMemberOf(serviceType, candidate)))) {
+                    return element;
+                }
+            }
+        }
+        return null;
+    }
+
+    private String signature(ExecutableElement method, ExecutableType methodType) {
+        final Types types = processingEnv.getTypeUtils();
+        final StringBuilder sb = new StringBuilder(method.getSimpleName()).append('(');
+        final List<? extends TypeMirror> parameterTypes = methodType.getParameterTypes();
+        for (int i = 0; i < parameterTypes.size(); i++) {
+            sb.append(i > 0 ? "," : "").append(types.erasure(parameterTypes.get(i)));
+        }
+        return sb.append(')').toString();
+    }
+
+    private void appendMethod(StringBuilder sb, ExecutableElement method, ExecutableType methodType, Field target) {
+        sb.append("\n    @Override\n    public ");
+        final List<? extends TypeVariable> typeVariables = methodType.getTypeVariables();
+        if (!typeVariables.isEmpty()) {
+            sb.append('<');
+            for (int i = 0; i < typeVariables.size(); i++) {
+                appendTypeVariable(sb.append(i > 0 ? ", " : ""), typeVariables.get(i));
+            }
+            sb.append("> ");
+        }
+        final TypeMirror returnType = methodType.getReturnType();
+        sb.append(returnType).append(' ').append(method.getSimpleName()).append('(');
+        final List<? extends TypeMirror> parameterTypes = methodType.getParameterTypes();
+        for (int i = 0; i < parameterTypes.size(); i++) {
+            final String type = parameterTypes.get(i).toString();
+            if (method.isVarArgs() && i == parameterTypes.size() - 1 && type.endsWith("[]")) {
+                sb.append(type, 0, type.length() - 2).append("...");
+            } else {
+                sb.append(type);
+            }
+            sb.append(" p").append(i).append(i < parameterTypes.size() - 1 ? ", " : "");
+        }
+        sb.append(')');
+        final List<? extends TypeMirror> thrownTypes = methodType.getThrownTypes();
+        for (int i = 0; i < thrownTypes.size(); i++) {
+            sb.append(i == 0 ? " throws " : ", ").append(thrownTypes.get(i));
+        }
+        sb.append(" {\n        ready();\n        ");
+        if (returnType.getKind() != TypeKind.VOID) {
+            sb.append("return ");
+            if (!returnType.getKind().isPrimitive()) {
+                sb.append('(').append(returnType).append(") ");
+            }
+        }
+        sb.append(target.name).append('.').append(method.getSimpleName()).append('(');
+        for (int i = 0; i < parameterTypes.size(); i++) {
+            sb.append(i > 0 ? ", " : "").append('p').append(i);
+        }
+        sb.append(");\n    }\n");
+    }
+
+    private static void appendTypeVariable(StringBuilder sb, TypeVariable typeVariable) {
+        sb.append(typeVariable.asElement().getSimpleName());
+        final TypeMirror bound = typeVariable.getUpperBound();
+        if (bound.getKind() == TypeKind.INTERSECTION) {
+            final List<? extends TypeMirror> bounds = ((IntersectionType) bound).getBounds();
+            for (int i = 0; i < bounds.size(); i++) {
+                sb.append(i == 0 ? " extends " : " & ").append(bounds.get(i));
+            }
+        } else if (!bound.toString().equals(Object.class.getName())) {
+            sb.append(" extends ").append(bound);
+        }
+    }
+
+    private String getPackageName(TypeElement type) {
+        final PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(type);
+        return packageElement.isUnnamed() ? "" : packageElement.getQualifiedName().toString();
+    }
+
+    /**
+     * 生成类的简单类名，嵌套接口使用二进制名称中的'$'连接，与运行时Class.getName()一致.
+     */
+    private String getGeneratedSimpleName(TypeElement service) {
+        final String binaryName = processingEnv.getElementUtils().getBinaryName(service).toString();
+        final String packageName = getPackageName(service);
+        return (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1))
+                + AbstractGeneratedService.CLASS_NAME_SUFFIX;
+    }
+
+    private static final class Field {
+        private final String name;
+        private final DeclaredType type;
+        private final TypeElement implemental;
+
+        private Field(String name, DeclaredType type, TypeElement implemental) {
+            this.name = name;
+            this.type = type;
+            this.implemental = implemental;
+        }
+    }
+}
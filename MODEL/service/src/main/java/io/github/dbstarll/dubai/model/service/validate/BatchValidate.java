@@ -0,0 +1,59 @@
+package io.github.dbstarll.dubai.model.service.validate;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 批量保存的校验结果.
+ * 自身的ActionErrors和FieldErrors记录与单个实体无关的错误，例如批量写入失败；
+ * 每个实体的校验错误按实体在列表中的位置分别记录.
+ */
+public class BatchValidate extends DefaultValidate {
+    private final Map<Integer, Validate> entityErrors = new TreeMap<>();
+
+    /**
+     * 记录指定位置的实体的校验结果，没有错误的校验结果会被忽略.
+     *
+     * @param index    实体在列表中的位置
+     * @param validate 实体的校验结果
+     */
+    public void addEntityErrors(int index, Validate validate) {
+        if (validate != null && validate.hasErrors()) {
+            entityErrors.put(index, validate);
+        }
+    }
+
+    /**
+     * 获得指定位置的实体的校验结果.
+     *
+     * @param index 实体在列表中的位置
+     * @return 实体的校验结果，没有错误时返回null
+     */
+    public Validate getEntityErrors(int index) {
+        return entityErrors.get(index);
+    }
+
+    /**
+     * 获得所有校验未通过的实体的校验结果.
+     *
+     * @return 按实体在列表中的位置排序的校验结果
+     */
+    public Map<Integer, Validate> getEntityErrors() {
+        return Collections.unmodifiableMap(entityErrors);
+    }
+
+    /**
+     * 是否有校验未通过的实体.
+     *
+     * @return 有校验未通过的实体时返回true
+     */
+    public boolean hasEntityErrors() {
+        return !entityErrors.isEmpty();
+    }
+
+    @Override
+    public boolean hasErrors() {
+        return super.hasErrors() || hasEntityErrors();
+    }
+}
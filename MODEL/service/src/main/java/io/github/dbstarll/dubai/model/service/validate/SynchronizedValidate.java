@@ -0,0 +1,63 @@
+package io.github.dbstarll.dubai.model.service.validate;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * 线程安全的Validate，所有操作在被包装的Validate上同步执行.
+ */
+public final class SynchronizedValidate implements Validate {
+    private final Validate validate;
+
+    private SynchronizedValidate(Validate validate) {
+        this.validate = notNull(validate, "validate is null");
+    }
+
+    @Override
+    public synchronized Collection<String> getActionErrors() {
+        return validate.getActionErrors();
+    }
+
+    @Override
+    public synchronized Map<String, List<String>> getFieldErrors() {
+        return validate.getFieldErrors();
+    }
+
+    @Override
+    public synchronized void addActionError(String anErrorMessage) {
+        validate.addActionError(anErrorMessage);
+    }
+
+    @Override
+    public synchronized void addFieldError(String fieldName, String errorMessage) {
+        validate.addFieldError(fieldName, errorMessage);
+    }
+
+    @Override
+    public synchronized boolean hasActionErrors() {
+        return validate.hasActionErrors();
+    }
+
+    @Override
+    public synchronized boolean hasErrors() {
+        return validate.hasErrors();
+    }
+
+    @Override
+    public synchronized boolean hasFieldErrors() {
+        return validate.hasFieldErrors();
+    }
+
+    /**
+     * 包装为线程安全的Validate.
+     *
+     * @param validate 被包装的Validate
+     * @return 线程安全的Validate
+     */
+    public static Validate wrap(Validate validate) {
+        return validate instanceof SynchronizedValidate ? validate : new SynchronizedValidate(validate);
+    }
+}
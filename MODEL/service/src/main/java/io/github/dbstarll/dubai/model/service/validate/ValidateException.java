@@ -35,6 +35,11 @@ public class ValidateException extends RuntimeException {
                     messages.add(entry.toString());
                 }
             }
+            if (validate instanceof BatchValidate) {
+                for (Entry<Integer, Validate> entry : ((BatchValidate) validate).getEntityErrors().entrySet()) {
+                    messages.add(entry.getKey() + "=" + message(entry.getValue()));
+                }
+            }
         }
         return messages.toString();
     }
@@ -0,0 +1,15 @@
+package io.github.dbstarll.dubai.model.service.validation;
+
+import io.github.dbstarll.dubai.model.entity.Entity;
+
+/**
+ * 可以与其他AsyncValidation并发执行的校验，例如需要查询其他集合的唯一性校验.
+ * 相邻的AsyncValidation在{@link AsyncValidations#getExecutor()}中并发执行，非AsyncValidation的校验作为分隔，
+ * 在其之前的所有校验完成后才会执行. 在{@link ValidationPipeline}中只有同一{@link GeneralValidation.Position}
+ * 或者同为调用方指定的AsyncValidation才会并发执行. 实现类不能依赖同组中其他校验对实体的修改，并且传入的{@link
+ * io.github.dbstarll.dubai.model.service.validate.Validate}是线程安全的.
+ *
+ * @param <E> 实体类
+ */
+public interface AsyncValidation<E extends Entity> extends Validation<E> {
+}
@@ -0,0 +1,213 @@
+package io.github.dbstarll.dubai.model.service.validation;
+
+import io.github.dbstarll.dubai.model.entity.Entity;
+import io.github.dbstarll.dubai.model.service.validate.SynchronizedValidate;
+import io.github.dbstarll.dubai.model.service.validate.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * 执行{@link AsyncValidation}.
+ * 校验按顺序执行，其中相邻的AsyncValidation作为一组并发执行，一组中的最后一个校验在当前线程中执行，
+ * 其余的提交到执行器，整组完成后才继续执行后续的校验. 默认的执行器在支持虚拟线程时为每个任务创建一个虚拟线程，
+ * 否则使用守护线程的缓存线程池. 在执行器的任务中再次并发执行一组校验时，整组直接在当前线程中依次执行，
+ * 以免有界的执行器因工作线程互相等待而死锁.
+ */
+public final class AsyncValidations {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncValidations.class);
+
+    private static final ThreadLocal<Boolean> IN_EXECUTOR = new ThreadLocal<>();
+
+    private static volatile Executor executor = defaultExecutor();
+
+    private AsyncValidations() {
+        // 工具类
+    }
+
+    /**
+     * 设置执行AsyncValidation的执行器.
+     *
+     * @param executor 执行器
+     */
+    public static void setExecutor(Executor executor) {
+        AsyncValidations.executor = notNull(executor, "executor is null");
+    }
+
+    /**
+     * 获得执行AsyncValidation的执行器.
+     *
+     * @return 执行器
+     */
+    public static Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * 判断校验中是否包含AsyncValidation.
+     *
+     * @param validations 校验
+     * @return 包含AsyncValidation时返回true
+     */
+    static boolean containsAsync(Iterable<? extends Validation<?>> validations) {
+        for (Validation<?> validation : validations) {
+            if (validation instanceof AsyncValidation) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 依次执行校验，相邻的AsyncValidation并发执行.
+     *
+     * @param validations 校验
+     * @param entity      待校验的实体
+     * @param original    实体原件
+     * @param validate    校验结果
+     * @param <E>         实体类
+     */
+    static <E extends Entity> void validate(List<Validation<E>> validations, E entity, E original,
+                                            Validate validate) {
+        for (int from = 0, size = validations.size(); from < size; ) {
+            int to = from;
+            while (to < size && validations.get(to) instanceof AsyncValidation) {
+                to++;
+            }
+            if (to - from > 1) {
+                validateConcurrently(validations.subList(from, to), entity, original, validate);
+            } else {
+                validations.get(from).validate(entity, original, validate);
+                to = from + 1;
+            }
+            from = to;
+        }
+    }
+
+    private static <E extends Entity> void validateConcurrently(List<Validation<E>> validations, final E entity,
+                                                                final E original, Validate validate) {
+        final Validate synchronizedValidate = SynchronizedValidate.wrap(validate);
+        final List<Runnable> tasks = new ArrayList<>(validations.size());
+        for (final Validation<E> validation : validations) {
+            tasks.add(new Runnable() {
+                @Override
+                public void run() {
+                    validation.validate(entity, original, synchronizedValidate);
+                }
+            });
+        }
+        invokeAll(tasks);
+    }
+
+    /**
+     * 在执行器中并发执行一组校验任务，最后一个任务在当前线程中执行，全部完成后才返回.
+     * 当前线程已经是执行器中的任务时，所有任务都在当前线程中依次执行.
+     * 任务抛出异常时，等待其他任务完成后抛出第一个异常.
+     *
+     * @param runnables 校验任务
+     */
+    public static void invokeAll(List<? extends Runnable> runnables) {
+        if (runnables.isEmpty()) {
+            return;
+        }
+        final List<FutureTask<Void>> tasks = new ArrayList<>(runnables.size());
+        for (Runnable runnable : runnables) {
+            tasks.add(new FutureTask<Void>(runnable, null));
+        }
+
+        final Executor current = executor;
+        final boolean nested = IN_EXECUTOR.get() != null;
+        for (int i = 0; i < tasks.size() - 1; i++) {
+            if (nested) {
+                tasks.get(i).run();
+            } else {
+                current.execute(new ExecutorTask(tasks.get(i)));
+            }
+        }
+        tasks.get(tasks.size() - 1).run();
+
+        Throwable failure = null;
+        boolean interrupted = false;
+        for (FutureTask<Void> task : tasks) {
+            while (true) {
+                try {
+                    task.get();
+                    break;
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                } catch (ExecutionException ex) {
+                    if (failure == null) {
+                        failure = ex.getCause();
+                    } else {
+                        LOGGER.warn("async validation failed", ex.getCause());
+                    }
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        } else if (failure != null) {
+            throw new IllegalStateException(failure);
+        }
+    }
+
+    private static Executor defaultExecutor() {
+        try {
+            return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            LOGGER.debug("virtual threads not available, use cached thread pool.");
+            return Executors.newCachedThreadPool(new AsyncValidationThreadFactory());
+        }
+    }
+
+    /**
+     * 标记当前线程正在执行器中执行任务.
+     */
+    private static final class ExecutorTask implements Runnable {
+        private final Runnable task;
+
+        private ExecutorTask(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            final Boolean previous = IN_EXECUTOR.get();
+            IN_EXECUTOR.set(Boolean.TRUE);
+            try {
+                task.run();
+            } finally {
+                if (previous == null) {
+                    IN_EXECUTOR.remove();
+                }
+            }
+        }
+    }
+
+    private static final class AsyncValidationThreadFactory implements ThreadFactory {
+        private final AtomicInteger index = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            final Thread thread = new Thread(r, "async-validation-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -16,6 +16,7 @@ public final class MultiValidation<E extends Entity> extends AbstractValidation<
     private static final Logger LOGGER = LoggerFactory.getLogger(MultiValidation.class);
 
     private final List<Validation<E>> validations;
+    private boolean async;
 
     /**
      * 构建MultiValidation.
@@ -46,6 +47,7 @@ public final class MultiValidation<E extends Entity> extends AbstractValidation<
             } else {
                 if (!this.validations.contains(validation)) {
                     this.validations.add(validation);
+                    async |= validation instanceof AsyncValidation;
                 }
             }
         }
@@ -64,8 +66,15 @@ public final class MultiValidation<E extends Entity> extends AbstractValidation<
         return validations.iterator();
     }
 
+    /**
+     * 依次执行从属的Validation，其中相邻的{@link AsyncValidation}并发执行.
+     */
     @Override
     public void validate(E entity, E original, Validate validate) {
+        if (async) {
+            AsyncValidations.validate(validations, entity, original, validate);
+            return;
+        }
         for (Validation<E> validation : validations) {
             validation.validate(entity, original, validate);
             LOGGER.debug("validate: <{}>{}", entityClass.getName(), validation.getClass().getName());
@@ -0,0 +1,229 @@
+package io.github.dbstarll.dubai.model.service.validation;
+
+import io.github.dbstarll.dubai.model.entity.Entity;
+import io.github.dbstarll.dubai.model.service.ServiceFactory.PositionValidation;
+import io.github.dbstarll.dubai.model.service.validate.Validate;
+import io.github.dbstarll.dubai.model.service.validation.GeneralValidation.Position;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * 预先编译的校验流水线.
+ * 通用校验按{@link Position}排序去重后编译为两个数组：在调用方校验之前执行的FIRST、PRE，以及之后执行的POST、LAST.
+ * 执行时调用方校验直接插入两组之间，执行顺序和去重规则与依次加入{@link MultiValidation}相同，但每次校验不再分配新的校验链.
+ * 包含{@link AsyncValidation}时，FIRST、PRE、调用方、POST、LAST各自作为一段，相邻的AsyncValidation只在同一段内并发执行.
+ *
+ * @param <E> 实体类
+ */
+public final class ValidationPipeline<E extends Entity> implements Validation<E> {
+    private static final Position[] BEFORE = {Position.FIRST, Position.PRE};
+    private static final Position[] AFTER = {Position.POST, Position.LAST};
+
+    private final Class<E> entityClass;
+    private final Validation<E>[] before;
+    private final Validation<E>[] after;
+    private final Set<Validation<E>> beforeSet;
+    private final List<List<Validation<E>>> beforeSegments;
+    private final List<List<Validation<E>>> afterSegments;
+    private final boolean async;
+
+    private ValidationPipeline(Class<E> entityClass, List<List<Validation<E>>> beforeSegments,
+                               List<List<Validation<E>>> afterSegments) {
+        this.entityClass = entityClass;
+        final List<Validation<E>> before = concat(beforeSegments);
+        final List<Validation<E>> after = concat(afterSegments);
+        this.before = toArray(before);
+        this.after = toArray(after);
+        this.beforeSet = new HashSet<>(before);
+        this.beforeSegments = Collections.unmodifiableList(beforeSegments);
+        this.afterSegments = Collections.unmodifiableList(afterSegments);
+        this.async = AsyncValidations.containsAsync(before) || AsyncValidations.containsAsync(after);
+    }
+
+    /**
+     * 编译通用校验.
+     *
+     * @param entityClass        实体类
+     * @param generalValidations 通用校验，为null时编译为空的流水线
+     * @param <E>                实体类
+     * @return 编译后的校验流水线
+     */
+    public static <E extends Entity> ValidationPipeline<E> compile(Class<E> entityClass,
+                                                                   Iterable<PositionValidation<E>> generalValidations) {
+        notNull(entityClass, "entityClass is null");
+        final List<List<Validation<E>>> before = new ArrayList<>();
+        final List<List<Validation<E>>> after = new ArrayList<>();
+        if (generalValidations != null) {
+            final List<Validation<E>> all = new ArrayList<>();
+            collect(generalValidations, BEFORE, before, all);
+            collect(generalValidations, AFTER, after, all);
+        }
+        return new ValidationPipeline<>(entityClass, before, after);
+    }
+
+    private static <E extends Entity> void collect(Iterable<PositionValidation<E>> validations, Position[] positions,
+                                                   List<List<Validation<E>>> target, List<Validation<E>> all) {
+        for (Position position : positions) {
+            final List<Validation<E>> segment = new ArrayList<>();
+            for (PositionValidation<E> pv : validations) {
+                if (position == pv.getKey()) {
+                    flatten(pv.getValue(), segment, all);
+                }
+            }
+            if (!segment.isEmpty()) {
+                target.add(segment);
+            }
+        }
+    }
+
+    private static <E extends Entity> void flatten(Validation<E> validation, List<Validation<E>> target,
+                                                   List<Validation<E>> all) {
+        if (validation instanceof MultiValidation) {
+            for (Validation<E> sub : (MultiValidation<E>) validation) {
+                flatten(sub, target, all);
+            }
+        } else if (!all.contains(validation)) {
+            all.add(validation);
+            target.add(validation);
+        }
+    }
+
+    private static <E extends Entity> List<Validation<E>> concat(List<List<Validation<E>>> segments) {
+        final List<Validation<E>> list = new ArrayList<>();
+        for (List<Validation<E>> segment : segments) {
+            list.addAll(segment);
+        }
+        return list;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E extends Entity> Validation<E>[] toArray(List<Validation<E>> validations) {
+        return validations.toArray(new Validation[validations.size()]);
+    }
+
+    public int size() {
+        return before.length + after.length;
+    }
+
+    @Override
+    public void validate(E entity, E original, Validate validate) {
+        if (async) {
+            for (List<Validation<E>> segment : beforeSegments) {
+                AsyncValidations.validate(segment, entity, original, validate);
+            }
+            for (List<Validation<E>> segment : afterSegments) {
+                AsyncValidations.validate(segment, entity, original, validate);
+            }
+            return;
+        }
+        for (Validation<E> validation : before) {
+            validation.validate(entity, original, validate);
+        }
+        for (Validation<E> validation : after) {
+            validation.validate(entity, original, validate);
+        }
+    }
+
+    /**
+     * 执行通用校验以及调用方指定的校验.
+     * 调用方的校验在FIRST、PRE之后，POST、LAST之前执行，与通用校验或者彼此之间重复的校验只执行一次.
+     *
+     * @param entity      待校验的实体
+     * @param original    实体原件
+     * @param validate    校验结果
+     * @param validations 调用方指定的校验
+     */
+    @SafeVarargs
+    public final void validate(E entity, E original, Validate validate, Validation<E>... validations) {
+        if (validations == null || validations.length == 0) {
+            validate(entity, original, validate);
+            return;
+        }
+        boolean containsAsync = async;
+        for (Validation<E> validation : validations) {
+            if (validation instanceof MultiValidation) {
+                // 嵌套的MultiValidation很少见，先按MultiValidation的去重规则展开
+                validate(entity, original, validate, flatten(validations));
+                return;
+            }
+            containsAsync |= validation instanceof AsyncValidation;
+        }
+
+        if (containsAsync) {
+            validateSegments(entity, original, validate, validations);
+            return;
+        }
+        for (Validation<E> validation : before) {
+            validation.validate(entity, original, validate);
+        }
+        for (int i = 0; i < validations.length; i++) {
+            if (!beforeSet.contains(validations[i]) && indexOf(validations, validations[i], i) < 0) {
+                validations[i].validate(entity, original, validate);
+            }
+        }
+        for (Validation<E> validation : after) {
+            if (indexOf(validations, validation, validations.length) < 0) {
+                validation.validate(entity, original, validate);
+            }
+        }
+    }
+
+    /**
+     * 按FIRST、PRE、调用方、POST、LAST分段执行去重后的校验，每段内相邻的AsyncValidation并发执行.
+     */
+    private void validateSegments(E entity, E original, Validate validate, Validation<E>[] validations) {
+        for (List<Validation<E>> segment : beforeSegments) {
+            AsyncValidations.validate(segment, entity, original, validate);
+        }
+        final List<Validation<E>> callers = new ArrayList<>(validations.length);
+        for (int i = 0; i < validations.length; i++) {
+            if (!beforeSet.contains(validations[i]) && indexOf(validations, validations[i], i) < 0) {
+                callers.add(validations[i]);
+            }
+        }
+        if (!callers.isEmpty()) {
+            AsyncValidations.validate(callers, entity, original, validate);
+        }
+        for (List<Validation<E>> segment : afterSegments) {
+            final List<Validation<E>> remain = new ArrayList<>(segment.size());
+            for (Validation<E> validation : segment) {
+                if (indexOf(validations, validation, validations.length) < 0) {
+                    remain.add(validation);
+                }
+            }
+            if (!remain.isEmpty()) {
+                AsyncValidations.validate(remain, entity, original, validate);
+            }
+        }
+    }
+
+    private static <E extends Entity> int indexOf(Validation<E>[] validations, Validation<E> validation, int end) {
+        for (int i = 0; i < end; i++) {
+            if (validations[i].equals(validation)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @SafeVarargs
+    private final Validation<E>[] flatten(Validation<E>... validations) {
+        final List<Validation<E>> list = new ArrayList<>(validations.length);
+        for (Validation<E> validation : new MultiValidation<>(entityClass, validations)) {
+            list.add(validation);
+        }
+        return toArray(list);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getName() + "<" + entityClass.getName() + "> [before=" + before.length + ", after="
+                + after.length + "]";
+    }
+}
@@ -0,0 +1,110 @@
+package io.github.dbstarll.dubai.model.spring;
+
+import io.github.dbstarll.dubai.model.service.Service;
+import io.github.dbstarll.dubai.model.service.ServiceFactory;
+import io.github.dbstarll.utils.lang.wrapper.EntryWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * 在所有单例创建完成后并行预热所有服务，构造Implemental、构建通用校验并绑定调用入口，
+ * 避免第一次请求承担这些开销. 预热失败只记录日志，对应的服务仍然在第一次调用时按原有方式初始化.
+ */
+public class ServiceWarmUp implements SmartInitializingSingleton, BeanFactoryAware {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ServiceWarmUp.class);
+
+    private ListableBeanFactory beanFactory;
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
+        if (beanFactory instanceof ListableBeanFactory) {
+            this.beanFactory = (ListableBeanFactory) beanFactory;
+        }
+    }
+
+    /**
+     * 设置预热使用的线程数.
+     *
+     * @param threads 线程数
+     */
+    public void setThreads(int threads) {
+        isTrue(threads > 0, "threads must be positive: %d", threads);
+        this.threads = threads;
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (beanFactory == null) {
+            LOGGER.warn("ListableBeanFactory not set, skip warm up.");
+            return;
+        }
+        final Map<String, Service> services = beanFactory.getBeansOfType(Service.class);
+        if (services.isEmpty()) {
+            return;
+        }
+
+        final long start = System.currentTimeMillis();
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, services.size()),
+                new WarmUpThreadFactory());
+        try {
+            final List<Entry<String, Future<?>>> futures = new ArrayList<>(services.size());
+            for (final Entry<String, Service> entry : services.entrySet()) {
+                final Future<?> future = executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        ServiceFactory.warmUp(entry.getValue());
+                    }
+                });
+                futures.add(EntryWrapper.<String, Future<?>>wrap(entry.getKey(), future));
+            }
+            int failed = 0;
+            for (Entry<String, Future<?>> future : futures) {
+                try {
+                    future.getValue().get();
+                } catch (ExecutionException ex) {
+                    failed++;
+                    LOGGER.warn("warm up service failed: " + future.getKey(), ex.getCause());
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    LOGGER.warn("warm up interrupted.");
+                    return;
+                }
+            }
+            LOGGER.info("warm up {} services in {}ms, failed: {}", services.size(),
+                    System.currentTimeMillis() - start, failed);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static final class WarmUpThreadFactory implements ThreadFactory {
+        private final AtomicInteger index = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            final Thread thread = new Thread(r, "service-warm-up-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
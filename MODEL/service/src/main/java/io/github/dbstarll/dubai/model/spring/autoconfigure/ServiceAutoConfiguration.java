@@ -2,14 +2,22 @@ package io.github.dbstarll.dubai.model.spring.autoconfigure;
 
 import io.github.dbstarll.dubai.model.service.ImplementalAutowirer;
 import io.github.dbstarll.dubai.model.service.Service;
+import io.github.dbstarll.dubai.model.service.metrics.ServiceMetrics;
+import io.github.dbstarll.dubai.model.service.metrics.ServiceMetricsBinder;
 import io.github.dbstarll.dubai.model.spring.ServiceBeanInitializer;
+import io.github.dbstarll.dubai.model.spring.ServiceWarmUp;
 import io.github.dbstarll.dubai.model.spring.SpringImplementalAutowirer;
 import org.springframework.beans.factory.support.BeanDefinitionRegistryPostProcessor;
 import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import javax.management.JMException;
+
 @Configuration
 @AutoConfigureAfter(CollectionAutoConfiguration.class)
 public class ServiceAutoConfiguration {
@@ -23,9 +31,39 @@ public class ServiceAutoConfiguration {
         return initializer;
     }
 
+    @Bean
+    @ConditionalOnProperty(name = "dubai.service.eager", havingValue = "true")
+    @ConditionalOnMissingBean(ServiceWarmUp.class)
+    ServiceWarmUp serviceWarmUp() {
+        return new ServiceWarmUp();
+    }
+
     @Bean
     @ConditionalOnMissingBean(ImplementalAutowirer.class)
     ImplementalAutowirer implementalAutowirer() {
         return new SpringImplementalAutowirer();
     }
+
+    /**
+     * 服务调用统计，服务bean按名称自动装配，通过{@link io.github.dbstarll.dubai.model.service.ServiceMetricsAware}注入.
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "dubai.service.metrics", havingValue = "true")
+    @ConditionalOnMissingBean(ServiceMetrics.class)
+    ServiceMetrics serviceMetrics(ApplicationContext applicationContext) throws JMException {
+        final ServiceMetrics metrics = new ServiceMetrics();
+        metrics.registerMBean(ServiceMetrics.objectName(applicationContext.getId()));
+        return metrics;
+    }
+
+    @Configuration
+    @ConditionalOnClass(name = "io.micrometer.core.instrument.binder.MeterBinder")
+    @ConditionalOnProperty(name = "dubai.service.metrics", havingValue = "true")
+    static class ServiceMetricsBinderConfiguration {
+        @Bean
+        @ConditionalOnMissingBean(ServiceMetricsBinder.class)
+        ServiceMetricsBinder serviceMetricsBinder(ServiceMetrics serviceMetrics) {
+            return new ServiceMetricsBinder(serviceMetrics);
+        }
+    }
 }
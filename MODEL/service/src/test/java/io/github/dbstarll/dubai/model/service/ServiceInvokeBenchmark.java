@@ -0,0 +1,124 @@
+package io.github.dbstarll.dubai.model.service;
+
+import io.github.dbstarll.dubai.model.collection.Collection;
+import io.github.dbstarll.dubai.model.entity.test.InterfaceEntity;
+import io.github.dbstarll.dubai.model.service.test.InterfaceService;
+import io.github.dbstarll.dubai.model.service.test.InterfaceServiceAttach;
+import io.github.dbstarll.dubai.model.service.test.InterfaceServiceImplemental;
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 服务代理调用开销的基准测试.
+ * <ul>
+ * <li>methodKeyLookup：每次调用都生成MethodKey查找目标方法（原有方式）</li>
+ * <li>dispatchTableLookup：按Method查找构造代理时建立的分派表</li>
+ * <li>proxyInvoke/directInvoke：通过代理调用与直接调用Implemental的对比</li>
+ * </ul>
+ * 运行：mvn test-compile 之后以test classpath执行本类的main方法.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServiceInvokeBenchmark {
+    private final ObjectId id = new ObjectId();
+
+    private Method containsMethod;
+    private Method varArgsMethod;
+    private Map<String, MethodValue> methodKeys;
+    private Map<Method, MethodValue> dispatchTable;
+    private InterfaceService service;
+    private InterfaceServiceImplemental implemental;
+
+    /**
+     * 初始化服务代理以及两种查找方式使用的表.
+     *
+     * @throws Exception Exception
+     */
+    @Setup
+    public void setup() throws Exception {
+        containsMethod = InterfaceServiceAttach.class.getMethod("contains", ObjectId.class);
+        varArgsMethod = InterfaceServiceAttach.class.getMethod("call", boolean.class, String[].class);
+        methodKeys = new HashMap<>();
+        dispatchTable = new HashMap<>();
+        for (Method m : InterfaceService.class.getMethods()) {
+            final MethodValue value = new MethodValue(InterfaceServiceAttach.class, m);
+            methodKeys.put(new MethodKey(m, InterfaceEntity.class).key, value);
+            dispatchTable.put(m, value);
+        }
+
+        final Collection<InterfaceEntity> collection = newCollection();
+        service = ServiceFactory.newInstance(InterfaceService.class, collection);
+        implemental = new InterfaceServiceImplemental(service, collection);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Collection<InterfaceEntity> newCollection() {
+        return (Collection<InterfaceEntity>) Proxy.newProxyInstance(Collection.class.getClassLoader(),
+                new Class[]{Collection.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if ("getEntityClass".equals(method.getName())) {
+                            return InterfaceEntity.class;
+                        }
+                        throw new UnsupportedOperationException(method.toString());
+                    }
+                });
+    }
+
+    @Benchmark
+    public MethodValue methodKeyLookup() {
+        return methodKeys.get(new MethodKey(containsMethod, InterfaceEntity.class).key);
+    }
+
+    @Benchmark
+    public MethodValue methodKeyLookupVarArgs() {
+        return methodKeys.get(new MethodKey(varArgsMethod, InterfaceEntity.class).key);
+    }
+
+    @Benchmark
+    public MethodValue dispatchTableLookup() {
+        return dispatchTable.get(containsMethod);
+    }
+
+    @Benchmark
+    public MethodValue dispatchTableLookupVarArgs() {
+        return dispatchTable.get(varArgsMethod);
+    }
+
+    @Benchmark
+    public boolean proxyInvoke() {
+        return service.contains(id);
+    }
+
+    @Benchmark
+    public boolean directInvoke() {
+        return implemental.contains(id);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ServiceInvokeBenchmark.class.getSimpleName()).build()).run();
+    }
+}
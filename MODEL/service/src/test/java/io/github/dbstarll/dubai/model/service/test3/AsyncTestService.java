@@ -0,0 +1,16 @@
+package io.github.dbstarll.dubai.model.service.test3;
+
+import io.github.dbstarll.dubai.model.service.AsyncService;
+import io.github.dbstarll.dubai.model.service.validate.Validate;
+import org.bson.types.ObjectId;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+public interface AsyncTestService extends AsyncService<TestService> {
+    CompletableFuture<TestEntity> findById(ObjectId id);
+
+    CompletionStage<Boolean> contains(ObjectId id);
+
+    CompletableFuture<TestEntity> save(TestEntity entity, Validate validate);
+}
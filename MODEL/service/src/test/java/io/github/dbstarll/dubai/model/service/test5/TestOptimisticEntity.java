@@ -0,0 +1,12 @@
+package io.github.dbstarll.dubai.model.service.test5;
+
+import io.github.dbstarll.dubai.model.entity.OptimisticSave;
+import io.github.dbstarll.dubai.model.entity.Table;
+import io.github.dbstarll.dubai.model.entity.info.Describable;
+import io.github.dbstarll.dubai.model.service.test.TestEntities;
+
+@Table
+@OptimisticSave
+public interface TestOptimisticEntity extends TestEntities, Describable {
+
+}
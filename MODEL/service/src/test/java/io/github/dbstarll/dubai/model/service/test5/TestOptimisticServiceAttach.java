@@ -0,0 +1,9 @@
+package io.github.dbstarll.dubai.model.service.test5;
+
+import io.github.dbstarll.dubai.model.service.Implementation;
+import io.github.dbstarll.dubai.model.service.ServiceSaver;
+import io.github.dbstarll.dubai.model.service.test.TestAttachs;
+
+@Implementation(TestOptimisticServiceImplemental.class)
+public interface TestOptimisticServiceAttach extends TestAttachs, ServiceSaver<TestOptimisticEntity> {
+}
@@ -0,0 +1,19 @@
+package io.github.dbstarll.dubai.model.service.test5;
+
+import io.github.dbstarll.dubai.model.collection.Collection;
+import io.github.dbstarll.dubai.model.service.test.TestImplementals;
+import io.github.dbstarll.dubai.model.service.validate.Validate;
+import org.bson.types.ObjectId;
+
+public final class TestOptimisticServiceImplemental
+        extends TestImplementals<TestOptimisticEntity, TestOptimisticService> implements TestOptimisticServiceAttach {
+    public TestOptimisticServiceImplemental(TestOptimisticService service,
+                                            Collection<TestOptimisticEntity> collection) {
+        super(service, collection);
+    }
+
+    @Override
+    public TestOptimisticEntity save(TestOptimisticEntity entity, ObjectId newEntityId, Validate validate) {
+        return validateAndSave(entity, newEntityId, validate);
+    }
+}
@@ -0,0 +1,10 @@
+package io.github.dbstarll.dubai.model.service.test6;
+
+import io.github.dbstarll.dubai.model.entity.Table;
+import io.github.dbstarll.dubai.model.entity.info.Namable;
+import io.github.dbstarll.dubai.model.service.test.TestEntities;
+
+@Table
+public interface TestBatchEntity extends TestEntities, Namable {
+
+}
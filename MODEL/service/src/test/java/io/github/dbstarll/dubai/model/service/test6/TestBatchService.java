@@ -0,0 +1,8 @@
+package io.github.dbstarll.dubai.model.service.test6;
+
+import io.github.dbstarll.dubai.model.service.EntityService;
+import io.github.dbstarll.dubai.model.service.test.TestServices;
+
+@EntityService
+public interface TestBatchService extends TestServices<TestBatchEntity>, TestBatchServiceAttach {
+}
@@ -0,0 +1,8 @@
+package io.github.dbstarll.dubai.model.service.test6;
+
+import io.github.dbstarll.dubai.model.service.Implementation;
+import io.github.dbstarll.dubai.model.service.test.TestAttachs;
+
+@Implementation(TestBatchServiceImplemental.class)
+public interface TestBatchServiceAttach extends TestAttachs {
+}
@@ -0,0 +1,11 @@
+package io.github.dbstarll.dubai.model.service.test6;
+
+import io.github.dbstarll.dubai.model.collection.Collection;
+import io.github.dbstarll.dubai.model.service.test.TestImplementals;
+
+public final class TestBatchServiceImplemental extends TestImplementals<TestBatchEntity, TestBatchService>
+        implements TestBatchServiceAttach {
+    public TestBatchServiceImplemental(TestBatchService service, Collection<TestBatchEntity> collection) {
+        super(service, collection);
+    }
+}
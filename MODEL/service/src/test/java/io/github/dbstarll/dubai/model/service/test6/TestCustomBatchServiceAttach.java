@@ -0,0 +1,9 @@
+package io.github.dbstarll.dubai.model.service.test6;
+
+import io.github.dbstarll.dubai.model.service.Implementation;
+import io.github.dbstarll.dubai.model.service.ServiceBatchSaver;
+import io.github.dbstarll.dubai.model.service.test.TestAttachs;
+
+@Implementation(TestCustomBatchServiceImplemental.class)
+public interface TestCustomBatchServiceAttach extends TestAttachs, ServiceBatchSaver<TestBatchEntity> {
+}
@@ -0,0 +1,19 @@
+package io.github.dbstarll.dubai.model.service.test6;
+
+import io.github.dbstarll.dubai.model.collection.Collection;
+import io.github.dbstarll.dubai.model.service.test.TestImplementals;
+import io.github.dbstarll.dubai.model.service.validate.BatchValidate;
+
+import java.util.List;
+
+public final class TestCustomBatchServiceImplemental
+        extends TestImplementals<TestBatchEntity, TestCustomBatchService> implements TestCustomBatchServiceAttach {
+    public TestCustomBatchServiceImplemental(TestCustomBatchService service, Collection<TestBatchEntity> collection) {
+        super(service, collection);
+    }
+
+    @Override
+    public List<TestBatchEntity> saveBatch(List<TestBatchEntity> entities, BatchValidate validate) {
+        return validateAndSaveAll(entities, validate, new NameValidation(2, 4));
+    }
+}
@@ -0,0 +1,10 @@
+package io.github.dbstarll.dubai.model.service.test7;
+
+import io.github.dbstarll.dubai.model.entity.Table;
+import io.github.dbstarll.dubai.model.entity.info.Describable;
+import io.github.dbstarll.dubai.model.service.test.TestEntities;
+
+@Table
+public interface TestCachedEntity extends TestEntities, Describable {
+
+}
@@ -0,0 +1,19 @@
+package io.github.dbstarll.dubai.model.service.test7;
+
+import io.github.dbstarll.dubai.model.service.CachedResult;
+import io.github.dbstarll.dubai.model.service.Implementation;
+import io.github.dbstarll.dubai.model.service.test.TestAttachs;
+
+import java.util.concurrent.TimeUnit;
+
+@Implementation(TestCachedServiceImplemental.class)
+public interface TestCachedServiceAttach extends TestAttachs {
+    @CachedResult(maxSize = 2)
+    long countByDescription(String description);
+
+    @CachedResult(ttl = 10, unit = TimeUnit.MILLISECONDS)
+    long countRecent(String description);
+
+    @CachedResult
+    long countByDescriptions(String... descriptions);
+}
@@ -0,0 +1,30 @@
+package io.github.dbstarll.dubai.model.service.test7;
+
+import io.github.dbstarll.dubai.model.collection.Collection;
+import io.github.dbstarll.dubai.model.entity.info.Describable;
+import io.github.dbstarll.dubai.model.service.test.TestImplementals;
+
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.in;
+
+public final class TestCachedServiceImplemental extends TestImplementals<TestCachedEntity, TestCachedService>
+        implements TestCachedServiceAttach {
+    public TestCachedServiceImplemental(TestCachedService service, Collection<TestCachedEntity> collection) {
+        super(service, collection);
+    }
+
+    @Override
+    public long countByDescription(String description) {
+        return service.count(eq(Describable.FIELD_NAME_DESCRIPTION, description));
+    }
+
+    @Override
+    public long countRecent(String description) {
+        return service.count(eq(Describable.FIELD_NAME_DESCRIPTION, description));
+    }
+
+    @Override
+    public long countByDescriptions(String... descriptions) {
+        return service.count(in(Describable.FIELD_NAME_DESCRIPTION, descriptions));
+    }
+}
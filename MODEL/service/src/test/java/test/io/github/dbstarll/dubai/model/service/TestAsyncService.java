@@ -0,0 +1,154 @@
+package test.io.github.dbstarll.dubai.model.service;
+
+import io.github.dbstarll.dubai.model.collection.Collection;
+import io.github.dbstarll.dubai.model.entity.EntityFactory;
+import io.github.dbstarll.dubai.model.service.AsyncService;
+import io.github.dbstarll.dubai.model.service.ServiceFactory;
+import io.github.dbstarll.dubai.model.service.test3.AsyncTestService;
+import io.github.dbstarll.dubai.model.service.test3.TestEntity;
+import io.github.dbstarll.dubai.model.service.test3.TestService;
+import io.github.dbstarll.dubai.model.service.validate.DefaultValidate;
+import mockit.Expectations;
+import mockit.Mocked;
+import org.bson.types.ObjectId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+import static org.junit.Assert.*;
+
+public class TestAsyncService {
+    @Mocked
+    Collection<TestEntity> collection;
+
+    TestService service;
+
+    ExecutorService executor;
+
+    /**
+     * 初始化.
+     */
+    @Before
+    public void setUp() {
+        new Expectations() {
+            {
+                collection.getEntityClass();
+                result = TestEntity.class;
+            }
+        };
+        this.service = ServiceFactory.newInstance(TestService.class, collection);
+        this.executor = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 测试异步接口中声明的方法.
+     */
+    @Test
+    public void testAsyncMethod() throws Exception {
+        final ObjectId id = new ObjectId();
+        final TestEntity entity = EntityFactory.newInstance(TestEntity.class);
+        new Expectations() {
+            {
+                collection.findById(id);
+                result = entity;
+                collection.contains(id);
+                result = true;
+            }
+        };
+        final AsyncTestService async = ServiceFactory.newAsyncInstance(AsyncTestService.class, service, executor);
+        assertSame(service, async.getService());
+
+        final CompletableFuture<TestEntity> found = async.findById(id);
+        final CompletableFuture<Boolean> contains = async.contains(id).toCompletableFuture();
+        assertSame(entity, found.get());
+        assertTrue(contains.get());
+
+        final DefaultValidate validate = new DefaultValidate();
+        assertNull(async.save(null, validate).get());
+        assertTrue(validate.hasActionErrors());
+    }
+
+    /**
+     * 测试服务方法抛出的异常作为CompletableFuture的异常.
+     */
+    @Test
+    public void testException() throws Exception {
+        final AsyncTestService async = ServiceFactory.newAsyncInstance(AsyncTestService.class, service, executor);
+        try {
+            async.supply(new Function<TestService, Object>() {
+                @Override
+                public Object apply(TestService testService) {
+                    testService.callTest(null);
+                    return null;
+                }
+            }).get();
+            fail("throw ExecutionException");
+        } catch (ExecutionException ex) {
+            assertEquals(UnsupportedOperationException.class, ex.getCause().getClass());
+        }
+    }
+
+    /**
+     * 测试只提供supply的异步门面.
+     */
+    @Test
+    public void testSupply() throws Exception {
+        final AsyncService<TestService> async = ServiceFactory.newAsyncInstance(service, executor);
+        assertEquals(TestEntity.class, async.supply(new Function<TestService, Class<TestEntity>>() {
+            @Override
+            public Class<TestEntity> apply(TestService testService) {
+                return testService.getEntityClass();
+            }
+        }).get());
+        assertEquals(async, async);
+        assertTrue(async.toString().startsWith(AsyncService.class.getName()));
+    }
+
+    /**
+     * 测试异步接口中的方法不能对应到服务方法.
+     */
+    @Test
+    public void testInvalidAsyncClass() {
+        try {
+            ServiceFactory.newAsyncInstance(NotFoundAsyncService.class, service, executor);
+            fail("throw IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            assertTrue(ex.getMessage().contains("notFound"));
+        }
+        try {
+            ServiceFactory.newAsyncInstance(NotFutureAsyncService.class, service, executor);
+            fail("throw IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            assertTrue(ex.getMessage().startsWith("异步方法必须返回CompletableFuture"));
+        }
+        try {
+            ServiceFactory.newAsyncInstance(ResultMismatchAsyncService.class, service, executor);
+            fail("throw IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            assertTrue(ex.getMessage().contains("findById"));
+        }
+    }
+
+    public interface NotFoundAsyncService extends AsyncService<TestService> {
+        CompletableFuture<Object> notFound();
+    }
+
+    public interface NotFutureAsyncService extends AsyncService<TestService> {
+        TestEntity findById(ObjectId id);
+    }
+
+    public interface ResultMismatchAsyncService extends AsyncService<TestService> {
+        CompletableFuture<String> findById(ObjectId id);
+    }
+}
@@ -0,0 +1,136 @@
+package test.io.github.dbstarll.dubai.model.service;
+
+import io.github.dbstarll.dubai.model.collection.Collection;
+import io.github.dbstarll.dubai.model.notify.EntityNotifyConsumer;
+import io.github.dbstarll.dubai.model.notify.EntityNotifyListener;
+import io.github.dbstarll.dubai.model.notify.NotifyType;
+import io.github.dbstarll.dubai.model.service.EntityNotifyConsumerAware;
+import io.github.dbstarll.dubai.model.service.ServiceFactory;
+import io.github.dbstarll.dubai.model.service.test7.TestCachedEntity;
+import io.github.dbstarll.dubai.model.service.test7.TestCachedService;
+import mockit.Expectations;
+import mockit.Mocked;
+import mockit.Verifications;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestCachedResult {
+    @Mocked
+    Collection<TestCachedEntity> collection;
+
+    TestCachedService service;
+
+    /**
+     * 初始化.
+     */
+    @Before
+    public void setUp() {
+        new Expectations() {
+            {
+                collection.getEntityClass();
+                result = TestCachedEntity.class;
+                collection.count((Bson) any);
+                returns(1L, 2L, 3L, 4L);
+            }
+        };
+        this.service = ServiceFactory.newInstance(TestCachedService.class, collection);
+    }
+
+    /**
+     * 测试相同参数的调用使用缓存的结果，不同参数分别缓存.
+     */
+    @Test
+    public void testCached() {
+        assertEquals(1, service.countByDescription("a"));
+        assertEquals(1, service.countByDescription("a"));
+        assertEquals(2, service.countByDescription("b"));
+        assertEquals(2, service.countByDescription("b"));
+        assertEquals(1, service.countByDescription("a"));
+        new Verifications() {
+            {
+                collection.count((Bson) any);
+                times = 2;
+            }
+        };
+    }
+
+    /**
+     * 测试数组参数按内容比较，调用之后修改数组不影响已缓存的结果.
+     */
+    @Test
+    public void testArrayArguments() {
+        final String[] descriptions = new String[]{"a", "b"};
+        assertEquals(1, service.countByDescriptions(descriptions));
+        assertEquals(1, service.countByDescriptions("a", "b"));
+        descriptions[1] = "c";
+        assertEquals(2, service.countByDescriptions(descriptions));
+        assertEquals(1, service.countByDescriptions("a", "b"));
+        assertEquals(2, service.countByDescriptions("a", "c"));
+    }
+
+    /**
+     * 测试超出maxSize时淘汰最久未访问的结果.
+     */
+    @Test
+    public void testMaxSize() {
+        assertEquals(1, service.countByDescription("a"));
+        assertEquals(2, service.countByDescription("b"));
+        assertEquals(1, service.countByDescription("a"));
+        assertEquals(3, service.countByDescription("c"));
+        assertEquals(1, service.countByDescription("a"));
+        assertEquals(4, service.countByDescription("b"));
+    }
+
+    /**
+     * 测试缓存的结果过期.
+     *
+     * @throws InterruptedException InterruptedException
+     */
+    @Test
+    public void testTtl() throws InterruptedException {
+        assertEquals(1, service.countRecent("a"));
+        assertEquals(1, service.countRecent("a"));
+        Thread.sleep(20);
+        assertEquals(2, service.countRecent("a"));
+    }
+
+    /**
+     * 测试收到实体类的变更通知后缓存的结果失效.
+     *
+     * @param consumer EntityNotifyConsumer
+     */
+    @Test
+    public void testNotify(@Mocked final EntityNotifyConsumer consumer) {
+        ((EntityNotifyConsumerAware) service).setEntityNotifyConsumer(consumer);
+        final List<EntityNotifyListener> listeners = new ArrayList<>();
+        new Verifications() {
+            {
+                consumer.regist(withCapture(listeners), TestCachedEntity.class);
+                times = 1;
+            }
+        };
+        assertEquals(1, listeners.size());
+
+        assertEquals(1, service.countByDescription("a"));
+        assertEquals(1, service.countByDescription("a"));
+        listeners.get(0).onNotify(TestCachedEntity.class, new ObjectId(), NotifyType.update, null, null);
+        assertEquals(2, service.countByDescription("a"));
+        assertEquals(2, service.countByDescription("a"));
+    }
+
+    /**
+     * 测试没有标注CachedResult的方法不缓存.
+     */
+    @Test
+    public void testNotCached() {
+        assertEquals(1, service.count(null));
+        assertEquals(2, service.count(null));
+    }
+}
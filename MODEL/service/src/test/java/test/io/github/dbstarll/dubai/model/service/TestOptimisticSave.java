@@ -0,0 +1,180 @@
+package test.io.github.dbstarll.dubai.model.service;
+
+import io.github.dbstarll.dubai.model.collection.Collection;
+import io.github.dbstarll.dubai.model.entity.EntityFactory;
+import io.github.dbstarll.dubai.model.entity.EntityModifier;
+import io.github.dbstarll.dubai.model.service.ServiceFactory;
+import io.github.dbstarll.dubai.model.service.test5.TestOptimisticEntity;
+import io.github.dbstarll.dubai.model.service.test5.TestOptimisticService;
+import io.github.dbstarll.dubai.model.service.validate.DefaultValidate;
+import mockit.Expectations;
+import mockit.Mocked;
+import mockit.Verifications;
+import org.bson.types.ObjectId;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Date;
+
+import static org.junit.Assert.*;
+
+public class TestOptimisticSave {
+    private static final String ERROR_MODIFIED = "实体已被修改，请重新加载后再保存";
+
+    @Mocked
+    Collection<TestOptimisticEntity> collection;
+
+    TestOptimisticService service;
+
+    private final ObjectId id = new ObjectId();
+    private final Date loaded = new Date(System.currentTimeMillis() - 1000);
+
+    /**
+     * 初始化.
+     */
+    @Before
+    public void setUp() {
+        new Expectations() {
+            {
+                collection.getEntityClass();
+                result = TestOptimisticEntity.class;
+            }
+        };
+        this.service = ServiceFactory.newInstance(TestOptimisticService.class, collection);
+    }
+
+    private TestOptimisticEntity entity(Date lastModified, String description) {
+        final TestOptimisticEntity entity = EntityFactory.newInstance(TestOptimisticEntity.class);
+        ((EntityModifier) entity).setId(id);
+        ((EntityModifier) entity).setLastModified(lastModified);
+        entity.setDescription(description);
+        return entity;
+    }
+
+    /**
+     * 测试缓存中的原件与实体版本一致时，只读取缓存并按版本条件更新.
+     */
+    @Test
+    public void testSaveFromCache() {
+        final TestOptimisticEntity original = entity(loaded, "original");
+        final TestOptimisticEntity entity = entity(loaded, "changed");
+        final DefaultValidate validate = new DefaultValidate();
+        new Expectations() {
+            {
+                collection.findById(id);
+                result = original;
+                collection.saveIfUnmodified(entity);
+                result = entity;
+            }
+        };
+        assertSame(entity, service.save(entity, null, validate));
+        assertFalse(validate.hasErrors());
+        new Verifications() {
+            {
+                collection.findById(id);
+                times = 1;
+                collection.original();
+                times = 0;
+                collection.save((TestOptimisticEntity) any, (ObjectId) any);
+                times = 0;
+            }
+        };
+    }
+
+    /**
+     * 测试缓存中的原件已过期时，从数据库重新读取原件.
+     */
+    @Test
+    public void testSaveStaleCache() {
+        final TestOptimisticEntity stale = entity(new Date(loaded.getTime() - 1000), "stale");
+        final TestOptimisticEntity original = entity(loaded, "original");
+        final TestOptimisticEntity entity = entity(loaded, "changed");
+        final DefaultValidate validate = new DefaultValidate();
+        new Expectations() {
+            {
+                collection.findById(id);
+                returns(stale, original);
+                collection.saveIfUnmodified(entity);
+                result = entity;
+            }
+        };
+        assertSame(entity, service.save(entity, null, validate));
+        assertFalse(validate.hasErrors());
+        new Verifications() {
+            {
+                collection.findById(id);
+                times = 2;
+            }
+        };
+    }
+
+    /**
+     * 测试实体加载后已被修改时，不执行更新.
+     */
+    @Test
+    public void testSaveModified() {
+        final TestOptimisticEntity original = entity(new Date(), "original");
+        final TestOptimisticEntity entity = entity(loaded, "changed");
+        final DefaultValidate validate = new DefaultValidate();
+        new Expectations() {
+            {
+                collection.findById(id);
+                result = original;
+            }
+        };
+        assertNull(service.save(entity, null, validate));
+        assertEquals(Collections.singletonList(ERROR_MODIFIED), validate.getActionErrors());
+        new Verifications() {
+            {
+                collection.saveIfUnmodified((TestOptimisticEntity) any);
+                times = 0;
+            }
+        };
+    }
+
+    /**
+     * 测试校验之后实体被并发修改，条件更新未匹配.
+     */
+    @Test
+    public void testSaveConflict() {
+        final TestOptimisticEntity original = entity(loaded, "original");
+        final TestOptimisticEntity entity = entity(loaded, "changed");
+        final DefaultValidate validate = new DefaultValidate();
+        new Expectations() {
+            {
+                collection.findById(id);
+                result = original;
+                collection.saveIfUnmodified(entity);
+                result = null;
+            }
+        };
+        assertNull(service.save(entity, null, validate));
+        assertEquals(Collections.singletonList(ERROR_MODIFIED), validate.getActionErrors());
+    }
+
+    /**
+     * 测试插入新实体时仍然使用普通的保存.
+     */
+    @Test
+    public void testInsert() {
+        final TestOptimisticEntity entity = EntityFactory.newInstance(TestOptimisticEntity.class);
+        final DefaultValidate validate = new DefaultValidate();
+        new Expectations() {
+            {
+                collection.save(entity, null);
+                result = entity;
+            }
+        };
+        assertSame(entity, service.save(entity, null, validate));
+        assertFalse(validate.hasErrors());
+        new Verifications() {
+            {
+                collection.findById((ObjectId) any);
+                times = 0;
+                collection.saveIfUnmodified((TestOptimisticEntity) any);
+                times = 0;
+            }
+        };
+    }
+}
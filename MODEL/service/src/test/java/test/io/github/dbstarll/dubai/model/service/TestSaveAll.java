@@ -0,0 +1,257 @@
+package test.io.github.dbstarll.dubai.model.service;
+
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCursor;
+import io.github.dbstarll.dubai.model.collection.Collection;
+import io.github.dbstarll.dubai.model.entity.EntityFactory;
+import io.github.dbstarll.dubai.model.entity.EntityModifier;
+import io.github.dbstarll.dubai.model.entity.info.Namable;
+import io.github.dbstarll.dubai.model.service.ServiceFactory;
+import io.github.dbstarll.dubai.model.service.test6.TestBatchEntity;
+import io.github.dbstarll.dubai.model.service.test6.TestBatchService;
+import io.github.dbstarll.dubai.model.service.test6.TestCustomBatchService;
+import io.github.dbstarll.dubai.model.service.validate.BatchValidate;
+import io.github.dbstarll.dubai.model.service.validate.Validate;
+import io.github.dbstarll.dubai.model.service.validate.ValidateException;
+import mockit.Delegate;
+import mockit.Expectations;
+import mockit.Mocked;
+import mockit.Verifications;
+import org.bson.types.ObjectId;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TestSaveAll {
+    @Mocked
+    Collection<TestBatchEntity> collection;
+
+    @Mocked
+    FindIterable<TestBatchEntity> findIterable;
+
+    @Mocked
+    MongoCursor<TestBatchEntity> cursor;
+
+    TestBatchService service;
+
+    /**
+     * 初始化.
+     */
+    @Before
+    public void setUp() {
+        new Expectations() {
+            {
+                collection.getEntityClass();
+                result = TestBatchEntity.class;
+            }
+        };
+        this.service = ServiceFactory.newInstance(TestBatchService.class, collection);
+    }
+
+    private TestBatchEntity entity(ObjectId id, String name) {
+        final TestBatchEntity entity = EntityFactory.newInstance(TestBatchEntity.class);
+        if (id != null) {
+            ((EntityModifier) entity).setId(id);
+        }
+        entity.setName(name);
+        return entity;
+    }
+
+    /**
+     * 测试批量保存时，每个实体的校验结果分别记录，只有校验通过且有修改的实体被写入.
+     */
+    @Test
+    public void testSaveAll() {
+        final ObjectId changedId = new ObjectId();
+        final ObjectId unchangedId = new ObjectId();
+        final TestBatchEntity inserted = entity(null, "inserted");
+        final TestBatchEntity invalid = entity(null, "");
+        final TestBatchEntity changed = entity(changedId, "changed");
+        final TestBatchEntity unchanged = entity(unchangedId, "unchanged");
+        final TestBatchEntity notFound = entity(new ObjectId(), "notFound");
+        final TestBatchEntity changedOriginal = entity(changedId, "original");
+        final TestBatchEntity unchangedOriginal = entity(unchangedId, "unchanged");
+        new Expectations() {
+            {
+                collection.findByIds((java.util.Collection<ObjectId>) any);
+                result = findIterable;
+                findIterable.iterator();
+                result = cursor;
+                cursor.hasNext();
+                returns(true, true, false);
+                cursor.next();
+                returns(changedOriginal, unchangedOriginal);
+            }
+        };
+
+        final BatchValidate validate = new BatchValidate();
+        final List<TestBatchEntity> saved = service.saveAll(Arrays.asList(inserted, invalid, changed, unchanged,
+                notFound, null), validate);
+        assertEquals(Arrays.asList(inserted, null, changed, null, null, null), saved);
+
+        assertTrue(validate.hasErrors());
+        assertFalse(validate.hasActionErrors());
+        assertEquals(Arrays.asList(1, 4, 5), new ArrayList<>(validate.getEntityErrors().keySet()));
+        assertEquals(Collections.singletonList("名称未设置"),
+                validate.getEntityErrors(1).getFieldErrors().get(Namable.FIELD_NAME_NAME));
+        assertEquals(Collections.singletonList("实体未找到"), validate.getEntityErrors(4).getActionErrors());
+        assertEquals(Collections.singletonList("实体未设置"), validate.getEntityErrors(5).getActionErrors());
+        assertNull(validate.getEntityErrors(0));
+
+        new Verifications() {
+            {
+                List<TestBatchEntity> toSave;
+                collection.saveAll(toSave = withCapture(), anyInt);
+                times = 1;
+                assertEquals(Arrays.asList(inserted, changed), toSave);
+                collection.findByIds((java.util.Collection<ObjectId>) any);
+                times = 1;
+                collection.findById((ObjectId) any);
+                times = 0;
+            }
+        };
+    }
+
+    /**
+     * 测试大批量实体并行校验.
+     */
+    @Test
+    public void testSaveAllParallel() {
+        final List<TestBatchEntity> entities = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            entities.add(entity(null, i % 100 == 0 ? "" : "name" + i));
+        }
+        final BatchValidate validate = new BatchValidate();
+        final List<TestBatchEntity> saved = service.saveAll(entities, validate);
+        assertEquals(entities.size(), saved.size());
+        assertEquals(10, validate.getEntityErrors().size());
+        for (int i = 0; i < entities.size(); i++) {
+            if (i % 100 == 0) {
+                assertNull(saved.get(i));
+                assertNotNull(validate.getEntityErrors(i));
+            } else {
+                assertSame(entities.get(i), saved.get(i));
+            }
+        }
+        new Verifications() {
+            {
+                List<TestBatchEntity> toSave;
+                collection.saveAll(toSave = withCapture(), anyInt);
+                times = 1;
+                assertEquals(990, toSave.size());
+            }
+        };
+    }
+
+    /**
+     * 测试未设置校验结果容器时抛出ValidateException.
+     */
+    @Test
+    public void testSaveAllValidateNull() {
+        try {
+            service.saveAll(Arrays.asList(entity(null, "name"), entity(null, "")), null);
+            fail("throw ValidateException");
+        } catch (ValidateException ex) {
+            final Validate validate = ex.getValidate();
+            assertTrue(validate instanceof BatchValidate);
+            assertEquals(Collections.singleton(1), ((BatchValidate) validate).getEntityErrors().keySet());
+            assertEquals("[1=[name=[名称未设置]]]", ex.getMessage());
+        }
+    }
+
+    /**
+     * 测试批量写入失败时记录在BatchValidate自身.
+     */
+    @Test
+    public void testSaveAllFailed() {
+        final TestBatchEntity entity = entity(null, "name");
+        new Expectations() {
+            {
+                collection.saveAll((List<TestBatchEntity>) any, anyInt);
+                result = new IllegalStateException("SaveFailed");
+            }
+        };
+        final BatchValidate validate = new BatchValidate();
+        assertEquals(Collections.singletonList(null), service.saveAll(Collections.singletonList(entity), validate));
+        assertEquals(Collections.singletonList("SaveFailed"), validate.getActionErrors());
+        assertFalse(validate.hasEntityErrors());
+    }
+
+    /**
+     * 测试后一批写入失败时，之前已写入的实体正常返回，未写入的实体恢复写入前的id和时间戳.
+     */
+    @Test
+    public void testSaveAllPartiallyFailed() {
+        final List<TestBatchEntity> entities = new ArrayList<>();
+        for (int i = 0; i < 1500; i++) {
+            entities.add(entity(null, "name" + i));
+        }
+        new Expectations() {
+            {
+                collection.saveAll((List<TestBatchEntity>) any, anyInt);
+                result = new Delegate<List<TestBatchEntity>>() {
+                    private int calls;
+
+                    @SuppressWarnings("unused")
+                    List<TestBatchEntity> saveAll(List<TestBatchEntity> batch, int batchSize) {
+                        for (TestBatchEntity entity : batch) {
+                            ((EntityModifier) entity).setId(new ObjectId());
+                            ((EntityModifier) entity).setLastModified(new Date());
+                        }
+                        if (++calls > 1) {
+                            throw new IllegalStateException("SaveFailed");
+                        }
+                        return batch;
+                    }
+                };
+            }
+        };
+        final BatchValidate validate = new BatchValidate();
+        final List<TestBatchEntity> saved = service.saveAll(entities, validate);
+        assertEquals(Collections.singletonList("SaveFailed"), validate.getActionErrors());
+        assertFalse(validate.hasEntityErrors());
+        for (int i = 0; i < entities.size(); i++) {
+            final TestBatchEntity entity = entities.get(i);
+            if (i < 1000) {
+                assertSame(entity, saved.get(i));
+                assertNotNull(entity.getId());
+            } else {
+                assertNull(saved.get(i));
+                assertNull(entity.getId());
+                assertNull(entity.getLastModified());
+            }
+        }
+    }
+
+    /**
+     * 测试服务实现了ServiceBatchSaver时，批量保存转由服务自定义的实现处理.
+     */
+    @Test
+    public void testSaveAllCustom() {
+        final TestCustomBatchService customService = ServiceFactory.newInstance(TestCustomBatchService.class,
+                collection);
+        final TestBatchEntity valid = entity(null, "name");
+        final TestBatchEntity tooLong = entity(null, "tooLong");
+        final BatchValidate validate = new BatchValidate();
+        assertEquals(Arrays.asList(valid, null), customService.saveAll(Arrays.asList(valid, tooLong), validate));
+        assertEquals(Collections.singleton(1), validate.getEntityErrors().keySet());
+        assertEquals(Collections.singletonList("名称不能超过 4 字符"),
+                validate.getEntityErrors(1).getFieldErrors().get(Namable.FIELD_NAME_NAME));
+
+        new Verifications() {
+            {
+                List<TestBatchEntity> toSave;
+                collection.saveAll(toSave = withCapture(), anyInt);
+                times = 1;
+                assertEquals(Collections.singletonList(valid), toSave);
+            }
+        };
+    }
+}
@@ -473,4 +473,30 @@ public class TestServiceFactory {
             }
         };
     }
+
+    /**
+     * 测试预热服务.
+     */
+    @SuppressWarnings("rawtypes")
+    @Test
+    public void testWarmUp() {
+        new Expectations() {
+            {
+                collection.getEntityClass();
+                result = InterfaceEntity.class;
+            }
+        };
+        final InterfaceService service = ServiceFactory.newInstance(InterfaceService.class, collection);
+        ServiceFactory.warmUp(service);
+        new Verifications() {
+            {
+                collection.getEntityClass();
+                minTimes = 3;
+            }
+        };
+        assertNotNull(((GeneralValidateable) service).generalValidations());
+        assertTrue(service.contains(new ObjectId()));
+
+        ServiceFactory.warmUp(ServiceFactory.newInstance(ClassService.class, collection));
+    }
 }
@@ -1,8 +1,13 @@
 package test.io.github.dbstarll.dubai.model.service.attach;
 
+import io.github.dbstarll.dubai.model.cache.CompanyCounterStore;
 import io.github.dbstarll.dubai.model.collection.Collection;
+import io.github.dbstarll.dubai.model.service.Implemental;
+import io.github.dbstarll.dubai.model.service.ImplementalAutowirer;
+import io.github.dbstarll.dubai.model.service.ImplementalAutowirerAware;
 import io.github.dbstarll.dubai.model.service.ServiceFactory;
 import io.github.dbstarll.dubai.model.service.attach.CompanyAttach;
+import io.github.dbstarll.dubai.model.service.impl.CompanyAttachImplemental;
 import io.github.dbstarll.dubai.model.service.test.TestEntity;
 import io.github.dbstarll.dubai.model.service.test.TestEntityService;
 import mockit.Expectations;
@@ -14,6 +19,8 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.function.LongSupplier;
+
 import static org.junit.Assert.assertEquals;
 
 public class TestCompanyAttach {
@@ -62,6 +69,42 @@ public class TestCompanyAttach {
     };
   }
 
+  /**
+   * 测试实体类不是Notifiable时不使用计数存储.
+   *
+   * @param store CompanyCounterStore
+   */
+  @Test
+  public void testCountByCompanyIdNotNotifiable(@Mocked final CompanyCounterStore store) {
+    ((ImplementalAutowirerAware) service).setImplementalAutowirer(new ImplementalAutowirer() {
+      @Override
+      public <I extends Implemental> void autowire(I implemental) {
+        if (implemental instanceof CompanyAttachImplemental) {
+          ((CompanyAttachImplemental<?, ?>) implemental).setCompanyCounterStore(store);
+        }
+      }
+    });
+    new Expectations() {
+      {
+        collection.count((Bson) any);
+        result = 10;
+      }
+    };
+
+    assertEquals(10, service.countByCompanyId(new ObjectId()));
+
+    new Verifications() {
+      {
+        store.enable(TestEntity.class);
+        times = 0;
+        store.count(TestEntity.class, (ObjectId) any, (LongSupplier) any);
+        times = 0;
+        collection.count((Bson) any);
+        times = 1;
+      }
+    };
+  }
+
   @Test
   public void testFindByCompanyId() {
     service.findByCompanyId(new ObjectId());
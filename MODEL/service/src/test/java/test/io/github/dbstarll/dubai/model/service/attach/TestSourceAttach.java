@@ -1,8 +1,14 @@
 package test.io.github.dbstarll.dubai.model.service.attach;
 
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.IndexOptions;
 import com.mongodb.client.result.UpdateResult;
 import io.github.dbstarll.dubai.model.collection.Collection;
+import io.github.dbstarll.dubai.model.entity.EntityFactory;
+import io.github.dbstarll.dubai.model.entity.EntityModifier;
 import io.github.dbstarll.dubai.model.service.ServiceFactory;
+import io.github.dbstarll.dubai.model.service.attach.MergeSourceOptions;
 import io.github.dbstarll.dubai.model.service.attach.SourceAttach;
 import io.github.dbstarll.dubai.model.service.test3.TestEntity;
 import io.github.dbstarll.dubai.model.service.test3.TestService;
@@ -15,9 +21,13 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class TestSourceAttach {
     @Mocked
@@ -66,6 +76,93 @@ public class TestSourceAttach {
         };
     }
 
+    /**
+     * 测试分批合并来源：按id顺序逐批更新，报告进度，并且只创建一次索引.
+     *
+     * @param findIterable 查询结果
+     * @param cursor       查询结果的游标
+     */
+    @Test
+    public void testMergeSourceChunked(@Mocked final FindIterable<TestEntity> findIterable,
+                                       @Mocked final MongoCursor<TestEntity> cursor) {
+        new Expectations() {
+            {
+                collection.find((Bson) any);
+                result = findIterable;
+                findIterable.projection((Bson) any);
+                result = findIterable;
+                findIterable.sort((Bson) any);
+                result = findIterable;
+                findIterable.limit(2);
+                result = findIterable;
+                findIterable.iterator();
+                result = cursor;
+                cursor.hasNext();
+                returns(true, true, false, true, false);
+                cursor.next();
+                returns(entity(), entity(), entity());
+                collection.updateMany((Bson) any, (Bson) any);
+                returns(UpdateResult.acknowledged(2, 2L, null), UpdateResult.acknowledged(1, 0L, null));
+            }
+        };
+
+        final List<Long> progress = new ArrayList<>();
+        final MergeSourceOptions options = new MergeSourceOptions().batchSize(2).rateLimit(1000)
+                .progressListener(new MergeSourceOptions.ProgressListener() {
+                    @Override
+                    public void onProgress(String source, long matched, long modified) {
+                        assertEquals("source", source);
+                        progress.add(matched);
+                        progress.add(modified);
+                    }
+                });
+        final UpdateResult result = service.mergeSource("source", new ObjectId(), new ObjectId(), options);
+        assertEquals(3, result.getMatchedCount());
+        assertEquals(2, result.getModifiedCount());
+        assertEquals(Arrays.asList(2L, 2L, 3L, 2L), progress);
+
+        service.mergeSource("source", new ObjectId(), new ObjectId(), options.createIndex(true));
+        new Verifications() {
+            {
+                collection.createIndex((Bson) any, (IndexOptions) any);
+                times = 1;
+                collection.updateMany((Bson) any, (Bson) any);
+                times = 2;
+            }
+        };
+    }
+
+    /**
+     * 测试线程已被中断时在下一批开始前停止.
+     */
+    @Test
+    public void testMergeSourceInterrupted() {
+        Thread.currentThread().interrupt();
+        try {
+            final UpdateResult result = service.mergeSource("source", new ObjectId(), new ObjectId(),
+                    new MergeSourceOptions());
+            assertEquals(0, result.getMatchedCount());
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+
+        new Verifications() {
+            {
+                collection.find((Bson) any);
+                times = 0;
+                collection.updateMany((Bson) any, (Bson) any);
+                times = 0;
+            }
+        };
+    }
+
+    private static TestEntity entity() {
+        final TestEntity entity = EntityFactory.newInstance(TestEntity.class);
+        ((EntityModifier) entity).setId(new ObjectId());
+        return entity;
+    }
+
     @Test
     public void testUpdateSource() {
         final ObjectId faceImageId = new ObjectId();
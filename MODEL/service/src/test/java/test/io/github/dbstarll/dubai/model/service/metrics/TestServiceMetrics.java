@@ -0,0 +1,224 @@
+package test.io.github.dbstarll.dubai.model.service.metrics;
+
+import io.github.dbstarll.dubai.model.collection.Collection;
+import io.github.dbstarll.dubai.model.entity.test.InterfaceEntity;
+import io.github.dbstarll.dubai.model.service.ServiceFactory;
+import io.github.dbstarll.dubai.model.service.ServiceMetricsAware;
+import io.github.dbstarll.dubai.model.service.impl.ServiceImplemental;
+import io.github.dbstarll.dubai.model.service.metrics.MethodMetrics;
+import io.github.dbstarll.dubai.model.service.metrics.MethodStats;
+import io.github.dbstarll.dubai.model.service.metrics.ServiceMetrics;
+import io.github.dbstarll.dubai.model.service.metrics.ServiceMetricsBinder;
+import io.github.dbstarll.dubai.model.service.test.InterfaceService;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import mockit.Expectations;
+import mockit.Mocked;
+import org.bson.conversions.Bson;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TestServiceMetrics {
+    @Mocked
+    Collection<InterfaceEntity> collection;
+
+    private final ServiceMetrics metrics = new ServiceMetrics();
+    private InterfaceService service;
+
+    /**
+     * 初始化.
+     */
+    @Before
+    public void setUp() {
+        new Expectations() {
+            {
+                collection.getEntityClass();
+                result = InterfaceEntity.class;
+            }
+        };
+        this.service = ServiceFactory.newInstance(InterfaceService.class, collection);
+        ((ServiceMetricsAware) service).setServiceMetrics(metrics);
+    }
+
+    @After
+    public void tearDown() {
+        metrics.close();
+    }
+
+    /**
+     * 测试按(服务接口, Implemental类, 方法)记录调用次数和异常次数.
+     */
+    @Test
+    public void testRecord() {
+        new Expectations() {
+            {
+                collection.count((Bson) any);
+                returns(1L, 2L);
+                result = new IllegalStateException("count failed");
+            }
+        };
+        assertEquals(1, service.count(null));
+        assertEquals(2, service.count(null));
+        try {
+            service.count(null);
+            fail("throw IllegalStateException");
+        } catch (IllegalStateException ex) {
+            assertEquals("count failed", ex.getMessage());
+        }
+
+        assertEquals(1, metrics.getMethodMetrics().size());
+        final MethodMetrics m = metrics.getMethodMetrics().iterator().next();
+        assertEquals(InterfaceService.class, m.getServiceClass());
+        assertEquals(ServiceImplemental.class, m.getImplementalClass());
+        assertEquals("count", m.getMethod().getName());
+        assertEquals(3, m.getCount());
+        assertEquals(1, m.getErrorCount());
+        assertTrue(m.getMaxTime() > 0);
+        assertTrue(m.getTotalTime() >= m.getMaxTime());
+
+        long histogram = 0;
+        for (long c : m.getHistogram()) {
+            histogram += c;
+        }
+        assertEquals(3, histogram);
+        assertEquals(3, metrics.getCount());
+        assertEquals(1, metrics.getErrorCount());
+    }
+
+    /**
+     * 测试未启用时不记录.
+     */
+    @Test
+    public void testDisabled() {
+        ((ServiceMetricsAware) service).setServiceMetrics(null);
+        service.count(null);
+        assertTrue(metrics.getMethodMetrics().isEmpty());
+    }
+
+    /**
+     * 测试关闭后不再记录.
+     */
+    @Test
+    public void testClosed() {
+        service.count(null);
+        metrics.close();
+        assertTrue(metrics.isClosed());
+        service.count(null);
+        assertEquals(1, metrics.getCount());
+    }
+
+    /**
+     * 测试不同服务注入不同的调用统计，互不影响.
+     */
+    @Test
+    public void testPerService() {
+        final ServiceMetrics other = new ServiceMetrics();
+        final InterfaceService otherService = ServiceFactory.newInstance(InterfaceService.class, collection);
+        ((ServiceMetricsAware) otherService).setServiceMetrics(other);
+        service.count(null);
+        otherService.count(null);
+        otherService.count(null);
+        assertEquals(1, metrics.getCount());
+        assertEquals(2, other.getCount());
+    }
+
+    /**
+     * 测试直方图区间.
+     */
+    @Test
+    public void testHistogram() {
+        final MethodMetrics m = metrics.get(InterfaceService.class, ServiceImplemental.class,
+                InterfaceService.class.getMethods()[0]);
+        m.record(500, false);
+        m.record(TimeUnit.MICROSECONDS.toNanos(3), false);
+        m.record(TimeUnit.HOURS.toNanos(1), true);
+        final long[] histogram = m.getHistogram();
+        assertEquals(1, histogram[0]);
+        assertEquals(1, histogram[2]);
+        assertEquals(1, histogram[MethodMetrics.BUCKETS - 1]);
+        assertEquals(4, MethodMetrics.getBucketUpperBound(2));
+        assertEquals(Long.MAX_VALUE, MethodMetrics.getBucketUpperBound(MethodMetrics.BUCKETS - 1));
+        assertSame(m, metrics.get(InterfaceService.class, ServiceImplemental.class,
+                InterfaceService.class.getMethods()[0]));
+
+        final MethodStats stats = metrics.getMethodStats().get(0);
+        assertEquals(3, stats.getCount());
+        assertEquals(1, stats.getErrorCount());
+        assertEquals(4, stats.getP50());
+        assertEquals(Long.MAX_VALUE, stats.getP99());
+    }
+
+    /**
+     * 测试注册为MBean.
+     *
+     * @throws Exception Exception
+     */
+    @Test
+    public void testMBean() throws Exception {
+        service.count(null);
+        metrics.registerMBean();
+        final ObjectName name = new ObjectName(ServiceMetrics.OBJECT_NAME);
+        assertEquals(1L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Count"));
+        assertEquals(1, ((Object[]) ManagementFactory.getPlatformMBeanServer().getAttribute(name, "MethodStats")).length);
+        metrics.close();
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+        assertTrue(metrics.isClosed());
+    }
+
+    /**
+     * 测试以带有上下文标识的名称注册MBean，不同上下文的MBean互不影响.
+     *
+     * @throws Exception Exception
+     */
+    @Test
+    public void testMBeanContext() throws Exception {
+        final ServiceMetrics other = new ServiceMetrics();
+        metrics.registerMBean(ServiceMetrics.objectName("app1"));
+        other.registerMBean(ServiceMetrics.objectName("app2"));
+        assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(ServiceMetrics.objectName("app1")));
+        assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(ServiceMetrics.objectName("app2")));
+
+        other.close();
+        assertFalse(metrics.isClosed());
+        assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(ServiceMetrics.objectName("app1")));
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(ServiceMetrics.objectName("app2")));
+    }
+
+    /**
+     * 测试绑定到Micrometer，绑定之前和之后出现的服务方法都会注册指标.
+     */
+    @Test
+    public void testBinder() {
+        new Expectations() {
+            {
+                collection.count((Bson) any);
+                result = new IllegalStateException("count failed");
+            }
+        };
+        service.getEntityClass();
+        final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        new ServiceMetricsBinder(metrics).bindTo(registry);
+        try {
+            service.count(null);
+            fail("throw IllegalStateException");
+        } catch (IllegalStateException ex) {
+            assertEquals("count failed", ex.getMessage());
+        }
+
+        assertEquals(2, registry.find("dubai.service.invocations").timers().size());
+        final Timer count = registry.get("dubai.service.invocations").tag("method", "count(Bson)").timer();
+        assertEquals(1, count.count());
+        assertTrue(count.max(TimeUnit.NANOSECONDS) > 0);
+        final FunctionCounter errors = registry.get("dubai.service.errors").tag("method", "count(Bson)")
+                .functionCounter();
+        assertEquals(1, errors.count(), 0);
+    }
+}
@@ -0,0 +1,181 @@
+package test.io.github.dbstarll.dubai.model.service.processor;
+
+import io.github.dbstarll.dubai.model.collection.Collection;
+import io.github.dbstarll.dubai.model.entity.test.InterfaceEntity;
+import io.github.dbstarll.dubai.model.service.AbstractGeneratedService;
+import io.github.dbstarll.dubai.model.service.Implemental;
+import io.github.dbstarll.dubai.model.service.ImplementalAutowirer;
+import io.github.dbstarll.dubai.model.service.ImplementalAutowirerAware;
+import io.github.dbstarll.dubai.model.service.Service;
+import io.github.dbstarll.dubai.model.service.ServiceFactory;
+import io.github.dbstarll.dubai.model.service.ServiceFactory.GeneralValidateable;
+import io.github.dbstarll.dubai.model.service.attach.DefunctAttach;
+import io.github.dbstarll.dubai.model.service.processor.EntityServiceProcessor;
+import mockit.Delegate;
+import mockit.Expectations;
+import mockit.Mocked;
+import mockit.Verifications;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeNotNull;
+
+public class TestEntityServiceProcessor {
+    private static final String SERVICE_SOURCE = "package gen;\n"
+            + "import io.github.dbstarll.dubai.model.entity.test.InterfaceEntity;\n"
+            + "import io.github.dbstarll.dubai.model.service.EntityService;\n"
+            + "import io.github.dbstarll.dubai.model.service.Service;\n"
+            + "import io.github.dbstarll.dubai.model.service.attach.DefunctAttach;\n"
+            + "@EntityService\n"
+            + "public interface GenService extends Service<InterfaceEntity>, DefunctAttach<InterfaceEntity> {\n"
+            + "}\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Mocked
+    Collection<InterfaceEntity> collection;
+
+    @Mocked
+    ImplementalAutowirer autowirer;
+
+    private File compile(String serviceSource) throws Exception {
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assumeNotNull(compiler);
+        final File source = new File(folder.newFolder("src", "gen"), "GenService.java");
+        Files.write(source.toPath(), serviceSource.getBytes(StandardCharsets.UTF_8));
+        final File output = folder.newFolder("out");
+        assertEquals(0, compiler.run(null, null, null, "-encoding", "UTF-8",
+                "-classpath", System.getProperty("java.class.path"),
+                "-processor", EntityServiceProcessor.class.getName(),
+                "-d", output.getPath(), "-s", output.getPath(), source.getPath()));
+        return output;
+    }
+
+    /**
+     * 测试编译期生成的服务类取代代理.
+     *
+     * @throws Exception Exception
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testGenerate() throws Exception {
+        final File output = compile(SERVICE_SOURCE);
+        assertTrue(new File(output, "gen/GenService" + AbstractGeneratedService.CLASS_NAME_SUFFIX + ".java").isFile());
+
+        new Expectations() {
+            {
+                collection.getEntityClass();
+                result = InterfaceEntity.class;
+            }
+        };
+
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{output.toURI().toURL()},
+                getClass().getClassLoader())) {
+            final Class<? extends Service<InterfaceEntity>> serviceClass =
+                    (Class<? extends Service<InterfaceEntity>>) loader.loadClass("gen.GenService");
+            final Service<InterfaceEntity> service = ServiceFactory.newInstance(serviceClass, collection);
+            assertFalse(Proxy.isProxyClass(service.getClass()));
+            assertTrue(service instanceof AbstractGeneratedService);
+            assertEquals(serviceClass, ServiceFactory.getServiceClass(service));
+
+            ((ImplementalAutowirerAware) service).setImplementalAutowirer(autowirer);
+            assertEquals(InterfaceEntity.class, service.getEntityClass());
+            assertNotNull(((DefunctAttach<InterfaceEntity>) service).filterByDefunct(true));
+            assertNotNull(((GeneralValidateable<InterfaceEntity>) service).generalValidations());
+        }
+
+        new Verifications() {
+            {
+                autowirer.autowire((Implemental) any);
+                times = 2;
+            }
+        };
+    }
+
+    /**
+     * 测试某个Implemental初始化失败后再次调用时，只重新初始化尚未完成初始化的Implemental.
+     *
+     * @throws Exception Exception
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testInitializeRetry() throws Exception {
+        final File output = compile(SERVICE_SOURCE);
+        final List<Implemental> autowired = new ArrayList<>();
+        new Expectations() {
+            {
+                collection.getEntityClass();
+                result = InterfaceEntity.class;
+                autowirer.autowire((Implemental) any);
+                result = new Delegate<Void>() {
+                    @SuppressWarnings("unused")
+                    void autowire(Implemental implemental) {
+                        autowired.add(implemental);
+                        if (autowired.size() == 2) {
+                            throw new IllegalStateException("autowire failed");
+                        }
+                    }
+                };
+            }
+        };
+
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{output.toURI().toURL()},
+                getClass().getClassLoader())) {
+            final Class<? extends Service<InterfaceEntity>> serviceClass =
+                    (Class<? extends Service<InterfaceEntity>>) loader.loadClass("gen.GenService");
+            final Service<InterfaceEntity> service = ServiceFactory.newInstance(serviceClass, collection);
+            ((ImplementalAutowirerAware) service).setImplementalAutowirer(autowirer);
+            try {
+                service.getEntityClass();
+                fail("throw UnsupportedOperationException");
+            } catch (UnsupportedOperationException ex) {
+                assertEquals("autowire failed", ex.getCause().getMessage());
+            }
+            assertEquals(InterfaceEntity.class, service.getEntityClass());
+            assertEquals(InterfaceEntity.class, service.getEntityClass());
+        }
+
+        assertEquals(3, autowired.size());
+        assertNotSame(autowired.get(0), autowired.get(1));
+        assertSame(autowired.get(1), autowired.get(2));
+    }
+
+    /**
+     * 测试Implemental不满足要求时不生成服务类.
+     *
+     * @throws Exception Exception
+     */
+    @Test
+    public void testSkip() throws Exception {
+        final File output = compile(SERVICE_SOURCE.replace("DefunctAttach<InterfaceEntity> {",
+                "DefunctAttach<InterfaceEntity>, io.github.dbstarll.dubai.model.service.test.NotFinalAttach {"));
+        assertEquals(Arrays.asList("GenService.class"), Arrays.asList(new File(output, "gen").list()));
+    }
+
+    /**
+     * 测试服务接口中有方法没有实现时不生成服务类，运行时仍然使用代理.
+     *
+     * @throws Exception Exception
+     */
+    @Test
+    public void testSkipUnImplementation() throws Exception {
+        final File output = compile(SERVICE_SOURCE.replace("DefunctAttach<InterfaceEntity> {\n",
+                "DefunctAttach<InterfaceEntity> {\n    void unImplementation();\n"));
+        assertEquals(Arrays.asList("GenService.class"), Arrays.asList(new File(output, "gen").list()));
+    }
+}
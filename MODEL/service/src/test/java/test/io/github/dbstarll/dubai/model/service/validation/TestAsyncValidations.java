@@ -0,0 +1,235 @@
+package test.io.github.dbstarll.dubai.model.service.validation;
+
+import io.github.dbstarll.dubai.model.entity.test.InterfaceEntity;
+import io.github.dbstarll.dubai.model.service.ServiceFactory.PositionValidation;
+import io.github.dbstarll.dubai.model.service.validate.DefaultValidate;
+import io.github.dbstarll.dubai.model.service.validate.Validate;
+import io.github.dbstarll.dubai.model.service.validation.AsyncValidation;
+import io.github.dbstarll.dubai.model.service.validation.AsyncValidations;
+import io.github.dbstarll.dubai.model.service.validation.GeneralValidation.Position;
+import io.github.dbstarll.dubai.model.service.validation.MultiValidation;
+import io.github.dbstarll.dubai.model.service.validation.Validation;
+import io.github.dbstarll.dubai.model.service.validation.ValidationPipeline;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class TestAsyncValidations extends TestCase {
+    private final List<String> calls = new CopyOnWriteArrayList<>();
+
+    /**
+     * 每个校验等待同组的其他校验开始后才返回，顺序执行时会超时并记录错误.
+     */
+    private Validation<InterfaceEntity> async(final String name, final CountDownLatch latch) {
+        return new AsyncValidation<InterfaceEntity>() {
+            @Override
+            public void validate(InterfaceEntity entity, InterfaceEntity original, Validate validate) {
+                latch.countDown();
+                try {
+                    if (!latch.await(5, TimeUnit.SECONDS)) {
+                        validate.addActionError("timeout: " + name);
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                validate.addFieldError("async", name);
+                calls.add(name);
+            }
+        };
+    }
+
+    private Validation<InterfaceEntity> sync(final String name) {
+        return new Validation<InterfaceEntity>() {
+            @Override
+            public void validate(InterfaceEntity entity, InterfaceEntity original, Validate validate) {
+                calls.add(name);
+            }
+        };
+    }
+
+    /**
+     * 测试相邻的AsyncValidation并发执行，非AsyncValidation作为分隔.
+     */
+    @SuppressWarnings("unchecked")
+    public void testMultiValidation() {
+        final CountDownLatch latch1 = new CountDownLatch(3);
+        final CountDownLatch latch2 = new CountDownLatch(2);
+        final MultiValidation<InterfaceEntity> validation = new MultiValidation<>(InterfaceEntity.class,
+                sync("first"), async("a1", latch1), async("a2", latch1), async("a3", latch1), sync("middle"),
+                async("b1", latch2), async("b2", latch2), sync("last"));
+
+        final DefaultValidate validate = new DefaultValidate();
+        validation.validate(null, null, validate);
+        assertFalse(validate.hasActionErrors());
+        assertEquals(5, validate.getFieldErrors().get("async").size());
+
+        assertEquals(8, calls.size());
+        assertEquals("first", calls.get(0));
+        assertEquals(Arrays.asList("a1", "a2", "a3"), sorted(calls.subList(1, 4)));
+        assertEquals("middle", calls.get(4));
+        assertEquals(Arrays.asList("b1", "b2"), sorted(calls.subList(5, 7)));
+        assertEquals("last", calls.get(7));
+    }
+
+    /**
+     * 测试校验流水线中调用方的AsyncValidation并发执行，但不与通用校验合并为一组.
+     */
+    @SuppressWarnings("unchecked")
+    public void testPipeline() {
+        final CountDownLatch latch = new CountDownLatch(2);
+        final ValidationPipeline<InterfaceEntity> pipeline = ValidationPipeline.compile(InterfaceEntity.class,
+                Arrays.asList(new PositionValidation<>(Position.FIRST, sync("first")),
+                        new PositionValidation<>(Position.PRE, async("pre", new CountDownLatch(1))),
+                        new PositionValidation<>(Position.LAST, sync("last"))));
+
+        final DefaultValidate validate = new DefaultValidate();
+        pipeline.validate(null, null, validate, async("call1", latch), async("call2", latch));
+        assertFalse(validate.hasActionErrors());
+        assertEquals(Arrays.asList("first", "pre"), calls.subList(0, 2));
+        assertEquals(Arrays.asList("call1", "call2"), sorted(calls.subList(2, 4)));
+        assertEquals("last", calls.get(4));
+
+        calls.clear();
+        pipeline.validate(null, null, new DefaultValidate());
+        assertEquals(Arrays.asList("first", "pre", "last"), calls);
+    }
+
+    /**
+     * 测试不同Position的AsyncValidation按位置依次执行，只有同一Position的并发执行.
+     */
+    @SuppressWarnings("unchecked")
+    public void testPipelinePositions() {
+        final CountDownLatch pre = new CountDownLatch(2);
+        final CountDownLatch post = new CountDownLatch(2);
+        final ValidationPipeline<InterfaceEntity> pipeline = ValidationPipeline.compile(InterfaceEntity.class,
+                Arrays.asList(new PositionValidation<>(Position.POST, async("post1", post)),
+                        new PositionValidation<>(Position.PRE, async("pre1", pre)),
+                        new PositionValidation<>(Position.POST, async("post2", post)),
+                        new PositionValidation<>(Position.PRE, async("pre2", pre))));
+
+        final DefaultValidate validate = new DefaultValidate();
+        pipeline.validate(null, null, validate);
+        assertFalse(validate.hasActionErrors());
+        assertEquals(Arrays.asList("pre1", "pre2"), sorted(calls.subList(0, 2)));
+        assertEquals(Arrays.asList("post1", "post2"), sorted(calls.subList(2, 4)));
+
+        calls.clear();
+        final CountDownLatch call = new CountDownLatch(1);
+        pipeline.validate(null, null, new DefaultValidate(), async("call", call));
+        assertEquals(Arrays.asList("pre1", "pre2"), sorted(calls.subList(0, 2)));
+        assertEquals("call", calls.get(2));
+        assertEquals(Arrays.asList("post1", "post2"), sorted(calls.subList(3, 5)));
+    }
+
+    /**
+     * 测试并发执行的校验抛出异常时，等待整组完成后抛出.
+     */
+    @SuppressWarnings("unchecked")
+    public void testException() {
+        final CountDownLatch latch = new CountDownLatch(2);
+        final Validation<InterfaceEntity> failed = new AsyncValidation<InterfaceEntity>() {
+            @Override
+            public void validate(InterfaceEntity entity, InterfaceEntity original, Validate validate) {
+                latch.countDown();
+                throw new IllegalArgumentException("failed");
+            }
+        };
+        final MultiValidation<InterfaceEntity> validation = new MultiValidation<>(InterfaceEntity.class,
+                failed, async("ok", latch), sync("last"));
+        try {
+            validation.validate(null, null, new DefaultValidate());
+            fail("throw IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            assertEquals("failed", ex.getMessage());
+        }
+        assertEquals(Collections.singletonList("ok"), calls);
+    }
+
+    /**
+     * 测试设置执行器.
+     */
+    @SuppressWarnings("unchecked")
+    public void testExecutor() {
+        final Executor original = AsyncValidations.getExecutor();
+        final List<Runnable> executed = new CopyOnWriteArrayList<>();
+        AsyncValidations.setExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                executed.add(command);
+                original.execute(command);
+            }
+        });
+        try {
+            final CountDownLatch latch = new CountDownLatch(3);
+            new MultiValidation<>(InterfaceEntity.class, async("a1", latch), async("a2", latch),
+                    async("a3", latch)).validate(null, null, new DefaultValidate());
+            assertEquals(2, executed.size());
+        } finally {
+            AsyncValidations.setExecutor(original);
+        }
+    }
+
+    /**
+     * 测试在有界执行器的任务中再次并发执行一组校验时，不会因等待执行器而死锁.
+     */
+    public void testNestedInvokeAll() throws Exception {
+        final Executor original = AsyncValidations.getExecutor();
+        final ExecutorService bounded = Executors.newFixedThreadPool(1);
+        AsyncValidations.setExecutor(bounded);
+        try {
+            final List<Runnable> outer = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                final String name = "outer" + i;
+                outer.add(new Runnable() {
+                    @Override
+                    public void run() {
+                        AsyncValidations.invokeAll(Arrays.asList(new Runnable() {
+                            @Override
+                            public void run() {
+                                calls.add(name + "-inner1");
+                            }
+                        }, new Runnable() {
+                            @Override
+                            public void run() {
+                                calls.add(name + "-inner2");
+                            }
+                        }));
+                    }
+                });
+            }
+            final FutureTask<Void> task = new FutureTask<Void>(new Runnable() {
+                @Override
+                public void run() {
+                    AsyncValidations.invokeAll(outer);
+                }
+            }, null);
+            new Thread(task).start();
+            try {
+                task.get(5, TimeUnit.SECONDS);
+            } catch (TimeoutException ex) {
+                fail("nested invokeAll deadlocked");
+            }
+            assertEquals(6, calls.size());
+        } finally {
+            AsyncValidations.setExecutor(original);
+            bounded.shutdownNow();
+        }
+    }
+
+    private static List<String> sorted(List<String> list) {
+        final String[] array = list.toArray(new String[0]);
+        Arrays.sort(array);
+        return Arrays.asList(array);
+    }
+}
@@ -0,0 +1,126 @@
+package test.io.github.dbstarll.dubai.model.service.validation;
+
+import io.github.dbstarll.dubai.model.entity.test.InterfaceEntity;
+import io.github.dbstarll.dubai.model.service.ServiceFactory.PositionValidation;
+import io.github.dbstarll.dubai.model.service.validate.Validate;
+import io.github.dbstarll.dubai.model.service.validation.AbstractValidation;
+import io.github.dbstarll.dubai.model.service.validation.GeneralValidation.Position;
+import io.github.dbstarll.dubai.model.service.validation.MultiValidation;
+import io.github.dbstarll.dubai.model.service.validation.Validation;
+import io.github.dbstarll.dubai.model.service.validation.ValidationPipeline;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestValidationPipeline {
+    private final List<String> calls = new ArrayList<>();
+
+    private Validation<InterfaceEntity> validation(final String name) {
+        return new Validation<InterfaceEntity>() {
+            @Override
+            public void validate(InterfaceEntity entity, InterfaceEntity original, Validate validate) {
+                calls.add(name);
+            }
+        };
+    }
+
+    private List<PositionValidation<InterfaceEntity>> general(Validation<InterfaceEntity> first,
+                                                              Validation<InterfaceEntity> pre,
+                                                              Validation<InterfaceEntity> post,
+                                                              Validation<InterfaceEntity> last) {
+        return Arrays.asList(new PositionValidation<>(Position.LAST, last),
+                new PositionValidation<>(Position.POST, post),
+                new PositionValidation<>(Position.PRE, pre),
+                new PositionValidation<>(Position.FIRST, first));
+    }
+
+    /**
+     * 测试通用校验按位置排序，调用方的校验插入PRE和POST之间.
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testOrder() {
+        final ValidationPipeline<InterfaceEntity> pipeline = ValidationPipeline.compile(InterfaceEntity.class,
+                general(validation("first"), validation("pre"), validation("post"), validation("last")));
+        assertEquals(4, pipeline.size());
+
+        pipeline.validate(null, null, null);
+        assertEquals(Arrays.asList("first", "pre", "post", "last"), calls);
+
+        calls.clear();
+        pipeline.validate(null, null, null, validation("call1"), validation("call2"));
+        assertEquals(Arrays.asList("first", "pre", "call1", "call2", "post", "last"), calls);
+    }
+
+    /**
+     * 测试重复的校验只执行一次，与MultiValidation的去重规则一致.
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testDuplicate() {
+        final Validation<InterfaceEntity> pre = validation("pre");
+        final Validation<InterfaceEntity> post = validation("post");
+        final ValidationPipeline<InterfaceEntity> pipeline = ValidationPipeline.compile(InterfaceEntity.class,
+                general(pre, pre, post, validation("last")));
+        assertEquals(3, pipeline.size());
+
+        final Validation<InterfaceEntity> call = validation("call");
+        pipeline.validate(null, null, null, pre, call, post, call);
+        assertEquals(Arrays.asList("pre", "call", "post", "last"), calls);
+    }
+
+    /**
+     * 测试以equals判断重复.
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testEquals() {
+        final ValidationPipeline<InterfaceEntity> pipeline = ValidationPipeline.compile(InterfaceEntity.class,
+                general(new CountValidation("first"), validation("pre"), validation("post"), validation("last")));
+        pipeline.validate(null, null, null, new CountValidation("call"));
+        assertEquals(Arrays.asList("first", "pre", "post", "last"), calls);
+    }
+
+    /**
+     * 测试调用方的校验中包含MultiValidation.
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testMultiValidation() {
+        final Validation<InterfaceEntity> post = validation("post");
+        final ValidationPipeline<InterfaceEntity> pipeline = ValidationPipeline.compile(InterfaceEntity.class,
+                general(validation("first"), validation("pre"), post, validation("last")));
+        pipeline.validate(null, null, null, new MultiValidation<>(InterfaceEntity.class, validation("call"), post));
+        assertEquals(Arrays.asList("first", "pre", "call", "post", "last"), calls);
+    }
+
+    /**
+     * 测试没有通用校验.
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testEmpty() {
+        final ValidationPipeline<InterfaceEntity> pipeline = ValidationPipeline.compile(InterfaceEntity.class, null);
+        assertEquals(0, pipeline.size());
+        pipeline.validate(null, null, null, validation("call"));
+        assertEquals(Arrays.asList("call"), calls);
+    }
+
+    private final class CountValidation extends AbstractValidation<InterfaceEntity> {
+        private final String name;
+
+        private CountValidation(String name) {
+            super(InterfaceEntity.class);
+            this.name = name;
+        }
+
+        @Override
+        public void validate(InterfaceEntity entity, InterfaceEntity original, Validate validate) {
+            calls.add(name);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package test.io.github.dbstarll.dubai.model.spring;
+
+import io.github.dbstarll.dubai.model.collection.Collection;
+import io.github.dbstarll.dubai.model.entity.test.InterfaceEntity;
+import io.github.dbstarll.dubai.model.service.ImplementalAutowirer;
+import io.github.dbstarll.dubai.model.service.ImplementalAutowirerAware;
+import io.github.dbstarll.dubai.model.service.ServiceFactory;
+import io.github.dbstarll.dubai.model.service.ServiceFactory.GeneralValidateable;
+import io.github.dbstarll.dubai.model.service.test.InterfaceService;
+import io.github.dbstarll.dubai.model.service.test.InterfaceServiceImplemental;
+import io.github.dbstarll.dubai.model.service.test4.TestValidEntity;
+import io.github.dbstarll.dubai.model.service.test4.TestValidService;
+import io.github.dbstarll.dubai.model.service.test4.TestValidServiceImplemental;
+import io.github.dbstarll.dubai.model.spring.ServiceWarmUp;
+import mockit.Expectations;
+import mockit.Mocked;
+import mockit.Verifications;
+import org.junit.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+import static org.junit.Assert.assertNotNull;
+
+public class TestServiceWarmUp {
+    @Mocked
+    Collection<InterfaceEntity> collection;
+    @Mocked
+    Collection<TestValidEntity> validCollection;
+
+    /**
+     * 测试预热所有服务，单个服务预热失败不影响其他服务.
+     */
+    @SuppressWarnings("rawtypes")
+    @Test
+    public void testWarmUp() {
+        new Expectations() {
+            {
+                collection.getEntityClass();
+                result = InterfaceEntity.class;
+                validCollection.getEntityClass();
+                result = TestValidEntity.class;
+            }
+        };
+        final InterfaceService service = ServiceFactory.newInstance(InterfaceService.class, collection);
+        final DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("interfaceService", service);
+        beanFactory.registerSingleton("testValidService",
+                ServiceFactory.newInstance(TestValidService.class, validCollection));
+
+        final ServiceWarmUp warmUp = new ServiceWarmUp();
+        warmUp.setBeanFactory(beanFactory);
+        warmUp.setThreads(2);
+        warmUp.afterSingletonsInstantiated();
+
+        assertNotNull(((GeneralValidateable) service).generalValidations());
+    }
+
+    /**
+     * 测试一个服务预热时抛出异常，其他服务仍然完成预热.
+     *
+     * @param autowirer ImplementalAutowirer
+     */
+    @Test
+    public void testWarmUpFailed(@Mocked final ImplementalAutowirer autowirer) {
+        new Expectations() {
+            {
+                collection.getEntityClass();
+                result = InterfaceEntity.class;
+                validCollection.getEntityClass();
+                result = TestValidEntity.class;
+            }
+        };
+        final InterfaceService service = ServiceFactory.newInstance(InterfaceService.class, collection);
+        final TestValidService validService = ServiceFactory.newInstance(TestValidService.class, validCollection);
+        final InterfaceService failedService = ServiceFactory.newInstance(InterfaceService.class, collection);
+        ((ImplementalAutowirerAware) service).setImplementalAutowirer(autowirer);
+        ((ImplementalAutowirerAware) validService).setImplementalAutowirer(autowirer);
+        final DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("interfaceService", service);
+        beanFactory.registerSingleton("failedService", failedService);
+        beanFactory.registerSingleton("testValidService", validService);
+
+        new Expectations(ServiceFactory.class) {
+            {
+                ServiceFactory.warmUp(failedService);
+                result = new IllegalStateException("warm up failed");
+            }
+        };
+
+        final ServiceWarmUp warmUp = new ServiceWarmUp();
+        warmUp.setBeanFactory(beanFactory);
+        warmUp.setThreads(1);
+        warmUp.afterSingletonsInstantiated();
+
+        new Verifications() {
+            {
+                autowirer.autowire(withInstanceOf(InterfaceServiceImplemental.class));
+                times = 1;
+                autowirer.autowire(withInstanceOf(TestValidServiceImplemental.class));
+                times = 1;
+            }
+        };
+    }
+
+    /**
+     * 测试未设置BeanFactory时跳过预热.
+     */
+    @Test
+    public void testNoBeanFactory() {
+        new ServiceWarmUp().afterSingletonsInstantiated();
+    }
+}